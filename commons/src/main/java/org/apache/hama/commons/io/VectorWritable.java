@@ -25,9 +25,12 @@ import org.apache.hadoop.io.WritableComparable;
 import org.apache.hama.commons.math.DenseDoubleVector;
 import org.apache.hama.commons.math.DoubleVector;
 import org.apache.hama.commons.math.NamedDoubleVector;
+import org.apache.hama.commons.math.SparseDoubleVector;
 
 /**
- * Writable for dense vectors.
+ * Writable for dense and sparse vectors. A sparse vector is written as its
+ * dimension, marked by a negative sign, followed by its non-zero elements;
+ * it is read back as a {@link SparseDoubleVector}.
  */
 public class VectorWritable implements WritableComparable<VectorWritable> {
 
@@ -99,9 +102,20 @@ public class VectorWritable implements WritableComparable<VectorWritable> {
 
   public static void writeVector(DoubleVector vector, DataOutput out)
       throws IOException {
-    out.writeInt(vector.getLength());
-    for (int i = 0; i < vector.getDimension(); i++) {
-      out.writeDouble(vector.get(i));
+    if (vector instanceof SparseDoubleVector) {
+      // a negative length marks the sparse format
+      SparseDoubleVector sparse = (SparseDoubleVector) vector;
+      out.writeInt(-1 - sparse.getDimension());
+      out.writeInt(sparse.getNonZeroCount());
+      for (int i = 0; i < sparse.getNonZeroCount(); i++) {
+        out.writeInt(sparse.getIndexAt(i));
+        out.writeDouble(sparse.getValueAt(i));
+      }
+    } else {
+      out.writeInt(vector.getLength());
+      for (int i = 0; i < vector.getDimension(); i++) {
+        out.writeDouble(vector.get(i));
+      }
     }
 
     if (vector.isNamed() && vector.getName() != null) {
@@ -115,9 +129,20 @@ public class VectorWritable implements WritableComparable<VectorWritable> {
   public static DoubleVector readVector(DataInput in) throws IOException {
     int length = in.readInt();
     DoubleVector vector;
-    vector = new DenseDoubleVector(length);
-    for (int i = 0; i < length; i++) {
-      vector.set(i, in.readDouble());
+    if (length < 0) {
+      int size = in.readInt();
+      int[] indices = new int[size];
+      double[] values = new double[size];
+      for (int i = 0; i < size; i++) {
+        indices[i] = in.readInt();
+        values[i] = in.readDouble();
+      }
+      vector = new SparseDoubleVector(-1 - length, indices, values, size);
+    } else {
+      vector = new DenseDoubleVector(length);
+      for (int i = 0; i < length; i++) {
+        vector.set(i, in.readDouble());
+      }
     }
 
     if (in.readBoolean()) {
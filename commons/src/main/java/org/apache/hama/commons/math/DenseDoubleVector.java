@@ -324,6 +324,10 @@ public final class DenseDoubleVector implements DoubleVector {
    */
   @Override
   public double dotUnsafe(DoubleVector vector) {
+    if (vector.isSparse()) {
+      // only the non-zero elements contribute
+      return vector.dotUnsafe(this);
+    }
     BigDecimal dotProduct = BigDecimal.valueOf(0.0d);
     for (int i = 0; i < getLength(); i++) {
       dotProduct = dotProduct.add(BigDecimal.valueOf(this.get(i)).multiply(BigDecimal.valueOf(vector.get(i))));
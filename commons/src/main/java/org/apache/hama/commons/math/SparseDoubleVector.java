@@ -0,0 +1,514 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.commons.math;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Sparse vector that stores the indices of its non-zero elements in ascending
+ * order together with their values. Operations that keep zeros at zero return
+ * sparse vectors, all others return a {@link DenseDoubleVector}.
+ */
+public final class SparseDoubleVector implements DoubleVector {
+
+  private final int dimension;
+  private int[] indices;
+  private double[] values;
+  private int size;
+
+  /**
+   * Creates a new empty vector with the given dimension.
+   */
+  public SparseDoubleVector(int dimension) {
+    this(dimension, 8);
+  }
+
+  /**
+   * Creates a new empty vector with the given dimension and room for the
+   * given number of non-zero elements.
+   */
+  public SparseDoubleVector(int dimension, int capacity) {
+    this.dimension = dimension;
+    this.indices = new int[Math.max(1, capacity)];
+    this.values = new double[indices.length];
+  }
+
+  /**
+   * Creates a new vector from the given indices and values. The indices must
+   * be sorted in ascending order and must not contain duplicates, the arrays
+   * are used directly.
+   */
+  public SparseDoubleVector(int dimension, int[] indices, double[] values,
+      int size) {
+    Preconditions.checkArgument(indices.length >= size
+        && values.length >= size, "Size exceeds the given arrays.");
+    this.dimension = dimension;
+    this.indices = indices;
+    this.values = values;
+    this.size = size;
+  }
+
+  @Override
+  public double get(int index) {
+    int position = Arrays.binarySearch(indices, 0, size, index);
+    return (position < 0) ? 0.0d : values[position];
+  }
+
+  @Override
+  public int getLength() {
+    return dimension;
+  }
+
+  @Override
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * @return the number of stored elements.
+   */
+  public int getNonZeroCount() {
+    return size;
+  }
+
+  /**
+   * @return the index of the i-th stored element.
+   */
+  public int getIndexAt(int i) {
+    return indices[i];
+  }
+
+  /**
+   * @return the value of the i-th stored element.
+   */
+  public double getValueAt(int i) {
+    return values[i];
+  }
+
+  @Override
+  public void set(int index, double value) {
+    Preconditions.checkArgument(index >= 0 && index < dimension,
+        "Index out of bounds: " + index);
+    int position = Arrays.binarySearch(indices, 0, size, index);
+    if (position >= 0) {
+      values[position] = value;
+      return;
+    }
+    if (value == 0.0d) {
+      return;
+    }
+    position = -(position + 1);
+    if (size == indices.length) {
+      indices = Arrays.copyOf(indices, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    System.arraycopy(indices, position, indices, position + 1, size - position);
+    System.arraycopy(values, position, values, position + 1, size - position);
+    indices[position] = index;
+    values[position] = value;
+    size++;
+  }
+
+  @Override
+  public DoubleVector applyToElements(DoubleFunction func) {
+    return toDense().applyToElements(func);
+  }
+
+  @Override
+  public DoubleVector applyToElements(DoubleVector other,
+      DoubleDoubleFunction func) {
+    return toDense().applyToElements(other, func);
+  }
+
+  @Override
+  public DoubleVector addUnsafe(DoubleVector vector) {
+    if (vector.isSparse()) {
+      return merge(vector, 1.0d);
+    }
+    double[] result = Arrays.copyOf(vector.toArray(), vector.getLength());
+    for (int i = 0; i < size; i++) {
+      result[indices[i]] += values[i];
+    }
+    return new DenseDoubleVector(result);
+  }
+
+  @Override
+  public DoubleVector add(DoubleVector vector) {
+    Preconditions.checkArgument(dimension == vector.getDimension(),
+        "Dimensions of two vectors do not equal.");
+    return addUnsafe(vector);
+  }
+
+  @Override
+  public DoubleVector add(double scalar) {
+    return toDense().add(scalar);
+  }
+
+  @Override
+  public DoubleVector subtractUnsafe(DoubleVector vector) {
+    if (vector.isSparse()) {
+      return merge(vector, -1.0d);
+    }
+    double[] other = vector.toArray();
+    double[] result = new double[vector.getLength()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = -other[i];
+    }
+    for (int i = 0; i < size; i++) {
+      result[indices[i]] += values[i];
+    }
+    return new DenseDoubleVector(result);
+  }
+
+  @Override
+  public DoubleVector subtract(DoubleVector vector) {
+    Preconditions.checkArgument(dimension == vector.getDimension(),
+        "Dimensions of two vectors do not equal.");
+    return subtractUnsafe(vector);
+  }
+
+  @Override
+  public DoubleVector subtract(double scalar) {
+    return toDense().subtract(scalar);
+  }
+
+  @Override
+  public DoubleVector subtractFrom(double scalar) {
+    return toDense().subtractFrom(scalar);
+  }
+
+  @Override
+  public DoubleVector multiply(double scalar) {
+    double[] result = new double[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = values[i] * scalar;
+    }
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices, size),
+        result, size);
+  }
+
+  @Override
+  public DoubleVector multiplyUnsafe(DoubleVector vector) {
+    SparseDoubleVector result = new SparseDoubleVector(dimension, size);
+    for (int i = 0; i < size; i++) {
+      double value = values[i] * vector.get(indices[i]);
+      if (value != 0.0d) {
+        result.indices[result.size] = indices[i];
+        result.values[result.size++] = value;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public DoubleVector multiply(DoubleVector vector) {
+    Preconditions.checkArgument(dimension == vector.getDimension(),
+        "Dimensions of two vectors do not equal.");
+    return multiplyUnsafe(vector);
+  }
+
+  @Override
+  public DoubleVector multiply(DoubleMatrix matrix) {
+    return toDense().multiply(matrix);
+  }
+
+  @Override
+  public DoubleVector multiplyUnsafe(DoubleMatrix matrix) {
+    return toDense().multiplyUnsafe(matrix);
+  }
+
+  @Override
+  public DoubleVector divide(double scalar) {
+    return multiply(1.0d / scalar);
+  }
+
+  @Override
+  public DoubleVector divideFrom(double scalar) {
+    // the dense implementation keeps zeros at zero as well
+    double[] result = new double[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = scalar / values[i];
+    }
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices, size),
+        result, size);
+  }
+
+  @Override
+  public DoubleVector pow(int x) {
+    if (x <= 0) {
+      return toDense().pow(x);
+    }
+    double[] result = new double[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = (x == 2) ? values[i] * values[i] : Math.pow(values[i], x);
+    }
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices, size),
+        result, size);
+  }
+
+  @Override
+  public DoubleVector abs() {
+    double[] result = new double[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = Math.abs(values[i]);
+    }
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices, size),
+        result, size);
+  }
+
+  @Override
+  public DoubleVector sqrt() {
+    double[] result = new double[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = Math.sqrt(values[i]);
+    }
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices, size),
+        result, size);
+  }
+
+  @Override
+  public double sum() {
+    double sum = 0.0d;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public double dotUnsafe(DoubleVector vector) {
+    double dotProduct = 0.0d;
+    for (int i = 0; i < size; i++) {
+      dotProduct += values[i] * vector.get(indices[i]);
+    }
+    return dotProduct;
+  }
+
+  @Override
+  public double dot(DoubleVector vector) {
+    Preconditions.checkArgument(dimension == vector.getDimension(),
+        "Dimensions of two vectors do not equal.");
+    return dotUnsafe(vector);
+  }
+
+  @Override
+  public DoubleVector slice(int length) {
+    return slice(0, length - 1);
+  }
+
+  @Override
+  public DoubleVector sliceUnsafe(int length) {
+    return sliceUnsafe(0, length - 1);
+  }
+
+  @Override
+  public DoubleVector slice(int start, int end) {
+    Preconditions.checkArgument(start >= 0 && start <= end
+        && end < dimension, "The given from and to is invalid");
+    return sliceUnsafe(start, end);
+  }
+
+  /**
+   * Get a subset of the original vector starting from 'start' and end to
+   * 'end', with both ends inclusive.
+   */
+  @Override
+  public DoubleVector sliceUnsafe(int start, int end) {
+    int from = Arrays.binarySearch(indices, 0, size, start);
+    from = (from < 0) ? -(from + 1) : from;
+    int to = Arrays.binarySearch(indices, 0, size, end);
+    to = (to < 0) ? -(to + 1) : to + 1;
+    int length = Math.max(0, to - from);
+    int[] newIndices = new int[length];
+    for (int i = 0; i < length; i++) {
+      newIndices[i] = indices[from + i] - start;
+    }
+    return new SparseDoubleVector(end - start + 1, newIndices,
+        Arrays.copyOfRange(values, from, from + length), length);
+  }
+
+  @Override
+  public double max() {
+    double max = (size < dimension) ? 0.0d : -Double.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      max = Math.max(max, values[i]);
+    }
+    return max;
+  }
+
+  @Override
+  public double min() {
+    double min = (size < dimension) ? 0.0d : Double.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      min = Math.min(min, values[i]);
+    }
+    return min;
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] array = new double[dimension];
+    for (int i = 0; i < size; i++) {
+      array[indices[i]] = values[i];
+    }
+    return array;
+  }
+
+  @Override
+  public DoubleVector deepCopy() {
+    return new SparseDoubleVector(dimension, Arrays.copyOf(indices,
+        indices.length), Arrays.copyOf(values, values.length), size);
+  }
+
+  @Override
+  public Iterator<DoubleVectorElement> iterateNonDefault() {
+    return new NonDefaultIterator();
+  }
+
+  @Override
+  public Iterator<DoubleVectorElement> iterate() {
+    return toDense().iterate();
+  }
+
+  @Override
+  public boolean isSparse() {
+    return true;
+  }
+
+  @Override
+  public boolean isNamed() {
+    return false;
+  }
+
+  @Override
+  public String getName() {
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(dimension).append('{');
+    for (int i = 0; i < Math.min(size, 20); i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(indices[i]).append(':').append(values[i]);
+    }
+    if (size > 20) {
+      sb.append(", ...");
+    }
+    return sb.append('}').toString();
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 31 + dimension;
+    for (int i = 0; i < size; i++) {
+      if (values[i] != 0.0d) {
+        result = 31 * result + indices[i];
+        long bits = Double.doubleToLongBits(values[i]);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null || getClass() != obj.getClass())
+      return false;
+    SparseDoubleVector other = (SparseDoubleVector) obj;
+    return dimension == other.dimension
+        && Arrays.equals(toArray(), other.toArray());
+  }
+
+  private DenseDoubleVector toDense() {
+    return new DenseDoubleVector(toArray());
+  }
+
+  /**
+   * @return this + factor * other for a sparse other vector.
+   */
+  private DoubleVector merge(DoubleVector other, double factor) {
+    int otherDimension = other.getDimension();
+    SparseDoubleVector result = new SparseDoubleVector(otherDimension, size
+        + 8);
+    int i = 0;
+    Iterator<DoubleVectorElement> iterator = other.iterateNonDefault();
+    while (iterator.hasNext()) {
+      DoubleVectorElement element = iterator.next();
+      while (i < size && indices[i] < element.getIndex()) {
+        result.append(indices[i], values[i]);
+        i++;
+      }
+      double value = factor * element.getValue();
+      if (i < size && indices[i] == element.getIndex()) {
+        value += values[i];
+        i++;
+      }
+      result.append(element.getIndex(), value);
+    }
+    for (; i < size; i++) {
+      result.append(indices[i], values[i]);
+    }
+    return result;
+  }
+
+  private void append(int index, double value) {
+    if (value == 0.0d) {
+      return;
+    }
+    if (size == indices.length) {
+      indices = Arrays.copyOf(indices, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    indices[size] = index;
+    values[size++] = value;
+  }
+
+  /**
+   * Iterator over the stored elements.
+   */
+  private final class NonDefaultIterator extends
+      AbstractIterator<DoubleVectorElement> {
+
+    private final DoubleVectorElement element = new DoubleVectorElement();
+    private int current = 0;
+
+    @Override
+    protected final DoubleVectorElement computeNext() {
+      while (current < size && values[current] == 0.0d) {
+        current++;
+      }
+      if (current >= size) {
+        return endOfData();
+      }
+      element.setIndex(indices[current]);
+      element.setValue(values[current]);
+      current++;
+      return element;
+    }
+  }
+}
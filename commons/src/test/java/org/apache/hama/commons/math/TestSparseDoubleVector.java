@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.commons.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Iterator;
+
+import org.apache.hama.commons.io.VectorWritable;
+import org.apache.hama.commons.math.DoubleVector.DoubleVectorElement;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link SparseDoubleVector}
+ *
+ */
+public class TestSparseDoubleVector {
+
+  @Test
+  public void testSetAndGet() {
+    SparseDoubleVector vec = new SparseDoubleVector(10, 1);
+    vec.set(7, 3);
+    vec.set(2, 1);
+    vec.set(5, 2);
+    vec.set(4, 0);
+    assertEquals(3, vec.getNonZeroCount());
+    assertEquals(10, vec.getDimension());
+    assertArrayEquals(new double[] {0, 0, 1, 0, 0, 2, 0, 3, 0, 0},
+        vec.toArray(), 0.000001);
+
+    Iterator<DoubleVectorElement> iterator = vec.iterateNonDefault();
+    int[] indices = new int[] {2, 5, 7};
+    for (int index : indices) {
+      assertTrue(iterator.hasNext());
+      assertEquals(index, iterator.next().getIndex());
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void testArithmetic() {
+    SparseDoubleVector vec1 = new SparseDoubleVector(5);
+    vec1.set(1, 2);
+    vec1.set(3, 4);
+    SparseDoubleVector vec2 = new SparseDoubleVector(5);
+    vec2.set(3, 4);
+    vec2.set(4, 1);
+    DoubleVector dense = new DenseDoubleVector(new double[] {1, 2, 3, 4, 5});
+
+    DoubleVector sum = vec1.add(vec2);
+    assertTrue(sum.isSparse());
+    assertArrayEquals(new double[] {0, 2, 0, 8, 1}, sum.toArray(), 0.000001);
+    DoubleVector difference = vec1.subtract(vec2);
+    assertArrayEquals(new double[] {0, 2, 0, 0, -1}, difference.toArray(),
+        0.000001);
+    assertEquals(2, ((SparseDoubleVector) difference).getNonZeroCount());
+    assertArrayEquals(new double[] {1, 4, 3, 8, 5}, vec1.add(dense).toArray(),
+        0.000001);
+    assertArrayEquals(new double[] {0, 4, 0, 16, 0}, vec1.multiply(dense)
+        .toArray(), 0.000001);
+    assertArrayEquals(new double[] {0, 1, 0, 2, 0}, vec1.divide(2).toArray(),
+        0.000001);
+    assertEquals(20, vec1.dot(dense), 0.000001);
+    assertEquals(20, dense.dot(vec1), 0.000001);
+    assertEquals(6, vec1.sum(), 0.000001);
+    assertEquals(4, vec1.max(), 0.000001);
+    assertEquals(0, vec1.min(), 0.000001);
+    assertArrayEquals(new double[] {2, 0, 4}, vec1.slice(1, 3).toArray(),
+        0.000001);
+  }
+
+  @Test
+  public void testWritable() throws Exception {
+    SparseDoubleVector vec = new SparseDoubleVector(1000);
+    vec.set(999, 1);
+    vec.set(3, -2);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new VectorWritable(vec).write(new DataOutputStream(bytes));
+    // dimension, count, two index/value pairs and the name flag
+    assertEquals(4 + 4 + 2 * 12 + 1, bytes.size());
+
+    VectorWritable read = new VectorWritable();
+    read.readFields(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+    assertTrue(read.getVector().isSparse());
+    assertEquals(vec, read.getVector());
+  }
+
+}
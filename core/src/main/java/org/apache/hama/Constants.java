@@ -94,6 +94,18 @@ public interface Constants {
   // By default checkpointing when enabled would checkpoint on every superstep
   public static final short DEFAULT_CHECKPOINT_INTERVAL = 1;
 
+  // //////////////////////////////////////
+  // Asynchronous execution related constants
+  // //////////////////////////////////////
+
+  // Set to true to make messages visible as soon as they arrive.
+  public static final String ASYNC_ENABLED = "bsp.async.enabled";
+  // Maximal number of local iterations a peer may be ahead, -1 for unbounded.
+  public static final String ASYNC_STALENESS = "bsp.async.staleness";
+  // Milliseconds between two checks of the progress of the other peers.
+  public static final String ASYNC_POLL_INTERVAL = "bsp.async.poll.interval";
+  public static final long DEFAULT_ASYNC_POLL_INTERVAL = 10L;
+
   // /////////////////////////////////////////////
   // Job configuration related parameters.
   // /////////////////////////////////////////////
@@ -34,7 +34,8 @@ import org.apache.hama.bsp.message.compress.BSPMessageCompressor;
 
 /**
  * BSPMessageBundle stores a group of messages so that they can be sent in batch
- * rather than individually.
+ * rather than individually. The messages are serialized into a single block,
+ * which can be compressed as a whole before the bundle is sent.
  * 
  */
 public class BSPMessageBundle<M extends Writable> implements Writable,
@@ -46,27 +47,27 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
   private long threshold = 128;
 
   private String className = null;
+  private Class<M> messageClass = null;
   private int bundleSize = 0;
-  private int bundleLength = 0;
 
-  ByteArrayOutputStream byteBuffer = null;
+  BlockBuffer byteBuffer = null;
   DataOutputStream bufferDos = null;
+  // the compressed block of messages, if the bundle was compressed before
+  // sending or has been received in compressed form
+  private byte[] compressedBlock = null;
 
   ByteArrayInputStream bis = null;
   DataInputStream dis = null;
 
   public BSPMessageBundle() {
-    byteBuffer = new ByteArrayOutputStream();
+    byteBuffer = new BlockBuffer();
     bufferDos = new DataOutputStream(byteBuffer);
 
     bundleSize = 0;
-    bundleLength = 0;
   }
 
   ByteArrayOutputStream mbos = null;
   DataOutputStream mdos = null;
-  ByteArrayInputStream mbis = null;
-  DataInputStream mdis = null;
 
   public byte[] serialize(M message) throws IOException {
     mbos = new ByteArrayOutputStream();
@@ -75,9 +76,6 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
     return mbos.toByteArray();
   }
 
-  private byte[] compressed;
-  private byte[] serialized;
-
   /**
    * Add message to this bundle.
    * 
@@ -85,25 +83,12 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
    */
   public void addMessage(M message) {
     try {
-      serialized = serialize(message);
-
-      if (compressor != null && serialized.length > threshold) {
-        bufferDos.writeBoolean(true);
-        compressed = compressor.compress(serialized);
-        bufferDos.writeInt(compressed.length);
-        bufferDos.write(compressed);
-
-        bundleLength += compressed.length;
-      } else {
-        bufferDos.writeBoolean(false);
-        bufferDos.write(serialized);
-
-        bundleLength += serialized.length;
-      }
+      message.write(bufferDos);
     } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      LOG.error("Unable to serialize message.", e);
     }
+    // a compressed block does not contain the new message
+    compressedBlock = null;
 
     if (className == null) {
       className = message.getClass().getName();
@@ -112,12 +97,15 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
   }
 
   public Iterator<M> iterator() {
-    bis = new ByteArrayInputStream(byteBuffer.toByteArray());
+    if (byteBuffer.size() == 0 && compressedBlock != null) {
+      decompress();
+    }
+    bis = new ByteArrayInputStream(byteBuffer.getBuffer(), 0,
+        byteBuffer.size());
     dis = new DataInputStream(bis);
 
     Iterator<M> it = new Iterator<M>() {
       M msg;
-      byte[] decompressed;
 
       @Override
       public boolean hasNext() {
@@ -132,43 +120,14 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
         }
       }
 
-      @SuppressWarnings("unchecked")
       @Override
       public M next() {
-        boolean isCompressed = false;
-        try {
-          isCompressed = dis.readBoolean();
-        } catch (IOException e1) {
-          e1.printStackTrace();
-        }
-
-        Class<M> clazz = null;
-        try {
-          clazz = (Class<M>) Class.forName(className);
-        } catch (ClassNotFoundException e) {
-          LOG.error("Class was not found.", e);
-        }
-        msg = ReflectionUtils.newInstance(clazz, null);
-
+        msg = ReflectionUtils.newInstance(getMessageClass(), null);
         try {
-          if (isCompressed) {
-            int length = dis.readInt();
-            compressed = new byte[length];
-            dis.readFully(compressed);
-            decompressed = compressor.decompress(compressed);
-
-            mbis = new ByteArrayInputStream(decompressed);
-            mdis = new DataInputStream(mbis);
-            msg.readFields(mdis);
-          } else {
-            msg.readFields(dis);
-          }
-
+          msg.readFields(dis);
         } catch (IOException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
+          LOG.error("Unable to deserialize message.", e);
         }
-
         return msg;
       }
 
@@ -180,6 +139,64 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
     return it;
   }
 
+  @SuppressWarnings("unchecked")
+  private Class<M> getMessageClass() {
+    if (messageClass == null) {
+      try {
+        // tasks running inside the groom server load their classes through
+        // the context class loader
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+          loader = BSPMessageBundle.class.getClassLoader();
+        }
+        messageClass = (Class<M>) Class.forName(className, true, loader);
+      } catch (ClassNotFoundException e) {
+        LOG.error("Class was not found.", e);
+      }
+    }
+    return messageClass;
+  }
+
+  private void decompress() {
+    if (compressor == null) {
+      throw new IllegalStateException(
+          "Received compressed messages, but no compressor is set.");
+    }
+    byte[] messages = compressor.decompress(compressedBlock);
+    if (messages == null) {
+      throw new IllegalStateException("Unable to decompress messages.");
+    }
+    byteBuffer = new BlockBuffer(messages);
+    bufferDos = new DataOutputStream(byteBuffer);
+  }
+
+  /**
+   * Compresses the block of messages with the compressor of this bundle, if
+   * the messages exceed the compression threshold. The compressed block is
+   * kept and sent instead of the messages if it is smaller.
+   * 
+   * @return the length of the compressed block, -1 if the messages have not
+   *         been compressed.
+   */
+  public int compress() {
+    if (compressedBlock != null) {
+      return compressedBlock.length;
+    }
+    if (compressor == null || bundleSize == 0
+        || byteBuffer.size() < threshold) {
+      return -1;
+    }
+    byte[] compressed = compressor.compress(byteBuffer.getBuffer(), 0,
+        byteBuffer.size());
+    if (compressed == null) {
+      return -1;
+    }
+    if (compressed.length < byteBuffer.size()) {
+      compressedBlock = compressed;
+    }
+    return compressed.length;
+  }
+
   public int size() {
     return bundleSize;
   }
@@ -194,7 +211,10 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
    * @throws IOException
    */
   public long getLength() throws IOException {
-    return bundleLength;
+    if (byteBuffer.size() == 0 && compressedBlock != null) {
+      return compressedBlock.length;
+    }
+    return byteBuffer.size();
   }
 
   @Override
@@ -202,21 +222,56 @@ public class BSPMessageBundle<M extends Writable> implements Writable,
     out.writeInt(bundleSize);
     if (bundleSize > 0) {
       out.writeUTF(className);
-      byte[] messages = byteBuffer.toByteArray();
-      out.writeInt(messages.length);
-      out.write(messages);
+      if (compressedBlock != null) {
+        out.writeBoolean(true);
+        out.writeInt(compressedBlock.length);
+        out.write(compressedBlock);
+      } else {
+        out.writeBoolean(false);
+        out.writeInt(byteBuffer.size());
+        out.write(byteBuffer.getBuffer(), 0, byteBuffer.size());
+      }
     }
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    int numMessages = in.readInt();
-    if (numMessages > 0) {
+    bundleSize = in.readInt();
+    if (bundleSize > 0) {
       className = in.readUTF();
-      int bytesLength = in.readInt();
-      byte[] temp = new byte[bytesLength];
-      in.readFully(temp);
-      bufferDos.write(temp);
+      boolean compressed = in.readBoolean();
+      byte[] block = new byte[in.readInt()];
+      in.readFully(block);
+      if (compressed) {
+        // decompressed when the messages are read, a compressor is set by
+        // then
+        compressedBlock = block;
+        byteBuffer = new BlockBuffer();
+      } else {
+        compressedBlock = null;
+        byteBuffer = new BlockBuffer(block);
+      }
+      bufferDos = new DataOutputStream(byteBuffer);
+    }
+  }
+
+  /**
+   * Byte array stream that gives access to its buffer.
+   */
+  static final class BlockBuffer extends ByteArrayOutputStream {
+
+    BlockBuffer() {
+      super();
+    }
+
+    BlockBuffer(byte[] bytes) {
+      super(0);
+      this.buf = bytes;
+      this.count = bytes.length;
+    }
+
+    byte[] getBuffer() {
+      return buf;
     }
   }
 }
@@ -67,6 +67,41 @@ public interface BSPPeer<K1, V1, K2, V2, M extends Writable> extends Constants {
    */
   public void sync() throws IOException, SyncException, InterruptedException;
 
+  /**
+   * Barrier Synchronization among a group of peers.
+   * 
+   * Sends all the messages in the outgoing message queues and waits only for
+   * the given peers to reach a group barrier including this peer. Afterwards
+   * all messages they sent before are received, messages of other peers are
+   * received as they arrive. Group barriers don't advance the superstep count.
+   * 
+   * @param peerNames the names of the peers to wait for.
+   * @throws IOException
+   * @throws SyncException
+   * @throws InterruptedException
+   */
+  public void sync(String... peerNames) throws IOException, SyncException,
+      InterruptedException;
+
+  /**
+   * Asynchronous progress, only available if {@link Constants#ASYNC_ENABLED}
+   * is set. Messages are visible to the receiving peer as soon as they arrive
+   * instead of after the next barrier.
+   * 
+   * Sends all the messages in the outgoing message queues without entering a
+   * barrier. If there are no received messages left, waits until messages
+   * arrive or all peers wait for messages with none in transit. If a staleness
+   * bound is configured, also waits until no active peer is further behind
+   * than the bound.
+   * 
+   * @return false if the computation has terminated on all peers.
+   * @throws IOException
+   * @throws SyncException
+   * @throws InterruptedException
+   */
+  public boolean advance() throws IOException, SyncException,
+      InterruptedException;
+
   /**
    * @return the count of current super-step
    */
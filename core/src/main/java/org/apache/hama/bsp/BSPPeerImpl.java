@@ -45,6 +45,7 @@ import org.apache.hama.bsp.message.MessageManagerFactory;
 import org.apache.hama.bsp.sync.PeerSyncClient;
 import org.apache.hama.bsp.sync.SyncException;
 import org.apache.hama.bsp.sync.SyncServiceFactory;
+import org.apache.hama.bsp.sync.TerminationDetector;
 import org.apache.hama.commons.util.KeyValuePair;
 import org.apache.hama.ipc.BSPPeerProtocol;
 import org.apache.hama.pipes.util.DistributedCacheUtil;
@@ -58,6 +59,13 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
 
   private static final Log LOG = LogFactory.getLog(BSPPeerImpl.class);
 
+  /**
+   * Minimal time in milliseconds between two status reports of a peer to its
+   * groom server. If set to 0, the status is reported after every superstep.
+   */
+  public static final String STATUS_REPORT_INTERVAL_KEY = "bsp.peer.status.report.interval";
+  public static final long DEFAULT_STATUS_REPORT_INTERVAL = 1000L;
+
   public static enum PeerCounter {
     COMPRESSED_MESSAGES, SUPERSTEP_SUM, TASK_INPUT_RECORDS, TASK_OUTPUT_RECORDS, IO_BYTES_READ, MESSAGE_BYTES_TRANSFERED, MESSAGE_BYTES_RECEIVED, TOTAL_MESSAGES_SENT, TOTAL_MESSAGES_RECEIVED, TOTAL_MESSAGES_COMBINED, COMPRESSED_BYTES_SENT, COMPRESSED_BYTES_RECEIVED, TIME_IN_SYNC_MS
   }
@@ -89,8 +97,19 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
   private InetSocketAddress peerAddress;
 
   private Counters counters;
+  // built-in counters are incremented per message, they are folded into the
+  // counters at sync and whenever the counters are read
+  private final StripedCounters<PeerCounter> peerCounters = new StripedCounters<PeerCounter>(
+      PeerCounter.class);
 
   private FaultTolerantPeerService<M> faultToleranceService;
+  private TaskStatusReporter statusReporter;
+
+  // messages handed to the messenger after combining, in all supersteps
+  private long messagesTransferred = 0L;
+  // local iterations in asynchronous mode
+  private long asyncClock = 0L;
+  private TerminationDetector terminationDetector;
 
   private long splitSize = 0L;
 
@@ -158,6 +177,14 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
     this.split = split;
     this.counters = counters;
 
+    long reportInterval = conf.getLong(STATUS_REPORT_INTERVAL_KEY,
+        DEFAULT_STATUS_REPORT_INTERVAL);
+    if (umbilical != null && reportInterval > 0) {
+      // the groom server knows the counters the task was started with
+      this.statusReporter = new TaskStatusReporter(umbilical, taskId,
+          counters, reportInterval);
+    }
+
     this.fs = FileSystem.get(conf);
 
     String bindAddress = conf.get(Constants.PEER_HOST,
@@ -233,6 +260,10 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
 
     doFirstSync(superstep);
 
+    if (statusReporter != null) {
+      statusReporter.start();
+    }
+
     if (LOG.isDebugEnabled()) {
       LOG.info(new StringBuffer("BSP Peer successfully initialized for ")
           .append(this.taskId.toString()).append(" ").append(superstep)
@@ -365,24 +396,7 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
   public final void sync() throws IOException, SyncException,
       InterruptedException {
 
-    // normally all messages should been send now, finalizing the send phase
-    Iterator<Entry<InetSocketAddress, BSPMessageBundle<M>>> it = messenger
-        .getOutgoingBundles();
-
-    while (it.hasNext()) {
-      Entry<InetSocketAddress, BSPMessageBundle<M>> entry = it.next();
-      final InetSocketAddress addr = entry.getKey();
-
-      final BSPMessageBundle<M> bundle = entry.getValue();
-      
-      // remove this message during runtime to save a bit of memory
-      it.remove();
-      try {
-        messenger.transfer(addr, bundle);
-      } catch (Exception e) {
-        LOG.error("Error while sending messages", e);
-      }
-    }
+    transferMessages();
 
     if (this.faultToleranceService != null) {
       try {
@@ -412,6 +426,7 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
         (System.currentTimeMillis() - startBarrier));
     incrementCounter(PeerCounter.SUPERSTEP_SUM, 1L);
 
+    foldCounters();
     currentTaskStatus.setCounters(counters);
 
     if (this.faultToleranceService != null) {
@@ -422,8 +437,106 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
       }
     }
 
-    umbilical.statusUpdate(taskId, currentTaskStatus);
+    reportStatus();
+  }
+
+  @Override
+  public final void sync(String... peerNames) throws IOException,
+      SyncException, InterruptedException {
+    transferMessages();
+
+    long startBarrier = System.currentTimeMillis();
+    syncClient.enterGroupBarrier(taskId.getJobID(), taskId, peerNames);
+
+    // the messages of the group have arrived, the ones of other peers may be
+    // received now or with the next barrier
+    messenger.clearOutgoingMessages();
+
+    syncClient.leaveGroupBarrier(taskId.getJobID(), taskId, peerNames);
 
+    incrementCounter(PeerCounter.TIME_IN_SYNC_MS,
+        (System.currentTimeMillis() - startBarrier));
+    foldCounters();
+    currentTaskStatus.setCounters(counters);
+    reportStatus();
+  }
+
+  private void reportStatus() throws IOException, InterruptedException {
+    if (statusReporter != null) {
+      statusReporter.update(currentTaskStatus);
+    } else {
+      umbilical.statusUpdate(taskId, currentTaskStatus);
+    }
+  }
+
+  /**
+   * Sends the messages in the outgoing queues to their peers.
+   */
+  private void transferMessages() {
+    // normally all messages should been send now, finalizing the send phase
+    Iterator<Entry<InetSocketAddress, BSPMessageBundle<M>>> it = messenger
+        .getOutgoingBundles();
+
+    while (it.hasNext()) {
+      Entry<InetSocketAddress, BSPMessageBundle<M>> entry = it.next();
+      final InetSocketAddress addr = entry.getKey();
+
+      final BSPMessageBundle<M> bundle = entry.getValue();
+      final int size = bundle.size();
+
+      // remove this message during runtime to save a bit of memory
+      it.remove();
+      try {
+        messenger.transfer(addr, bundle);
+        messagesTransferred += size;
+      } catch (Exception e) {
+        LOG.error("Error while sending messages", e);
+      }
+    }
+
+    try {
+      messenger.finishSendPhase();
+    } catch (Exception e) {
+      LOG.error("Error while sending messages", e);
+    }
+  }
+
+  @Override
+  public final boolean advance() throws IOException, SyncException,
+      InterruptedException {
+    if (!conf.getBoolean(Constants.ASYNC_ENABLED, false)) {
+      throw new IllegalStateException("Asynchronous execution is disabled, set "
+          + Constants.ASYNC_ENABLED + " to enable it.");
+    }
+    if (terminationDetector == null) {
+      terminationDetector = new TerminationDetector(syncClient,
+          taskId.getJobID(), getPeerIndex(), getNumPeers(), conf.getInt(
+              Constants.ASYNC_STALENESS, -1));
+    }
+    long pollInterval = conf.getLong(Constants.ASYNC_POLL_INTERVAL,
+        Constants.DEFAULT_ASYNC_POLL_INTERVAL);
+
+    transferMessages();
+    messenger.clearOutgoingMessages();
+    asyncClock++;
+
+    while (true) {
+      // the received counter has to be read before the queue, otherwise a
+      // message arriving in between is counted without activating this peer
+      foldCounters();
+      long received = counters.getCounter(PeerCounter.TOTAL_MESSAGES_RECEIVED);
+      boolean passive = messenger.getNumCurrentMessages() == 0;
+      terminationDetector.publish(asyncClock, messagesTransferred, received,
+          passive);
+      if (passive) {
+        if (terminationDetector.isTerminated()) {
+          return false;
+        }
+      } else if (terminationDetector.isWithinBound(asyncClock)) {
+        return true;
+      }
+      Thread.sleep(pollInterval);
+    }
   }
 
   protected final void enterBarrier() throws SyncException {
@@ -460,6 +573,7 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
   }
 
   public final void close() {
+    foldCounters();
     if (conf.get(Constants.COMBINER_CLASS) != null) {
       long combinedMessages = this.getCounter(PeerCounter.TOTAL_MESSAGES_SENT)
           .getCounter()
@@ -467,6 +581,11 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
       this.getCounter(PeerCounter.TOTAL_MESSAGES_COMBINED).increment(
           combinedMessages);
     }
+    if (statusReporter != null) {
+      // report the final counters before the task is marked as done
+      statusReporter.update(currentTaskStatus);
+      statusReporter.close();
+    }
 
     // there are many catches, because we want to close always every component
     // even if the one before failed.
@@ -616,6 +735,7 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
 
   @Override
   public final Counter getCounter(Enum<?> name) {
+    foldCounters();
     return counters == null ? null : counters.findCounter(name);
   }
 
@@ -629,13 +749,27 @@ public final class BSPPeerImpl<K1, V1, K2, V2, M extends Writable> implements
   }
 
   public Counters getCounters() {
+    foldCounters();
     return counters;
   }
 
   @Override
   public final void incrementCounter(Enum<?> key, long amount) {
     if (counters != null) {
-      counters.incrCounter(key, amount);
+      if (key instanceof PeerCounter) {
+        peerCounters.add((PeerCounter) key, amount);
+      } else {
+        counters.incrCounter(key, amount);
+      }
+    }
+  }
+
+  /**
+   * Adds the pending increments of the built-in counters to the counters.
+   */
+  private void foldCounters() {
+    if (counters != null) {
+      peerCounters.fold(counters);
     }
   }
 
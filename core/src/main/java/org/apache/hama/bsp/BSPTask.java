@@ -48,23 +48,36 @@ public final class BSPTask extends Task {
   // Schedule Heartbeats to GroomServer
   private ScheduledExecutorService pingService;
 
+  // the ping of the running task, null before the task runs
+  private PingGroomServer pinger;
+
   /**
    * This thread is responsible for sending a heartbeat ping to GroomServer.
+   * A task that lost its groom server exits the child process, a task
+   * running inside the groom server interrupts its thread and reports a
+   * failure instead, since exiting would take the groom server down.
    */
-  private static class PingGroomServer implements Runnable {
+  static class PingGroomServer implements Runnable {
 
     private BSPPeerProtocol pingRPC;
     private TaskAttemptID taskId;
     private Thread bspThread;
+    private final boolean inProcess;
+    private volatile boolean failed = false;
 
-    public PingGroomServer(BSPPeerProtocol umbilical, TaskAttemptID id) {
+    public PingGroomServer(BSPPeerProtocol umbilical, TaskAttemptID id,
+        boolean inProcess) {
       pingRPC = umbilical;
       taskId = id;
       bspThread = Thread.currentThread();
+      this.inProcess = inProcess;
     }
 
     @Override
     public void run() {
+      if (failed) {
+        return;
+      }
 
       boolean shouldKillSelf = false;
       try {
@@ -84,11 +97,25 @@ public final class BSPTask extends Task {
         shouldKillSelf = true;
       }
       if (shouldKillSelf) {
-        LOG.error("Killing self. No connection to groom.");
-        System.exit(69);
+        if (!inProcess) {
+          LOG.error("Killing self. No connection to groom.");
+          System.exit(69);
+        }
+        LOG.error("Stopping task " + taskId + ". No connection to groom.");
+        failed = true;
+        bspThread.interrupt();
+        try {
+          pingRPC.fatalError(taskId, "No connection to groom.");
+        } catch (Exception e) {
+          LOG.error("Could not report the failure of task " + taskId, e);
+        }
       }
 
     }
+
+    boolean hasFailed() {
+      return failed;
+    }
   }
 
   public BSPTask() {
@@ -115,13 +142,14 @@ public final class BSPTask extends Task {
 
   private void startPingingGroom(BSPJob job, BSPPeerProtocol umbilical) {
 
+    pinger = new PingGroomServer(umbilical, taskId, job.getConfiguration()
+        .getBoolean(TaskRunner.IN_PROCESS_KEY, false));
     long pingPeriod = job.getConfiguration().getLong(
         Constants.GROOM_PING_PERIOD, Constants.DEFAULT_GROOM_PING_PERIOD) / 2;
 
     try {
       if (pingPeriod > 0) {
-        pingService.scheduleWithFixedDelay(new PingGroomServer(umbilical,
-            taskId), 0, pingPeriod, TimeUnit.MILLISECONDS);
+        pingService.scheduleWithFixedDelay(pinger, 0, pingPeriod, TimeUnit.MILLISECONDS);
       }
     } catch (Exception e) {
       LOG.error("Error scheduling ping service", e);
@@ -142,6 +170,10 @@ public final class BSPTask extends Task {
     startPingingGroom(job, umbilical);
     try {
       runBSP(job, bspPeer, split, umbilical);
+      if (pinger.hasFailed()) {
+        // the failure has been reported already
+        throw new IOException("Task " + taskId + " lost its groom server.");
+      }
       done(umbilical);
     } finally {
       stopPingingGroom();
@@ -1198,6 +1198,22 @@ public class GroomServer implements Runnable, GroomProtocol, BSPPeerProtocol,
   public static final class BSPPeerChild {
 
     public static void main(String[] args) throws Throwable {
+      try {
+        runTask(args);
+      } finally {
+        // Shutting down log4j of the child-vm...
+        // This assumes that on return from Task.run()
+        // there is no more logging done.
+        LogManager.shutdown();
+      }
+    }
+
+    /**
+     * Runs the task given by the command line arguments of the child process.
+     * Tasks running inside the groom server call this directly, with the
+     * class loader of their job as context class loader.
+     */
+    static void runTask(String[] args) throws Throwable {
       if (LOG.isDebugEnabled())
         LOG.debug("BSPPeerChild starting");
 
@@ -1230,9 +1246,13 @@ public class GroomServer implements Runnable, GroomProtocol, BSPPeerProtocol,
       LOG.debug("Starting peer for step " + superstep + " state = " + state);
 
       try {
-        // use job-specified working directory
-        FileSystem.get(job.getConfiguration()).setWorkingDirectory(
-            job.getWorkingDirectory());
+        // use job-specified working directory, unless the task runs in the
+        // groom server, whose cached file system its other tasks share
+        if (!job.getConfiguration().getBoolean(TaskRunner.IN_PROCESS_KEY,
+            false)) {
+          FileSystem.get(job.getConfiguration()).setWorkingDirectory(
+              job.getWorkingDirectory());
+        }
 
         // instantiate and init our peer
         @SuppressWarnings("rawtypes")
@@ -1262,10 +1282,6 @@ public class GroomServer implements Runnable, GroomProtocol, BSPPeerProtocol,
         throwable.printStackTrace();
       } finally {
         RPC.stopProxy(umbilical);
-        // Shutting down log4j of the child-vm...
-        // This assumes that on return from Task.run()
-        // there is no more logging done.
-        LogManager.shutdown();
       }
     }
   }
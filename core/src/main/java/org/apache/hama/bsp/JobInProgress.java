@@ -546,6 +546,12 @@ public class JobInProgress {
         task.kill();
       }
 
+      // delete job root, with the nodes of the barriers among subsets of
+      // the peers
+      if (master != null && tasksInited) {
+        master.getSyncClient().deregisterJob(this.getJobID().toString());
+      }
+
       garbageCollect();
     }
 
@@ -20,7 +20,9 @@ package org.apache.hama.bsp;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CyclicBarrier;
@@ -35,6 +37,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hama.Constants;
@@ -356,12 +360,8 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
       bundle.setCompressor(compressor,
           conf.getLong("hama.messenger.compression.threshold", 512));
 
-      Iterator<M> it = bundle.iterator();
-      while (it.hasNext()) {
-        MANAGER_MAP.get(addr).localQueueForNextIteration.add(it.next());
-        peer.incrementCounter(BSPPeerImpl.PeerCounter.TOTAL_MESSAGES_RECEIVED,
-            1L);
-      }
+      // the target counts the received messages, like an RPC receiver
+      MANAGER_MAP.get(addr).loopBackMessages(bundle);
     }
 
     @Override
@@ -426,6 +426,10 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
   public static class LocalSyncClient extends BSPPeerSyncClient {
     // note that this is static, because we will have multiple peers
     private static CyclicBarrier barrier;
+    // information stored by the peers, serialized like in zookeeper
+    private static final ConcurrentHashMap<String, byte[]> store = new ConcurrentHashMap<String, byte[]>();
+    // number of group barriers entered, keyed by entering and awaited peer
+    private static final Map<String, Long> groupBarriers = new HashMap<String, Long>();
     private int tasks;
 
     @Override
@@ -435,6 +439,10 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
 
       synchronized (LocalSyncClient.class) {
         if (barrier == null) {
+          store.clear();
+          synchronized (groupBarriers) {
+            groupBarriers.clear();
+          }
           barrier = new CyclicBarrier(tasks);
           LOG.info("Setting up a new barrier for " + tasks + " tasks!");
         }
@@ -463,6 +471,48 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
         superStepCount = superstep;
     }
 
+    @Override
+    public void enterGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+        String... peers) throws SyncException {
+      awaitGroup("enter", taskId, peers);
+    }
+
+    @Override
+    public void leaveGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+        String... peers) throws SyncException {
+      awaitGroup("leave", taskId, peers);
+    }
+
+    private static void awaitGroup(String phase, TaskAttemptID taskId,
+        String... peers) throws SyncException {
+      String self = peerNames[taskId.getTaskID().getId()];
+      synchronized (groupBarriers) {
+        for (String peer : peers) {
+          if (!peer.equals(self)) {
+            String key = phase + "/" + self + "-" + peer;
+            Long count = groupBarriers.get(key);
+            groupBarriers.put(key, count == null ? 1L : count + 1L);
+          }
+        }
+        groupBarriers.notifyAll();
+        try {
+          for (String peer : peers) {
+            if (!peer.equals(self)) {
+              long count = groupBarriers.get(phase + "/" + self + "-" + peer);
+              Long arrived;
+              while ((arrived = groupBarriers.get(phase + "/" + peer + "-"
+                  + self)) == null
+                  || arrived < count) {
+                groupBarriers.wait();
+              }
+            }
+          }
+        } catch (InterruptedException e) {
+          throw new SyncException(e.toString());
+        }
+      }
+    }
+
     @Override
     public void register(BSPJobID jobId, TaskAttemptID taskId,
         String hostAddress, long port) {
@@ -491,29 +541,57 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
 
     @Override
     public String constructKey(BSPJobID jobId, String... args) {
-      return null;
+      StringBuilder key = new StringBuilder();
+      if (jobId != null) {
+        key.append("/").append(jobId.toString());
+      }
+      for (String arg : args) {
+        key.append("/").append(arg);
+      }
+      return key.toString();
     }
 
     @Override
     public boolean storeInformation(String key, Writable value,
         boolean permanent, SyncEventListener listener) {
-      return false;
+      DataOutputBuffer buffer = new DataOutputBuffer();
+      try {
+        value.write(buffer);
+      } catch (IOException e) {
+        LOG.error("Error writing information for key " + key, e);
+        return false;
+      }
+      store.put(key, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+      return true;
     }
 
     @Override
     public boolean getInformation(String key, Writable valueHolder) {
-      return false;
+      byte[] data = store.get(key);
+      if (data == null) {
+        return false;
+      }
+      DataInputBuffer buffer = new DataInputBuffer();
+      buffer.reset(data, data.length);
+      try {
+        valueHolder.readFields(buffer);
+      } catch (IOException e) {
+        LOG.error("Error reading information for key " + key, e);
+        return false;
+      }
+      return true;
     }
 
     @Override
     public boolean addKey(String key, boolean permanent,
         SyncEventListener listener) {
-      return false;
+      store.putIfAbsent(key, new byte[0]);
+      return true;
     }
 
     @Override
     public boolean hasKey(String key) {
-      return false;
+      return store.containsKey(key);
     }
 
     @Override
@@ -529,7 +607,7 @@ public class LocalBSPRunner implements JobSubmissionProtocol {
 
     @Override
     public boolean remove(String key, SyncEventListener listener) {
-      return false;
+      return store.remove(key) != null;
     }
   }
 
@@ -28,6 +28,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
@@ -103,6 +104,44 @@ public class PartitioningRunner extends
         BSPPeer peer, int numTasks);
   }
 
+  /**
+   * A record converter that reads all records once before they are
+   * partitioned, so the partitions can be planned with a global view of the
+   * input, e.g. to balance them by the size of the records.
+   */
+  public static interface PlanningRecordConverter extends RecordConverter {
+
+    /**
+     * @return true if the input should be read for planning before it is
+     *         partitioned. Must return the same on all peers.
+     */
+    public boolean isPlanning(Configuration conf);
+
+    /**
+     * Called for every converted record of the split in the planning pass.
+     */
+    public void addToPlan(KeyValuePair<Writable, Writable> convertedRecord,
+        @SuppressWarnings("rawtypes")
+        Partitioner partitioner, Configuration conf,
+        @SuppressWarnings("rawtypes")
+        BSPPeer peer, int numTasks) throws IOException;
+
+    /**
+     * Called on all peers after the planning pass, before the records are
+     * read again and partitioned by
+     * {@link RecordConverter#getPartitionId(KeyValuePair, Partitioner, Configuration, BSPPeer, int)}
+     * . Peers may exchange their plans by synchronizing and sharing files in
+     * the given scratch directory, it is deleted after the partitioning.
+     * 
+     * @param partitionDir the directory the partitions are written to.
+     * @param planDir the scratch directory shared by all peers.
+     */
+    public void finishPlan(Path partitionDir, Path planDir,
+        Configuration conf, @SuppressWarnings("rawtypes")
+        BSPPeer peer, int numTasks) throws IOException, SyncException,
+        InterruptedException;
+  }
+
   /**
    * The default converter does no conversion.
    */
@@ -149,6 +188,22 @@ public class PartitioningRunner extends
     Class rawValueClass = null;
     MapWritable raw = null;
 
+    Path planDir = new Path(partitionDir, "_plan");
+    if (converter instanceof PlanningRecordConverter
+        && ((PlanningRecordConverter) converter).isPlanning(conf)) {
+      PlanningRecordConverter planner = (PlanningRecordConverter) converter;
+      while ((rawRecord = peer.readNext()) != null) {
+        convertedRecord = converter.convertRecord(rawRecord, conf);
+        if (convertedRecord == null) {
+          throw new IOException("The converted record can't be null.");
+        }
+        planner.addToPlan(convertedRecord, partitioner, conf, peer,
+            desiredNum);
+      }
+      planner.finishPlan(partitionDir, planDir, conf, peer, desiredNum);
+      peer.reopenInput();
+    }
+
     while ((rawRecord = peer.readNext()) != null) {
       if (rawKeyClass == null && rawValueClass == null) {
         rawKeyClass = rawRecord.getKey().getClass();
@@ -186,10 +241,14 @@ public class PartitioningRunner extends
     }
 
     peer.sync();
-    FileStatus[] status = fs.listStatus(partitionDir);
+    FileStatus[] status = fs.listStatus(partitionDir, PARTITION_FILTER);
     // Call sync() one more time to avoid concurrent access
     peer.sync();
 
+    if (peer.getPeerIndex() == 0 && fs.exists(planDir)) {
+      fs.delete(planDir, true);
+    }
+
     for (FileStatus stat : status) {
       int partitionID = Integer
           .parseInt(stat.getPath().getName().split("[-]")[1]);
@@ -325,6 +384,17 @@ public class PartitioningRunner extends
     }
   }
 
+  /**
+   * Accepts the partition directories only, other entries of the partition
+   * directory (like plans of a {@link PlanningRecordConverter}) are skipped.
+   */
+  private static final PathFilter PARTITION_FILTER = new PathFilter() {
+    @Override
+    public boolean accept(Path path) {
+      return path.getName().startsWith("part-");
+    }
+  };
+
   public static int getMergeProcessorID(int partitionID, int peerNum) {
     return partitionID % peerNum;
   }
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead counters for a fixed set of enum keys. Increments go to one of
+ * several stripes, chosen by the calling thread, without locking and without
+ * looking up the counter group. The stripes are summed up and added to a
+ * {@link Counters} instance by {@link #fold(Counters)}.
+ */
+final class StripedCounters<E extends Enum<E>> {
+
+  // longs per cache line, stripes never share a line
+  private static final int LINE = 8;
+  private static final int MAX_STRIPES = 64;
+
+  private final E[] keys;
+  private final int stride;
+  private final int mask;
+  private final AtomicLongArray cells;
+
+  StripedCounters(Class<E> type) {
+    this.keys = type.getEnumConstants();
+    this.stride = ((keys.length + LINE - 1) / LINE) * LINE;
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors() * 2
+        && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    this.mask = stripes - 1;
+    // one additional line in front, so the first stripe does not share the
+    // line with the array header
+    this.cells = new AtomicLongArray(LINE + stripes * stride);
+  }
+
+  /**
+   * Adds the amount to the counter of the given key.
+   */
+  void add(E key, long amount) {
+    int stripe = (int) Thread.currentThread().getId() & mask;
+    cells.getAndAdd(LINE + stripe * stride + key.ordinal(), amount);
+  }
+
+  /**
+   * Moves the accumulated values to the given counters.
+   */
+  void fold(Counters counters) {
+    for (int i = 0; i < keys.length; i++) {
+      long sum = 0L;
+      for (int stripe = 0; stripe <= mask; stripe++) {
+        int index = LINE + stripe * stride + i;
+        // avoid writing lines of counters that were not used
+        if (cells.get(index) != 0L) {
+          sum += cells.getAndSet(index, 0L);
+        }
+      }
+      if (sum != 0L) {
+        counters.incrCounter(keys[i], sum);
+      }
+    }
+  }
+
+}
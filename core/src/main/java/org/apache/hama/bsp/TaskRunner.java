@@ -27,9 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -51,11 +56,22 @@ public class TaskRunner extends Thread {
   private static final String SYSTEM_PATH_SEPARATOR = System
       .getProperty("path.separator");
 
+  /**
+   * Run the tasks of a job as threads of the groom server instead of child
+   * processes, so co-located peers can exchange messages without RPC.
+   */
+  public static final String IN_PROCESS_KEY = "bsp.child.in.process";
+
+  // class loaders of the jobs with tasks running in process, shared by the
+  // tasks of a job so their message classes are the same
+  private static final Map<BSPJobID, JobClassLoader> JOB_CLASS_LOADERS = new HashMap<BSPJobID, JobClassLoader>();
+
   private enum LogType {
     STDOUT, ERROR, CONSOLE
   }
 
   boolean bspKilled = false;
+  private volatile boolean inProcess = false;
   private Process bspProcess;
   private Thread errorLog;
   private Thread infoLog;
@@ -172,6 +188,19 @@ public class TaskRunner extends Thread {
     classPath.append(System.getProperty("java.class.path"));
     classPath.append(SYSTEM_PATH_SEPARATOR);
 
+    for (File entry : getJobClasspath(jobConf, workDir)) {
+      classPath.append(SYSTEM_PATH_SEPARATOR);
+      classPath.append(entry);
+    }
+    return classPath.toString();
+  }
+
+  /**
+   * @return the classpath entries of the job jar, after unpacking it into the
+   *         work directory.
+   */
+  private static List<File> getJobClasspath(BSPJob jobConf, File workDir) {
+    List<File> entries = new ArrayList<File>();
     String jar = jobConf.getJar();
     if (jar != null) { // if jar exists, it into workDir
       try {
@@ -181,18 +210,13 @@ public class TaskRunner extends Thread {
       }
       File[] libs = new File(workDir, "lib").listFiles();
       if (libs != null) {
-        for (File lib : libs) {
-          // add libs from jar to classpath
-          classPath.append(SYSTEM_PATH_SEPARATOR);
-          classPath.append(lib);
-        }
+        // add libs from jar to classpath
+        Collections.addAll(entries, libs);
       }
-      classPath.append(SYSTEM_PATH_SEPARATOR);
-      classPath.append(new File(workDir, "classes"));
-      classPath.append(SYSTEM_PATH_SEPARATOR);
-      classPath.append(workDir);
+      entries.add(new File(workDir, "classes"));
+      entries.add(workDir);
     }
-    return classPath.toString();
+    return entries;
   }
 
   private List<String> buildJvmArgs(BSPJob jobConf, String classPath,
@@ -219,25 +243,33 @@ public class TaskRunner extends Thread {
     vargs.add(child.getName()); // bsp class name
 
     if (GroomServer.BSPPeerChild.class.equals(child)) {
-      InetSocketAddress addr = groomServer.getTaskTrackerReportAddress();
-      vargs.add(addr.getHostName());
-      vargs.add(Integer.toString(addr.getPort()));
-      vargs.add(task.getTaskID().toString());
-      vargs.add(groomServer.groomHostName);
-      vargs.add(Long.toString(groomServer.getStartSuperstep(task.getTaskID())));
-      TaskStatus status = groomServer.getTaskStatus(task.getTaskID());
-
-      if (status != null
-          && TaskStatus.State.RECOVERING.equals(status.getRunState())) {
-        vargs.add(TaskStatus.State.RECOVERING.name());
-      } else {
-        vargs.add(TaskStatus.State.RUNNING.name());
-      }
-
+      vargs.addAll(buildChildArgs());
     }
     return vargs;
   }
 
+  /**
+   * @return the arguments of {@link GroomServer.BSPPeerChild}.
+   */
+  private List<String> buildChildArgs() {
+    List<String> args = new ArrayList<String>();
+    InetSocketAddress addr = groomServer.getTaskTrackerReportAddress();
+    args.add(addr.getHostName());
+    args.add(Integer.toString(addr.getPort()));
+    args.add(task.getTaskID().toString());
+    args.add(groomServer.groomHostName);
+    args.add(Long.toString(groomServer.getStartSuperstep(task.getTaskID())));
+    TaskStatus status = groomServer.getTaskStatus(task.getTaskID());
+
+    if (status != null
+        && TaskStatus.State.RECOVERING.equals(status.getRunState())) {
+      args.add(TaskStatus.State.RECOVERING.name());
+    } else {
+      args.add(TaskStatus.State.RUNNING.name());
+    }
+    return args;
+  }
+
   /**
    * Build working environment and launch BSPPeer processes.
    */
@@ -245,6 +277,10 @@ public class TaskRunner extends Thread {
   public void run() {
     File workDir = createWorkDirectory();
     logDir = createLogDirectory();
+    if (bspJob.getConfiguration().getBoolean(IN_PROCESS_KEY, false)) {
+      runInProcess(workDir);
+      return;
+    }
     String classPath = assembleClasspath(bspJob, workDir);
     LOG.debug("Spawned child's classpath " + classPath);
     List<String> bspArgs = buildJvmArgs(bspJob, classPath,
@@ -264,6 +300,68 @@ public class TaskRunner extends Thread {
     LOG.debug("Finishes executing BSPPeer child process.");
   }
 
+  /**
+   * Runs the task in this thread, with the class loader of its job.
+   */
+  private void runInProcess(File workDir) {
+    inProcess = true;
+    List<String> args = buildChildArgs();
+    ClassLoader parent = getContextClassLoader();
+    ClassLoader loader = acquireClassLoader(task.getJobID(),
+        getJobClasspath(bspJob, workDir), parent);
+    setContextClassLoader(loader);
+    try {
+      GroomServer.BSPPeerChild.runTask(args.toArray(new String[args.size()]));
+    } catch (Throwable t) {
+      LOG.error("Error when executing BSPPeer in process.", t);
+    } finally {
+      setContextClassLoader(parent);
+      releaseClassLoader(task.getJobID());
+    }
+    LOG.debug("Finishes executing BSPPeer in process.");
+  }
+
+  private static ClassLoader acquireClassLoader(BSPJobID jobId,
+      List<File> classpath, ClassLoader parent) {
+    synchronized (JOB_CLASS_LOADERS) {
+      JobClassLoader loader = JOB_CLASS_LOADERS.get(jobId);
+      if (loader == null) {
+        List<URL> urls = new ArrayList<URL>();
+        for (File entry : classpath) {
+          try {
+            urls.add(entry.toURI().toURL());
+          } catch (MalformedURLException e) {
+            LOG.warn("Skipping classpath entry " + entry, e);
+          }
+        }
+        loader = new JobClassLoader(urls.toArray(new URL[urls.size()]), parent);
+        JOB_CLASS_LOADERS.put(jobId, loader);
+      }
+      loader.tasks++;
+      return loader;
+    }
+  }
+
+  private static void releaseClassLoader(BSPJobID jobId) {
+    synchronized (JOB_CLASS_LOADERS) {
+      JobClassLoader loader = JOB_CLASS_LOADERS.get(jobId);
+      if (loader != null && --loader.tasks == 0) {
+        JOB_CLASS_LOADERS.remove(jobId);
+      }
+    }
+  }
+
+  /**
+   * Class loader of a job, counts the tasks running with it.
+   */
+  private static final class JobClassLoader extends URLClassLoader {
+    int tasks = 0;
+
+    JobClassLoader(URL[] urls, ClassLoader parent) {
+      super(urls, parent);
+    }
+  }
+
   /**
    * Creates the tasks log directory if needed.
    * 
@@ -296,6 +394,9 @@ public class TaskRunner extends Thread {
     if (bspProcess != null) {
       bspProcess.destroy();
     }
+    if (inProcess && Thread.currentThread() != this) {
+      interrupt();
+    }
 
   }
 
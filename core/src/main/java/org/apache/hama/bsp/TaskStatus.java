@@ -60,6 +60,8 @@ public class TaskStatus implements Writable, Cloneable {
   private volatile Phase phase = Phase.STARTING;
 
   private Counters counters;
+  // true if the counters only hold the increments since the last update
+  private boolean countersDelta = false;
 
   /**
    * 
@@ -186,6 +188,23 @@ public class TaskStatus implements Writable, Cloneable {
     this.counters = counters;
   }
 
+  /**
+   * @return true if the counters of this status are increments to be added to
+   *         the previously reported counters.
+   */
+  public boolean isCountersDelta() {
+    return countersDelta;
+  }
+
+  /**
+   * Marks the counters of this status as increments since the last update.
+   * 
+   * @param countersDelta
+   */
+  public void setCountersDelta(boolean countersDelta) {
+    this.countersDelta = countersDelta;
+  }
+
   /**
    * Update the status of the task.
    * 
@@ -207,7 +226,13 @@ public class TaskStatus implements Writable, Cloneable {
    * @param status updated status
    */
   synchronized void statusUpdate(TaskStatus status) {
-    this.counters = status.getCounters();
+    if (status.isCountersDelta()) {
+      // the current counters may be shared with the task, don't modify them
+      this.counters = this.counters == null ? status.getCounters() : Counters
+          .sum(this.counters, status.getCounters());
+    } else {
+      this.counters = status.getCounters();
+    }
 
     this.progress = status.getProgress();
     this.runState = status.getRunState();
@@ -277,6 +302,7 @@ public class TaskStatus implements Writable, Cloneable {
     this.phase = WritableUtils.readEnum(in, Phase.class);
     this.startTime = in.readLong();
     this.finishTime = in.readLong();
+    this.countersDelta = in.readBoolean();
 
     counters = new Counters();
     this.counters.readFields(in);
@@ -292,6 +318,7 @@ public class TaskStatus implements Writable, Cloneable {
     WritableUtils.writeEnum(out, phase);
     out.writeLong(startTime);
     out.writeLong(finishTime);
+    out.writeBoolean(countersDelta);
 
     counters.write(out);
   }
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hama.bsp.Counters.Counter;
+import org.apache.hama.bsp.Counters.Group;
+import org.apache.hama.ipc.BSPPeerProtocol;
+
+/**
+ * Reports the status of a task to its groom server in the background. Calls to
+ * {@link #update(TaskStatus)} only mark the status as changed, so all updates
+ * within one interval are coalesced into a single RPC. The counters are sent
+ * as the difference to the last successfully reported values.
+ *
+ * Completion and failures are not reported through this class, they go
+ * through the done and fatalError calls of the umbilical right away.
+ */
+final class TaskStatusReporter extends Thread {
+
+  private static final Log LOG = LogFactory.getLog(TaskStatusReporter.class);
+
+  private final BSPPeerProtocol umbilical;
+  private final TaskAttemptID taskId;
+  private final long interval;
+
+  // counter values the groom server already knows about, keyed by group and
+  // counter name
+  private final Map<String, Long> reported = new HashMap<String, Long>();
+  private final Object sendLock = new Object();
+
+  private TaskStatus status;
+  private boolean pending = false;
+  private volatile boolean running = true;
+
+  /**
+   * @param umbilical the protocol to report to.
+   * @param taskId the id of the reporting task.
+   * @param initial the counters the groom server started the task with.
+   * @param interval the minimal time between two reports in milliseconds.
+   */
+  TaskStatusReporter(BSPPeerProtocol umbilical, TaskAttemptID taskId,
+      Counters initial, long interval) {
+    super("TaskStatusReporter for " + taskId);
+    this.umbilical = umbilical;
+    this.taskId = taskId;
+    this.interval = interval;
+    if (initial != null) {
+      synchronized (initial) {
+        for (Group group : initial) {
+          for (Counter counter : group) {
+            reported.put(key(group, counter), counter.getValue());
+          }
+        }
+      }
+    }
+    setDaemon(true);
+  }
+
+  /**
+   * Marks the given status to be reported with the next report.
+   */
+  synchronized void update(TaskStatus status) {
+    this.status = status;
+    this.pending = true;
+    notifyAll();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      synchronized (this) {
+        while (running && !pending) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // checked by the loop condition
+          }
+        }
+      }
+      if (!running) {
+        break;
+      }
+      flush();
+      try {
+        Thread.sleep(interval);
+      } catch (InterruptedException e) {
+        // closed while sleeping, the final flush happens in close()
+      }
+    }
+  }
+
+  /**
+   * Sends the pending status, if there is one.
+   */
+  void flush() {
+    synchronized (sendLock) {
+      TaskStatus current;
+      synchronized (this) {
+        if (!pending) {
+          return;
+        }
+        current = status;
+        pending = false;
+      }
+
+      Map<String, Long> values = new HashMap<String, Long>();
+      Counters delta = delta(current.getCounters(), values);
+      TaskStatus report = new TaskStatus(current.getJobId(), taskId,
+          current.getProgress(), current.getRunState(),
+          current.getStateString(), current.getGroomServer(),
+          current.getPhase(), delta);
+      report.setCountersDelta(true);
+      try {
+        umbilical.statusUpdate(taskId, report);
+        reported.putAll(values);
+      } catch (Exception e) {
+        LOG.warn("Could not report status of " + taskId
+            + ", retrying with the next report.", e);
+        // the delta is computed against the reported values again
+        synchronized (this) {
+          if (!pending) {
+            status = current;
+            pending = true;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the counters that changed since the last report.
+   *
+   * @param values is filled with the current values of the changed counters.
+   */
+  private Counters delta(Counters counters, Map<String, Long> values) {
+    Counters delta = new Counters();
+    if (counters == null) {
+      return delta;
+    }
+    synchronized (counters) {
+      for (Group group : counters) {
+        for (Counter counter : group) {
+          String key = key(group, counter);
+          long value = counter.getValue();
+          Long last = reported.get(key);
+          long diff = value - (last == null ? 0L : last.longValue());
+          if (diff != 0L || last == null) {
+            Counter changed = delta.findCounter(group.getName(),
+                counter.getName());
+            changed.setDisplayName(counter.getDisplayName());
+            changed.increment(diff);
+            values.put(key, value);
+          }
+        }
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * Stops the reporter and synchronously sends the last pending status.
+   */
+  void close() {
+    synchronized (this) {
+      running = false;
+      notifyAll();
+    }
+    interrupt();
+    try {
+      join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  private static String key(Group group, Counter counter) {
+    return group.getName() + '\u0000' + counter.getName();
+  }
+
+}
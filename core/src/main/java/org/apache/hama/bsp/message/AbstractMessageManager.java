@@ -21,8 +21,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,6 +33,7 @@ import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.Writable;
+import org.apache.hama.Constants;
 import org.apache.hama.HamaConfiguration;
 import org.apache.hama.bsp.BSPMessageBundle;
 import org.apache.hama.bsp.BSPPeer;
@@ -37,6 +41,7 @@ import org.apache.hama.bsp.BSPPeerImpl;
 import org.apache.hama.bsp.TaskAttemptID;
 import org.apache.hama.bsp.message.compress.BSPMessageCompressor;
 import org.apache.hama.bsp.message.compress.BSPMessageCompressorFactory;
+import org.apache.hama.bsp.message.compress.CompressionPolicy;
 import org.apache.hama.bsp.message.queue.DiskQueue;
 import org.apache.hama.bsp.message.queue.MemoryQueue;
 import org.apache.hama.bsp.message.queue.MessageQueue;
@@ -63,6 +68,9 @@ public abstract class AbstractMessageManager<M extends Writable> implements
 
   // this must be a synchronized implementation: this is accessed per RPC
   protected SynchronizedQueue<M> localQueueForNextIteration;
+  // received messages are added under the read lock, the queues are swapped
+  // under the write lock, so that no message is added to a swapped queue
+  private final ReadWriteLock receiveLock = new ReentrantReadWriteLock();
   // this peer object is just used for counter incrementation
   protected BSPPeer<?, ?, ?, ?, M> peer;
 
@@ -76,6 +84,11 @@ public abstract class AbstractMessageManager<M extends Writable> implements
   protected Queue<MessageEventListener<M>> messageListenerQueue;
 
   protected BSPMessageCompressor<M> compressor;
+  // decides which bundles are compressed, null without compressor
+  protected CompressionPolicy compressionPolicy;
+
+  // if true, received messages can be read before the next barrier
+  protected boolean asynchronous;
 
   /*
    * (non-Javadoc)
@@ -93,8 +106,17 @@ public abstract class AbstractMessageManager<M extends Writable> implements
     this.localQueue = getReceiverQueue();
     this.localQueueForNextIteration = getSynchronizedReceiverQueue();
     this.maxCachedConnections = conf.getInt(MAX_CACHED_CONNECTIONS_KEY, 100);
+    this.asynchronous = conf.getBoolean(Constants.ASYNC_ENABLED, false);
+    if (asynchronous && !localQueue.isMemoryBasedQueue()) {
+      throw new IllegalArgumentException(
+          "Asynchronous execution requires a memory based receive queue.");
+    }
 
     this.compressor = new BSPMessageCompressorFactory<M>().getCompressor(conf);
+    if (compressor != null) {
+      this.compressionPolicy = new CompressionPolicy(conf.getBoolean(
+          CompressionPolicy.ADAPTIVE_COMPRESSION_KEY, true));
+    }
     this.outgoingMessageManager = getOutgoingMessageManager();
     this.outgoingMessageManager.init(conf, compressor);
   }
@@ -128,7 +150,11 @@ public abstract class AbstractMessageManager<M extends Writable> implements
    */
   @Override
   public final M getCurrentMessage() throws IOException {
-    return localQueue.poll();
+    M message = localQueue.poll();
+    if (message == null && asynchronous) {
+      message = localQueueForNextIteration.poll();
+    }
+    return message;
   }
 
   /*
@@ -137,9 +163,55 @@ public abstract class AbstractMessageManager<M extends Writable> implements
    */
   @Override
   public final int getNumCurrentMessages() {
+    if (asynchronous) {
+      return localQueue.size() + localQueueForNextIteration.size();
+    }
     return localQueue.size();
   }
 
+  /**
+   * Compresses the bundle before it is sent to the given peer, if the
+   * compression policy decides so.
+   * 
+   * @return the number of bytes of messages that will be sent.
+   */
+  protected final long compressForTransfer(InetSocketAddress addr,
+      BSPMessageBundle<M> bundle) throws IOException {
+    long length = bundle.getLength();
+    if (compressionPolicy == null || !compressionPolicy.shouldCompress(addr)) {
+      return length;
+    }
+    long start = System.nanoTime();
+    int compressedLength = bundle.compress();
+    if (compressedLength < 0) {
+      return length;
+    }
+    compressionPolicy.compressed(addr, length, compressedLength,
+        System.nanoTime() - start);
+    return Math.min(length, compressedLength);
+  }
+
+  /**
+   * Reports the time it took to send a bundle to the compression policy.
+   * 
+   * @param length the number of bytes of messages sent
+   */
+  protected final void transferred(InetSocketAddress addr, long length,
+      long nanos) {
+    if (compressionPolicy != null) {
+      compressionPolicy.transferred(addr, length, nanos);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.hama.bsp.message.MessageManager#finishSendPhase()
+   */
+  @Override
+  public void finishSendPhase() throws IOException {
+    // bundles are delivered synchronously by default
+  }
+
   /*
    * (non-Javadoc)
    * @see org.apache.hama.bsp.message.MessageManager#clearOutgoingQueues()
@@ -147,7 +219,30 @@ public abstract class AbstractMessageManager<M extends Writable> implements
   @Override
   public final void clearOutgoingMessages() {
     outgoingMessageManager.clear();
+    if (asynchronous) {
+      // received messages are read from the incoming queue directly
+      return;
+    }
+
+    // messages may still arrive from peers that are not part of a barrier
+    // among a subset of the peers
+    SynchronizedQueue<M> nextQueue = getSynchronizedReceiverQueue();
+    receiveLock.writeLock().lock();
+    try {
+      swapQueues();
+      localQueueForNextIteration = nextQueue;
+    } finally {
+      receiveLock.writeLock().unlock();
+    }
 
+    localQueue.prepareRead();
+    notifyInit();
+  }
+
+  /**
+   * Makes the messages received for the next iteration the current ones.
+   */
+  private void swapQueues() {
     if (conf.getBoolean(MessageQueue.PERSISTENT_QUEUE, false)
         && localQueue.size() > 0) {
 
@@ -179,10 +274,6 @@ public abstract class AbstractMessageManager<M extends Writable> implements
 
       localQueue = localQueueForNextIteration.getMessageQueue();
     }
-
-    localQueue.prepareRead();
-    localQueueForNextIteration = getSynchronizedReceiverQueue();
-    notifyInit();
   }
 
   /*
@@ -283,18 +374,47 @@ public abstract class AbstractMessageManager<M extends Writable> implements
         conf.getLong("hama.messenger.compression.threshold", 128));
 
     Iterator<? extends Writable> it = bundle.iterator();
-    while (it.hasNext()) {
-      loopBackMessage(it.next());
+    receiveLock.readLock().lock();
+    try {
+      while (it.hasNext()) {
+        receive(it.next());
+      }
+    } finally {
+      receiveLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds the given received messages, taking the receive lock once for all of
+   * them rather than once per message.
+   */
+  protected final void loopBackMessages(List<? extends Writable> messages)
+      throws IOException {
+    receiveLock.readLock().lock();
+    try {
+      for (Writable message : messages) {
+        receive(message);
+      }
+    } finally {
+      receiveLock.readLock().unlock();
     }
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public void loopBackMessage(Writable message) throws IOException {
+    receiveLock.readLock().lock();
+    try {
+      receive(message);
+    } finally {
+      receiveLock.readLock().unlock();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void receive(Writable message) throws IOException {
     this.localQueueForNextIteration.add((M) message);
     peer.incrementCounter(BSPPeerImpl.PeerCounter.TOTAL_MESSAGES_RECEIVED, 1L);
     notifyReceivedMessage((M) message);
-
   }
 
 }
@@ -19,8 +19,12 @@ package org.apache.hama.bsp.message;
 
 import java.io.IOException;
 import java.net.BindException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,7 +50,20 @@ public final class HamaMessageManagerImpl<M extends Writable> extends
   private static final Log LOG = LogFactory
       .getLog(HamaMessageManagerImpl.class);
 
+  /**
+   * Hand bundles directly to the message managers of peers running in the
+   * same JVM instead of sending them over RPC.
+   */
+  public static final String LOCAL_TRANSFER_KEY = "hama.messenger.local.transfer";
+
+  // the message managers of this JVM by the port of their RPC server
+  @SuppressWarnings("rawtypes")
+  private static final ConcurrentHashMap<Integer, HamaMessageManagerImpl> LOCAL_MANAGERS = new ConcurrentHashMap<Integer, HamaMessageManagerImpl>();
+  // whether an address belongs to this host
+  private static final ConcurrentHashMap<InetAddress, Boolean> LOCAL_ADDRESSES = new ConcurrentHashMap<InetAddress, Boolean>();
+
   private Server server;
+  private boolean localTransfer;
 
   private LRUCache<InetSocketAddress, HamaMessageManager<M>> peersLRUCache = null;
 
@@ -56,6 +73,10 @@ public final class HamaMessageManagerImpl<M extends Writable> extends
       HamaConfiguration conf, InetSocketAddress peerAddress) {
     super.init(attemptId, peer, conf, peerAddress);
     startRPCServer(conf, peerAddress);
+    localTransfer = conf.getBoolean(LOCAL_TRANSFER_KEY, true);
+    if (localTransfer) {
+      LOCAL_MANAGERS.put(server.getListenerAddress().getPort(), this);
+    }
     peersLRUCache = new LRUCache<InetSocketAddress, HamaMessageManager<M>>(
         maxCachedConnections) {
       @Override
@@ -104,6 +125,9 @@ public final class HamaMessageManagerImpl<M extends Writable> extends
 
   @Override
   public final void close() {
+    if (localTransfer && server != null) {
+      LOCAL_MANAGERS.remove(server.getListenerAddress().getPort(), this);
+    }
     super.close();
     if (server != null) {
       server.stop();
@@ -113,14 +137,60 @@ public final class HamaMessageManagerImpl<M extends Writable> extends
   @Override
   public final void transfer(InetSocketAddress addr, BSPMessageBundle<M> bundle)
       throws IOException {
+    HamaMessageManager<M> localManager = getLocalManager(addr);
+    if (localManager != null) {
+      // the bundle is not used by the sender anymore, so it can be handed over
+      // without serializing it
+      peer.incrementCounter(BSPPeerImpl.PeerCounter.MESSAGE_BYTES_TRANSFERED,
+          bundle.getLength());
+      localManager.put(bundle);
+      return;
+    }
+
     HamaMessageManager<M> bspPeerConnection = this.getBSPPeerConnection(addr);
     if (bspPeerConnection == null) {
       throw new IllegalArgumentException("Can not find " + addr.toString()
           + " to transfer messages to!");
     } else {
       peer.incrementCounter(BSPPeerImpl.PeerCounter.MESSAGE_BYTES_TRANSFERED, bundle.getLength());
+      long length = compressForTransfer(addr, bundle);
+      long start = System.nanoTime();
       bspPeerConnection.put(bundle);
+      transferred(addr, length, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return the message manager of a peer in this JVM listening on the given
+   *         address, or null if the peer runs elsewhere.
+   */
+  @SuppressWarnings("unchecked")
+  private HamaMessageManager<M> getLocalManager(InetSocketAddress addr) {
+    if (!localTransfer) {
+      return null;
+    }
+    HamaMessageManagerImpl<M> manager = LOCAL_MANAGERS.get(addr.getPort());
+    if (manager == null || !isLocalAddress(addr.getAddress())) {
+      return null;
+    }
+    return manager;
+  }
+
+  private static boolean isLocalAddress(InetAddress address) {
+    if (address == null) {
+      return false;
+    }
+    Boolean local = LOCAL_ADDRESSES.get(address);
+    if (local == null) {
+      try {
+        local = address.isAnyLocalAddress() || address.isLoopbackAddress()
+            || NetworkInterface.getByInetAddress(address) != null;
+      } catch (SocketException e) {
+        local = false;
+      }
+      LOCAL_ADDRESSES.put(address, local);
     }
+    return local;
   }
 
   /**
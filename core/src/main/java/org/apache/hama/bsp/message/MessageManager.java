@@ -85,6 +85,16 @@ public interface MessageManager<M extends Writable> {
   public void transfer(InetSocketAddress addr, BSPMessageBundle<M> bundle)
       throws IOException;
 
+  /**
+   * Called after all outgoing bundles of a superstep have been transferred and
+   * before the peer enters the barrier. Implementations that do not deliver a
+   * bundle within {@link #transfer(InetSocketAddress, BSPMessageBundle)} must
+   * block until all of them have been received.
+   * 
+   * @throws IOException
+   */
+  public void finishSendPhase() throws IOException;
+
   /**
    * Clears the outgoing queue. Can be used to switch queues.
    */
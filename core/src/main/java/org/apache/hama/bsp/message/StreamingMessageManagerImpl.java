@@ -0,0 +1,731 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPMessageBundle;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.BSPPeerImpl;
+import org.apache.hama.bsp.TaskAttemptID;
+import org.apache.hama.util.LRUCache;
+
+/**
+ * Message manager that streams bundles over persistent socket connections
+ * instead of sending every bundle as a single RPC call. A bundle is written in
+ * chunks of a fixed size from pooled direct buffers, the receiving side
+ * deserializes the messages while the chunks arrive and never materializes the
+ * whole bundle.
+ * <p>
+ * Incoming connections are served by a single selector thread. If the messages
+ * of a connection are not consumed fast enough, the selector stops reading
+ * from it, so that the sender is slowed down by the TCP flow control.
+ * Transfers return as soon as the bundle is written, every bundle is
+ * acknowledged by the receiver once all of its messages are queued and
+ * {@link #finishSendPhase()} waits for the outstanding acknowledgements before
+ * the peer enters the barrier.
+ */
+public final class StreamingMessageManagerImpl<M extends Writable> extends
+    AbstractMessageManager<M> {
+
+  private static final Log LOG = LogFactory
+      .getLog(StreamingMessageManagerImpl.class);
+
+  /**
+   * Maximum size of the chunks a bundle is split into.
+   */
+  public static final String CHUNK_SIZE_KEY = "hama.messenger.stream.chunk.size";
+  /**
+   * Number of received chunks per connection that may wait to be deserialized
+   * before the connection is not read anymore.
+   */
+  public static final String MAX_PENDING_CHUNKS_KEY = "hama.messenger.stream.max.pending.chunks";
+
+  private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+  private static final int DEFAULT_MAX_PENDING_CHUNKS = 64;
+  // every chunk is prefixed by its length
+  private static final int HEADER_LENGTH = 4;
+
+  private int maxPendingChunks;
+  private BufferPool bufferPool;
+  private BufferPool chunkPool;
+
+  private ServerSocketChannel serverChannel;
+  private InetSocketAddress listenerAddress;
+  private Receiver receiver;
+
+  private LRUCache<InetSocketAddress, Outbound> connections;
+
+  @SuppressWarnings("serial")
+  @Override
+  public void init(TaskAttemptID attemptId, BSPPeer<?, ?, ?, ?, M> peer,
+      HamaConfiguration conf, InetSocketAddress peerAddress) {
+    super.init(attemptId, peer, conf, peerAddress);
+    this.maxPendingChunks = conf.getInt(MAX_PENDING_CHUNKS_KEY,
+        DEFAULT_MAX_PENDING_CHUNKS);
+    int chunkSize = conf.getInt(CHUNK_SIZE_KEY, DEFAULT_CHUNK_SIZE);
+    this.bufferPool = new BufferPool(HEADER_LENGTH + chunkSize, true);
+    this.chunkPool = new BufferPool(chunkSize, false);
+    this.connections = new LRUCache<InetSocketAddress, Outbound>(
+        maxCachedConnections) {
+      @Override
+      protected final boolean removeEldestEntry(
+          Map.Entry<InetSocketAddress, Outbound> eldest) {
+        if (size() > this.capacity) {
+          Outbound connection = eldest.getValue();
+          try {
+            connection.awaitAcks();
+          } catch (IOException e) {
+            LOG.error("Error while sending messages to " + eldest.getKey(), e);
+          }
+          connection.close();
+          return true;
+        }
+        return false;
+      }
+    };
+
+    try {
+      startServer(peerAddress.getHostName(), peerAddress.getPort());
+    } catch (IOException ioe) {
+      LOG.error("Fail to start message server!", ioe);
+      throw new RuntimeException("Message server could not be launched!");
+    }
+  }
+
+  private void startServer(String hostName, int port) throws IOException {
+    for (int retry = 0;; retry++) {
+      ServerSocketChannel channel = ServerSocketChannel.open();
+      try {
+        channel.socket().bind(new InetSocketAddress(hostName, port + retry));
+        this.serverChannel = channel;
+        break;
+      } catch (BindException e) {
+        channel.close();
+        if (retry >= 5) {
+          throw e;
+        }
+        LOG.warn("Address already in use. Retrying " + hostName + ":"
+            + (port + retry + 1));
+      }
+    }
+    serverChannel.configureBlocking(false);
+    this.listenerAddress = new InetSocketAddress(hostName, serverChannel
+        .socket().getLocalPort());
+
+    Selector selector = Selector.open();
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.receiver = new Receiver(selector);
+    receiver.start();
+    LOG.info("BSPPeer address:" + listenerAddress.getHostName() + " port:"
+        + listenerAddress.getPort());
+  }
+
+  @Override
+  public void close() {
+    if (connections != null) {
+      for (Outbound connection : connections.values()) {
+        connection.close();
+      }
+      connections.clear();
+    }
+    if (receiver != null) {
+      receiver.shutdown();
+    }
+    super.close();
+  }
+
+  @Override
+  public void transfer(InetSocketAddress addr, BSPMessageBundle<M> bundle)
+      throws IOException {
+    Outbound connection = connections.get(addr);
+    if (connection == null) {
+      connection = new Outbound(addr);
+      connections.put(addr, connection);
+    }
+    peer.incrementCounter(BSPPeerImpl.PeerCounter.MESSAGE_BYTES_TRANSFERED,
+        bundle.getLength());
+    long length = compressForTransfer(addr, bundle);
+    try {
+      // the time until the bundle is written, the receiver lags behind by
+      // the socket buffers at most
+      long start = System.nanoTime();
+      connection.send(bundle);
+      transferred(addr, length, System.nanoTime() - start);
+    } catch (IOException e) {
+      connections.remove(addr);
+      connection.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void finishSendPhase() throws IOException {
+    IOException error = null;
+    Iterator<Outbound> it = connections.values().iterator();
+    while (it.hasNext()) {
+      Outbound connection = it.next();
+      try {
+        connection.awaitAcks();
+      } catch (IOException e) {
+        it.remove();
+        connection.close();
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  @Override
+  public InetSocketAddress getListenerAddress() {
+    return listenerAddress;
+  }
+
+  /**
+   * Reads the messages of a single bundle from the stream and queues them for
+   * the next superstep. The format is the one of
+   * {@link BSPMessageBundle#write(java.io.DataOutput)}, the number of messages
+   * has been read already.
+   */
+  private void readMessages(DataInputStream in, int numMessages,
+      Map<String, Class<M>> classes) throws IOException {
+    Class<M> clazz = getMessageClass(in.readUTF(), classes);
+    DataInputStream messages = in;
+    if (in.readBoolean()) {
+      if (compressor == null) {
+        throw new IOException(
+            "Received compressed messages, but no compressor is configured.");
+      }
+      byte[] compressed = new byte[in.readInt()];
+      in.readFully(compressed);
+      byte[] decompressed = compressor.decompress(compressed);
+      if (decompressed == null) {
+        throw new IOException("Unable to decompress messages.");
+      }
+      messages = new DataInputStream(new ByteArrayInputStream(decompressed));
+    } else {
+      // the byte length of the messages, they are read one by one
+      in.readInt();
+    }
+    // the messages are read before they are added, so the receive lock is
+    // taken once per bundle
+    List<M> received = new ArrayList<M>(numMessages);
+    for (int i = 0; i < numMessages; i++) {
+      M message = ReflectionUtils.newInstance(clazz, null);
+      message.readFields(messages);
+      received.add(message);
+    }
+    loopBackMessages(received);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <M> Class<M> getMessageClass(String className,
+      Map<String, Class<M>> classes) throws IOException {
+    Class<M> clazz = classes.get(className);
+    if (clazz == null) {
+      // tasks running inside the groom server load their classes through the
+      // context class loader
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader == null) {
+        loader = StreamingMessageManagerImpl.class.getClassLoader();
+      }
+      try {
+        clazz = (Class<M>) Class.forName(className, true, loader);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Message class " + className
+            + " was not found.", e);
+      }
+      classes.put(className, clazz);
+    }
+    return clazz;
+  }
+
+  /**
+   * Buffers of a fixed capacity that are reused. Direct ones serve as the
+   * chunks of the outgoing connections and as read buffers of the incoming
+   * ones, heap ones hold the received chunks until they are decoded.
+   */
+  static final class BufferPool {
+
+    private final int capacity;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    BufferPool(int capacity, boolean direct) {
+      this.capacity = capacity;
+      this.direct = direct;
+    }
+
+    ByteBuffer get() {
+      ByteBuffer buffer = buffers.poll();
+      if (buffer == null) {
+        buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer
+            .allocate(capacity);
+      }
+      buffer.clear();
+      return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+      buffers.offer(buffer);
+    }
+  }
+
+  /**
+   * Persistent connection to another peer. Bundles are written as a sequence of
+   * length prefixed chunks, the reads are the acknowledgements of the receiver,
+   * one per bundle. The channel is blocking, a slow receiver blocks the writes.
+   */
+  private final class Outbound extends OutputStream {
+
+    private final SocketChannel channel;
+    private final ByteBuffer buffer;
+    private final DataOutputStream out = new DataOutputStream(this);
+    private final ByteBuffer ack = ByteBuffer.allocate(4);
+    private int pendingAcks = 0;
+
+    Outbound(InetSocketAddress addr) throws IOException {
+      this.channel = SocketChannel.open();
+      try {
+        channel.socket().setTcpNoDelay(true);
+        channel.connect(addr);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      this.buffer = bufferPool.get();
+      buffer.position(HEADER_LENGTH);
+    }
+
+    void send(BSPMessageBundle<M> bundle) throws IOException {
+      bundle.write(out);
+      flushChunk();
+      pendingAcks++;
+    }
+
+    void awaitAcks() throws IOException {
+      while (pendingAcks > 0) {
+        ack.clear();
+        while (ack.hasRemaining()) {
+          if (channel.read(ack) < 0) {
+            throw new EOFException("Connection to "
+                + channel.socket().getRemoteSocketAddress()
+                + " was closed before all messages were received.");
+          }
+        }
+        pendingAcks--;
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flushChunk();
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (!buffer.hasRemaining()) {
+          flushChunk();
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.put(b, off, n);
+        off += n;
+        len -= n;
+      }
+    }
+
+    private void flushChunk() throws IOException {
+      int length = buffer.position() - HEADER_LENGTH;
+      if (length == 0) {
+        return;
+      }
+      buffer.putInt(0, length);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+      buffer.position(HEADER_LENGTH);
+    }
+
+    @Override
+    public void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.warn("Error while closing connection.", e);
+      }
+      bufferPool.release(buffer);
+    }
+  }
+
+  /**
+   * Incoming connection. The selector thread splits the received bytes into
+   * pooled chunks, a decoder thread per connection reads the bundles from the
+   * chunks, returns them to the pool and acknowledges each bundle. The channel
+   * and the read buffer are only closed and released by the selector thread.
+   */
+  private final class Inbound extends InputStream implements Runnable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer buffer;
+    private final LinkedList<ByteBuffer> chunks = new LinkedList<ByteBuffer>();
+    private final ByteBuffer ack = ByteBuffer.allocate(4);
+    private SelectionKey key;
+    private ByteBuffer current;
+    private boolean paused = false;
+    private boolean closed = false;
+    // the decoder has stopped, chunks are not consumed anymore
+    private boolean finished = false;
+    // accessed by the selector thread only
+    private boolean released = false;
+
+    Inbound(SocketChannel channel) {
+      this.channel = channel;
+      this.buffer = bufferPool.get();
+    }
+
+    /**
+     * Adds a received chunk.
+     *
+     * @return true if the connection should not be read until the decoder has
+     *         caught up.
+     */
+    synchronized boolean offer(ByteBuffer chunk) {
+      if (finished) {
+        chunkPool.release(chunk);
+        return false;
+      }
+      chunks.add(chunk);
+      notifyAll();
+      if (chunks.size() >= maxPendingChunks) {
+        paused = true;
+      }
+      return paused;
+    }
+
+    synchronized void endOfStream() {
+      closed = true;
+      notifyAll();
+    }
+
+    private synchronized boolean nextChunk() throws IOException {
+      if (current != null) {
+        chunkPool.release(current);
+        current = null;
+      }
+      while (chunks.isEmpty()) {
+        if (closed) {
+          return false;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+      current = chunks.poll();
+      if (paused && chunks.size() <= maxPendingChunks / 2) {
+        paused = false;
+        receiver.resume(key);
+      }
+      return true;
+    }
+
+    /**
+     * Returns the chunks that have not been decoded to the pool.
+     */
+    private synchronized void finish() {
+      finished = true;
+      if (current != null) {
+        chunkPool.release(current);
+        current = null;
+      }
+      ByteBuffer chunk;
+      while ((chunk = chunks.poll()) != null) {
+        chunkPool.release(chunk);
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      while (current == null || !current.hasRemaining()) {
+        if (!nextChunk()) {
+          return -1;
+        }
+      }
+      return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (current == null || !current.hasRemaining()) {
+        if (!nextChunk()) {
+          return -1;
+        }
+      }
+      int n = Math.min(len, current.remaining());
+      current.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public void run() {
+      DataInputStream in = new DataInputStream(this);
+      Map<String, Class<M>> classes = new HashMap<String, Class<M>>();
+      try {
+        while (true) {
+          int numMessages;
+          try {
+            numMessages = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          if (numMessages > 0) {
+            readMessages(in, numMessages, classes);
+          }
+          acknowledge();
+        }
+      } catch (IOException e) {
+        LOG.error("Error while receiving messages", e);
+      } finally {
+        finish();
+        // closing the channel here would cancel its key before the selector
+        // thread released the read buffer
+        receiver.close(this);
+      }
+    }
+
+    private void acknowledge() throws IOException {
+      ack.clear();
+      ack.putInt(1);
+      ack.flip();
+      // the channel is non-blocking, but the send buffer is practically never
+      // full of acknowledgements
+      while (ack.hasRemaining()) {
+        if (channel.write(ack) == 0) {
+          Thread.yield();
+        }
+      }
+    }
+  }
+
+  /**
+   * Selector thread accepting and reading the incoming connections.
+   */
+  private final class Receiver extends Thread {
+
+    private final Selector selector;
+    private final Queue<SelectionKey> resumed = new ConcurrentLinkedQueue<SelectionKey>();
+    private final Queue<Inbound> closed = new ConcurrentLinkedQueue<Inbound>();
+    private volatile boolean running = true;
+
+    Receiver(Selector selector) {
+      super("Message receiver on " + listenerAddress);
+      setDaemon(true);
+      this.selector = selector;
+    }
+
+    /**
+     * Starts reading from a connection that has been paused.
+     */
+    void resume(SelectionKey key) {
+      resumed.add(key);
+      selector.wakeup();
+    }
+
+    /**
+     * Closes a connection whose decoder has stopped.
+     */
+    void close(Inbound inbound) {
+      closed.add(inbound);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        try {
+          selector.select();
+          Inbound inbound;
+          while ((inbound = closed.poll()) != null) {
+            closeInbound(inbound.key);
+          }
+          SelectionKey key;
+          while ((key = resumed.poll()) != null) {
+            if (key.isValid()) {
+              key.interestOps(SelectionKey.OP_READ);
+            }
+          }
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            } else if (key.isReadable()) {
+              read(key);
+            }
+          }
+        } catch (ClosedSelectorException e) {
+          break;
+        } catch (IOException e) {
+          if (running) {
+            LOG.error("Error while receiving messages", e);
+          }
+        }
+      }
+    }
+
+    private void accept() throws IOException {
+      SocketChannel channel = serverChannel.accept();
+      if (channel == null) {
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      Inbound inbound = new Inbound(channel);
+      inbound.key = channel.register(selector, SelectionKey.OP_READ, inbound);
+      Thread decoder = new Thread(inbound, "Message decoder for "
+          + channel.socket().getRemoteSocketAddress());
+      decoder.setDaemon(true);
+      decoder.start();
+    }
+
+    private void read(SelectionKey key) {
+      Inbound inbound = (Inbound) key.attachment();
+      ByteBuffer buffer = inbound.buffer;
+      try {
+        if (inbound.channel.read(buffer) < 0) {
+          closeInbound(key);
+          return;
+        }
+        buffer.flip();
+        boolean pause = false;
+        while (buffer.remaining() >= HEADER_LENGTH) {
+          int length = buffer.getInt(buffer.position());
+          if (length <= 0 || length > buffer.capacity() - HEADER_LENGTH) {
+            throw new IOException("Invalid chunk length " + length);
+          }
+          if (buffer.remaining() < HEADER_LENGTH + length) {
+            break;
+          }
+          buffer.position(buffer.position() + HEADER_LENGTH);
+          ByteBuffer chunk = chunkPool.get();
+          int limit = buffer.limit();
+          buffer.limit(buffer.position() + length);
+          chunk.put(buffer);
+          buffer.limit(limit);
+          chunk.flip();
+          pause = inbound.offer(chunk);
+        }
+        buffer.compact();
+        if (pause) {
+          key.interestOps(0);
+        }
+      } catch (IOException e) {
+        LOG.error("Error while receiving messages", e);
+        closeInbound(key);
+      }
+    }
+
+    private void closeInbound(SelectionKey key) {
+      Inbound inbound = (Inbound) key.attachment();
+      if (inbound.released) {
+        return;
+      }
+      inbound.released = true;
+      key.cancel();
+      try {
+        inbound.channel.close();
+      } catch (IOException e) {
+        LOG.warn("Error while closing connection.", e);
+      }
+      inbound.endOfStream();
+      bufferPool.release(inbound.buffer);
+    }
+
+    void shutdown() {
+      running = false;
+      selector.wakeup();
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      Inbound inbound;
+      while ((inbound = closed.poll()) != null) {
+        closeInbound(inbound.key);
+      }
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() != null) {
+          closeInbound(key);
+        }
+      }
+      try {
+        selector.close();
+        serverChannel.close();
+      } catch (IOException e) {
+        LOG.warn("Error while closing message server.", e);
+      }
+    }
+  }
+
+}
@@ -17,6 +17,8 @@
  */
 package org.apache.hama.bsp.message.compress;
 
+import java.util.Arrays;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.io.Writable;
@@ -31,5 +33,13 @@ public abstract class BSPMessageCompressor<M extends Writable> {
 
   public abstract byte[] compress(byte[] bytes);
 
+  /**
+   * Compresses a range of the given array. Compressors should override this to
+   * compress the range without copying it first.
+   */
+  public byte[] compress(byte[] bytes, int offset, int length) {
+    return compress(Arrays.copyOfRange(bytes, offset, offset + length));
+  }
+
   public abstract byte[] decompress(byte[] compressedBytes);
 }
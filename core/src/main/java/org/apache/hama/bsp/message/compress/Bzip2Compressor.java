@@ -45,6 +45,8 @@ public class Bzip2Compressor<M extends Writable> extends
       bos = new ByteArrayOutputStream();
       sos = codec.createOutputStream(bos);
       dos = new DataOutputStream(sos);
+
+      dos.write(bytes);
       dos.close(); // Flush the stream as no more data will be sent.
 
       compressedBytes = bos.toByteArray();
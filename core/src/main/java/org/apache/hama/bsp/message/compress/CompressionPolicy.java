@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp.message.compress;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides per destination whether bundles are compressed before they are sent.
+ * It keeps moving averages of the compression ratio, of the compression time
+ * per byte and of the transfer time per sent byte. A bundle is compressed if
+ * the time saved by sending fewer bytes exceeds the time spent compressing.
+ * Every few bundles the other choice is tried, so that the estimates follow
+ * changes of the data and of the network.
+ */
+public class CompressionPolicy {
+
+  /**
+   * Choose per destination whether to compress. If false, every bundle
+   * exceeding the compression threshold is compressed.
+   */
+  public static final String ADAPTIVE_COMPRESSION_KEY = "hama.messenger.compression.adaptive";
+
+  static final int PROBE_INTERVAL = 16;
+  private static final double ALPHA = 0.25;
+
+  private final boolean adaptive;
+  private final Map<InetSocketAddress, Estimate> estimates = new HashMap<InetSocketAddress, Estimate>();
+
+  public CompressionPolicy(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+
+  private static final class Estimate {
+    // averages, negative until measured
+    double ratio = -1d;
+    double compressTimePerByte = -1d;
+    double transferTimePerByte = -1d;
+    int bundles = 0;
+    boolean compressing = true;
+
+    boolean isWorthwhile() {
+      return (1d - ratio) * transferTimePerByte > compressTimePerByte;
+    }
+  }
+
+  private Estimate getEstimate(InetSocketAddress addr) {
+    Estimate estimate = estimates.get(addr);
+    if (estimate == null) {
+      estimate = new Estimate();
+      estimates.put(addr, estimate);
+    }
+    return estimate;
+  }
+
+  private static double average(double average, double value) {
+    return (average < 0d) ? value : average + ALPHA * (value - average);
+  }
+
+  /**
+   * @return true if the next bundle to the given destination should be
+   *         compressed.
+   */
+  public boolean shouldCompress(InetSocketAddress addr) {
+    if (!adaptive) {
+      return true;
+    }
+    Estimate estimate = getEstimate(addr);
+    estimate.bundles++;
+    if (estimate.ratio < 0d || estimate.transferTimePerByte < 0d) {
+      return true;
+    }
+    boolean compress = estimate.isWorthwhile();
+    if (estimate.bundles % PROBE_INTERVAL == 0) {
+      compress = !compress;
+    } else {
+      estimate.compressing = compress;
+    }
+    return compress;
+  }
+
+  /**
+   * Records the compression of a bundle to the given destination.
+   * 
+   * @param length the length of the messages
+   * @param compressedLength the length of the compressed messages
+   * @param nanos the time spent compressing
+   */
+  public void compressed(InetSocketAddress addr, long length,
+      long compressedLength, long nanos) {
+    if (!adaptive || length <= 0L) {
+      return;
+    }
+    Estimate estimate = getEstimate(addr);
+    estimate.ratio = average(estimate.ratio, Math.min(1d,
+        (double) compressedLength / length));
+    estimate.compressTimePerByte = average(estimate.compressTimePerByte,
+        (double) nanos / length);
+  }
+
+  /**
+   * Records the transfer of a bundle to the given destination.
+   * 
+   * @param length the number of bytes sent
+   * @param nanos the time spent sending
+   */
+  public void transferred(InetSocketAddress addr, long length, long nanos) {
+    if (!adaptive || length <= 0L) {
+      return;
+    }
+    Estimate estimate = getEstimate(addr);
+    estimate.transferTimePerByte = average(estimate.transferTimePerByte,
+        (double) nanos / length);
+  }
+
+  /**
+   * @return whether bundles to the given destination are currently
+   *         compressed, apart from probes.
+   */
+  public boolean isCompressing(InetSocketAddress addr) {
+    return !adaptive || getEstimate(addr).compressing;
+  }
+
+}
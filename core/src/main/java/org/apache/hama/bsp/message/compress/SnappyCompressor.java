@@ -17,46 +17,45 @@
  */
 package org.apache.hama.bsp.message.compress;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.io.Writable;
-import org.xerial.snappy.SnappyInputStream;
-import org.xerial.snappy.SnappyOutputStream;
+import org.xerial.snappy.Snappy;
 
+/**
+ * Compresses with the raw snappy format, without the overhead of the snappy
+ * streams. The output buffer is reused by the compressing thread.
+ */
 public class SnappyCompressor<M extends Writable> extends
     BSPMessageCompressor<M> {
 
+  // larger output buffers are not kept by the threads
+  private static final int MAX_CACHED_BUFFER = 1024 * 1024;
+
+  private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>();
+
   @Override
   public byte[] compress(byte[] bytes) {
-    ByteArrayOutputStream bos = null;
-    SnappyOutputStream sos = null;
-    DataOutputStream dos = null;
-    byte[] compressedBytes = null;
+    return compress(bytes, 0, bytes.length);
+  }
 
+  @Override
+  public byte[] compress(byte[] bytes, int offset, int length) {
+    byte[] compressedBytes = null;
     try {
-      bos = new ByteArrayOutputStream();
-      sos = new SnappyOutputStream(bos);
-      dos = new DataOutputStream(sos);
-
-      dos.write(bytes);
-      dos.close(); // Flush the stream as no more data will be sent.
-
-      compressedBytes = bos.toByteArray();
-
+      int maxLength = Snappy.maxCompressedLength(length);
+      byte[] buffer = BUFFERS.get();
+      if (buffer == null || buffer.length < maxLength) {
+        buffer = new byte[maxLength];
+        if (maxLength <= MAX_CACHED_BUFFER) {
+          BUFFERS.set(buffer);
+        }
+      }
+      int compressedLength = Snappy.compress(bytes, offset, length, buffer, 0);
+      compressedBytes = Arrays.copyOf(buffer, compressedLength);
     } catch (IOException ioe) {
       LOG.error("Unable to compress", ioe);
-    } finally {
-      try {
-        sos.close();
-        bos.close();
-      } catch (IOException e) {
-        LOG.warn("Failed to close compression streams.", e);
-      }
     }
     return compressedBytes;
   }
@@ -70,29 +69,12 @@ public class SnappyCompressor<M extends Writable> extends
    */
   @Override
   public byte[] decompress(byte[] compressedBytes) {
-    ByteArrayInputStream bis = null;
-    SnappyInputStream sis = null;
-    DataInputStream dis = null;
     byte[] bytes = null;
-
     try {
-      bis = new ByteArrayInputStream(compressedBytes);
-      sis = new SnappyInputStream(bis);
-      dis = new DataInputStream(sis);
-
-      bytes = IOUtils.toByteArray(dis);
+      bytes = Snappy.uncompress(compressedBytes);
     } catch (IOException ioe) {
       LOG.error("Unable to decompress.", ioe);
-    } finally {
-      try {
-        dis.close();
-        sis.close();
-        bis.close();
-      } catch (IOException e) {
-        LOG.warn("Failed to close decompression streams.", e);
-      }
     }
-
     return bytes;
   }
 
@@ -58,6 +58,31 @@ public abstract class BSPPeerSyncClient implements PeerSyncClient {
   public abstract void leaveBarrier(BSPJobID jobId, TaskAttemptID taskId,
       long superstep) throws SyncException;
 
+  /**
+   * Barrier among a group of peers. Returns once every given peer has entered
+   * a group barrier including this peer as often as this peer did with it.
+   * 
+   * @param jobId the jobs ID
+   * @param taskId the tasks ID
+   * @param peerNames the host:port names of the peers to wait for
+   * @throws SyncException
+   */
+  public abstract void enterGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException;
+
+  /**
+   * Leaves the group barrier after the received messages have been taken over.
+   * Returns once every given peer has done the same, so no peer sends messages
+   * of the next superstep before.
+   * 
+   * @param jobId the jobs ID
+   * @param taskId the tasks ID
+   * @param peerNames the host:port names of the peers to wait for
+   * @throws SyncException
+   */
+  public abstract void leaveGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException;
+
   /**
    * Registers a specific task with a its host and port to the sync daemon.
    * 
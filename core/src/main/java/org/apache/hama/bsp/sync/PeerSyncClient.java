@@ -61,6 +61,33 @@ public interface PeerSyncClient extends SyncClient {
   public void leaveBarrier(BSPJobID jobId, TaskAttemptID taskId, long superstep)
       throws SyncException;
 
+  /**
+   * Barrier among a group of peers. Returns once every given peer has entered
+   * a group barrier including this peer as often as this peer did with it.
+   * The peers do not have to use the same groups, a peer only waits for the
+   * peers it names.
+   * 
+   * @param jobId the jobs ID
+   * @param taskId the tasks ID
+   * @param peerNames the host:port names of the peers to wait for
+   * @throws SyncException
+   */
+  public void enterGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException;
+
+  /**
+   * Leaves the group barrier after the received messages have been taken over.
+   * Returns once every given peer has done the same, so no peer sends messages
+   * of the next superstep before.
+   * 
+   * @param jobId the jobs ID
+   * @param taskId the tasks ID
+   * @param peerNames the host:port names of the peers to wait for
+   * @throws SyncException
+   */
+  public void leaveGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException;
+
   /**
    * Registers a specific task with a its host and port to the sync daemon.
    * 
@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp.sync;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.bsp.BSPJobID;
+
+/**
+ * Detects the termination of peers that run without barriers, and optionally
+ * bounds the number of local iterations the peers may be apart.
+ *
+ * Every peer publishes its progress through the {@link SyncClient}: its local
+ * iteration, the number of messages it has sent and received and whether it
+ * is passive, i.e. waiting for messages. A passive peer publishes its counts
+ * before it reads the messages that activate it again, so it never sends with
+ * a stale record. The computation has terminated if two consecutive snapshots
+ * of all records are equal, all peers are passive, and as many messages have
+ * been received as have been sent (the four counter method).
+ */
+public class TerminationDetector {
+
+  private final SyncClient syncClient;
+  private final BSPJobID jobId;
+  private final int peerIndex;
+  private final int numPeers;
+  private final int staleness;
+
+  private Progress published;
+  private Progress[] lastSnapshot;
+
+  /**
+   * @param syncClient the client to publish and read the records with.
+   * @param jobId the id of the job.
+   * @param peerIndex the index of this peer.
+   * @param numPeers the number of peers of the job.
+   * @param staleness the maximal number of local iterations an active peer may
+   *          be ahead of the slowest active peer, negative if unbounded.
+   */
+  public TerminationDetector(SyncClient syncClient, BSPJobID jobId,
+      int peerIndex, int numPeers, int staleness) {
+    this.syncClient = syncClient;
+    this.jobId = jobId;
+    this.peerIndex = peerIndex;
+    this.numPeers = numPeers;
+    this.staleness = staleness;
+  }
+
+  /**
+   * @return true if the staleness between the peers is bounded.
+   */
+  public boolean isBounded() {
+    return staleness >= 0;
+  }
+
+  /**
+   * Publishes the progress of this peer, if it changed since the last call.
+   * The counts of an active peer are not relevant and are only published
+   * once the peer becomes passive.
+   *
+   * @param clock the local iteration of this peer.
+   * @param sent the number of messages this peer has sent in total.
+   * @param received the number of messages this peer has received in total.
+   * @param passive true if this peer waits for messages.
+   */
+  public void publish(long clock, long sent, long received, boolean passive)
+      throws SyncException {
+    Progress progress = passive ? new Progress(clock, sent, received, true)
+        : new Progress(isBounded() ? clock : 0L, 0L, 0L, false);
+    if (progress.equals(published)) {
+      return;
+    }
+    if (!syncClient.storeInformation(key(peerIndex), progress, true, null)) {
+      throw new SyncException("Could not publish the progress of peer "
+          + peerIndex);
+    }
+    published = progress;
+  }
+
+  /**
+   * @return true if all peers are passive and no messages are in transit.
+   */
+  public boolean isTerminated() {
+    Progress[] snapshot = snapshot();
+    boolean equal = snapshot != null && Arrays.equals(snapshot, lastSnapshot);
+    lastSnapshot = snapshot;
+    if (!equal) {
+      return false;
+    }
+    long sent = 0L;
+    long received = 0L;
+    for (Progress progress : snapshot) {
+      if (!progress.passive) {
+        return false;
+      }
+      sent += progress.sent;
+      received += progress.received;
+    }
+    return sent == received;
+  }
+
+  /**
+   * @return true if no active peer is more than the staleness bound behind
+   *         the given local iteration.
+   */
+  public boolean isWithinBound(long clock) {
+    if (!isBounded()) {
+      return true;
+    }
+    Progress[] snapshot = snapshot();
+    if (snapshot == null) {
+      return false;
+    }
+    for (Progress progress : snapshot) {
+      if (!progress.passive && progress.clock < clock - staleness) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the records of all peers, or null if a peer did not publish yet.
+   */
+  private Progress[] snapshot() {
+    Progress[] snapshot = new Progress[numPeers];
+    for (int i = 0; i < numPeers; i++) {
+      Progress progress = new Progress();
+      if (!syncClient.getInformation(key(i), progress)) {
+        return null;
+      }
+      snapshot[i] = progress;
+    }
+    return snapshot;
+  }
+
+  private String key(int index) {
+    return syncClient.constructKey(jobId, "async", String.valueOf(index));
+  }
+
+  /**
+   * The published record of a peer.
+   */
+  public static final class Progress implements Writable {
+
+    private long clock;
+    private long sent;
+    private long received;
+    private boolean passive;
+
+    public Progress() {
+    }
+
+    Progress(long clock, long sent, long received, boolean passive) {
+      this.clock = clock;
+      this.sent = sent;
+      this.received = received;
+      this.passive = passive;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeLong(clock);
+      out.writeLong(sent);
+      out.writeLong(received);
+      out.writeBoolean(passive);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      clock = in.readLong();
+      sent = in.readLong();
+      received = in.readLong();
+      passive = in.readBoolean();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Progress)) {
+        return false;
+      }
+      Progress other = (Progress) obj;
+      return clock == other.clock && sent == other.sent
+          && received == other.received && passive == other.passive;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (clock ^ sent ^ received) + (passive ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+      return "clock=" + clock + " sent=" + sent + " received=" + received
+          + " passive=" + passive;
+    }
+  }
+
+}
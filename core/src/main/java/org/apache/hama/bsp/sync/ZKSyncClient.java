@@ -331,7 +331,7 @@ public abstract class ZKSyncClient implements SyncClient, Watcher {
     ZKSyncEventListener zkListener = (ZKSyncEventListener) listener;
     key = correctKey(key);
     final String path = key;
-    LOG.info("Writing data " + path);
+    LOG.debug("Writing data " + path);
     return writeNode(path, value, permanent, zkListener);
   }
 
@@ -20,6 +20,7 @@ package org.apache.hama.bsp.sync;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -28,6 +29,7 @@ import java.util.TreeMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hama.Constants;
 import org.apache.hama.bsp.BSPJobID;
 import org.apache.hama.bsp.TaskAttemptID;
@@ -65,6 +67,8 @@ public class ZooKeeperSyncClientImpl extends ZKSyncClient implements
   private int numBSPTasks;
   // allPeers is lazily initialized
   private String[] allPeers;
+  // number of group barriers entered with each peer
+  private final Map<String, Long> groupBarriers = new HashMap<String, Long>();
 
   @Override
   public void init(Configuration conf, BSPJobID jobId, TaskAttemptID taskId)
@@ -234,6 +238,77 @@ public class ZooKeeperSyncClientImpl extends ZKSyncClient implements
     }
   }
 
+  @Override
+  public void enterGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException {
+    for (String peer : peerNames) {
+      Long entered = groupBarriers.get(peer);
+      groupBarriers.put(peer, entered == null ? 1L : entered + 1L);
+    }
+    awaitGroup(jobId, "enter", peerNames);
+  }
+
+  @Override
+  public void leaveGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+      String... peerNames) throws SyncException {
+    awaitGroup(jobId, "leave", peerNames);
+  }
+
+  /**
+   * Announces the current group barrier to the given peers and waits until
+   * they announced it too. There is one node per pair of peers, so the groups
+   * of the peers don't have to match. The nodes stay until the job ends, a
+   * peer may still wait for the count of a peer that has finished, and are
+   * removed with the job root by the master.
+   */
+  private void awaitGroup(BSPJobID jobId, String phase, String... peerNames)
+      throws SyncException {
+    final String self = getPeerName();
+    try {
+      for (String peer : peerNames) {
+        if (!peer.equals(self)
+            && !writeNode(constructKey(jobId, "group", phase, self + "-" + peer),
+                new LongWritable(groupBarriers.get(peer)), true, null)) {
+          throw new SyncException("Could not " + phase
+              + " the group barrier with " + peer);
+        }
+      }
+
+      Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          synchronized (mutex) {
+            mutex.notifyAll();
+          }
+        }
+      };
+      LongWritable arrived = new LongWritable();
+      for (String peer : peerNames) {
+        if (peer.equals(self)) {
+          continue;
+        }
+        final String key = constructKey(jobId, "group", phase, peer + "-"
+            + self);
+        final long count = groupBarriers.get(peer);
+        while (true) {
+          synchronized (mutex) {
+            // the watch wakes this peer up once the other peer arrives
+            Stat stat = zk.exists(key, watcher);
+            if (stat != null && extractData(key, arrived)
+                && arrived.get() >= count) {
+              break;
+            }
+            mutex.wait(1000);
+          }
+        }
+      }
+    } catch (SyncException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SyncException(e.toString());
+    }
+  }
+
   @Override
   public void register(BSPJobID jobId, TaskAttemptID taskId,
       String hostAddress, long port) {
@@ -78,6 +78,8 @@ public class Client {
   final private static String PING_INTERVAL_NAME = "ipc.ping.interval";
   final static int DEFAULT_PING_INTERVAL = 60000; // 1 min
   final static int PING_CALL_ID = -1;
+  // calls larger than this do not keep their serialization buffer
+  final static int MAX_SEND_BUFFER_SIZE = 64 * 1024;
 
   /**
    * set the ping interval value in configuration
@@ -201,6 +203,8 @@ public class Client {
     private Socket socket = null; // connected socket
     private DataInputStream in;
     private DataOutputStream out;
+    // reused to serialize the calls, guarded by out
+    private DataOutputBuffer sendBuffer = new DataOutputBuffer();
     private int rpcTimeout;
     private int maxIdleTime; // connections will be culled if it was idle for
     // maxIdleTime msecs
@@ -594,29 +598,33 @@ public class Client {
         return;
       }
 
-      DataOutputBuffer d = null;
       try {
         synchronized (this.out) {
           if (LOG.isDebugEnabled())
             LOG.debug(getName() + " sending #" + call.id);
 
-          // for serializing the
-          // data to be written
-          d = new DataOutputBuffer();
+          // reserve the space of the data length in front of the data, so
+          // that both are written at once without concatenating them
+          DataOutputBuffer d = sendBuffer;
+          d.reset();
+          d.writeInt(0);
           d.writeInt(call.id);
           call.param.write(d);
           byte[] data = d.getData();
-          int dataLength = d.getLength();
-          out.writeInt(dataLength); // first put the data length
-          out.write(data, 0, dataLength);// write the data
+          int dataLength = d.getLength() - 4;
+          data[0] = (byte) (dataLength >>> 24);
+          data[1] = (byte) (dataLength >>> 16);
+          data[2] = (byte) (dataLength >>> 8);
+          data[3] = (byte) dataLength;
+          out.write(data, 0, d.getLength());
           out.flush();
+          // do not keep the buffer of a large call
+          if (d.getLength() > MAX_SEND_BUFFER_SIZE) {
+            sendBuffer = new DataOutputBuffer();
+          }
         }
       } catch (IOException e) {
         markClosed(e);
-      } finally {
-        // the buffer is just an in-memory buffer, but it is still polite to
-        // close early
-        IOUtils.closeStream(d);
       }
     }
 
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ipc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated statistics of the calls served by a {@link Server}: the time
+ * calls wait in the call queue, the time the handlers spend on them and the
+ * number of bytes copied to set up the responses.
+ */
+public class RpcMetrics {
+
+  private final AtomicLong numCalls = new AtomicLong();
+  private final AtomicLong queueTime = new AtomicLong();
+  private final AtomicLong handlerTime = new AtomicLong();
+  private final AtomicLong bytesCopied = new AtomicLong();
+
+  void addCall(long callQueueTime, long callHandlerTime, long callBytesCopied) {
+    numCalls.incrementAndGet();
+    queueTime.addAndGet(callQueueTime);
+    handlerTime.addAndGet(callHandlerTime);
+    bytesCopied.addAndGet(callBytesCopied);
+  }
+
+  /**
+   * @return the number of served calls.
+   */
+  public long getNumCalls() {
+    return numCalls.get();
+  }
+
+  /**
+   * @return the average time in milliseconds a call waited in the call queue.
+   */
+  public double getAvgQueueTime() {
+    return average(queueTime.get());
+  }
+
+  /**
+   * @return the average time in milliseconds a handler spent on a call.
+   */
+  public double getAvgHandlerTime() {
+    return average(handlerTime.get());
+  }
+
+  /**
+   * @return the average number of bytes copied per call.
+   */
+  public double getAvgBytesCopied() {
+    return average(bytesCopied.get());
+  }
+
+  private double average(long total) {
+    long calls = numCalls.get();
+    return (calls == 0L) ? 0d : (double) total / calls;
+  }
+
+  @Override
+  public String toString() {
+    return "calls=" + getNumCalls() + " avgQueueTime=" + getAvgQueueTime()
+        + "ms avgHandlerTime=" + getAvgHandlerTime() + "ms avgBytesCopied="
+        + getAvgBytesCopied();
+  }
+
+}
@@ -23,9 +23,7 @@ import static org.apache.hadoop.fs.CommonConfigurationKeys.IPC_SERVER_RPC_READ_T
 import static org.apache.hadoop.fs.CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_KEY;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -51,16 +49,19 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.security.AccessControlException;
@@ -144,6 +145,17 @@ public abstract class Server {
   static final String IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY = "ipc.server.max.response.size";
   static final int IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT = 1024 * 1024;
 
+  /**
+   * Responses up to this size are copied into pooled direct buffers, request
+   * buffers up to this size are reused by the connections.
+   */
+  static final int POOLED_BUFFER_SIZE = 16 * 1024;
+  /**
+   * Maximum number of responses of a connection written with a single
+   * gathering write.
+   */
+  static final int MAX_GATHERED_RESPONSES = 16;
+
   public static final Log LOG = LogFactory.getLog(Server.class);
 
   private static final ThreadLocal<Server> SERVER = new ThreadLocal<Server>();
@@ -231,6 +243,9 @@ public abstract class Server {
   private int numConnections = 0;
   private Handler[] handlers = null;
 
+  private final Queue<ByteBuffer> responseBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final RpcMetrics rpcMetrics = new RpcMetrics();
+
   /**
    * A convenience method to bind to a given address and report better
    * exceptions if the address is not a valid host.
@@ -772,37 +787,43 @@ public abstract class Server {
           //
           // Extract the first call
           //
-          call = responseQueue.removeFirst();
+          call = responseQueue.getFirst();
           SocketChannel channel = call.connection.channel;
           if (LOG.isDebugEnabled()) {
             LOG.debug(getName() + ": responding to #" + call.id + " from "
                 + call.connection);
           }
           //
-          // Send as much data as we can in the non-blocking fashion
+          // Send as much data as we can in the non-blocking fashion, pending
+          // responses in direct buffers are written together
           //
-          int numBytes = channelWrite(channel, call.response);
+          long numBytes;
+          if (numElements > 1 && call.response.isDirect()) {
+            numBytes = channel.write(gatherResponses(responseQueue));
+          } else {
+            numBytes = channelWrite(channel, call.response);
+          }
           if (numBytes < 0) {
             return true;
           }
-          if (!call.response.hasRemaining()) {
+          while (!responseQueue.isEmpty()
+              && !responseQueue.getFirst().response.hasRemaining()) {
+            call = responseQueue.removeFirst();
             call.connection.decRpcCount();
-            if (numElements == 1) { // last call fully processes.
-              done = true; // no more data for this channel.
-            } else {
-              done = false; // more calls pending to be sent.
-            }
-            if (LOG.isDebugEnabled()) {
-              LOG.debug(getName() + ": responding to #" + call.id + " from "
-                  + call.connection + " Wrote " + numBytes + " bytes.");
-            }
+            releaseResponse(call);
+          }
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(getName() + ": responding to #" + call.id + " from "
+                + call.connection + " Wrote " + numBytes + " bytes.");
+          }
+          if (responseQueue.isEmpty()) {
+            done = true; // no more data for this channel.
           } else {
             //
-            // If we were unable to write the entire response out, then
-            // insert in Selector queue.
+            // If we were unable to write all responses out, then insert in
+            // Selector queue.
             //
-            call.connection.responseQueue.addFirst(call);
-
+            call = responseQueue.getFirst();
             if (inHandler) {
               // set the serve time when the response has to be sent later
               call.timestamp = System.currentTimeMillis();
@@ -820,10 +841,6 @@ public abstract class Server {
                 decPending();
               }
             }
-            if (LOG.isDebugEnabled()) {
-              LOG.debug(getName() + ": responding to #" + call.id + " from "
-                  + call.connection + " Wrote partial " + numBytes + " bytes.");
-            }
           }
           error = false; // everything went off well
         }
@@ -837,6 +854,25 @@ public abstract class Server {
       return done;
     }
 
+    /**
+     * Collects the leading responses of the queue that are in direct buffers.
+     */
+    private ByteBuffer[] gatherResponses(LinkedList<Call> responseQueue) {
+      int count = 0;
+      for (Call call : responseQueue) {
+        if (count == MAX_GATHERED_RESPONSES || !call.response.isDirect()) {
+          break;
+        }
+        count++;
+      }
+      ByteBuffer[] buffers = new ByteBuffer[count];
+      Iterator<Call> it = responseQueue.iterator();
+      for (int i = 0; i < count; i++) {
+        buffers[i] = it.next().response;
+      }
+      return buffers;
+    }
+
     //
     // Enqueue a response from the application.
     //
@@ -873,6 +909,8 @@ public abstract class Server {
 
     private SocketChannel channel;
     private ByteBuffer data;
+    // request buffer that is reused for the following calls
+    private ByteBuffer reusableData;
     private ByteBuffer dataLengthBuffer;
     private LinkedList<Call> responseQueue;
     private volatile int rpcCount = 0; // number of outstanding rpcs
@@ -898,7 +936,7 @@ public abstract class Server {
     private final int AUTHROIZATION_FAILED_CALLID = -1;
     private final Call authFailedCall = new Call(AUTHROIZATION_FAILED_CALLID,
         null, this);
-    private ByteArrayOutputStream authFailedResponse = new ByteArrayOutputStream();
+    private DataOutputBuffer authFailedResponse = new DataOutputBuffer();
 
     private boolean useWrap = false;
 
@@ -1046,7 +1084,16 @@ public abstract class Server {
             LOG.warn("Unexpected data length " + dataLength + "!! from "
                 + getHostAddress());
           }
-          data = ByteBuffer.allocate(dataLength);
+          if (reusableData != null && reusableData.capacity() >= dataLength) {
+            reusableData.clear();
+            reusableData.limit(dataLength);
+            data = reusableData;
+          } else {
+            data = ByteBuffer.allocate(dataLength);
+            if (dataLength <= POOLED_BUFFER_SIZE) {
+              reusableData = data;
+            }
+          }
         }
 
         count = channelRead(channel, data);
@@ -1060,7 +1107,7 @@ public abstract class Server {
             continue;
           }
           boolean isHeaderRead = headerRead;
-          processOneRpc(data.array());
+          processOneRpc(data.array(), data.limit());
           data = null;
           if (!isHeaderRead) {
             continue;
@@ -1071,8 +1118,9 @@ public abstract class Server {
     }
 
     // / Reads the connection header following version
-    private void processHeader(byte[] buf) throws IOException {
-      DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf));
+    private void processHeader(byte[] buf, int length) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf,
+          0, length));
       header.readFields(in);
       try {
         String protocolClassName = header.getProtocol();
@@ -1093,12 +1141,12 @@ public abstract class Server {
       */
     }
 
-    private void processOneRpc(byte[] buf) throws IOException,
+    private void processOneRpc(byte[] buf, int length) throws IOException,
         InterruptedException {
       if (headerRead) {
-        processData(buf);
+        processData(buf, length);
       } else {
-        processHeader(buf);
+        processHeader(buf, length);
         headerRead = true;
         if (!authorizeConnection()) {
           throw new AccessControlException("Connection from " + this
@@ -1108,9 +1156,10 @@ public abstract class Server {
       }
     }
 
-    private void processData(byte[] buf) throws IOException,
+    private void processData(byte[] buf, int length) throws IOException,
         InterruptedException {
-      DataInputStream dis = new DataInputStream(new ByteArrayInputStream(buf));
+      DataInputStream dis = new DataInputStream(new ByteArrayInputStream(buf,
+          0, length));
       int id = dis.readInt(); // try to read an id
 
       if (LOG.isDebugEnabled())
@@ -1150,6 +1199,7 @@ public abstract class Server {
 
     private synchronized void close() throws IOException {
       data = null;
+      reusableData = null;
       dataLengthBuffer = null;
       if (!channel.isOpen())
         return;
@@ -1181,12 +1231,12 @@ public abstract class Server {
     public void run() {
       LOG.info(getName() + ": starting");
       SERVER.set(Server.this);
-      ByteArrayOutputStream buf = new ByteArrayOutputStream(
-          INITIAL_RESP_BUF_SIZE);
+      DataOutputBuffer buf = new DataOutputBuffer(INITIAL_RESP_BUF_SIZE);
       while (running) {
         try {
           final Call call = callQueue.take(); // pop the queue; maybe blocked
                                               // here
+          long startTime = System.currentTimeMillis();
 
           if (LOG.isDebugEnabled())
             LOG.debug(getName() + ": has #" + call.id + " from "
@@ -1239,12 +1289,14 @@ public abstract class Server {
             // its own message ordering.
             setupResponse(buf, call, (error == null) ? Status.SUCCESS
                 : Status.ERROR, value, errorClass, error);
+            rpcMetrics.addCall(startTime - call.timestamp,
+                System.currentTimeMillis() - startTime, buf.getLength());
             // Discard the large buf and reset it back to
             // smaller size to freeup heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+            if (buf.getLength() > maxRespSize) {
+              LOG.warn("Large response size " + buf.getLength()
+                  + " for call " + call.toString());
+              buf = new DataOutputBuffer(INITIAL_RESP_BUF_SIZE);
             }
             responder.doRespond(call);
           }
@@ -1327,6 +1379,14 @@ public abstract class Server {
       connection.close();
     } catch (IOException e) {
     }
+    // the pending responses are never written, their buffers go back to the
+    // pool
+    synchronized (connection.responseQueue) {
+      for (Call call : connection.responseQueue) {
+        releaseResponse(call);
+      }
+      connection.responseQueue.clear();
+    }
   }
 
   /**
@@ -1340,21 +1400,53 @@ public abstract class Server {
    * @param error error message, if the call failed
    * @throws IOException
    */
-  private void setupResponse(ByteArrayOutputStream response, Call call,
+  private void setupResponse(DataOutputBuffer response, Call call,
       Status status, Writable rv, String errorClass, String error)
       throws IOException {
     response.reset();
-    DataOutputStream out = new DataOutputStream(response);
-    out.writeInt(call.id); // write call id
-    out.writeInt(status.state); // write status
+    response.writeInt(call.id); // write call id
+    response.writeInt(status.state); // write status
 
     if (status == Status.SUCCESS) {
-      rv.write(out);
+      rv.write(response);
+    } else {
+      WritableUtils.writeString(response, errorClass);
+      WritableUtils.writeString(response, error);
+    }
+
+    int length = response.getLength();
+    ByteBuffer buffer;
+    if (length <= POOLED_BUFFER_SIZE) {
+      buffer = responseBuffers.poll();
+      if (buffer == null) {
+        buffer = ByteBuffer.allocateDirect(POOLED_BUFFER_SIZE);
+      }
+      buffer.clear();
     } else {
-      WritableUtils.writeString(out, errorClass);
-      WritableUtils.writeString(out, error);
+      buffer = ByteBuffer.allocate(length);
+    }
+    buffer.put(response.getData(), 0, length);
+    buffer.flip();
+    call.setResponse(buffer);
+  }
+
+  /**
+   * @return the number of response buffers in the pool.
+   */
+  int getNumPooledBuffers() {
+    return responseBuffers.size();
+  }
+
+  /**
+   * Returns the buffer of a response that has been written to the pool.
+   */
+  private void releaseResponse(Call call) {
+    ByteBuffer buffer = call.response;
+    call.response = null;
+    if (buffer != null && buffer.isDirect()
+        && responseBuffers.size() < handlerCount * MAX_GATHERED_RESPONSES) {
+      responseBuffers.offer(buffer);
     }
-    call.setResponse(ByteBuffer.wrap(response.toByteArray()));
   }
 
   Configuration getConf() {
@@ -1390,7 +1482,7 @@ public abstract class Server {
 
   /** Stops the service. No new calls will be handled after this is called. */
   public synchronized void stop() {
-    LOG.info("Stopping server on " + port);
+    LOG.info("Stopping server on " + port + ": " + rpcMetrics);
     running = false;
     if (handlers != null) {
       for (int i = 0; i < handlerCount; i++) {
@@ -1481,6 +1573,13 @@ public abstract class Server {
     return callQueue.size();
   }
 
+  /**
+   * @return the statistics of the calls served so far.
+   */
+  public RpcMetrics getRpcMetrics() {
+    return rpcMetrics;
+  }
+
   /**
    * When the read or write buffer size is larger than this limit, i/o will be
    * done in chunks of this size. Most RPC requests and responses would be be
@@ -86,8 +86,9 @@ public class TestBSPTaskFaults extends TestCase {
     private volatile long firstPingTime;
     private volatile long lastPingTime;
     private boolean isShutDown = false;
-    private boolean taskComplete = false;
-    private boolean errorCondition = false;
+    private volatile boolean taskComplete = false;
+    private volatile boolean errorCondition = false;
+    private volatile boolean knowsTask = true;
     private Configuration conf;
 
     public MinimalGroomServer(Configuration config) throws IOException {
@@ -119,7 +120,7 @@ public class TestBSPTaskFaults extends TestCase {
       }
       lastPingTime = System.currentTimeMillis();
 
-      return true;
+      return knowsTask;
     }
 
     @Override
@@ -167,7 +168,6 @@ public class TestBSPTaskFaults extends TestCase {
     }
   }
 
-  @SuppressWarnings("unused")
   private class TestBSPTaskThreadRunner extends Thread {
 
     BSPJob job;
@@ -604,6 +604,24 @@ public class TestBSPTaskFaults extends TestCase {
     runner.destroyProcess();
   }
 
+  public void testBSPTaskInProcessLostGroom() throws Exception {
+    LOG.info("Testing lost contact of a task running in process.");
+    conf.setInt(TEST_POINT, 0);
+    conf.setBoolean(TaskRunner.IN_PROCESS_KEY, true);
+    // the groom server does not know the task any more
+    groom.knowsTask = false;
+
+    TestBSPTaskThreadRunner runner = new TestBSPTaskThreadRunner(new BSPJob(
+        conf));
+    runner.start();
+    runner.join(20000);
+
+    // the task stopped without exiting this JVM and reported the failure
+    assertFalse(runner.isAlive());
+    assertTrue(groom.errorCondition);
+    assertFalse(groom.taskComplete);
+  }
+
   @Override
   protected void tearDown() throws Exception {
     super.tearDown();
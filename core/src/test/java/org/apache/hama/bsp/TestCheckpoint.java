@@ -112,6 +112,10 @@ public class TestCheckpoint extends TestCase {
 
     }
 
+    @Override
+    public void finishSendPhase() throws IOException {
+    }
+
     @Override
     public void clearOutgoingMessages() {
     }
@@ -204,6 +208,17 @@ public class TestCheckpoint extends TestCase {
       LOG.info("After barrier " + superstepCount);
     }
 
+    @Override
+    public void sync(String... peerNames) throws IOException, SyncException,
+        InterruptedException {
+    }
+
+    @Override
+    public boolean advance() throws IOException, SyncException,
+        InterruptedException {
+      return false;
+    }
+
     @Override
     public long getSuperstepCount() {
       return superstepCount;
@@ -405,6 +420,16 @@ public class TestCheckpoint extends TestCase {
         throws Exception {
     }
 
+    @Override
+    public void enterGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+        String... peerNames) throws SyncException {
+    }
+
+    @Override
+    public void leaveGroupBarrier(BSPJobID jobId, TaskAttemptID taskId,
+        String... peerNames) throws SyncException {
+    }
+
     @Override
     public void enterBarrier(BSPJobID jobId, TaskAttemptID taskId,
         long superstep) throws SyncException {
@@ -17,14 +17,19 @@
  */
 package org.apache.hama.bsp;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hama.Constants;
 import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.sync.SyncException;
 
 public class TestLocalRunner extends TestCase {
 
@@ -51,4 +56,164 @@ public class TestLocalRunner extends TestCase {
     }
   }
 
+  private static final int TOKEN_HOPS = 100;
+  private static final AtomicInteger hops = new AtomicInteger();
+
+  /**
+   * Passes a token around the ring of peers without barriers.
+   */
+  public static class TokenRingBSP extends
+      BSP<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> {
+
+    @Override
+    public void bsp(
+        BSPPeer<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> peer)
+        throws IOException, SyncException, InterruptedException {
+      String next = peer.getPeerName((peer.getPeerIndex() + 1)
+          % peer.getNumPeers());
+      if (peer.getPeerIndex() == 0) {
+        peer.send(next, new IntWritable(TOKEN_HOPS));
+      }
+      while (peer.advance()) {
+        IntWritable token;
+        while ((token = peer.getCurrentMessage()) != null) {
+          hops.incrementAndGet();
+          if (token.get() > 1) {
+            peer.send(next, new IntWritable(token.get() - 1));
+          }
+        }
+      }
+    }
+  }
+
+  public void testAsyncJob() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("bsp.local.dir", "/tmp/hama-test");
+    conf.setBoolean(Constants.ASYNC_ENABLED, true);
+    conf.setInt(Constants.ASYNC_STALENESS, 2);
+    BSPJob bsp = new BSPJob(new HamaConfiguration(conf));
+    bsp.setJobName("Test asynchronous token ring");
+    bsp.setBspClass(TokenRingBSP.class);
+    bsp.setNumBspTask(3);
+    bsp.setInputFormat(NullInputFormat.class);
+    bsp.setOutputFormat(NullOutputFormat.class);
+
+    hops.set(0);
+    assertTrue(bsp.waitForCompletion(true));
+    assertEquals(TOKEN_HOPS, hops.get());
+  }
+
+  private static final int ROUNDS = 5;
+  private static final AtomicInteger exchanged = new AtomicInteger();
+
+  /**
+   * Exchanges messages between pairs of peers, synchronizing only the pairs.
+   */
+  public static class PairExchangeBSP extends
+      BSP<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> {
+
+    @Override
+    public void bsp(
+        BSPPeer<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> peer)
+        throws IOException, SyncException, InterruptedException {
+      int partner = peer.getPeerIndex() ^ 1;
+      String partnerName = peer.getPeerName(partner);
+      for (int round = 0; round < ROUNDS; round++) {
+        peer.send(partnerName, new IntWritable(round * 10 + peer.getPeerIndex()));
+        peer.sync(peer.getPeerName(), partnerName);
+        IntWritable message = peer.getCurrentMessage();
+        if (message != null && message.get() == round * 10 + partner
+            && peer.getCurrentMessage() == null) {
+          exchanged.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  public void testGroupSync() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("bsp.local.dir", "/tmp/hama-test");
+    BSPJob bsp = new BSPJob(new HamaConfiguration(conf));
+    bsp.setJobName("Test group barriers");
+    bsp.setBspClass(PairExchangeBSP.class);
+    bsp.setNumBspTask(4);
+    bsp.setInputFormat(NullInputFormat.class);
+    bsp.setOutputFormat(NullOutputFormat.class);
+
+    exchanged.set(0);
+    assertTrue(bsp.waitForCompletion(true));
+    assertEquals(4 * ROUNDS, exchanged.get());
+  }
+
+  private static final int OUTSIDER_BUNDLES = 200;
+  private static final int OUTSIDER_MESSAGES = 10;
+  private static final AtomicInteger outsiderReceived = new AtomicInteger();
+
+  /**
+   * Peers 0 and 1 synchronize as a pair, while peer 2 keeps sending to peer 0
+   * from outside the pair. A global barrier ends the job.
+   */
+  public static class OutsiderBSP extends
+      BSP<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> {
+
+    @Override
+    public void bsp(
+        BSPPeer<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable> peer)
+        throws IOException, SyncException, InterruptedException {
+      if (peer.getPeerIndex() == 2) {
+        String target = peer.getPeerName(0);
+        for (int i = 0; i < OUTSIDER_BUNDLES; i++) {
+          for (int j = 0; j < OUTSIDER_MESSAGES; j++) {
+            peer.send(target, new IntWritable(-1));
+          }
+          // transfers the messages without waiting for anyone
+          peer.sync(peer.getPeerName());
+        }
+      } else {
+        int partner = peer.getPeerIndex() ^ 1;
+        String partnerName = peer.getPeerName(partner);
+        for (int round = 0; round < ROUNDS * 10; round++) {
+          peer.send(partnerName,
+              new IntWritable(round * 10 + peer.getPeerIndex()));
+          peer.sync(peer.getPeerName(), partnerName);
+          int fromPartner = 0;
+          IntWritable message;
+          while ((message = peer.getCurrentMessage()) != null) {
+            if (message.get() < 0) {
+              outsiderReceived.incrementAndGet();
+            } else if (message.get() == round * 10 + partner) {
+              fromPartner++;
+            }
+          }
+          if (fromPartner == 1) {
+            exchanged.incrementAndGet();
+          }
+        }
+      }
+
+      peer.sync();
+      while (peer.getCurrentMessage() != null) {
+        outsiderReceived.incrementAndGet();
+      }
+    }
+  }
+
+  public void testGroupSyncWithOutsideSender() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("bsp.local.dir", "/tmp/hama-test");
+    BSPJob bsp = new BSPJob(new HamaConfiguration(conf));
+    bsp.setJobName("Test group barriers with an outside sender");
+    bsp.setBspClass(OutsiderBSP.class);
+    bsp.setNumBspTask(3);
+    bsp.setInputFormat(NullInputFormat.class);
+    bsp.setOutputFormat(NullOutputFormat.class);
+
+    exchanged.set(0);
+    outsiderReceived.set(0);
+    assertTrue(bsp.waitForCompletion(true));
+    // every pair exchange saw its partner's message, no message got lost
+    assertEquals(2 * ROUNDS * 10, exchanged.get());
+    assertEquals(OUTSIDER_BUNDLES * OUTSIDER_MESSAGES, outsiderReceived.get());
+  }
+
 }
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.bsp.BSPPeerImpl.PeerCounter;
+
+public class TestStripedCounters extends TestCase {
+
+  public void testFold() {
+    StripedCounters<PeerCounter> striped = new StripedCounters<PeerCounter>(
+        PeerCounter.class);
+    striped.add(PeerCounter.TOTAL_MESSAGES_SENT, 3L);
+    striped.add(PeerCounter.TOTAL_MESSAGES_SENT, 4L);
+    striped.add(PeerCounter.SUPERSTEP_SUM, 1L);
+
+    Counters counters = new Counters();
+    counters.incrCounter(PeerCounter.TOTAL_MESSAGES_SENT, 10L);
+    striped.fold(counters);
+    assertEquals(17L, counters.getCounter(PeerCounter.TOTAL_MESSAGES_SENT));
+    assertEquals(1L, counters.getCounter(PeerCounter.SUPERSTEP_SUM));
+
+    // the stripes are empty after a fold, only new increments are added
+    striped.fold(counters);
+    assertEquals(17L, counters.getCounter(PeerCounter.TOTAL_MESSAGES_SENT));
+    striped.add(PeerCounter.TOTAL_MESSAGES_SENT, 1L);
+    striped.fold(counters);
+    assertEquals(18L, counters.getCounter(PeerCounter.TOTAL_MESSAGES_SENT));
+  }
+
+  public void testConcurrentIncrements() throws Exception {
+    final StripedCounters<PeerCounter> striped = new StripedCounters<PeerCounter>(
+        PeerCounter.class);
+    final int increments = 100000;
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < increments; j++) {
+            striped.add(PeerCounter.TOTAL_MESSAGES_RECEIVED, 1L);
+          }
+        }
+      });
+    }
+    Counters counters = new Counters();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    // folds while the threads increment must not lose any increment
+    for (int i = 0; i < 10; i++) {
+      striped.fold(counters);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    striped.fold(counters);
+    assertEquals(8L * increments,
+        counters.getCounter(PeerCounter.TOTAL_MESSAGES_RECEIVED));
+  }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.bsp.BSPPeerImpl.PeerCounter;
+import org.apache.hama.ipc.BSPPeerProtocol;
+
+public class TestTaskStatusReporter extends TestCase {
+
+  private final List<TaskStatus> reports = new ArrayList<TaskStatus>();
+
+  private BSPPeerProtocol umbilical() {
+    return (BSPPeerProtocol) Proxy.newProxyInstance(getClass()
+        .getClassLoader(), new Class<?>[] { BSPPeerProtocol.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            if (method.getName().equals("statusUpdate")) {
+              synchronized (reports) {
+                reports.add(copy((TaskStatus) args[1]));
+              }
+              return true;
+            }
+            return null;
+          }
+        });
+  }
+
+  private static TaskStatus copy(TaskStatus status) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    status.write(new DataOutputStream(bytes));
+    TaskStatus copy = new TaskStatus();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+    return copy;
+  }
+
+  public void testCoalescedDeltas() throws Exception {
+    TaskAttemptID taskId = new TaskAttemptID(new TaskID(new BSPJobID(
+        "test", 1), 1), 1);
+    Counters counters = new Counters();
+    counters.incrCounter(PeerCounter.SUPERSTEP_SUM, 5L);
+
+    // the status as known by the groom server
+    TaskStatus groomStatus = new TaskStatus(taskId.getJobID(), taskId, 0.0f,
+        TaskStatus.State.RUNNING, "running", "localhost",
+        TaskStatus.Phase.STARTING, Counters.sum(counters, new Counters()));
+
+    TaskStatus status = new TaskStatus(taskId.getJobID(), taskId, 1.0f,
+        TaskStatus.State.RUNNING, "running", "localhost",
+        TaskStatus.Phase.COMPUTE, counters);
+    TaskStatusReporter reporter = new TaskStatusReporter(umbilical(), taskId,
+        counters, 60000L);
+    reporter.start();
+
+    for (int i = 0; i < 3; i++) {
+      counters.incrCounter(PeerCounter.SUPERSTEP_SUM, 1L);
+      counters.incrCounter(PeerCounter.TOTAL_MESSAGES_SENT, 10L);
+      reporter.update(status);
+    }
+    reporter.close();
+
+    // the first update may be sent right away, the others are coalesced
+    assertTrue(reports.size() >= 1 && reports.size() <= 2);
+    for (TaskStatus report : reports) {
+      assertTrue(report.isCountersDelta());
+      assertEquals(TaskStatus.Phase.COMPUTE, report.getPhase());
+      groomStatus.statusUpdate(report);
+    }
+    assertEquals(8L, groomStatus.getSuperstepCount());
+    assertEquals(30L,
+        groomStatus.getCounters().getCounter(PeerCounter.TOTAL_MESSAGES_SENT));
+    assertEquals(TaskStatus.Phase.COMPUTE, groomStatus.getPhase());
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.bsp.message;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hama.Constants;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPMessageBundle;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.BSPPeerImpl;
+import org.apache.hama.bsp.Counters;
+import org.apache.hama.bsp.TaskAttemptID;
+import org.apache.hama.bsp.message.queue.DiskQueue;
+import org.apache.hama.util.BSPNetUtils;
+
+public class TestStreamingMessageManager extends TestCase {
+
+  public void testStreamingMessaging() throws Exception {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(DiskQueue.DISK_QUEUE_PATH_KEY,
+        TestHamaMessageManager.TMP_OUTPUT_PATH);
+    conf.set(MessageManagerFactory.MESSAGE_MANAGER_CLASS,
+        "org.apache.hama.bsp.message.StreamingMessageManagerImpl");
+    // small chunks, so that the bundles are split and the reads are paused
+    conf.setInt(StreamingMessageManagerImpl.CHUNK_SIZE_KEY, 64);
+    conf.setInt(StreamingMessageManagerImpl.MAX_PENDING_CHUNKS_KEY, 2);
+    MessageManager<IntWritable> messageManager = MessageManagerFactory
+        .getMessageManager(conf);
+
+    assertTrue(messageManager instanceof StreamingMessageManagerImpl);
+
+    InetSocketAddress peer = new InetSocketAddress(
+        BSPNetUtils.getCanonicalHostname(), BSPNetUtils.getFreePort()
+            + (TestHamaMessageManager.increment++));
+    conf.set(Constants.PEER_HOST, Constants.DEFAULT_PEER_HOST);
+    conf.setInt(Constants.PEER_PORT, Constants.DEFAULT_PEER_PORT);
+
+    BSPPeer<?, ?, ?, ?, IntWritable> dummyPeer = new BSPPeerImpl<NullWritable, NullWritable, NullWritable, NullWritable, IntWritable>(
+        conf, FileSystem.get(conf), new Counters());
+    TaskAttemptID id = new TaskAttemptID("1", 1, 1, 1);
+    messageManager.init(id, dummyPeer, conf, peer);
+    peer = messageManager.getListenerAddress();
+    String peerName = peer.getHostName() + ":" + peer.getPort();
+
+    for (int superstep = 0; superstep < 3; superstep++) {
+      for (int i = 0; i < 1000; i++) {
+        messageManager.send(peerName, new IntWritable(i));
+      }
+
+      Iterator<Entry<InetSocketAddress, BSPMessageBundle<IntWritable>>> messageIterator = messageManager
+          .getOutgoingBundles();
+      Entry<InetSocketAddress, BSPMessageBundle<IntWritable>> entry = messageIterator
+          .next();
+      assertEquals(entry.getKey(), peer);
+      assertEquals(1000, entry.getValue().size());
+
+      messageManager.transfer(entry.getKey(), entry.getValue());
+      messageManager.finishSendPhase();
+      messageManager.clearOutgoingMessages();
+
+      assertEquals(1000, messageManager.getNumCurrentMessages());
+      long sum = 0L;
+      IntWritable currentMessage;
+      while ((currentMessage = messageManager.getCurrentMessage()) != null) {
+        sum += currentMessage.get();
+      }
+      assertEquals(999L * 1000L / 2L, sum);
+    }
+    messageManager.close();
+  }
+}
@@ -22,11 +22,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hama.bsp.BSPMessageBundle;
 import org.apache.hama.bsp.message.type.IntegerMessage;
 
 public class TestBSPMessageCompressor extends TestCase {
@@ -67,4 +71,64 @@ public class TestBSPMessageCompressor extends TestCase {
     d.readFields(dis);
     assertEquals(321, d.get());
   }
+
+  public void testLZ4Compression() {
+    LZ4Compressor<IntWritable> compressor = new LZ4Compressor<IntWritable>();
+    Random random = new Random(7L);
+    for (int length : new int[] { 0, 5, 13, 100, 70000 }) {
+      byte[] bytes = new byte[length + 3];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) (i % 3 == 0 ? random.nextInt(256) : i % 29);
+      }
+      byte[] compressed = compressor.compress(bytes, 3, length);
+      assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, 3, length + 3),
+          compressor.decompress(compressed)));
+    }
+  }
+
+  public void testBundleCompression() throws IOException {
+    LZ4Compressor<IntWritable> compressor = new LZ4Compressor<IntWritable>();
+    BSPMessageBundle<IntWritable> bundle = new BSPMessageBundle<IntWritable>();
+    bundle.setCompressor(compressor, 128);
+    for (int i = 0; i < 1000; i++) {
+      bundle.addMessage(new IntWritable(i % 10));
+    }
+    int compressedLength = bundle.compress();
+    assertTrue(compressedLength > 0 && compressedLength < bundle.getLength());
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bundle.write(new DataOutputStream(bos));
+    assertTrue(bos.size() < bundle.getLength());
+
+    BSPMessageBundle<IntWritable> received = new BSPMessageBundle<IntWritable>();
+    received.readFields(new DataInputStream(new ByteArrayInputStream(bos
+        .toByteArray())));
+    received.setCompressor(compressor, 128);
+    assertEquals(1000, received.size());
+    int i = 0;
+    for (IntWritable message : received) {
+      assertEquals(i++ % 10, message.get());
+    }
+    assertEquals(1000, i);
+  }
+
+  public void testCompressionPolicy() {
+    InetSocketAddress fast = new InetSocketAddress("localhost", 1);
+    InetSocketAddress slow = new InetSocketAddress("localhost", 2);
+    CompressionPolicy policy = new CompressionPolicy(true);
+    for (InetSocketAddress addr : new InetSocketAddress[] { fast, slow }) {
+      assertTrue(policy.shouldCompress(addr));
+      policy.compressed(addr, 1000L, 500L, 10000L);
+    }
+    // sending a byte takes a nanosecond, compressing ten
+    policy.transferred(fast, 500L, 500L);
+    // sending a byte takes a hundred nanoseconds
+    policy.transferred(slow, 500L, 50000L);
+    for (int i = 0; i < CompressionPolicy.PROBE_INTERVAL - 2; i++) {
+      policy.shouldCompress(fast);
+      policy.shouldCompress(slow);
+    }
+    assertFalse(policy.isCompressing(fast));
+    assertTrue(policy.isCompressing(slow));
+  }
 }
@@ -19,13 +19,16 @@ package org.apache.hama.ipc;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.util.StringUtils;
@@ -71,6 +74,79 @@ public class TestIPC extends TestCase {
     }
   }
 
+  /**
+   * Echoes byte arrays, or fails every call.
+   */
+  private static class BytesServer extends Server {
+    private boolean fail;
+    // if set, the calls count down the first and wait for the second before
+    // they answer
+    private CountDownLatch called;
+    private CountDownLatch answer;
+
+    public BytesServer(int handlerCount, boolean fail) throws IOException {
+      super(ADDRESS, 0, BytesWritable.class, handlerCount, conf);
+      this.fail = fail;
+    }
+
+    @Override
+    public Writable call(Class<?> protocol, Writable param, long receiveTime)
+        throws IOException {
+      if (answer != null) {
+        called.countDown();
+        try {
+          answer.await();
+        } catch (InterruptedException e) {
+        }
+      }
+      if (fail) {
+        throw new IOException("Failing call of " + param);
+      }
+      return param;
+    }
+  }
+
+  /**
+   * Calls with payloads of random sizes around the size of the pooled buffers,
+   * so that small and large requests and responses alternate.
+   */
+  private static class BytesCaller extends Thread {
+    private Client client;
+    private InetSocketAddress server;
+    private int count;
+    private boolean failed;
+
+    public BytesCaller(Client client, InetSocketAddress server, int count) {
+      this.client = client;
+      this.server = server;
+      this.count = count;
+    }
+
+    @Override
+    public void run() {
+      Random random = new Random();
+      for (int i = 0; i < count; i++) {
+        try {
+          byte[] bytes = new byte[random
+              .nextInt(3 * Server.POOLED_BUFFER_SIZE)];
+          random.nextBytes(bytes);
+          @SuppressWarnings("deprecation")
+          BytesWritable value = (BytesWritable) client.call(new BytesWritable(
+              bytes), server);
+          if (!Arrays.equals(bytes,
+              Arrays.copyOf(value.getBytes(), value.getLength()))) {
+            LOG.fatal("Call failed!");
+            failed = true;
+            break;
+          }
+        } catch (Exception e) {
+          LOG.fatal("Caught: " + StringUtils.stringifyException(e));
+          failed = true;
+        }
+      }
+    }
+  }
+
   private static class SerialCaller extends Thread {
     private Client client;
     private InetSocketAddress server;
@@ -167,6 +243,8 @@ public class TestIPC extends TestCase {
     for (int i = 0; i < clientCount; i++) {
       clients[i].stop();
     }
+    assertEquals(callerCount * callCount, server.getRpcMetrics().getNumCalls());
+    assertTrue(server.getRpcMetrics().getAvgBytesCopied() > 0);
     server.stop();
   }
 
@@ -211,6 +289,99 @@ public class TestIPC extends TestCase {
     }
   }
 
+  public void testMixedSizes() throws Exception {
+    int handlerCount = 4;
+    Server server = new BytesServer(handlerCount, false);
+    InetSocketAddress addr = BSPNetUtils.getConnectAddress(server);
+    server.start();
+
+    // the callers of a client share its connection, so several responses
+    // queue up for a single gathering write
+    Client[] clients = new Client[2];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = new Client(BytesWritable.class, conf);
+    }
+    BytesCaller[] callers = new BytesCaller[8];
+    for (int i = 0; i < callers.length; i++) {
+      callers[i] = new BytesCaller(clients[i % clients.length], addr, 50);
+      callers[i].start();
+    }
+    for (int i = 0; i < callers.length; i++) {
+      callers[i].join();
+      assertFalse(callers[i].failed);
+    }
+    for (int i = 0; i < clients.length; i++) {
+      clients[i].stop();
+    }
+    assertEquals(callers.length * 50, server.getRpcMetrics().getNumCalls());
+    assertTrue(server.getNumPooledBuffers() > 0);
+    assertTrue(server.getNumPooledBuffers() <= handlerCount
+        * Server.MAX_GATHERED_RESPONSES);
+    server.stop();
+  }
+
+  @SuppressWarnings("deprecation")
+  public void testFailedCallsReleaseBuffers() throws Exception {
+    Server server = new BytesServer(1, true);
+    InetSocketAddress addr = BSPNetUtils.getConnectAddress(server);
+    server.start();
+
+    Client client = new Client(BytesWritable.class, conf);
+    for (int i = 0; i < 10; i++) {
+      try {
+        client.call(new BytesWritable(new byte[i]), addr);
+        fail("Expected the call to fail");
+      } catch (RemoteException e) {
+        assertEquals(IOException.class.getName(), e.getClassName());
+      }
+    }
+    client.stop();
+    // the error responses are released after they are written, so the serial
+    // calls reuse their buffers
+    waitForPooledBuffers(server);
+    assertTrue(server.getNumPooledBuffers() < 10);
+    server.stop();
+  }
+
+  public void testClosedConnectionReleasesBuffers() throws Exception {
+    BytesServer server = new BytesServer(1, false);
+    server.called = new CountDownLatch(1);
+    server.answer = new CountDownLatch(1);
+    final InetSocketAddress addr = BSPNetUtils.getConnectAddress(server);
+    server.start();
+
+    final Client client = new Client(BytesWritable.class, conf);
+    Thread caller = new Thread() {
+      @SuppressWarnings("deprecation")
+      @Override
+      public void run() {
+        try {
+          client.call(new BytesWritable(new byte[16]), addr);
+        } catch (IOException e) {
+          // the client is stopped before the answer
+        }
+      }
+    };
+    caller.start();
+    server.called.await();
+    client.stop();
+    caller.join();
+
+    // the response to the closed connection fails or is dropped, either way
+    // its buffer goes back to the pool
+    server.answer.countDown();
+    waitForPooledBuffers(server);
+    server.stop();
+  }
+
+  private static void waitForPooledBuffers(Server server)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && server.getNumPooledBuffers() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(server.getNumPooledBuffers() > 0);
+  }
+
   @SuppressWarnings("deprecation")
   public void testStandAloneClient() throws Exception {
     testParallel(10, false, 2, 4, 2, 4, 100);
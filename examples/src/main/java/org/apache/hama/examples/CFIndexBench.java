@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.examples;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.ml.recommendation.cf.FactorIndex;
+
+/**
+ * Measures recall and queries per second of the OnlineCF factor index
+ * against an exact scan, on random factor vectors.
+ */
+public class CFIndexBench {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 4) {
+      System.out
+          .println("Usage: <nVectors> <rank> <nQueries> <topN> [nTables] [nBits]");
+      System.exit(-1);
+    }
+
+    int nVectors = Integer.parseInt(args[0]);
+    int rank = Integer.parseInt(args[1]);
+    int nQueries = Integer.parseInt(args[2]);
+    int topN = Integer.parseInt(args[3]);
+    int nTables = (args.length > 4) ? Integer.parseInt(args[4]) : 8;
+    int nBits = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+
+    Random r = new Random(42L);
+    FactorIndex.Builder builder = new FactorIndex.Builder(rank);
+    for (int i = 0; i < nVectors; i++) {
+      builder.add(i, new DenseDoubleVector(randomVector(r, rank)));
+    }
+    double[][] queries = new double[nQueries][];
+    for (int i = 0; i < nQueries; i++) {
+      queries[i] = randomVector(r, rank);
+    }
+
+    for (FactorIndex.Metric metric : FactorIndex.Metric.values()) {
+      long startTime = System.currentTimeMillis();
+      FactorIndex index = builder.build(metric, nTables, nBits, 42L);
+      long buildTime = System.currentTimeMillis() - startTime;
+
+      startTime = System.nanoTime();
+      FactorIndex.Result[] exact = new FactorIndex.Result[nQueries];
+      for (int i = 0; i < nQueries; i++) {
+        exact[i] = index.searchExact(queries[i], topN);
+      }
+      long exactTime = System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      FactorIndex.Result[] approximate = index.search(queries, topN);
+      long approximateTime = System.nanoTime() - startTime;
+
+      long hits = 0;
+      long total = 0;
+      for (int i = 0; i < nQueries; i++) {
+        Set<Long> expected = new HashSet<Long>();
+        for (int j = 0; j < exact[i].size(); j++) {
+          expected.add(exact[i].getId(j));
+        }
+        for (int j = 0; j < approximate[i].size(); j++) {
+          if (expected.contains(approximate[i].getId(j))) {
+            hits++;
+          }
+        }
+        total += expected.size();
+      }
+
+      System.out.println(metric + ": build " + buildTime / 1000.0
+          + " seconds, recall@" + topN + " "
+          + ((total == 0) ? 1.0 : (double) hits / total) + ", "
+          + qps(nQueries, approximateTime) + " queries/sec (exact scan "
+          + qps(nQueries, exactTime) + " queries/sec)");
+    }
+  }
+
+  private static double[] randomVector(Random r, int rank) {
+    double[] vector = new double[rank];
+    for (int i = 0; i < rank; i++) {
+      vector[i] = r.nextGaussian();
+    }
+    return vector;
+  }
+
+  private static double qps(int nQueries, long nanos) {
+    return (nanos == 0) ? 0 : nQueries * 1e9 / nanos;
+  }
+}
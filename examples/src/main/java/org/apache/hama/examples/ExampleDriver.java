@@ -33,6 +33,9 @@ public class ExampleDriver {
           "Mindist search / Connected Components");
       pgd.addClass("cmb", CombineExample.class, "Combine");
       pgd.addClass("bench", RandBench.class, "Random Benchmark");
+      pgd.addClass("graphbench", GraphBench.class, "Graph Engine Benchmark");
+      pgd.addClass("cfindexbench", CFIndexBench.class,
+          "OnlineCF similarity index Benchmark");
       pgd.addClass("pagerank", PageRank.class, "PageRank");
       pgd.addClass("inlnkcount", InlinkCount.class, "InlinkCount");
       pgd.addClass("bipartite", BipartiteMatching.class, "Bipartite Matching");
@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.SequenceFileInputFormat;
+import org.apache.hama.commons.io.TextArrayWritable;
+import org.apache.hama.commons.util.TextPair;
+import org.apache.hama.examples.util.RMatGraphGen;
+import org.apache.hama.graph.Edge;
+import org.apache.hama.graph.GraphJob;
+import org.apache.hama.graph.Vertex;
+import org.apache.hama.graph.VertexInputReader;
+
+import com.google.common.base.Optional;
+
+/**
+ * Benchmarks the graph engine with PageRank, SSSP, MindistSearch and
+ * BipartiteMatching on a power-law graph generated by {@link RMatGraphGen}.
+ * Each job writes the metrics of its supersteps per task, which are summed up
+ * per superstep over the tasks and written as tab separated lines to
+ * "results.tsv" in the working directory and to the console. Settings like
+ * "hama.graph.vertices.info", the message queue or "bsp.combiner.class" are
+ * passed as key=value arguments, so the runs can be compared. It runs with the
+ * local runner as well as on a cluster.
+ */
+public class GraphBench {
+
+  public static final String[] ALGORITHMS = { "pagerank", "sssp",
+      "mdstsearch", "bipartite" };
+  private static final long SEED = 42L;
+
+  /**
+   * Reads the vertices of the generated graph with an edge weight between 1
+   * and 10 that is the same for every run.
+   */
+  public static class SSSPSeqReader extends
+      VertexInputReader<Text, TextArrayWritable, Text, IntWritable, IntWritable> {
+
+    @Override
+    public boolean parseVertex(Text key, TextArrayWritable value,
+        Vertex<Text, IntWritable, IntWritable> vertex) throws Exception {
+      vertex.setVertexID(key);
+      for (Writable v : value.get()) {
+        int weight = 1 + Math.abs((key.hashCode() * 31 + v.hashCode()) % 10);
+        vertex.addEdge(new Edge<Text, IntWritable>((Text) v, new IntWritable(
+            weight)));
+      }
+      return true;
+    }
+  }
+
+  public static class MindistSearchSeqReader extends
+      VertexInputReader<Text, TextArrayWritable, Text, NullWritable, Text> {
+
+    @Override
+    public boolean parseVertex(Text key, TextArrayWritable value,
+        Vertex<Text, NullWritable, Text> vertex) throws Exception {
+      vertex.setVertexID(key);
+      for (Writable v : value.get()) {
+        vertex.addEdge(new Edge<Text, NullWritable>((Text) v, null));
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reads the vertices of the generated graph as a bipartite graph, vertices
+   * with even ids are on the left and those with odd ids on the right side.
+   * The edges within a side are left out.
+   */
+  public static class BipartiteMatchingSeqReader extends
+      VertexInputReader<Text, TextArrayWritable, Text, NullWritable, TextPair> {
+
+    @Override
+    public boolean parseVertex(Text key, TextArrayWritable value,
+        Vertex<Text, NullWritable, TextPair> vertex) throws Exception {
+      boolean left = isEven(key);
+      vertex.setVertexID(key);
+      vertex.setValue(new TextPair(new Text("U"), new Text(left ? "L" : "R")));
+      for (Writable v : value.get()) {
+        if (isEven((Text) v) != left) {
+          vertex.addEdge(new Edge<Text, NullWritable>((Text) v, null));
+        }
+      }
+      return true;
+    }
+
+    private static boolean isEven(Text id) {
+      return (id.charAt(id.getLength() - 1) - '0') % 2 == 0;
+    }
+  }
+
+  /**
+   * @return the job of the given algorithm on the given graph.
+   */
+  public static GraphJob createJob(String algorithm, Path input, Path output,
+      int tasks, HamaConfiguration conf) throws IOException {
+    GraphJob job;
+    if (algorithm.equals("pagerank")) {
+      job = PageRank.createJob(new String[] { input.toString(),
+          output.toString(), String.valueOf(tasks) }, conf);
+    } else if (algorithm.equals("sssp")) {
+      job = SSSP.createJob(new String[] { "0", input.toString(),
+          output.toString(), String.valueOf(tasks) }, conf);
+      job.setVertexInputReaderClass(SSSPSeqReader.class);
+    } else if (algorithm.equals("mdstsearch")) {
+      job = MindistSearch.getJob(input.toString(), output.toString(),
+          Optional.of(tasks), Optional.<Integer> absent());
+      job.setVertexInputReaderClass(MindistSearchSeqReader.class);
+    } else if (algorithm.equals("bipartite")) {
+      job = BipartiteMatching.createJob(new String[] { input.toString(),
+          output.toString(), "30", String.valueOf(tasks) }, conf);
+      job.setVertexInputReaderClass(BipartiteMatchingSeqReader.class);
+    } else {
+      throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+    }
+    job.setInputFormat(SequenceFileInputFormat.class);
+    job.setInputKeyClass(Text.class);
+    job.setInputValueClass(TextArrayWritable.class);
+    return job;
+  }
+
+  /**
+   * Sums up the metrics of the tasks per superstep: the times and the heap are
+   * the maximum over the tasks, the vertices, messages and bytes the sum.
+   * 
+   * @return the header and the lines of the supersteps.
+   */
+  public static List<String> summarize(String algorithm, FileSystem fs,
+      Path metricsDir) throws IOException {
+    String[] header = null;
+    TreeMap<Long, long[]> supersteps = new TreeMap<Long, long[]>();
+    for (FileStatus status : fs.globStatus(new Path(metricsDir, "metrics-*"))) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          fs.open(status.getPath())));
+      try {
+        header = reader.readLine().split("\t");
+        int superstepColumn = column(header, "superstep");
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] values = line.split("\t");
+          long superstep = Long.parseLong(values[superstepColumn]);
+          long[] sum = supersteps.get(superstep);
+          if (sum == null) {
+            sum = new long[values.length];
+            supersteps.put(superstep, sum);
+          }
+          for (int i = superstepColumn + 1; i < values.length; i++) {
+            long value = Long.parseLong(values[i]);
+            if (header[i].endsWith("_ms") || header[i].startsWith("heap")) {
+              sum[i] = Math.max(sum[i], value);
+            } else {
+              sum[i] += value;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+
+    List<String> lines = new ArrayList<String>();
+    if (header == null) {
+      return lines;
+    }
+    int superstepColumn = column(header, "superstep");
+    int time = column(header, "time_ms");
+    int messagesSent = column(header, "messages_sent");
+    int bytesSent = column(header, "bytes_sent");
+    int messageRate = column(header, "messages_per_sec");
+    int byteRate = column(header, "bytes_per_sec");
+    StringBuilder sb = new StringBuilder("algorithm");
+    for (int i = superstepColumn; i < header.length; i++) {
+      sb.append('\t').append(header[i]);
+    }
+    lines.add(sb.toString());
+    for (Entry<Long, long[]> e : supersteps.entrySet()) {
+      long[] sum = e.getValue();
+      // the rates of the tasks add up, the superstep takes the longest time
+      long elapsed = Math.max(1L, sum[time]);
+      sum[messageRate] = sum[messagesSent] * 1000L / elapsed;
+      sum[byteRate] = sum[bytesSent] * 1000L / elapsed;
+      sb = new StringBuilder(algorithm).append('\t').append(e.getKey());
+      for (int i = superstepColumn + 1; i < sum.length; i++) {
+        sb.append('\t').append(sum[i]);
+      }
+      lines.add(sb.toString());
+    }
+    return lines;
+  }
+
+  /**
+   * @return the index of the given column of the metrics.
+   * @throws IllegalArgumentException if the metrics have no such column.
+   */
+  private static int column(String[] header, String name) {
+    int index = Arrays.asList(header).indexOf(name);
+    if (index < 0) {
+      throw new IllegalArgumentException("The metrics have no column " + name
+          + ": " + Arrays.toString(header));
+    }
+    return index;
+  }
+
+  private static void printUsage() {
+    System.out
+        .println("Usage: <size n> <average out-edges> <working dir> <tasks> "
+            + "[algorithms, comma separated (default all)] [key=value ...]");
+    System.exit(-1);
+  }
+
+  public static void main(String[] args) throws IOException,
+      InterruptedException, ClassNotFoundException {
+    if (args.length < 4) {
+      printUsage();
+    }
+    int tasks = Integer.parseInt(args[3]);
+    Path dir = new Path(args[2]);
+    List<String> algorithms = Arrays.asList(ALGORITHMS);
+    Map<String, String> settings = new LinkedHashMap<String, String>();
+    for (int i = 4; i < args.length; i++) {
+      int index = args[i].indexOf('=');
+      if (index > 0) {
+        settings.put(args[i].substring(0, index), args[i].substring(index + 1));
+      } else {
+        algorithms = Arrays.asList(args[i].split(","));
+      }
+    }
+
+    // the same graph for every run
+    Path input = new Path(dir, "input");
+    RMatGraphGen.main(new String[] { args[0], args[1], input.toString(),
+        String.valueOf(tasks), String.valueOf(SEED) });
+
+    HamaConfiguration conf = new HamaConfiguration();
+    FileSystem fs = FileSystem.get(conf);
+    PrintWriter results = new PrintWriter(fs.create(new Path(dir,
+        "results.tsv"), true));
+    try {
+      boolean header = true;
+      for (String algorithm : algorithms) {
+        Path metricsDir = new Path(dir, "metrics/" + algorithm);
+        GraphJob job = createJob(algorithm, input, new Path(dir, "output/"
+            + algorithm), tasks, new HamaConfiguration());
+        job.setMetricsPath(metricsDir);
+        for (Entry<String, String> e : settings.entrySet()) {
+          job.set(e.getKey(), e.getValue());
+        }
+
+        long startTime = System.currentTimeMillis();
+        if (!job.waitForCompletion(true)) {
+          System.out.println(algorithm + " failed.");
+          continue;
+        }
+        long time = System.currentTimeMillis() - startTime;
+
+        List<String> lines = summarize(algorithm, fs, metricsDir);
+        for (int i = header ? 0 : 1; i < lines.size(); i++) {
+          results.println(lines.get(i));
+          System.out.println(lines.get(i));
+        }
+        header = false;
+        System.out.println("# " + algorithm + " finished in " + time / 1000.0
+            + " seconds with " + job.getConfiguration().get(
+            "hama.graph.vertices.info", "the default vertices info") + ".");
+      }
+    } finally {
+      results.close();
+    }
+  }
+
+}
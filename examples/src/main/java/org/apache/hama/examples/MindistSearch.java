@@ -81,6 +81,16 @@ public class MindistSearch {
       }
     }
 
+    @Override
+    public void computeChanged() throws IOException {
+      if (getValue() == null) {
+        super.computeChanged();
+      } else {
+        // the new neighbors don't know the prior component yet
+        sendMessageToNeighbors(getValue());
+      }
+    }
+
   }
 
   public static class MindistSearchTextReader extends
@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
@@ -32,6 +33,7 @@ import org.apache.hama.commons.io.TextArrayWritable;
 import org.apache.hama.graph.AverageAggregator;
 import org.apache.hama.graph.Edge;
 import org.apache.hama.graph.GraphJob;
+import org.apache.hama.graph.PrimitiveCombiner;
 import org.apache.hama.graph.Vertex;
 import org.apache.hama.graph.VertexInputReader;
 
@@ -48,6 +50,15 @@ public class PageRank {
 
     @Override
     public void setup(HamaConfiguration conf) {
+      configure(conf);
+    }
+
+    @Override
+    public void compute(Iterable<DoubleWritable> messages) throws IOException {
+      rank(this, messages);
+    }
+
+    static void configure(HamaConfiguration conf) {
       String val = conf.get("hama.pagerank.alpha");
       if (val != null) {
         DAMPING_FACTOR = Double.parseDouble(val);
@@ -58,35 +69,66 @@ public class PageRank {
       }
     }
 
-    @Override
-    public void compute(Iterable<DoubleWritable> messages) throws IOException {
+    static void rank(Vertex<?, NullWritable, DoubleWritable> vertex,
+        Iterable<DoubleWritable> messages) throws IOException {
       // initialize this vertex to 1 / count of global vertices in this graph
-      if (this.getSuperstepCount() == 0) {
-        setValue(new DoubleWritable(1.0 / this.getNumVertices()));
-      } else if (this.getSuperstepCount() >= 1) {
+      if (vertex.getSuperstepCount() == 0) {
+        vertex.setValue(new DoubleWritable(1.0 / vertex.getNumVertices()));
+      } else if (vertex.getSuperstepCount() >= 1) {
         double sum = 0;
         for (DoubleWritable msg : messages) {
           sum += msg.get();
         }
-        double alpha = (1.0d - DAMPING_FACTOR) / this.getNumVertices();
-        setValue(new DoubleWritable(alpha + (sum * DAMPING_FACTOR)));
-        aggregate(0, this.getValue());
+        double alpha = (1.0d - DAMPING_FACTOR) / vertex.getNumVertices();
+        vertex.setValue(new DoubleWritable(alpha + (sum * DAMPING_FACTOR)));
+        vertex.aggregate(0, vertex.getValue());
       }
 
       // if we have not reached our global error yet, then proceed.
-      DoubleWritable globalError = getAggregatedValue(0);
+      DoubleWritable globalError = vertex.getAggregatedValue(0);
       
-      if (globalError != null && this.getSuperstepCount() > 2
+      if (globalError != null && vertex.getSuperstepCount() > 2
           && MAXIMUM_CONVERGENCE_ERROR > globalError.get()) {
-        voteToHalt();
+        vertex.voteToHalt();
       } else {
         // in each superstep we are going to send a new rank to our neighbours
-        sendMessageToNeighbors(new DoubleWritable(this.getValue().get()
-            / this.getEdges().size()));
+        vertex.sendMessageToNeighbors(new DoubleWritable(vertex.getValue()
+            .get() / vertex.getEdges().size()));
       }
     }
   }
 
+  /**
+   * Pagerank on the dense ids of a vertex ID dictionary. The vertices are still
+   * read with Text ids by {@link PagerankSeqReader} and written with them.
+   */
+  public static class DictionaryPageRankVertex extends
+      Vertex<LongWritable, NullWritable, DoubleWritable> {
+
+    @Override
+    public void setup(HamaConfiguration conf) {
+      PageRankVertex.configure(conf);
+    }
+
+    @Override
+    public void compute(Iterable<DoubleWritable> messages) throws IOException {
+      PageRankVertex.rank(this, messages);
+    }
+  }
+
+  /**
+   * Sums up the ranks sent to a vertex. With the LongWritable ids of a vertex
+   * ID dictionary the ranks are summed in primitive arrays when they are sent
+   * and when they are received.
+   */
+  public static class RankSumCombiner extends PrimitiveCombiner.OfDouble {
+
+    @Override
+    protected double combine(double a, double b) {
+      return a + b;
+    }
+  }
+
   public static class PagerankSeqReader
       extends
       VertexInputReader<Text, TextArrayWritable, Text, NullWritable, DoubleWritable> {
@@ -143,6 +185,22 @@ public class PageRank {
     return pageJob;
   }
 
+  /**
+   * @return the pagerank job that maps the Text ids of the input to dense
+   *         LongWritable ids while it computes, see
+   *         {@link GraphJob#setVertexIDDictionary(boolean)}, and sums up the
+   *         ranks with a {@link RankSumCombiner}.
+   */
+  public static GraphJob createDictionaryJob(String[] args,
+      HamaConfiguration conf) throws IOException {
+    GraphJob pageJob = createJob(args, conf);
+    pageJob.setVertexClass(DictionaryPageRankVertex.class);
+    pageJob.setVertexIDClass(LongWritable.class);
+    pageJob.setVertexIDDictionary(true);
+    pageJob.setCombinerClass(RankSumCombiner.class);
+    return pageJob;
+  }
+
   private static void printUsage() {
     System.out.println("Usage: <input> <output> [tasks]");
     System.exit(-1);
@@ -69,6 +69,19 @@ public class SSSP {
       }
       voteToHalt();
     }
+
+    @Override
+    public void computeChanged() throws IOException {
+      if (getValue().get() == Integer.MAX_VALUE) {
+        super.computeChanged();
+        return;
+      }
+      // the new edges need the prior distance
+      for (Edge<Text, IntWritable> e : this.getEdges()) {
+        sendMessage(e, new IntWritable(getValue().get() + e.getValue().get()));
+      }
+      voteToHalt();
+    }
   }
 
   public static class MinIntCombiner extends Combiner<IntWritable> {
@@ -122,18 +135,13 @@ public class SSSP {
     System.exit(-1);
   }
 
-  public static void main(String[] args) throws IOException,
-      InterruptedException, ClassNotFoundException {
-    if (args.length < 3)
-      printUsage();
-
-    // Graph job configuration
-    HamaConfiguration conf = new HamaConfiguration();
+  public static GraphJob createJob(String[] args, HamaConfiguration conf)
+      throws IOException {
     GraphJob ssspJob = new GraphJob(conf, SSSP.class);
     // Set the job name
     ssspJob.setJobName("Single Source Shortest Path");
 
-    conf.set(START_VERTEX, args[0]);
+    ssspJob.set(START_VERTEX, args[0]);
     ssspJob.setInputPath(new Path(args[1]));
     ssspJob.setOutputPath(new Path(args[2]));
 
@@ -158,6 +166,17 @@ public class SSSP {
     ssspJob.setVertexIDClass(Text.class);
     ssspJob.setVertexValueClass(IntWritable.class);
     ssspJob.setEdgeValueClass(IntWritable.class);
+    return ssspJob;
+  }
+
+  public static void main(String[] args) throws IOException,
+      InterruptedException, ClassNotFoundException {
+    if (args.length < 3)
+      printUsage();
+
+    // Graph job configuration
+    HamaConfiguration conf = new HamaConfiguration();
+    GraphJob ssspJob = createJob(args, conf);
 
     long startTime = System.currentTimeMillis();
     if (ssspJob.waitForCompletion(true)) {
@@ -20,6 +20,7 @@ package org.apache.hama.examples.util;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,15 +43,17 @@ import com.google.common.collect.Sets;
 public class FastGraphGen {
   protected static Log LOG = LogFactory.getLog(FastGraphGen.class);
 
-  private static String SIZE_OF_MATRIX = "size.of.matrix";
-  private static String MAX_EDGES = "max.outlinks";
+  protected static final String SIZE_OF_MATRIX = "size.of.matrix";
+  protected static final String MAX_EDGES = "max.outlinks";
+  protected static final String SEED = "fastgen.seed";
 
   public static class FastGraphGenBSP extends
       BSP<NullWritable, NullWritable, Text, TextArrayWritable, Text> {
 
-    private Configuration conf;
-    private int sizeN;
-    private int maxOutEdges;
+    protected Configuration conf;
+    protected int sizeN;
+    protected int maxOutEdges;
+    protected Random random;
 
     @Override
     public void setup(
@@ -58,6 +61,20 @@ public class FastGraphGen {
       this.conf = peer.getConfiguration();
       sizeN = conf.getInt(SIZE_OF_MATRIX, 10);
       maxOutEdges = conf.getInt(MAX_EDGES, 1);
+      // a seed makes the graph reproducible
+      random = conf.get(SEED) == null ? new Random() : new Random(conf.getLong(
+          SEED, 0L) + peer.getPeerIndex());
+    }
+
+    /**
+     * @return the destinations of the out-edges of the given vertex.
+     */
+    protected Set<Integer> drawOutEdges(int vertexID) {
+      HashSet<Integer> set = Sets.newHashSet();
+      for (int j = 0; j < maxOutEdges; j++) {
+        set.add(random.nextInt(sizeN));
+      }
+      return set;
     }
 
     @Override
@@ -73,12 +90,8 @@ public class FastGraphGen {
         endID = startID + interval;
       }
 
-      Random r = new Random();
       for (int i = startID; i < endID; i++) {
-        HashSet<Integer> set = Sets.newHashSet();
-        for (int j = 0; j < maxOutEdges; j++) {
-          set.add(r.nextInt(sizeN));
-        }
+        Set<Integer> set = drawOutEdges(i);
         TextArrayWritable textArrayWritable = new TextArrayWritable();
         Text[] arr = new Text[set.size()];
         int index = 0;
@@ -92,6 +105,24 @@ public class FastGraphGen {
     }
   }
 
+  /**
+   * @return a job that writes the vertices of a graph of the given size, with
+   *         their out-edges drawn by the given BSP, to the given path.
+   */
+  public static BSPJob createJob(HamaConfiguration conf,
+      Class<? extends FastGraphGenBSP> bspClass, Path output, int numTasks)
+      throws IOException {
+    BSPJob bsp = new BSPJob(conf, bspClass);
+    bsp.setBspClass(bspClass);
+    bsp.setInputFormat(NullInputFormat.class);
+    bsp.setOutputKeyClass(Text.class);
+    bsp.setOutputValueClass(TextArrayWritable.class);
+    bsp.setOutputFormat(SequenceFileOutputFormat.class);
+    FileOutputFormat.setOutputPath(bsp, output);
+    bsp.setNumBspTask(numTasks);
+    return bsp;
+  }
+
   public static void main(String[] args) throws InterruptedException,
       IOException, ClassNotFoundException {
     if (args.length < 4) {
@@ -106,16 +137,10 @@ public class FastGraphGen {
     conf.setInt(SIZE_OF_MATRIX, Integer.parseInt(args[0]));
     conf.setInt(MAX_EDGES, Integer.parseInt(args[1]));
 
-    BSPJob bsp = new BSPJob(conf, FastGraphGenBSP.class);
+    BSPJob bsp = createJob(conf, FastGraphGenBSP.class, new Path(args[2]),
+        Integer.parseInt(args[3]));
     // Set the job name
     bsp.setJobName("Random Fast Matrix Generator");
-    bsp.setBspClass(FastGraphGenBSP.class);
-    bsp.setInputFormat(NullInputFormat.class);
-    bsp.setOutputKeyClass(Text.class);
-    bsp.setOutputValueClass(TextArrayWritable.class);
-    bsp.setOutputFormat(SequenceFileOutputFormat.class);
-    FileOutputFormat.setOutputPath(bsp, new Path(args[2]));
-    bsp.setNumBspTask(Integer.parseInt(args[3]));
 
     long startTime = System.currentTimeMillis();
     if (bsp.waitForCompletion(true)) {
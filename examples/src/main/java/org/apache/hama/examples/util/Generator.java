@@ -26,6 +26,8 @@ public class Generator {
           .println("  symmetric: Generate random symmetric matrix, which can be used as a input of graph examples.");
       System.out
           .println("  fastgen: Generate random matrix, which can be used as a input of graph examples and is faster than symmetric.");
+      System.out
+          .println("  rmat: Generate a power-law graph with the R-MAT model, which can be used as a input of graph examples.");
       System.out.println("  square: Generate random square matrix.");
       System.out
           .println("  vectorwritablematrix: Generate a random matrix, consisting of VectorWritables.");
@@ -39,6 +41,8 @@ public class Generator {
       SymmetricMatrixGen.main(newArgs);
     } else if (args[0].equals("fastgen")) {
       FastGraphGen.main(newArgs);
+    } else if (args[0].equals("rmat")) {
+      RMatGraphGen.main(newArgs);
     } else if (args[0].equals("vectorwritablematrix")) {
       VectorWritableMatrixGen.main(newArgs);
     } else if (args[0].equals("square")) {
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.examples.util;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.commons.io.TextArrayWritable;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Generates a power-law graph with the R-MAT model. An edge falls into one of
+ * the four quadrants of the adjacency matrix with the probabilities a, b, c and
+ * d = 1 - a - b - c, recursively until a single cell is left. Each vertex draws
+ * its out-edges given its row: its out-degree is the number of edges expected
+ * in its row and each bit of a destination is drawn given the bit of the row
+ * at the same level. The defaults are those of the Graph500 benchmark.
+ */
+public class RMatGraphGen extends FastGraphGen {
+
+  protected static final String PROBABILITIES = "rmat.probabilities";
+
+  public static class RMatGraphGenBSP extends FastGraphGenBSP {
+
+    // the number of bits of a vertex id
+    private int levels;
+    private double a;
+    private double b;
+    private double c;
+    private double d;
+
+    @Override
+    public void setup(
+        BSPPeer<NullWritable, NullWritable, Text, TextArrayWritable, Text> peer) {
+      super.setup(peer);
+      String[] probabilities = conf.getStrings(PROBABILITIES, "0.57", "0.19",
+          "0.19");
+      a = Double.parseDouble(probabilities[0]);
+      b = Double.parseDouble(probabilities[1]);
+      c = Double.parseDouble(probabilities[2]);
+      d = 1.0d - a - b - c;
+      levels = sizeN > 1 ? 32 - Integer.numberOfLeadingZeros(sizeN - 1) : 1;
+    }
+
+    /**
+     * @return the out-edges of the given vertex, "max out-edges" is the average
+     *         out-degree.
+     */
+    @Override
+    protected Set<Integer> drawOutEdges(int vertexID) {
+      double rowProbability = 1.0d;
+      for (int level = levels - 1; level >= 0; level--) {
+        rowProbability *= ((vertexID >>> level) & 1) == 0 ? a + b : c + d;
+      }
+      double expected = rowProbability * maxOutEdges * (1L << levels);
+      int degree = (int) expected;
+      if (random.nextDouble() < expected - degree) {
+        degree++;
+      }
+
+      HashSet<Integer> set = Sets.newHashSet();
+      for (int j = 0; j < degree; j++) {
+        int destination;
+        do {
+          destination = 0;
+          for (int level = levels - 1; level >= 0; level--) {
+            double right = ((vertexID >>> level) & 1) == 0 ? b / (a + b) : d
+                / (c + d);
+            destination <<= 1;
+            if (random.nextDouble() < right) {
+              destination |= 1;
+            }
+          }
+          // ids beyond the size are drawn again
+        } while (destination >= sizeN);
+        set.add(destination);
+      }
+      return set;
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException,
+      IOException, ClassNotFoundException {
+    if (args.length < 4) {
+      System.out
+          .println("Usage: <size n> <average out-edges> <output path> <number of tasks> [a b c] [seed]");
+      System.exit(1);
+    }
+
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.setInt(SIZE_OF_MATRIX, Integer.parseInt(args[0]));
+    conf.setInt(MAX_EDGES, Integer.parseInt(args[1]));
+    if (args.length >= 7) {
+      conf.setStrings(PROBABILITIES, args[4], args[5], args[6]);
+    }
+    if (args.length == 5 || args.length == 8) {
+      conf.setLong(SEED, Long.parseLong(args[args.length - 1]));
+    }
+
+    BSPJob bsp = createJob(conf, RMatGraphGenBSP.class, new Path(args[2]),
+        Integer.parseInt(args[3]));
+    bsp.setJobName("R-MAT Graph Generator");
+
+    long startTime = System.currentTimeMillis();
+    if (bsp.waitForCompletion(true)) {
+      System.out.println("Job Finished in "
+          + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+    }
+  }
+}
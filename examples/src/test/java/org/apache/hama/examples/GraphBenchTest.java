@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.examples;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hama.graph.ListVerticesInfo;
+import org.junit.Test;
+
+public class GraphBenchTest extends TestCase {
+  private static String TEST_DIR = "/tmp/test-graphbench";
+
+  @Test
+  public void testBenchmark() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.get(conf);
+    try {
+      GraphBench.main(new String[] { "64", "4", TEST_DIR, "2",
+          "pagerank,sssp,mdstsearch",
+          "hama.graph.vertices.info=" + ListVerticesInfo.class.getName() });
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          fs.open(new Path(TEST_DIR, "results.tsv"))));
+      assertTrue(reader.readLine().startsWith("algorithm\tsuperstep\ttime_ms"));
+      int pagerank = 0;
+      int sssp = 0;
+      int mdstsearch = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] values = line.split("\t");
+        assertEquals(14, values.length);
+        if (values[0].equals("pagerank")) {
+          pagerank++;
+        } else if (values[0].equals("sssp")) {
+          sssp++;
+        } else if (values[0].equals("mdstsearch")) {
+          mdstsearch++;
+        }
+      }
+      reader.close();
+      assertTrue(pagerank > 1);
+      assertTrue(sssp > 1);
+      assertTrue(mdstsearch > 1);
+    } finally {
+      fs.delete(new Path(TEST_DIR), true);
+    }
+  }
+}
@@ -20,6 +20,8 @@ package org.apache.hama.examples;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -29,6 +31,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hama.HamaConfiguration;
 import org.apache.hama.examples.util.FastGraphGen;
+import org.apache.hama.graph.GraphJob;
 import org.junit.Test;
 
 /**
@@ -39,6 +42,7 @@ public class PageRankTest extends TestCase {
   private static String TEXT_INPUT = "/tmp/page.txt";
   private static String TEXT_OUTPUT = INPUT + "page.txt.seq";
   private static String OUTPUT = "/tmp/page-out";
+  private static String DICTIONARY_OUTPUT = "/tmp/page-dictionary-out";
   private Configuration conf = new HamaConfiguration();
   private FileSystem fs;
 
@@ -61,6 +65,49 @@ public class PageRankTest extends TestCase {
     }
   }
 
+  @Test
+  public void testPageRankWithDictionary() throws Exception {
+    generateTestData();
+    try {
+      String[] args = new String[] { INPUT, OUTPUT, "3" };
+      GraphJob job = PageRank.createJob(args, new HamaConfiguration());
+      // both jobs rank until the maximum iteration
+      job.set("hama.graph.max.convergence.error", "0");
+      assertTrue(job.waitForCompletion(true));
+
+      args = new String[] { INPUT, DICTIONARY_OUTPUT, "3" };
+      job = PageRank.createDictionaryJob(args, new HamaConfiguration());
+      job.set("hama.graph.max.convergence.error", "0");
+      assertTrue(job.waitForCompletion(true));
+
+      Map<String, Double> ranks = readResult(OUTPUT);
+      Map<String, Double> decoded = readResult(DICTIONARY_OUTPUT);
+      assertEquals(400, ranks.size());
+      // the output has the text ids of the input
+      assertEquals(ranks.keySet(), decoded.keySet());
+      for (Map.Entry<String, Double> e : ranks.entrySet()) {
+        assertEquals(e.getKey(), e.getValue(), decoded.get(e.getKey()), 1e-9);
+      }
+    } finally {
+      deleteTempDirs();
+    }
+  }
+
+  private Map<String, Double> readResult(String output) throws IOException {
+    Map<String, Double> result = new HashMap<String, Double>();
+    for (FileStatus fts : fs.globStatus(new Path(output + "/part-*"))) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          fs.open(fts.getPath())));
+      String line = null;
+      while ((line = reader.readLine()) != null) {
+        String[] split = line.split("\t");
+        result.put(split[0], Double.parseDouble(split[1]));
+      }
+      reader.close();
+    }
+    return result;
+  }
+
   private void verifyResult() throws IOException {
     FileStatus[] globStatus = fs.globStatus(new Path(OUTPUT + "/part-*"));
     double sum = 0d;
@@ -91,6 +138,8 @@ public class PageRankTest extends TestCase {
         fs.delete(new Path(INPUT), true);
       if (fs.exists(new Path(OUTPUT)))
         fs.delete(new Path(OUTPUT), true);
+      if (fs.exists(new Path(DICTIONARY_OUTPUT)))
+        fs.delete(new Path(DICTIONARY_OUTPUT), true);
       if (fs.exists(new Path(TEXT_INPUT)))
         fs.delete(new Path(TEXT_INPUT), true);
       if (fs.exists(new Path(TEXT_OUTPUT)))
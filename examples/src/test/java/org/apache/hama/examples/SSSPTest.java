@@ -32,6 +32,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hama.HamaConfiguration;
+import org.apache.hama.graph.GraphJob;
 import org.junit.Test;
 
 /**
@@ -54,6 +55,8 @@ public class SSSPTest extends TestCase {
   private static String TEXT_INPUT = "/tmp/sssp.txt";
   private static String TEXT_OUTPUT = INPUT + "sssp.txt.seq";
   private static String OUTPUT = "/tmp/sssp-out";
+  private static String DELTA = "/tmp/sssp-delta.txt";
+  private static String INCREMENTAL_OUTPUT = "/tmp/sssp-incremental-out";
   private Configuration conf = new HamaConfiguration();
   private FileSystem fs;
 
@@ -76,6 +79,57 @@ public class SSSPTest extends TestCase {
     }
   }
 
+  @Test
+  public void testIncrementalShortestPaths() throws Exception {
+    generateTestData();
+    try {
+      String[] args = new String[] { "0", INPUT, OUTPUT, "3" };
+      assertTrue(SSSP.createJob(args, new HamaConfiguration())
+          .waitForCompletion(true));
+
+      // a new vertex 10 shortens the paths to 3, 7 and 9
+      BufferedWriter bw = new BufferedWriter(new FileWriter(DELTA));
+      bw.write("+v 10 3:1\n+e 0 10 5\n");
+      bw.close();
+
+      GraphJob job = SSSP.createJob(new String[] { "0", INPUT,
+          INCREMENTAL_OUTPUT, "3" }, new HamaConfiguration());
+      job.setIncremental(new Path(OUTPUT), new Path(DELTA));
+      assertTrue(job.waitForCompletion(true));
+
+      Map<String, Integer> rs = new HashMap<String, Integer>();
+      rs.put("0", 0);
+      rs.put("1", 85);
+      rs.put("2", 217);
+      rs.put("3", 6);
+      rs.put("4", 173);
+      rs.put("5", 165);
+      rs.put("6", 403);
+      rs.put("7", 189);
+      rs.put("8", 415);
+      rs.put("9", 356);
+      rs.put("10", 5);
+      assertEquals(rs, readResult(INCREMENTAL_OUTPUT));
+    } finally {
+      deleteTempDirs();
+    }
+  }
+
+  private Map<String, Integer> readResult(String output) throws IOException {
+    Map<String, Integer> result = new HashMap<String, Integer>();
+    for (FileStatus fts : fs.globStatus(new Path(output + "/part-*"))) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          fs.open(fts.getPath())));
+      String line = null;
+      while ((line = reader.readLine()) != null) {
+        String[] split = line.split("\t");
+        result.put(split[0], Integer.parseInt(split[1]));
+      }
+      reader.close();
+    }
+    return result;
+  }
+
   private void verifyResult() throws IOException {
     Map<String, Integer> rs = new HashMap<String, Integer>();
     rs.put("6", 403);
@@ -133,6 +187,10 @@ public class SSSPTest extends TestCase {
         fs.delete(new Path(TEXT_INPUT), true);
       if (fs.exists(new Path(TEXT_OUTPUT)))
         fs.delete(new Path(TEXT_OUTPUT), true);
+      if (fs.exists(new Path(DELTA)))
+        fs.delete(new Path(DELTA), true);
+      if (fs.exists(new Path(INCREMENTAL_OUTPUT)))
+        fs.delete(new Path(INCREMENTAL_OUTPUT), true);
     } catch (IOException e) {
       e.printStackTrace();
     }
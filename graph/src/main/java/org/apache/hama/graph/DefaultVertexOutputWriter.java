@@ -23,6 +23,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.RecordWriter;
 
 /**
  * The VertexOutputWriter defines what parts of the vertex shall be written to
@@ -34,7 +35,7 @@ import org.apache.hama.bsp.BSPPeer;
  */
 @SuppressWarnings("rawtypes")
 public class DefaultVertexOutputWriter<V extends WritableComparable, E extends Writable, M extends Writable>
-    implements VertexOutputWriter<V, M, V, E, M> {
+    implements RecordVertexOutputWriter<V, M, V, E, M> {
 
   @Override
   public void setup(Configuration conf) {
@@ -50,4 +51,12 @@ public class DefaultVertexOutputWriter<V extends WritableComparable, E extends W
     peer.write(vertex.getVertexID(), vertex.getValue());
   }
 
+  @Override
+  public void write(Vertex<V, E, M> vertex, RecordWriter<V, M> out)
+      throws IOException {
+    assert vertex.getVertexID() != null : "vertex id cannot be null";
+    assert vertex.getValue() != null : "vertex value cannot be null";
+    out.write(vertex.getVertexID(), vertex.getValue());
+  }
+
 }
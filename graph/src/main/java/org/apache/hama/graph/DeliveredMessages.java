@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.Constants;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.Combiner;
+
+/**
+ * Holds the messages of a superstep that were not received one by one through
+ * the sorted message queue, but were expanded from a message to many vertices
+ * of this peer, such as those of hub mirrors and multicasts. The messages are
+ * kept sorted by their destination, so they can be joined with the vertices
+ * like the queue. They are held as objects on the heap, with a map entry per
+ * destination, until the vertices of the superstep have computed.
+ * 
+ * @param <V> the id type of a vertex.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+final class DeliveredMessages<V extends WritableComparable, M extends Writable> {
+
+  private final boolean checkMissingVertex;
+  private Combiner<M> combiner;
+
+  private final TreeMap<V, List<M>> messages = new TreeMap<V, List<M>>();
+
+  @SuppressWarnings("unchecked")
+  DeliveredMessages(HamaConfiguration conf) {
+    this.checkMissingVertex = conf.getBoolean("hama.check.missing.vertex",
+        true);
+    if (!conf.getClass(Constants.COMBINER_CLASS, Combiner.class).equals(
+        Combiner.class)) {
+      combiner = (Combiner<M>) org.apache.hadoop.util.ReflectionUtils
+          .newInstance(conf.getClass(Constants.COMBINER_CLASS, Combiner.class),
+              conf);
+    }
+  }
+
+  /**
+   * Delivers the message to the given vertex, combined with the messages
+   * delivered before if a combiner is set.
+   */
+  void deliver(V target, M value) {
+    List<M> list = messages.get(target);
+    if (list == null) {
+      list = new ArrayList<M>(1);
+      messages.put(target, list);
+      list.add(value);
+    } else if (combiner != null) {
+      list.add(value);
+      M combined = combiner.combine(list);
+      list.clear();
+      list.add(combined);
+    } else {
+      list.add(value);
+    }
+  }
+
+  /**
+   * @return the delivered messages for the given vertex, null if none.
+   */
+  List<M> remove(V vertexId) {
+    if (messages.isEmpty()) {
+      return null;
+    }
+    return messages.remove(vertexId);
+  }
+
+  /**
+   * @param after the id of the vertex computed last, null if there is none.
+   * @return the smallest id after the given one with delivered messages, null
+   *         if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  V nextTarget(V after) {
+    while (!messages.isEmpty()) {
+      V first = messages.firstKey();
+      if (after == null || first.compareTo(after) > 0) {
+        return first;
+      }
+      // the vertices are iterated in sorted order, so it doesn't exist
+      checkMissingVertex(first);
+      messages.remove(first);
+    }
+    return null;
+  }
+
+  private void checkMissingVertex(V vertexId) {
+    if (checkMissingVertex) {
+      throw new IllegalArgumentException(
+          "A message has recieved with a destination ID: " + vertexId
+              + " that does not exist!");
+    }
+  }
+
+  /**
+   * Called once all vertices of this peer were computed, fails if messages
+   * were delivered to vertices that don't exist.
+   */
+  void finishSuperstep() {
+    if (!messages.isEmpty()) {
+      checkMissingVertex(messages.firstKey());
+    }
+    messages.clear();
+  }
+
+}
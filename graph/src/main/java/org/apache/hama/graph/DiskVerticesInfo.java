@@ -19,26 +19,35 @@ package org.apache.hama.graph;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hama.HamaConfiguration;
 import org.apache.hama.bsp.TaskAttemptID;
-import org.apache.hama.graph.IDSkippingIterator.Strategy;
+import org.apache.hama.graph.MappedFile.MappedInputStream;
 
 /**
- * Stores the sorted vertices into a local file. It doesn't allow modification
- * and random access by vertexID.
+ * Stores the sorted vertices into memory-mapped local files, so the graph may
+ * be larger than the memory. The ids and edges are written once to a static
+ * file that is mapped read-only. Values and states are kept in a soft file:
+ * when the soft parts of a computed vertex keep their size, as with fixed-width
+ * values, they are overwritten in place, otherwise they are appended. Only the
+ * pages that changed are written back to the disk. Vertices are found by a
+ * binary search over the static file, so halted vertices without messages are
+ * neither read nor written. The soft file is compacted once more than half of
+ * it is outdated. It doesn't allow modification of the structure.
  * 
  * @param <V>
  * @param <E>
@@ -49,21 +58,28 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
     implements VerticesInfo<V, E, M> {
 
   public static final String DISK_VERTICES_PATH_KEY = "hama.disk.vertices.path";
+  /** Size of a single mapping of the files, 64MB by default. */
+  public static final String DISK_VERTICES_REGION_SIZE_KEY = "hama.disk.vertices.region.size";
 
   private static final byte NULL = 0;
   private static final byte NOT_NULL = 1;
 
+  // the files are written by streams while the vertices are added
   private FSDataOutputStream staticGraphPartsDos;
-  private FSDataInputStream staticGraphPartsDis;
-
   private FSDataOutputStream softGraphPartsDos;
-  private FSDataInputStream softGraphPartsDis;
 
-  private FSDataOutputStream softGraphPartsNextIterationDos;
+  private MappedFile staticGraphParts;
+  private MappedInputStream staticGraphPartsIn;
+  private DataInputStream staticGraphPartsDis;
+
+  private MappedFile softGraphParts;
+  private MappedInputStream softGraphPartsIn;
+  private DataInputStream softGraphPartsDis;
+  private final DataOutputBuffer softBuffer = new DataOutputBuffer();
 
-  private BitSet activeVertices;
+  private BitSet haltedVertices;
   private long[] softValueOffsets;
-  private long[] softValueOffsetsNextIteration;
+  private int[] softValueLengths;
   private long[] staticOffsets;
 
   private ArrayList<Long> tmpSoftOffsets;
@@ -72,9 +88,15 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
   private int size;
   private boolean lockedAdditions = false;
   private String rootPath;
+  private int regionSize;
   private Vertex<V, E, M> cachedVertexInstance;
-  private int currentStep = 0;
-  private int index = 0;
+  private V cachedVertexID;
+  private IDSkippingDiskIterator iterator;
+  // soft files are renamed by generation when compacted
+  private int generation = 0;
+  // the end of the soft file and the bytes of it that were moved to the end
+  private long softEnd = 0L;
+  private long outdatedBytes = 0L;
   private HamaConfiguration conf;
   private GraphJobRunner<V, E, M> runner;
   private String staticFile;
@@ -84,26 +106,29 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
       TaskAttemptID attempt) throws IOException {
     this.runner = runner;
     this.conf = conf;
+    this.regionSize = conf.getInt(DISK_VERTICES_REGION_SIZE_KEY,
+        64 * 1024 * 1024);
     tmpSoftOffsets = new ArrayList<Long>();
     tmpStaticOffsets = new ArrayList<Long>();
     String p = conf.get(DISK_VERTICES_PATH_KEY, "/tmp/graph/");
     rootPath = p + attempt.getJobID().toString() + "/" + attempt.toString()
         + "/";
-    LocalFileSystem local = FileSystem.getLocal(conf);
-    local.mkdirs(new Path(rootPath));
+    // the files are mapped directly, so they are written without checksums
+    FileSystem raw = FileSystem.getLocal(conf).getRawFileSystem();
+    raw.mkdirs(new Path(rootPath));
     staticFile = rootPath + "static.graph";
-    local.delete(new Path(staticFile), false);
-    staticGraphPartsDos = local.create(new Path(staticFile));
-    String softGraphFileName = getSoftGraphFileName(rootPath, currentStep);
-    local.delete(new Path(softGraphFileName), false);
-    softGraphPartsDos = local.create(new Path(softGraphFileName));
+    raw.delete(new Path(staticFile), false);
+    staticGraphPartsDos = raw.create(new Path(staticFile));
+    String softFile = getSoftGraphFileName(rootPath, generation);
+    raw.delete(new Path(softFile), false);
+    softGraphPartsDos = raw.create(new Path(softFile));
   }
 
   @Override
   public void cleanup(HamaConfiguration conf, TaskAttemptID attempt)
       throws IOException {
-    IOUtils.cleanup(null, softGraphPartsDos, softGraphPartsNextIterationDos,
-        staticGraphPartsDis, softGraphPartsDis);
+    IOUtils.cleanup(null, staticGraphPartsDos, softGraphPartsDos,
+        staticGraphParts, softGraphParts);
     // delete the contents
     FileSystem.getLocal(conf).delete(new Path(rootPath), true);
   }
@@ -123,7 +148,8 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
       e.getDestinationVertexID().write(staticGraphPartsDos);
     }
 
-    serializeSoft(vertex, -1, null, softGraphPartsDos);
+    tmpSoftOffsets.add(softGraphPartsDos.getPos());
+    serializeSoft(vertex, softGraphPartsDos);
 
     size++;
   }
@@ -134,36 +160,33 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
         "DiskVerticesInfo doesn't support this operation. Please use the MapVerticesInfo.");
   }
 
+  @Override
+  public void applyMutations(GraphMutations<V, E, M> mutations) {
+    if (!mutations.isEmpty()) {
+      throw new UnsupportedOperationException(
+          "DiskVerticesInfo doesn't support this operation. Please use the MapVerticesInfo.");
+    }
+  }
+
   /**
-   * Serializes the vertex's soft parts to its file. If the vertex does not have
-   * an index yet (e.G. at startup) you can provide -1 and it will be added to
-   * the temporary storage.
+   * Serializes the vertex's soft parts to the given output.
    */
-  private void serializeSoft(Vertex<V, E, M> vertex, int index,
-      long[] softValueOffsets, FSDataOutputStream softGraphParts)
+  private static void serializeSoft(Vertex<?, ?, ?> vertex, DataOutput out)
       throws IOException {
-    // safe offset write the soft parts
-    if (index >= 0) {
-      softValueOffsets[index] = softGraphParts.getPos();
-      // only set the bitset if we've finished the setup
-      activeVertices.set(index, vertex.isHalted());
-    } else {
-      tmpSoftOffsets.add(softGraphParts.getPos());
-    }
     if (vertex.getValue() == null) {
-      softGraphParts.write(NULL);
+      out.write(NULL);
     } else {
-      softGraphParts.write(NOT_NULL);
-      vertex.getValue().write(softGraphParts);
+      out.write(NOT_NULL);
+      vertex.getValue().write(out);
     }
-    vertex.writeState(softGraphParts);
-    softGraphParts.writeInt(vertex.getEdges().size());
+    vertex.writeState(out);
+    out.writeInt(vertex.getEdges().size());
     for (Edge<?, ?> e : vertex.getEdges()) {
       if (e.getValue() == null) {
-        softGraphParts.write(NULL);
+        out.write(NULL);
       } else {
-        softGraphParts.write(NOT_NULL);
-        e.getValue().write(softGraphParts);
+        out.write(NOT_NULL);
+        e.getValue().write(out);
       }
     }
   }
@@ -172,17 +195,42 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
   public void finishAdditions() {
     // copy the arraylist to a plain array
     softValueOffsets = copy(tmpSoftOffsets);
-    softValueOffsetsNextIteration = copy(tmpSoftOffsets);
     staticOffsets = copy(tmpStaticOffsets);
-    activeVertices = new BitSet(size);
+    haltedVertices = new BitSet(size);
 
     tmpStaticOffsets = null;
     tmpSoftOffsets = null;
-    IOUtils.cleanup(null, staticGraphPartsDos, softGraphPartsDos);
+    try {
+      softEnd = softGraphPartsDos.getPos();
+      softValueLengths = new int[size];
+      for (int i = 0; i < size; i++) {
+        long end = i + 1 < size ? softValueOffsets[i + 1] : softEnd;
+        softValueLengths[i] = (int) (end - softValueOffsets[i]);
+      }
+      IOUtils.closeStream(staticGraphPartsDos);
+      IOUtils.closeStream(softGraphPartsDos);
+      staticGraphPartsDos = null;
+      softGraphPartsDos = null;
+
+      staticGraphParts = new MappedFile(new File(staticFile), false,
+          regionSize);
+      staticGraphPartsIn = staticGraphParts.newInputStream();
+      staticGraphPartsDis = new DataInputStream(staticGraphPartsIn);
+      openSoftFile();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
     // prevent additional vertices from beeing added
     lockedAdditions = true;
   }
 
+  private void openSoftFile() throws IOException {
+    softGraphParts = new MappedFile(new File(getSoftGraphFileName(rootPath,
+        generation)), true, regionSize);
+    softGraphPartsIn = softGraphParts.newInputStream();
+    softGraphPartsDis = new DataInputStream(softGraphPartsIn);
+  }
+
   @Override
   public void finishRemovals() {
     throw new UnsupportedOperationException(
@@ -199,36 +247,58 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
 
   @Override
   public void startSuperstep() throws IOException {
-    index = 0;
-    String softGraphFileName = getSoftGraphFileName(rootPath, currentStep);
-    LocalFileSystem local = FileSystem.getLocal(conf);
-    local.delete(new Path(softGraphFileName), true);
-    softGraphPartsNextIterationDos = local.create(new Path(softGraphFileName));
-    softValueOffsets = softValueOffsetsNextIteration;
-    softValueOffsetsNextIteration = new long[softValueOffsetsNextIteration.length];
+
   }
 
   @Override
   public void finishVertexComputation(Vertex<V, E, M> vertex)
       throws IOException {
-    // write to the soft parts
-    serializeSoft(vertex, index++, softValueOffsetsNextIteration,
-        softGraphPartsNextIterationDos);
+    int index = iterator.getIndex();
+    softBuffer.reset();
+    serializeSoft(vertex, softBuffer);
+    int length = softBuffer.getLength();
+    if (length != softValueLengths[index]) {
+      // doesn't fit in place, move it to the end
+      outdatedBytes += softValueLengths[index];
+      softValueOffsets[index] = softEnd;
+      softValueLengths[index] = length;
+      softEnd += length;
+    }
+    softGraphParts.write(softValueOffsets[index], softBuffer.getData(), 0,
+        length);
+    haltedVertices.set(index, vertex.isHalted());
   }
 
   @Override
   public void finishSuperstep() throws IOException {
-    // do not delete files in the first step
-    IOUtils.cleanup(null, softGraphPartsDos, softGraphPartsNextIterationDos,
-        softGraphPartsDis);
-    if (currentStep > 0) {
-      LocalFileSystem local = FileSystem.getLocal(conf);
-      local.delete(new Path(getSoftGraphFileName(rootPath, currentStep - 1)),
-          true);
-      String softGraphFileName = getSoftGraphFileName(rootPath, currentStep);
-      softGraphPartsDis = local.open(new Path(softGraphFileName));
+    if (outdatedBytes > softEnd / 2) {
+      compact();
+    }
+  }
+
+  /**
+   * Copies the current soft parts of all vertices to a new soft file.
+   */
+  private void compact() throws IOException {
+    MappedFile old = softGraphParts;
+    generation++;
+    openSoftFile();
+    byte[] buffer = new byte[0];
+    long end = 0L;
+    for (int i = 0; i < size; i++) {
+      if (buffer.length < softValueLengths[i]) {
+        buffer = new byte[softValueLengths[i]];
+      }
+      old.read(softValueOffsets[i], buffer, 0, softValueLengths[i]);
+      softGraphParts.write(end, buffer, 0, softValueLengths[i]);
+      softValueOffsets[i] = end;
+      end += softValueLengths[i];
     }
-    currentStep++;
+    old.close();
+    FileSystem.getLocal(conf).getRawFileSystem()
+        .delete(new Path(getSoftGraphFileName(rootPath, generation - 1)), false);
+    softEnd = end;
+    outdatedBytes = 0L;
   }
 
   @Override
@@ -237,52 +307,44 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
   }
 
   private final class IDSkippingDiskIterator extends
-      IDSkippingIterator<V, E, M> {
+      IndexedIDSkippingIterator<V, E, M> {
 
-    int currentIndex = 0;
+    IDSkippingDiskIterator() {
+      super(haltedVertices, size);
+    }
 
     @Override
-    public Vertex<V, E, M> next() {
-      return cachedVertexInstance;
+    protected V getVertexID(int index) throws IOException {
+      staticGraphPartsIn.seek(staticOffsets[index]);
+      cachedVertexID.readFields(staticGraphPartsDis);
+      return cachedVertexID;
     }
 
     @Override
-    public boolean hasNext(V e,
-        org.apache.hama.graph.IDSkippingIterator.Strategy strat) {
-      if (currentIndex >= size) {
-        return false;
-      } else {
-        currentIndex = fill(strat, currentIndex, e);
-        return true;
-      }
+    protected void read(int index) throws IOException {
+      fill(index);
+    }
+
+    @Override
+    public Vertex<V, E, M> next() {
+      return cachedVertexInstance;
     }
 
   }
 
+  @SuppressWarnings("unchecked")
   @Override
   public IDSkippingIterator<V, E, M> skippingIterator() {
-    try {
-      // reset
-      String softGraphFileName = getSoftGraphFileName(rootPath,
-          Math.max(0, currentStep - 1));
-      LocalFileSystem local = FileSystem.getLocal(conf);
-      // close the files
-      IOUtils.cleanup(null, softGraphPartsDos, softGraphPartsDis,
-          staticGraphPartsDis, staticGraphPartsDos);
-      softGraphPartsDis = local.open(new Path(softGraphFileName));
-      staticGraphPartsDis = local.open(new Path(staticFile));
-
-      // ensure the vertex is not null
-      if (cachedVertexInstance == null) {
-        cachedVertexInstance = GraphJobRunner
-            .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
-        cachedVertexInstance.setRunner(runner);
-      }
-      ensureVertexIDNotNull();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    // ensure the vertex is not null
+    if (cachedVertexInstance == null) {
+      cachedVertexInstance = GraphJobRunner
+          .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
+      cachedVertexInstance.setRunner(runner);
+      cachedVertexID = (V) GraphJobRunner.createVertexIDObject();
     }
-    return new IDSkippingDiskIterator();
+    ensureVertexIDNotNull();
+    iterator = new IDSkippingDiskIterator();
+    return iterator;
   }
 
   @SuppressWarnings("unchecked")
@@ -315,77 +377,54 @@ public final class DiskVerticesInfo<V extends WritableComparable, E extends Writ
   }
 
   /**
-   * Fills the cachedVertexInstance with the next acceptable item after the
-   * given index that matches the given messageVertexID if provided.
-   * 
-   * @param strat the strategy that defines if a vertex that is serialized
-   *          should be accepted.
-   * @param index the index of the vertices to start from.
-   * @param messageVertexId the message vertex id that can be matched by the
-   *          strategy. Can be null as well, this is handled by the strategy.
-   * @return the index of the item after the currently found item.
+   * Fills the cachedVertexInstance with the vertex at the given index.
    */
-  private int fill(Strategy strat, int index, V messageVertexId) {
-    try {
-      while (true) {
-        // seek until we found something that satisfied our strategy
-        staticGraphPartsDis.seek(staticOffsets[index]);
-        boolean halted = activeVertices.get(index);
-        cachedVertexInstance.setVotedToHalt(halted);
-        cachedVertexInstance.getVertexID().readFields(staticGraphPartsDis);
-        if (strat.accept(cachedVertexInstance, messageVertexId)) {
-          break;
-        }
-        if (++index >= size) {
-          return size;
-        }
-      }
-      softGraphPartsDis.seek(softValueOffsets[index]);
+  private void fill(int index) throws IOException {
+    staticGraphPartsIn.seek(staticOffsets[index]);
+    cachedVertexInstance.setVotedToHalt(haltedVertices.get(index));
+    cachedVertexInstance.getVertexID().readFields(staticGraphPartsDis);
+    softGraphPartsIn.seek(softValueOffsets[index]);
+
+    // setting vertex value null here, because it may be overridden. Messaging
+    // is not materializing the message directly- so it is possible for the
+    // read fields method to change this object (thus a new object).
+    cachedVertexInstance.setValue(null);
+    if (softGraphPartsDis.readByte() == NOT_NULL) {
+      ensureVertexValueNotNull();
+      cachedVertexInstance.getValue().readFields(softGraphPartsDis);
+    }
 
-      // setting vertex value null here, because it may be overridden. Messaging
-      // is not materializing the message directly- so it is possible for the
-      // read fields method to change this object (thus a new object).
-      cachedVertexInstance.setValue(null);
+    cachedVertexInstance.readState(softGraphPartsDis);
+    int numEdges = staticGraphPartsDis.readInt();
+    int softEdges = softGraphPartsDis.readInt();
+    if (softEdges != numEdges) {
+      throw new IllegalArgumentException(
+          "Number of edges seemed to change. This is not possible (yet).");
+    }
+    // edges could actually be cached, however the local mode is preventing it
+    // sometimes as edge destinations are send and possible overridden in
+    // messages here.
+    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>();
+    // read the soft file in parallel
+    for (int i = 0; i < numEdges; i++) {
+      Edge<V, E> edge = new Edge<V, E>();
+      ensureEdgeValueNotNull(edge);
+      ensureEdgeIDNotNull(edge);
+      edge.getDestinationVertexID().readFields(staticGraphPartsDis);
       if (softGraphPartsDis.readByte() == NOT_NULL) {
-        ensureVertexValueNotNull();
-        cachedVertexInstance.getValue().readFields(softGraphPartsDis);
-      }
-
-      cachedVertexInstance.readState(softGraphPartsDis);
-      int numEdges = staticGraphPartsDis.readInt();
-      int softEdges = softGraphPartsDis.readInt();
-      if (softEdges != numEdges) {
-        throw new IllegalArgumentException(
-            "Number of edges seemed to change. This is not possible (yet).");
-      }
-      // edges could actually be cached, however the local mode is preventing it
-      // sometimes as edge destinations are send and possible overridden in
-      // messages here.
-      ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>();
-      // read the soft file in parallel
-      for (int i = 0; i < numEdges; i++) {
-        Edge<V, E> edge = new Edge<V, E>();
         ensureEdgeValueNotNull(edge);
-        ensureEdgeIDNotNull(edge);
-        edge.getDestinationVertexID().readFields(staticGraphPartsDis);
-        if (softGraphPartsDis.readByte() == NOT_NULL) {
-          ensureEdgeValueNotNull(edge);
-          edge.getValue().readFields(softGraphPartsDis);
-        } else {
-          edge.setValue(null);
-        }
-        edges.add(edge);
+        edge.getValue().readFields(softGraphPartsDis);
+      } else {
+        edge.setValue(null);
       }
-
-      // make edges unmodifiable
-      cachedVertexInstance.setEdges(Collections.unmodifiableList(edges));
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+      edges.add(edge);
     }
-    return index + 1;
+
+    // make edges unmodifiable
+    cachedVertexInstance.setEdges(Collections.unmodifiableList(edges));
   }
 
-  private static String getSoftGraphFileName(String root, int step) {
-    return root + "soft_" + step + ".graph";
+  private static String getSoftGraphFileName(String root, int generation) {
+    return root + "soft_" + generation + ".graph";
   }
 }
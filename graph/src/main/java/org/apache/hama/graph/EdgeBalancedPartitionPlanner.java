@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.sync.SyncException;
+
+/**
+ * Balances the partitions by the number of edges instead of the number of
+ * vertices. Vertices are weighted by their number of edges plus one and
+ * counted in a histogram over the logarithm of their weight, per partition of
+ * the configured partitioner. The histograms of all peers determine the
+ * smallest set of heaviest vertices (hubs) that must be placed explicitly for
+ * the remaining vertices to be balanced within the tolerance. The hubs are
+ * then assigned heaviest first to the partition with the least edges.
+ *
+ * A single vertex with more edges than a partition's share can't be balanced
+ * by placement, see {@link GraphJob#setMirrorThreshold(int)} for those.
+ *
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+public class EdgeBalancedPartitionPlanner<V extends WritableComparable, E extends Writable, M extends Writable>
+    extends PartitionPlanner<V, E, M> {
+
+  private static final Log LOG = LogFactory
+      .getLog(EdgeBalancedPartitionPlanner.class);
+
+  /** Tolerated share a partition may have more than the average edges. */
+  public static final String TOLERANCE_KEY = "hama.graph.partition.balance.tolerance";
+  /** Maximal number of hubs a single peer may contribute to the plan. */
+  public static final String MAX_HUBS_KEY = "hama.graph.partition.balance.max.hubs";
+
+  static final int BUCKETS = 64;
+
+  // weights by partition and bucket, the number of vertices by bucket
+  private long[][] loads;
+  private long[] counts;
+  private PriorityQueue<Hub> heaviest;
+  private int maxHubs;
+
+  @Override
+  public void setup(Configuration conf, int numPartitions) {
+    super.setup(conf, numPartitions);
+    this.loads = new long[numPartitions][BUCKETS];
+    this.counts = new long[BUCKETS];
+    this.maxHubs = conf.getInt(MAX_HUBS_KEY, 10000);
+    this.heaviest = new PriorityQueue<Hub>(11, WEIGHT_ORDER);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void addVertex(Vertex<V, E, M> vertex, int partition) {
+    long weight = vertex.getEdges().size() + 1L;
+    int bucket = bucket(weight);
+    loads[partition][bucket] += weight;
+    counts[bucket]++;
+
+    if (heaviest.size() < maxHubs) {
+      heaviest.add(new Hub(vertex.getVertexID(), weight, partition));
+    } else if (maxHubs > 0 && heaviest.peek().weight < weight) {
+      heaviest.poll();
+      heaviest.add(new Hub(vertex.getVertexID(), weight, partition));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected Map<V, Integer> plan(BSPPeer peer, Path planDir)
+      throws IOException, SyncException, InterruptedException {
+    FileSystem fs = FileSystem.get(conf);
+    int numPeers = peer.getNumPeers();
+
+    FSDataOutputStream out = fs.create(new Path(planDir, "histogram-"
+        + peer.getPeerIndex()));
+    for (int i = 0; i < numPartitions; i++) {
+      for (int b = 0; b < BUCKETS; b++) {
+        out.writeLong(loads[i][b]);
+      }
+    }
+    for (int b = 0; b < BUCKETS; b++) {
+      out.writeLong(counts[b]);
+    }
+    out.close();
+    peer.sync();
+
+    long[][] globalLoads = new long[numPartitions][BUCKETS];
+    long[][] peerCounts = new long[numPeers][BUCKETS];
+    for (int p = 0; p < numPeers; p++) {
+      FSDataInputStream in = fs.open(new Path(planDir, "histogram-" + p));
+      for (int i = 0; i < numPartitions; i++) {
+        for (int b = 0; b < BUCKETS; b++) {
+          globalLoads[i][b] += in.readLong();
+        }
+      }
+      for (int b = 0; b < BUCKETS; b++) {
+        peerCounts[p][b] = in.readLong();
+      }
+      in.close();
+    }
+
+    float tolerance = conf.getFloat(TOLERANCE_KEY, 0.1f);
+    int threshold = getThreshold(globalLoads, peerCounts, maxHubs, tolerance);
+    Map<V, Integer> assignments = new HashMap<V, Integer>();
+    if (threshold == BUCKETS) {
+      LOG.info("Partitions are balanced without placing any hubs.");
+      return assignments;
+    }
+
+    // share the hubs, all peers assign them in the same order
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, new Path(
+        planDir, "hubs-" + peer.getPeerIndex()),
+        GraphJobRunner.VERTEX_ID_CLASS, LongWritable.class,
+        CompressionType.NONE);
+    Map<V, Integer> ownHubs = new HashMap<V, Integer>();
+    for (Hub hub : heaviest) {
+      if (bucket(hub.weight) >= threshold) {
+        writer.append(hub.vertexId, new LongWritable(hub.weight));
+        ownHubs.put((V) hub.vertexId, hub.partition);
+      }
+    }
+    writer.close();
+    heaviest.clear();
+    peer.sync();
+
+    List<Hub> hubs = new ArrayList<Hub>();
+    for (int p = 0; p < numPeers; p++) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(
+          planDir, "hubs-" + p), conf);
+      V vertexId = (V) GraphJobRunner.createVertexIDObject();
+      LongWritable weight = new LongWritable();
+      while (reader.next(vertexId, weight)) {
+        hubs.add(new Hub(vertexId, weight.get(), -1));
+        vertexId = (V) GraphJobRunner.createVertexIDObject();
+      }
+      reader.close();
+    }
+
+    int[] placement = place(hubs, globalLoads, threshold);
+    for (int i = 0; i < hubs.size(); i++) {
+      Integer hashed = ownHubs.get(hubs.get(i).vertexId);
+      if (hashed != null && hashed != placement[i]) {
+        assignments.put((V) hubs.get(i).vertexId, placement[i]);
+      }
+    }
+    LOG.info(hubs.size() + " hubs with at least " + ((1L << threshold) - 1)
+        + " edges are placed, " + assignments.size() + " of them from "
+        + peer.getPeerName() + " moved.");
+    return assignments;
+  }
+
+  /**
+   * @return the bucket of the given weight, the floor of its binary logarithm.
+   */
+  static int bucket(long weight) {
+    return BUCKETS - 1 - Long.numberOfLeadingZeros(weight);
+  }
+
+  /**
+   * Finds the highest bucket from which on all vertices must be placed as hubs
+   * so the remaining vertices are balanced within the tolerance. Stops early
+   * if a peer would have to contribute more than the given number of hubs.
+   *
+   * @param loads the weights by partition and bucket.
+   * @param peerCounts the number of vertices by peer and bucket.
+   * @return the lowest bucket of the hubs, {@link #BUCKETS} if there are none.
+   */
+  static int getThreshold(long[][] loads, long[][] peerCounts, int maxHubs,
+      float tolerance) {
+    long total = 0L;
+    for (long[] partition : loads) {
+      for (long load : partition) {
+        total += load;
+      }
+    }
+    double limit = (1.0d + tolerance) * total / loads.length;
+
+    // start above the heaviest vertex
+    int top = 0;
+    for (long[] counts : peerCounts) {
+      for (int b = top; b < BUCKETS; b++) {
+        if (counts[b] > 0) {
+          top = b + 1;
+        }
+      }
+    }
+
+    for (int threshold = top;; threshold--) {
+      long max = 0L;
+      for (long[] partition : loads) {
+        long base = 0L;
+        for (int b = 0; b < threshold; b++) {
+          base += partition[b];
+        }
+        max = Math.max(max, base);
+      }
+      if (max <= limit || threshold == 0) {
+        return threshold == top ? BUCKETS : threshold;
+      }
+      for (long[] counts : peerCounts) {
+        long hubs = 0L;
+        for (int b = threshold - 1; b < BUCKETS; b++) {
+          hubs += counts[b];
+        }
+        if (hubs > maxHubs) {
+          return threshold == top ? BUCKETS : threshold;
+        }
+      }
+    }
+  }
+
+  /**
+   * Assigns the hubs heaviest first to the partition with the least weight
+   * below the threshold and the hubs placed so far.
+   *
+   * @return the partitions of the hubs, in the order of the given list.
+   */
+  @SuppressWarnings("unchecked")
+  static int[] place(List<? extends Hub> hubs, long[][] loads, int threshold) {
+    long[] base = new long[loads.length];
+    for (int i = 0; i < loads.length; i++) {
+      for (int b = 0; b < threshold; b++) {
+        base[i] += loads[i][b];
+      }
+    }
+
+    List<Integer> order = new ArrayList<Integer>();
+    for (int i = 0; i < hubs.size(); i++) {
+      order.add(i);
+    }
+    final List<? extends Hub> list = hubs;
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        Hub h1 = list.get(o1);
+        Hub h2 = list.get(o2);
+        if (h1.weight != h2.weight) {
+          return h1.weight > h2.weight ? -1 : 1;
+        }
+        return h1.vertexId.compareTo(h2.vertexId);
+      }
+    });
+
+    int[] placement = new int[hubs.size()];
+    for (int index : order) {
+      int min = 0;
+      for (int i = 1; i < base.length; i++) {
+        if (base[i] < base[min]) {
+          min = i;
+        }
+      }
+      base[min] += hubs.get(index).weight;
+      placement[index] = min;
+    }
+    return placement;
+  }
+
+  private static final Comparator<Hub> WEIGHT_ORDER = new Comparator<Hub>() {
+    @Override
+    public int compare(Hub o1, Hub o2) {
+      return o1.weight < o2.weight ? -1 : (o1.weight == o2.weight ? 0 : 1);
+    }
+  };
+
+  /**
+   * A heavy vertex and its weight.
+   */
+  static class Hub {
+    final WritableComparable vertexId;
+    final long weight;
+    final int partition;
+
+    Hub(WritableComparable vertexId, long weight, int partition) {
+      this.vertexId = vertexId;
+      this.weight = weight;
+      this.partition = partition;
+    }
+  }
+
+}
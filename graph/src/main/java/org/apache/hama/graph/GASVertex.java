@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.Combiner;
+
+/**
+ * A vertex program in the gather-apply-scatter model. Instead of computing on
+ * its messages, a vertex gathers a value along each edge from its source, the
+ * gathered values are summed up and applied to the vertex, which then scatters
+ * to its neighbors, so they gather from it in the next superstep.
+ * 
+ * The sum must be commutative and associative, so the values are summed as
+ * they arrive: the graph job combines them before they are sent and the
+ * receiving peer keeps one sum per vertex instead of queueing and sorting the
+ * messages. This is set up by {@link GraphJob} for a vertex class that extends
+ * this class.
+ * 
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class GASVertex<V extends WritableComparable, E extends Writable, M extends Writable>
+    extends Vertex<V, E, M> {
+
+  /**
+   * @return a new instance of the value that the destination of the given
+   *         out-edge gathers from this vertex.
+   */
+  public abstract M gather(Edge<V, E> edge) throws IOException;
+
+  /**
+   * @return the sum of the given gathered values, a may be changed to the sum
+   *         and returned.
+   */
+  public abstract M sum(M a, M b);
+
+  /**
+   * Applies the sum of the values gathered by this vertex.
+   * 
+   * @param sum the sum, null if this vertex gathered nothing.
+   */
+  public abstract void apply(M sum) throws IOException;
+
+  /**
+   * @return true if the neighbors gather from this vertex in the next
+   *         superstep, otherwise this vertex votes to halt until it gathers
+   *         again. The default is true.
+   */
+  public boolean scatter() throws IOException {
+    return true;
+  }
+
+  /**
+   * Applies the sum of the messages, the initial superstep just scatters the
+   * initial value.
+   */
+  @Override
+  public final void compute(Iterable<M> messages) throws IOException {
+    if (getSuperstepCount() > 0) {
+      M sum = null;
+      for (Iterator<M> it = messages.iterator(); it.hasNext();) {
+        M value = it.next();
+        sum = sum == null ? value : sum(sum, value);
+      }
+      apply(sum);
+    }
+
+    if (!scatter()) {
+      voteToHalt();
+      return;
+    }
+    for (Edge<V, E> edge : getEdges()) {
+      sendMessage(edge, gather(edge));
+    }
+  }
+
+  /**
+   * Combines the messages with the sum of the vertex class of the job.
+   */
+  public static final class SumCombiner<M extends Writable> extends
+      Combiner<M> implements Configurable {
+
+    private Configuration conf;
+    private GASVertex<?, ?, M> vertex;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+      this.vertex = (GASVertex<?, ?, M>) org.apache.hadoop.util.ReflectionUtils
+          .newInstance(conf.getClass(GraphJob.VERTEX_CLASS_ATTR, null), conf);
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    /**
+     * @return the sum of the given values.
+     */
+    M sum(M a, M b) {
+      return vertex.sum(a, b);
+    }
+
+    @Override
+    public M combine(Iterable<M> messages) {
+      M sum = null;
+      for (M value : messages) {
+        sum = sum == null ? value : vertex.sum(sum, value);
+      }
+      return sum;
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.TaskAttemptID;
+import org.apache.hama.bsp.message.queue.MessageQueue;
+import org.apache.hama.bsp.message.queue.SynchronizedQueue;
+
+/**
+ * The receive queue of a graph job whose vertices extend {@link GASVertex}.
+ * Vertex messages are summed up per destination as they arrive, so the queue
+ * holds one value per vertex instead of all messages and only sorts the
+ * destinations once they are read. The other messages are queued and read
+ * first in their usual order. A vertex message to a destination that was read
+ * already is rejected, it would be delivered a second time.
+ */
+@SuppressWarnings("rawtypes")
+public final class GatheringQueue implements
+    SynchronizedQueue<GraphJobMessage> {
+
+  private Configuration conf;
+  private GASVertex.SumCombiner<Writable> combiner;
+
+  private final PriorityQueue<GraphJobMessage> otherMessages = new PriorityQueue<GraphJobMessage>();
+  private final Map<WritableComparable, Writable> sums = new HashMap<WritableComparable, Writable>();
+  // the destinations in read order, null until the sums are read
+  private WritableComparable[] destinations;
+  private int index;
+  // the destination read last, null if none was read
+  private WritableComparable lastRead;
+  private int size;
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public synchronized void init(Configuration conf, TaskAttemptID id) {
+    this.conf = conf;
+    combiner = new GASVertex.SumCombiner<Writable>();
+    combiner.setConf(conf);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized void add(GraphJobMessage item) {
+    if (!item.isVertexMessage()) {
+      size++;
+      otherMessages.add(item);
+      return;
+    }
+    WritableComparable vertexId = item.getVertexId();
+    if (lastRead != null && vertexId.compareTo(lastRead) <= 0) {
+      throw new IllegalStateException("A message to vertex " + vertexId
+          + " was added after its messages were read.");
+    }
+    size++;
+    Writable sum = sums.get(vertexId);
+    if (sum == null) {
+      // a destination added while reading is sorted in again
+      destinations = null;
+      sums.put(vertexId, item.getVertexValue());
+    } else {
+      size--;
+      sums.put(vertexId, combiner.sum(sum, item.getVertexValue()));
+    }
+  }
+
+  @Override
+  public void addAll(Iterable<GraphJobMessage> col) {
+    for (GraphJobMessage item : col) {
+      add(item);
+    }
+  }
+
+  @Override
+  public synchronized void addAll(MessageQueue<GraphJobMessage> otherqueue) {
+    // the messages of the next superstep, with persistent queues the unread
+    // messages of this one are read again with them
+    lastRead = null;
+    destinations = null;
+    GraphJobMessage item;
+    while ((item = otherqueue.poll()) != null) {
+      add(item);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized GraphJobMessage poll() {
+    if (!otherMessages.isEmpty()) {
+      size--;
+      return otherMessages.poll();
+    }
+    if (sums.isEmpty()) {
+      return null;
+    }
+    if (destinations == null) {
+      destinations = sums.keySet().toArray(new WritableComparable[sums.size()]);
+      Arrays.sort(destinations);
+      index = 0;
+    }
+    WritableComparable vertexId = destinations[index++];
+    lastRead = vertexId;
+    size--;
+    return new GraphJobMessage(vertexId, sums.remove(vertexId));
+  }
+
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void clear() {
+    otherMessages.clear();
+    sums.clear();
+    destinations = null;
+    lastRead = null;
+    size = 0;
+  }
+
+  @Override
+  public synchronized Iterator<GraphJobMessage> iterator() {
+    List<GraphJobMessage> messages = new ArrayList<GraphJobMessage>(
+        otherMessages);
+    for (Map.Entry<WritableComparable, Writable> e : sums.entrySet()) {
+      messages.add(new GraphJobMessage(e.getKey(), e.getValue()));
+    }
+    return messages.iterator();
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+
+  @Override
+  public void prepareRead() {
+  }
+
+  @Override
+  public void prepareWrite() {
+  }
+
+  @Override
+  public boolean isMessageSerialized() {
+    return false;
+  }
+
+  @Override
+  public boolean isMemoryBasedQueue() {
+    return true;
+  }
+
+  @Override
+  public MessageQueue<GraphJobMessage> getMessageQueue() {
+    return this;
+  }
+
+}
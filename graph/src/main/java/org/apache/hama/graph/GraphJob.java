@@ -19,7 +19,9 @@ package org.apache.hama.graph;
 
 import java.io.IOException;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
@@ -46,6 +48,15 @@ public class GraphJob extends BSPJob {
 
   public final static String VERTEX_OUTPUT_WRITER_CLASS_ATTR = "hama.graph.vertex.output.writer.class";
   public final static String AGGREGATOR_CLASS_ATTR = "hama.graph.aggregator.class";
+  public final static String PARTITION_PLANNER_CLASS_ATTR = "hama.graph.partition.planner.class";
+  public final static String MIRROR_THRESHOLD_ATTR = "hama.graph.mirror.threshold";
+  public final static String MULTICAST_ATTR = "hama.graph.multicast";
+  public final static String OUTPUT_THREADS_ATTR = "hama.graph.output.threads";
+  public final static String OUTPUT_SKIP_HALTED_ATTR = "hama.graph.output.skip.halted";
+  public final static String METRICS_DIR_ATTR = "hama.graph.metrics.dir";
+  public final static String INCREMENTAL_PRIOR_DIR_ATTR = "hama.graph.incremental.prior.dir";
+  public final static String INCREMENTAL_DELTA_DIR_ATTR = "hama.graph.incremental.delta.dir";
+  public final static String VERTEX_ID_DICTIONARY_ATTR = "hama.graph.vertex.id.dictionary";
 
   /**
    * Creates a new Graph Job with the given configuration and an exampleClass.
@@ -147,6 +158,107 @@ public class GraphJob extends BSPJob {
         VertexOutputWriter.class);
   }
 
+  /**
+   * Sets the planner that places the vertices during the runtime partitioning,
+   * e.g. {@link EdgeBalancedPartitionPlanner} to balance the partitions by
+   * their number of edges. If not set, the partitioner alone places them.
+   */
+  public void setPartitionPlannerClass(@SuppressWarnings("rawtypes")
+  Class<? extends PartitionPlanner> cls) {
+    ensureState(JobState.DEFINE);
+    conf.setClass(PARTITION_PLANNER_CLASS_ATTR, cls, PartitionPlanner.class);
+  }
+
+  /**
+   * Sets the number of edges from which on a vertex is mirrored on all peers
+   * that host its neighbors. Messages a mirrored vertex sends to all its
+   * neighbors are sent once per peer and delivered there by the mirror, so the
+   * work of such a hub is spread over the peers. The neighbors of a hub share
+   * the delivered message instances. The mirrors need the receive queue set by
+   * {@link #submit()}. 0 for no mirrors is default value.
+   */
+  public void setMirrorThreshold(int threshold) {
+    conf.setInt(MIRROR_THRESHOLD_ATTR, threshold);
+  }
+
+  /**
+   * Sets if a message a vertex sends to all its neighbors is sent once per
+   * peer, along with the ids of the neighbors on that peer. The neighbors on a
+   * peer share the delivered message instance. The receiving peer keeps the
+   * expanded messages of a superstep in a sorted map with an entry per
+   * neighbor, which needs more heap than the serialized messages of the
+   * receive queue. Disabled by default, and not used with a combiner, which
+   * already reduces the messages to a vertex to one per sending peer.
+   */
+  public void setMulticast(boolean multicast) {
+    conf.setBoolean(MULTICAST_ATTR, multicast);
+  }
+
+  /**
+   * Sets the number of threads that write the vertices of a task after the
+   * computation. With more than one thread each task writes to as many part
+   * files, named like "part-00000_1" besides its usual one. 1 is the default
+   * value. The vertex output writer must be a {@link RecordVertexOutputWriter},
+   * like the default one, otherwise a single thread writes the vertices.
+   */
+  public void setOutputThreads(int threads) {
+    conf.setInt(OUTPUT_THREADS_ATTR, threads);
+  }
+
+  /**
+   * Sets if the vertices that voted to halt are left out of the output, for
+   * example if only the vertices that are still active are of interest. All
+   * vertices are written by default.
+   */
+  public void setSkipHaltedVerticesOutput(boolean skip) {
+    conf.setBoolean(OUTPUT_SKIP_HALTED_ATTR, skip);
+  }
+
+  /**
+   * Sets the directory to which each task writes the time, the messages, the
+   * heap and the garbage collection of its supersteps, as tab separated lines.
+   * No metrics are written by default.
+   */
+  public void setMetricsPath(Path dir) {
+    conf.set(METRICS_DIR_ATTR, dir.toString());
+  }
+
+  /**
+   * Continues from the output of a prior run of the same job on the graph
+   * before the given changes. The vertices start with their prior value and
+   * only the changed vertices compute in the first superstep, see
+   * {@link Vertex#computeChanged()}. The changes are text lines like "+v id
+   * [neighbor[:value] ...]", "-v id", "+e source destination [value]" and "-e
+   * source destination"; the input is the graph before the changes. The
+   * neighbors of a removed vertex count as changed. Each task reads a share of
+   * the files of the changes and sends them to the tasks that own them, so the
+   * changes should be split into several files. The graph is still loaded in
+   * full, only the supersteps are incremental.
+   * 
+   * @param prior the output directory of the prior run.
+   * @param delta the file or directory of the changes, may be null.
+   */
+  public void setIncremental(Path prior, Path delta) {
+    conf.set(INCREMENTAL_PRIOR_DIR_ATTR, prior.toString());
+    if (delta != null) {
+      conf.set(INCREMENTAL_DELTA_DIR_ATTR, delta.toString());
+    }
+  }
+
+  /**
+   * Sets if the Text vertex ids of the input are mapped to dense
+   * {@link LongWritable} ids by the runtime partitioning, see
+   * {@link VertexIdDictionary}. The vertex id class must be
+   * {@link LongWritable} then, while the input reader still parses Text ids:
+   * it is declared with Text ids, the vertex class with LongWritable ids, as
+   * the vertices are encoded before they compute. The vertices are written
+   * with their Text ids. Disabled by default, can't be used with a partition
+   * planner or an incremental computation.
+   */
+  public void setVertexIDDictionary(boolean dictionary) {
+    conf.setBoolean(VERTEX_ID_DICTIONARY_ATTR, dictionary);
+  }
+
   @SuppressWarnings("unchecked")
   public Class<? extends Vertex<? extends Writable, ? extends Writable, ? extends Writable>> getVertexClass() {
     return (Class<? extends Vertex<? extends Writable, ? extends Writable, ? extends Writable>>) conf
@@ -197,13 +309,43 @@ public class GraphJob extends BSPJob {
                 Constants.RUNTIME_PARTITION_RECORDCONVERTER) != null,
             "Please provide a converter class for your vertex by using GraphJob#setVertexInputReaderClass!");
 
+    if (this.getConfiguration().getBoolean(VERTEX_ID_DICTIONARY_ATTR, false)) {
+      Preconditions.checkArgument(
+          LongWritable.class.getName().equals(
+              this.getConfiguration().get(VERTEX_ID_CLASS_ATTR)),
+          "The vertex ID class must be LongWritable with a vertex ID dictionary!");
+      Preconditions.checkArgument(
+          this.getConfiguration().get(PARTITION_PLANNER_CLASS_ATTR) == null,
+          "A vertex ID dictionary can't be used with a partition planner!");
+      Preconditions.checkArgument(
+          this.getConfiguration().get(INCREMENTAL_PRIOR_DIR_ATTR) == null,
+          "A vertex ID dictionary can't be used with an incremental computation!");
+    }
+
     if (this.getConfiguration().get(VERTEX_OUTPUT_WRITER_CLASS_ATTR) == null) {
       this.setVertexOutputWriterClass(DefaultVertexOutputWriter.class);
     }
 
-    // add the default message queue to the sorted one
-    this.getConfiguration().setClass(MessageManager.RECEIVE_QUEUE_TYPE_CLASS,
-        SortedMemoryQueue.class, MessageQueue.class);
+    if (GASVertex.class.isAssignableFrom(getVertexClass())) {
+      // sum up the messages as they are sent and received
+      if (this.getConfiguration().get(Constants.COMBINER_CLASS) == null) {
+        this.getConfiguration().setClass(Constants.COMBINER_CLASS,
+            GASVertex.SumCombiner.class, Combiner.class);
+      }
+      this.getConfiguration().setClass(
+          MessageManager.RECEIVE_QUEUE_TYPE_CLASS, GatheringQueue.class,
+          MessageQueue.class);
+    } else if (PrimitiveGatheringQueue.isApplicable(this.getConfiguration())) {
+      // combine the received messages in primitive arrays
+      this.getConfiguration().setClass(
+          MessageManager.RECEIVE_QUEUE_TYPE_CLASS,
+          PrimitiveGatheringQueue.class, MessageQueue.class);
+    } else {
+      // add the default message queue to the sorted one
+      this.getConfiguration().setClass(
+          MessageManager.RECEIVE_QUEUE_TYPE_CLASS, SortedMemoryQueue.class,
+          MessageQueue.class);
+    }
 
     super.submit();
   }
@@ -20,13 +20,13 @@ package org.apache.hama.graph;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
-import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.util.ReflectionUtils;
 
 /**
@@ -40,6 +40,8 @@ public final class GraphJobMessage implements
   public static final int MAP_FLAG = 0x01;
   public static final int VERTEX_FLAG = 0x02;
   public static final int VERTICES_SIZE_FLAG = 0x04;
+  public static final int MIRROR_FLAG = 0x08;
+  public static final int MULTICAST_FLAG = 0x10;
 
   // default flag to -1 "unknown"
   private int flag = -1;
@@ -48,15 +50,8 @@ public final class GraphJobMessage implements
   private WritableComparable vertexId;
   private Writable vertexValue;
   private IntWritable verticesSize;
-  private static GraphJobMessageComparator comparator;
-
-  static {
-    if (comparator == null) {
-      comparator = new GraphJobMessageComparator();
-    }
-
-    WritableComparator.define(GraphJobMessage.class, comparator);
-  }
+  @SuppressWarnings("rawtypes")
+  private List<WritableComparable> targetVertexIds;
 
   public GraphJobMessage() {
   }
@@ -77,10 +72,41 @@ public final class GraphJobMessage implements
     this.verticesSize = size;
   }
 
+  /**
+   * @return a message for all neighbors of the given hub, which the mirrors of
+   *         the hub deliver to the neighbors on their peer.
+   */
+  public static GraphJobMessage createMirrorMessage(
+      WritableComparable<?> hubId, Writable vertexValue) {
+    GraphJobMessage msg = new GraphJobMessage(hubId, vertexValue);
+    msg.flag = MIRROR_FLAG;
+    return msg;
+  }
+
+  /**
+   * @return a message with the same value for all given vertices, which are on
+   *         the same peer. The value is sent once, followed by the ids.
+   */
+  @SuppressWarnings("rawtypes")
+  public static GraphJobMessage createMulticastMessage(
+      List<WritableComparable> targetVertexIds, Writable vertexValue) {
+    GraphJobMessage msg = new GraphJobMessage();
+    msg.flag = MULTICAST_FLAG;
+    msg.targetVertexIds = targetVertexIds;
+    msg.vertexValue = vertexValue;
+    return msg;
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
     out.writeByte(this.flag);
-    if (isVertexMessage()) {
+    if (isMulticastMessage()) {
+      vertexValue.write(out);
+      out.writeInt(targetVertexIds.size());
+      for (WritableComparable<?> vertexId : targetVertexIds) {
+        vertexId.write(out);
+      }
+    } else if (isVertexMessage() || isMirrorMessage()) {
       // we don't need to write the classes because the other side has the same
       // classes for the two entities.
       vertexId.write(out);
@@ -96,7 +122,9 @@ public final class GraphJobMessage implements
 
   public void fastReadFields(DataInput in) throws IOException {
     flag = in.readByte();
-    if (isVertexMessage()) {
+    if (isMulticastMessage()) {
+      // multicast messages are only ordered by their flag
+    } else if (isVertexMessage() || isMirrorMessage()) {
       vertexId = GraphJobRunner.createVertexIDObject();
       vertexId.readFields(in);
       /*
@@ -119,7 +147,17 @@ public final class GraphJobMessage implements
   @Override
   public void readFields(DataInput in) throws IOException {
     flag = in.readByte();
-    if (isVertexMessage()) {
+    if (isMulticastMessage()) {
+      vertexValue = GraphJobRunner.createVertexValue();
+      vertexValue.readFields(in);
+      int size = in.readInt();
+      targetVertexIds = new ArrayList<WritableComparable>(size);
+      for (int i = 0; i < size; i++) {
+        WritableComparable<?> vertexId = GraphJobRunner.createVertexIDObject();
+        vertexId.readFields(in);
+        targetVertexIds.add(vertexId);
+      }
+    } else if (isVertexMessage() || isMirrorMessage()) {
       vertexId = GraphJobRunner.createVertexIDObject();
       vertexId.readFields(in);
       vertexValue = GraphJobRunner.createVertexValue();
@@ -141,9 +179,9 @@ public final class GraphJobMessage implements
   @Override
   public int compareTo(GraphJobMessage that) {
     if (this.flag != that.flag) {
-      return (this.flag - that.flag);
+      return (order(this.flag) - order(that.flag));
     } else {
-      if (this.isVertexMessage()) {
+      if (this.isVertexMessage() || this.isMirrorMessage()) {
         return this.vertexId.compareTo(that.vertexId);
       } else if (this.isMapMessage()) {
         return Integer.MIN_VALUE;
@@ -152,6 +190,18 @@ public final class GraphJobMessage implements
     return 0;
   }
 
+  /**
+   * @return the rank of the given flag in the sort order. Mirror and multicast
+   *         messages are sorted between the map and the vertex messages, so
+   *         they can be expanded before the vertex messages are read.
+   */
+  private static int order(int flag) {
+    if (flag == MIRROR_FLAG || flag == MULTICAST_FLAG) {
+      return 2 * VERTEX_FLAG - 1;
+    }
+    return 2 * flag;
+  }
+
   public MapWritable getMap() {
     return map;
   }
@@ -165,6 +215,14 @@ public final class GraphJobMessage implements
     return vertexValue;
   }
 
+  /**
+   * @return the destinations of a multicast message.
+   */
+  @SuppressWarnings("rawtypes")
+  public List<WritableComparable> getTargetVertexIds() {
+    return targetVertexIds;
+  }
+
   public IntWritable getVerticesSize() {
     return verticesSize;
   }
@@ -181,6 +239,14 @@ public final class GraphJobMessage implements
     return flag == VERTICES_SIZE_FLAG;
   }
 
+  public boolean isMirrorMessage() {
+    return flag == MIRROR_FLAG;
+  }
+
+  public boolean isMulticastMessage() {
+    return flag == MULTICAST_FLAG;
+  }
+
   @Override
   public String toString() {
     if (isVertexMessage()) {
@@ -189,48 +255,14 @@ public final class GraphJobMessage implements
       return "Map: " + map;
     } else if (isVerticesSizeMessage()) {
       return "#Vertices: " + verticesSize;
+    } else if (isMirrorMessage()) {
+      return "Hub: " + vertexId + " Val: " + vertexValue;
+    } else if (isMulticastMessage()) {
+      return "IDs: " + targetVertexIds + " Val: " + vertexValue;
     } else {
       return "GraphJobMessage [flag=" + flag + ", map=" + map + ", vertexId="
           + vertexId + ", vertexValue=" + vertexValue + "]";
     }
   }
 
-  public static class GraphJobMessageComparator extends WritableComparator {
-    private final DataInputBuffer buffer;
-    private final GraphJobMessage key1;
-    private final GraphJobMessage key2;
-
-    public GraphJobMessageComparator() {
-      this(GraphJobMessage.class);
-    }
-
-    protected GraphJobMessageComparator(
-        Class<? extends WritableComparable<?>> keyClass) {
-      this(keyClass, false);
-    }
-
-    protected GraphJobMessageComparator(
-        Class<? extends WritableComparable<?>> keyClass, boolean createInstances) {
-      super(keyClass, createInstances);
-      key1 = new GraphJobMessage();
-      key2 = new GraphJobMessage();
-      buffer = new DataInputBuffer();
-    }
-
-    @Override
-    public synchronized int compare(byte[] b1, int s1, int l1, byte[] b2,
-        int s2, int l2) {
-      try {
-        buffer.reset(b1, s1, l1); // parse key1
-        key1.fastReadFields(buffer);
-
-        buffer.reset(b2, s2, l2); // parse key2
-        key2.fastReadFields(buffer);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-
-      return compare(key1, key2); // compare them
-    }
-  }
 }
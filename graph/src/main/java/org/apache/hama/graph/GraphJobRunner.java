@@ -19,11 +19,16 @@ package org.apache.hama.graph;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.MapWritable;
@@ -34,6 +39,7 @@ import org.apache.hama.Constants;
 import org.apache.hama.HamaConfiguration;
 import org.apache.hama.bsp.BSP;
 import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.Combiner;
 import org.apache.hama.bsp.HashPartitioner;
 import org.apache.hama.bsp.Partitioner;
 import org.apache.hama.bsp.PartitioningRunner.DefaultRecordConverter;
@@ -43,6 +49,8 @@ import org.apache.hama.commons.util.KeyValuePair;
 import org.apache.hama.graph.IDSkippingIterator.Strategy;
 import org.apache.hama.util.ReflectionUtils;
 
+import com.google.common.collect.Iterables;
+
 /**
  * Fully generic graph job runner.
  *
@@ -55,7 +63,8 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     extends BSP<Writable, Writable, Writable, Writable, GraphJobMessage> {
 
   public static enum GraphJobCounter {
-    MULTISTEP_PARTITIONING, ITERATIONS, INPUT_VERTICES, AGGREGATE_VERTICES
+    MULTISTEP_PARTITIONING, ITERATIONS, INPUT_VERTICES, AGGREGATE_VERTICES,
+    INPUT_EDGES, CUT_EDGES
   }
 
   private static final Log LOG = LogFactory.getLog(GraphJobRunner.class);
@@ -68,6 +77,10 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
   public static final String S_FLAG_VERTEX_DECREASE = "hama.4";
   public static final String S_FLAG_VERTEX_ALTER_COUNTER = "hama.5";
   public static final String S_FLAG_VERTEX_TOTAL_VERTICES = "hama.6";
+  public static final String S_FLAG_MIRROR_EDGES = "hama.7";
+  public static final String S_FLAG_MUTATIONS = "hama.8";
+  public static final String S_FLAG_INCREMENTAL_CHANGES = "hama.9";
+  public static final String S_FLAG_CHANGED_NEIGHBORS = "hama.10";
   public static final Text FLAG_MESSAGE_COUNTS = new Text(S_FLAG_MESSAGE_COUNTS);
   public static final Text FLAG_VERTEX_INCREASE = new Text(
       S_FLAG_VERTEX_INCREASE);
@@ -77,6 +90,12 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
       S_FLAG_VERTEX_ALTER_COUNTER);
   public static final Text FLAG_VERTEX_TOTAL_VERTICES = new Text(
       S_FLAG_VERTEX_TOTAL_VERTICES);
+  public static final Text FLAG_MIRROR_EDGES = new Text(S_FLAG_MIRROR_EDGES);
+  public static final Text FLAG_MUTATIONS = new Text(S_FLAG_MUTATIONS);
+  public static final Text FLAG_INCREMENTAL_CHANGES = new Text(
+      S_FLAG_INCREMENTAL_CHANGES);
+  public static final Text FLAG_CHANGED_NEIGHBORS = new Text(
+      S_FLAG_CHANGED_NEIGHBORS);
 
   public static final String VERTEX_CLASS_KEY = "hama.graph.vertex.class";
 
@@ -95,12 +114,23 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
   private int changedVertexCnt = 0;
 
   private long numberVertices = 0;
+  private long numberEdges = 0;
+  private long cutEdges = 0;
   // -1 is deactivated
   private int maxIteration = -1;
   private long iteration;
 
   private AggregationRunner<V, E, M> aggregationRunner;
+  private HubMirrors<V, E, M> mirrors;
+  private DeliveredMessages<V, M> deliveredMessages;
+  private boolean multicast;
+  private final Map<String, GraphMutations<V, E, M>> outgoingMutations = new HashMap<String, GraphMutations<V, E, M>>();
+  private final GraphMutations<V, E, M> receivedMutations = new GraphMutations<V, E, M>();
   private VertexOutputWriter<Writable, Writable, V, E, M> vertexOutputWriter;
+  private SuperstepMetrics metrics;
+  private IncrementalInput<V, E, M> incremental;
+  private VertexIdDictionary dictionary;
+  private int activeVertices;
 
   private BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer;
 
@@ -115,6 +145,7 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
 
     countGlobalVertexCount(peer);
 
+    metrics = SuperstepMetrics.create(conf, peer);
     doInitialSuperstep(peer);
 
   }
@@ -131,6 +162,9 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
       // superstep
       globalUpdateCounts = 0;
       peer.sync();
+      if (metrics != null) {
+        metrics.superstep(iteration - 1, activeVertices);
+      }
 
       // note that the messages must be parsed here
       GraphJobMessage firstVertexMessage = parseMessages(peer);
@@ -153,16 +187,45 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
 
   /**
    * Just write <ID as Writable, Value as Writable> pair as a result. Note that
-   * this will also be executed when failure happened.
+   * this will also be executed when failure happened. The vertices are written
+   * by several threads if "hama.graph.output.threads" is set and the output
+   * writer is a {@link RecordVertexOutputWriter}.
    */
   @Override
   public final void cleanup(
       BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer)
       throws IOException {
-    vertexOutputWriter.setup(conf);
+    if (metrics != null) {
+      // the last superstep, if the maximum iterations ended the job
+      metrics.superstep(iteration - 1, activeVertices);
+      metrics.close();
+    }
+    int outputThreads = conf.getInt(GraphJob.OUTPUT_THREADS_ATTR, 1);
+    boolean skipHalted = conf.getBoolean(GraphJob.OUTPUT_SKIP_HALTED_ATTR,
+        false);
     IDSkippingIterator<V, E, M> skippingIterator = vertices.skippingIterator();
-    while (skippingIterator.hasNext()) {
-      vertexOutputWriter.write(skippingIterator.next(), peer);
+    // the default writer writes the id and the value only
+    boolean decodeEdges = !vertexOutputWriter.getClass().equals(
+        DefaultVertexOutputWriter.class);
+    // the parallel output needs a writer that doesn't use the peer and a new
+    // vertex instance for every vertex, which the disk based store reuses
+    if (outputThreads > 1 && conf.get("bsp.output.dir") != null
+        && vertexOutputWriter instanceof RecordVertexOutputWriter
+        && !(vertices instanceof DiskVerticesInfo)) {
+      long written = new ParallelVertexOutput<V, E, M>(conf, peer,
+          outputThreads, dictionary, decodeEdges).write(skippingIterator,
+          skipHalted);
+      LOG.info(written + " vertices are written by " + outputThreads
+          + " threads.");
+    } else {
+      vertexOutputWriter.setup(conf);
+      while (skippingIterator.hasNext()) {
+        Vertex<V, E, M> vertex = skippingIterator.next();
+        if (!skipHalted || !vertex.isHalted()) {
+          vertexOutputWriter.write(dictionary == null ? vertex : dictionary
+              .decode(vertex, decodeEdges), peer);
+        }
+      }
     }
     vertices.cleanup(conf, peer.getTaskId());
   }
@@ -226,50 +289,55 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
   private void doSuperstep(GraphJobMessage currentMessage,
       BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer)
       throws IOException {
-    int activeVertices = 0;
+    activeVertices = 0;
     this.changedVertexCnt = 0;
     vertices.startSuperstep();
 
     /*
      * We iterate over our messages and vertices in sorted order. That means
      * that we need to seek the first vertex that has the same ID as the
-     * currentMessage or the first vertex that is active.
+     * currentMessage or the first vertex that is active. Halted vertices
+     * without messages are skipped and stay untouched in the storage.
      */
     IDSkippingIterator<V, E, M> iterator = vertices.skippingIterator();
-    VertexMessageIterable<V, M> iterable = null;
     Vertex<V, E, M> vertex = null;
 
-    // note that can't skip inactive vertices because we have to rewrite the
-    // complete vertex file in each iteration
-    while (iterator.hasNext(
-        currentMessage == null ? null : (V) currentMessage.getVertexId(),
-        Strategy.ALL)) {
+    while (iterator.hasNext(nextTarget(currentMessage, vertex),
+        Strategy.ACTIVE_AND_MESSAGES)) {
 
       vertex = iterator.next();
+      VertexMessageIterable<V, M> iterable = null;
       if (currentMessage != null) {
-        iterable = iterate(currentMessage, (V) currentMessage.getVertexId(),
-            vertex, peer);
+        currentMessage = skipMissingVertices(currentMessage, vertex, peer);
+        if (currentMessage != null
+            && currentMessage.getVertexId().compareTo(vertex.getVertexID()) == 0) {
+          iterable = new VertexMessageIterable<V, M>(currentMessage,
+              vertex.getVertexID(), peer);
+        }
       }
 
-      if (iterable != null && vertex.isHalted()) {
+      List<M> delivered = deliveredMessages.remove(vertex.getVertexID());
+      if ((iterable != null || delivered != null) && vertex.isHalted()) {
         vertex.setActive();
       }
 
       if (!vertex.isHalted()) {
         if (iterable == null) {
-          vertex.compute(Collections.<M> emptyList());
+          vertex.compute(delivered == null ? Collections.<M> emptyList()
+              : delivered);
         } else {
-          vertex.compute(iterable);
+          vertex.compute(delivered == null ? iterable : Iterables.concat(
+              iterable, delivered));
           currentMessage = iterable.getOverflowMessage();
         }
         activeVertices++;
       }
 
-      // note that we even need to rewrite the vertex if it is halted for
-      // consistency reasons
       vertices.finishVertexComputation(vertex);
     }
     vertices.finishSuperstep();
+    deliveredMessages.finishSuperstep();
+    sendMutations();
 
     getAggregationRunner().sendAggregatorValues(peer, activeVertices,
         this.changedVertexCnt);
@@ -277,47 +345,57 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
   }
 
   /**
-   * Iterating utility that ensures following things: <br/>
-   * - if vertex is active, but the given message does not match the vertexID,
-   * return null. <br/>
-   * - if vertex is inactive, but received a message that matches the ID, build
-   * an iterator that can be iterated until the next vertex has been reached
-   * (not buffer in memory) and set the vertex active <br/>
-   * - if vertex is active, and the given message does match the vertexID,
-   * return an iterator that can be iterated until the next vertex has been
-   * reached. <br/>
-   * - if vertex is inactive, and received no message, return null.
+   * @return the id of the next vertex that has messages, either in the queue
+   *         or delivered by multicasts and mirrors of hubs, null if there is
+   *         none.
+   */
+  @SuppressWarnings("unchecked")
+  private V nextTarget(GraphJobMessage currentMessage, Vertex<V, E, M> last) {
+    V target = currentMessage == null ? null : (V) currentMessage
+        .getVertexId();
+    V delivered = deliveredMessages.nextTarget(last == null ? null : last
+        .getVertexID());
+    if (delivered != null && (target == null || delivered.compareTo(target) < 0)) {
+      target = delivered;
+    }
+    return target;
+  }
+
+  /**
+   * Skips the messages whose destination comes before the given vertex, as the
+   * vertices are iterated in sorted order their destination doesn't exist. This
+   * fails unless "hama.check.missing.vertex" is disabled.
+   * 
+   * @return the first message whose destination is not before the given
+   *         vertex, null if there is none.
    */
   @SuppressWarnings("unchecked")
-  private VertexMessageIterable<V, M> iterate(GraphJobMessage currentMessage,
-      V firstMessageId, Vertex<V, E, M> vertex,
+  private GraphJobMessage skipMissingVertices(GraphJobMessage currentMessage,
+      Vertex<V, E, M> vertex,
       BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer) {
+    V firstMessageId = (V) currentMessage.getVertexId();
     int comparision = firstMessageId.compareTo(vertex.getVertexID());
-    if (conf.getBoolean("hama.check.missing.vertex", true)) {
-      if (comparision < 0) {
-        throw new IllegalArgumentException(
-          "A message has recieved with a destination ID: " + firstMessageId +
-          " that does not exist! (Vertex iterator is at" + vertex.getVertexID() 
-          + " ID)");
+    if (comparision < 0 && conf.getBoolean("hama.check.missing.vertex", true)) {
+      throw new IllegalArgumentException(
+          "A message has recieved with a destination ID: " + firstMessageId
+              + " that does not exist! (Vertex iterator is at"
+              + vertex.getVertexID() + " ID)");
+    }
+    while (comparision < 0) {
+      VertexMessageIterable<V, M> messageIterable = new VertexMessageIterable<V, M>(
+          currentMessage, firstMessageId, peer);
+      // drain the messages of the missing vertex
+      for (Iterator<M> it = messageIterable.iterator(); it.hasNext();) {
+        it.next();
       }
-    } else {
-      while (comparision < 0) {
-        VertexMessageIterable<V, M> messageIterable = new VertexMessageIterable<V, M>(
-            currentMessage, firstMessageId, peer);
-        currentMessage = messageIterable.getOverflowMessage();
-        firstMessageId = (V) currentMessage.getVertexId();
-        comparision = firstMessageId.compareTo(vertex.getVertexID());
+      currentMessage = messageIterable.getOverflowMessage();
+      if (currentMessage == null) {
+        return null;
       }
+      firstMessageId = (V) currentMessage.getVertexId();
+      comparision = firstMessageId.compareTo(vertex.getVertexID());
     }
-    if (comparision == 0) {
-      // vertex id matches with the vertex, return an iterator with newest
-      // message
-      return new VertexMessageIterable<V, M>(currentMessage,
-          vertex.getVertexID(), peer);
-    } else {
-      // return null
-      return null;
-    }
+    return currentMessage;
   }
 
   /**
@@ -333,12 +411,30 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     while (skippingIterator.hasNext()) {
       Vertex<V, E, M> vertex = skippingIterator.next();
 
-      // Calls setup method.
-      vertex.setup(conf);
-      vertex.compute(Collections.singleton(vertex.getValue()));
+      if (incremental == null) {
+        // Calls setup method.
+        vertex.setup(conf);
+        vertex.compute(Collections.singleton(vertex.getValue()));
+      } else {
+        // keeps the prior value over the setup, only changed vertices compute
+        M prior = vertex.getValue();
+        vertex.setup(conf);
+        if (prior != null) {
+          vertex.setValue(prior);
+        }
+        // the neighbors of removed vertices may be loaded halted
+        if (incremental.isChanged(vertex.getVertexID())) {
+          vertex.setVotedToHalt(false);
+        }
+        if (!vertex.isHalted()) {
+          vertex.computeChanged();
+        }
+      }
       vertices.finishVertexComputation(vertex);
     }
     vertices.finishSuperstep();
+    sendMutations();
+    activeVertices = vertices.size();
     getAggregationRunner().sendAggregatorValues(peer, 1, this.changedVertexCnt);
     iteration++;
   }
@@ -358,6 +454,24 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
         .newInstance(
             conf.getClass("bsp.input.partitioner.class", HashPartitioner.class),
             conf);
+    if (conf.getBoolean("input.has.partitioned", false)) {
+      Map<V, Integer> assignments = PartitionPlanner.<V> readAssignments(conf,
+          new Path(conf.get(Constants.JOB_INPUT_DIR)));
+      if (!assignments.isEmpty()) {
+        LOG.info(assignments.size() + " vertices are placed by plan.");
+        partitioner = new MappedPartitioner<V, M>(assignments, partitioner);
+      }
+    }
+    if (conf.getBoolean(GraphJob.VERTEX_ID_DICTIONARY_ATTR, false)) {
+      dictionary = VertexIdDictionary.read(conf,
+          new Path(conf.get(Constants.JOB_INPUT_DIR)), peer.getPeerIndex());
+      partitioner = (Partitioner<V, M>) (Partitioner) new VertexIdDictionary.IdPartitioner<M>();
+    }
+    mirrors = new HubMirrors<V, E, M>(this, conf);
+    deliveredMessages = new DeliveredMessages<V, M>(conf);
+    multicast = conf.getBoolean(GraphJob.MULTICAST_ATTR, false)
+        && conf.getClass(Constants.COMBINER_CLASS, Combiner.class).equals(
+            Combiner.class);
 
     Class<?> outputWriter = conf.getClass(
         GraphJob.VERTEX_OUTPUT_WRITER_CLASS_ATTR, VertexOutputWriter.class);
@@ -403,6 +517,23 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
       throws IOException, SyncException, InterruptedException {
     final boolean selfReference = conf.getBoolean("hama.graph.self.ref", false);
 
+    if (IncrementalInput.isIncremental(conf)) {
+      incremental = new IncrementalInput<V, E, M>(conf, partitioner,
+          peer.getPeerIndex(), peer.getNumPeers());
+      incremental.read();
+      // every peer read a share of the changes, each gets its own
+      sendToOwners(FLAG_INCREMENTAL_CHANGES, incremental.getRemoteChanges());
+      peer.sync();
+      GraphJobMessage msg;
+      while ((msg = peer.getCurrentMessage()) != null) {
+        if (msg.isMapMessage()
+            && msg.getMap().containsKey(FLAG_INCREMENTAL_CHANGES)) {
+          incremental.parseChanges(msg.getMap().get(FLAG_INCREMENTAL_CHANGES)
+              .toString());
+        }
+      }
+    }
+
     RecordConverter converter = org.apache.hadoop.util.ReflectionUtils
         .newInstance(conf.getClass(Constants.RUNTIME_PARTITION_RECORDCONVERTER,
             DefaultRecordConverter.class, RecordConverter.class), conf);
@@ -419,6 +550,9 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     while ((record = peer.readNext()) != null) {
       converted = converter.convertRecord(record, conf);
       currentVertex = (Vertex<V, E, M>) converted.getValue();
+      if (dictionary != null) {
+        dictionary.encode(currentVertex);
+      }
 
       if (vertex.getVertexID() == null) {
         vertex = currentVertex;
@@ -436,6 +570,11 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
             vertex.addEdge(new Edge<V, E>(vertex.getVertexID(), null));
           }
 
+          countCutEdges(vertex);
+          mirrors.addVertex(vertex);
+          if (incremental != null) {
+            incremental.restore(vertex);
+          }
           vertices.addVertex(vertex);
           vertex = currentVertex;
         }
@@ -445,72 +584,120 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     if (selfReference) {
       vertex.addEdge(new Edge<V, E>(vertex.getVertexID(), null));
     }
+    countCutEdges(vertex);
+    mirrors.addVertex(vertex);
+    if (incremental != null) {
+      incremental.restore(vertex);
+    }
     vertices.addVertex(vertex);
 
     vertices.finishAdditions();
     // finish the "superstep" because we have written a new file here
     vertices.finishSuperstep();
 
+    if (incremental != null) {
+      // the changes since the prior run are applied like mutations
+      receivedMutations.addAll(incremental.getMutations());
+      applyMutations();
+      // received with the vertex counts
+      sendToOwners(FLAG_CHANGED_NEIGHBORS, incremental.getRemoteNeighbors());
+    }
+
+    peer.getCounter(GraphJobCounter.INPUT_EDGES).increment(numberEdges);
+    peer.getCounter(GraphJobCounter.CUT_EDGES).increment(cutEdges);
     LOG.info(vertices.size() + " vertices are loaded into "
-        + peer.getPeerName());
+        + peer.getPeerName() + ", " + cutEdges + " of " + numberEdges
+        + " edges point to other peers.");
     LOG.debug("Starting Vertex processing!");
   }
 
   /**
-   * Add new vertex into memory of each peer.
-   *
-   * @throws IOException
+   * Sends the given lines to the peers of their partitions, one message per
+   * peer, and clears them.
    */
-  private void addVertex(Vertex<V, E, M> vertex) throws IOException {
-    vertex.setRunner(this);
-    vertex.setup(conf);
-
-    if (conf.getBoolean("hama.graph.self.ref", false)) {
-      vertex.addEdge(new Edge<V, E>(vertex.getVertexID(), null));
+  private void sendToOwners(Text flag, Map<Integer, StringBuilder> lines)
+      throws IOException {
+    for (Entry<Integer, StringBuilder> e : lines.entrySet()) {
+      MapWritable msg = new MapWritable();
+      msg.put(flag, new Text(e.getValue().toString()));
+      peer.send(peer.getPeerName(e.getKey()), new GraphJobMessage(msg));
     }
+    lines.clear();
+  }
 
-    LOG.debug("Added VertexID: " + vertex.getVertexID() + " in peer "
-        + peer.getPeerName());
-    vertices.addVertex(vertex);
+  /**
+   * Counts the edges of the given loaded vertex and those of them that cross
+   * the partitions, to report the edge cut of the partitioning.
+   */
+  @SuppressWarnings("unchecked")
+  private void countCutEdges(Vertex<V, E, M> vertex) {
+    int numPeers = peer.getNumPeers();
+    int index = peer.getPeerIndex();
+    long cut = 0L;
+    for (Edge<V, E> edge : vertex.getEdges()) {
+      if (partitioner.getPartition(edge.getDestinationVertexID(), null,
+          numPeers) != index) {
+        cut++;
+      }
+    }
+    numberEdges += vertex.getEdges().size();
+    cutEdges += cut;
   }
 
   /**
-   * Remove vertex from this peer.
-   *
-   * @throws IOException
+   * @return the changes to the graph of this superstep for the peer that owns
+   *         the given vertex.
    */
-  private void removeVertex(V vertexID) {
-    vertices.removeVertex(vertexID);
-    LOG.debug("Removed VertexID: " + vertexID + " in peer "
-        + peer.getPeerName());
+  final GraphMutations<V, E, M> getMutations(V vertexID) {
+    String peerName = peer.getPeerName(partitioner.getPartition(vertexID,
+        null, peer.getNumPeers()));
+    GraphMutations<V, E, M> mutations = outgoingMutations.get(peerName);
+    if (mutations == null) {
+      mutations = new GraphMutations<V, E, M>();
+      outgoingMutations.put(peerName, mutations);
+    }
+    return mutations;
   }
 
   /**
-   * After all inserts are done, we must finalize the VertexInfo data structure.
-   *
-   * @throws IOException
+   * Sends the changes to the graph of this superstep, one message per peer.
    */
-  private void finishAdditions() throws IOException {
-    vertices.finishAdditions();
-    // finish the "superstep" because we have written a new file here
-    vertices.finishSuperstep();
+  private void sendMutations() throws IOException {
+    for (Entry<String, GraphMutations<V, E, M>> e : outgoingMutations
+        .entrySet()) {
+      MapWritable msg = new MapWritable();
+      msg.put(FLAG_MUTATIONS, e.getValue());
+      peer.send(e.getKey(), new GraphJobMessage(msg));
+    }
+    // the messages keep the sent instances until the sync
+    outgoingMutations.clear();
   }
 
   /**
-   * After all inserts are done, we must finalize the VertexInfo data structure.
-   *
-   * @throws IOException
+   * Applies the changes to the graph that were received in this superstep.
    */
-  private void finishRemovals() throws IOException {
-    vertices.finishRemovals();
-    // finish the "superstep" because we have written a new file here
-    vertices.finishSuperstep();
+  private void applyMutations() throws IOException {
+    for (Vertex<V, E, M> vertex : receivedMutations.getAddedVertices()
+        .values()) {
+      vertex.setRunner(this);
+      vertex.setup(conf);
+
+      if (conf.getBoolean("hama.graph.self.ref", false)) {
+        vertex.addEdge(new Edge<V, E>(vertex.getVertexID(), null));
+      }
+    }
+    LOG.debug("Applying " + receivedMutations.getAddedVertices().size()
+        + " added and " + receivedMutations.getRemovedVertices().size()
+        + " removed vertices in peer " + peer.getPeerName());
+    vertices.applyMutations(receivedMutations);
+    receivedMutations.clear();
   }
 
   /**
    * Counts vertices globally by sending the count of vertices in the map to the
-   * other peers.
+   * other peers. Registers the mirrors of the hubs of other peers as well.
    */
+  @SuppressWarnings("unchecked")
   private void countGlobalVertexCount(
       BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer)
       throws IOException, SyncException, InterruptedException {
@@ -524,6 +711,13 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     while ((msg = peer.getCurrentMessage()) != null) {
       if (msg.isVerticesSizeMessage()) {
         numberVertices += msg.getVerticesSize().get();
+      } else if (msg.isMapMessage()
+          && msg.getMap().containsKey(FLAG_MIRROR_EDGES)) {
+        mirrors.register((Vertex<V, E, M>) msg.getMap().get(FLAG_MIRROR_EDGES));
+      } else if (msg.isMapMessage()
+          && msg.getMap().containsKey(FLAG_CHANGED_NEIGHBORS)) {
+        incremental.markChanged(msg.getMap().get(FLAG_CHANGED_NEIGHBORS)
+            .toString());
       }
     }
 
@@ -543,8 +737,6 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
       BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer)
       throws IOException, SyncException, InterruptedException {
     GraphJobMessage msg = null;
-    boolean dynamicAdditions = false;
-    boolean dynamicRemovals = false;
 
     while ((msg = peer.getCurrentMessage()) != null) {
       // either this is a vertex message or a directive that must be read
@@ -571,12 +763,12 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
               && vertexID.toString().startsWith(S_FLAG_AGGREGATOR_INCREMENT)) {
             getAggregationRunner().masterReadAggregatedIncrementalValue(
                 vertexID, (M) e.getValue());
+          } else if (FLAG_MUTATIONS.equals(vertexID)) {
+            receivedMutations.addAll((GraphMutations<V, E, M>) e.getValue());
           } else if (FLAG_VERTEX_INCREASE.equals(vertexID)) {
-            dynamicAdditions = true;
-            addVertex((Vertex<V, E, M>) e.getValue());
+            receivedMutations.addVertex((Vertex<V, E, M>) e.getValue());
           } else if (FLAG_VERTEX_DECREASE.equals(vertexID)) {
-            dynamicRemovals = true;
-            removeVertex((V) e.getValue());
+            receivedMutations.removeVertex((V) e.getValue());
           } else if (FLAG_VERTEX_TOTAL_VERTICES.equals(vertexID)) {
             this.numberVertices = ((LongWritable) e.getValue()).get();
           } else if (FLAG_VERTEX_ALTER_COUNTER.equals(vertexID)) {
@@ -591,19 +783,22 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
           }
         }
 
+      } else if (msg.isMirrorMessage()) {
+        mirrors.deliver(msg);
+      } else if (msg.isMulticastMessage()) {
+        M value = (M) msg.getVertexValue();
+        for (WritableComparable target : msg.getTargetVertexIds()) {
+          deliveredMessages.deliver((V) target, value);
+        }
       } else {
         throw new UnsupportedOperationException("Unknown message type: " + msg);
       }
 
     }
 
-    // If we applied any changes to vertices, we need to call finishAdditions
-    // and finishRemovals in the end.
-    if (dynamicAdditions) {
-      finishAdditions();
-    }
-    if (dynamicRemovals) {
-      finishRemovals();
+    // apply the changes to the graph at once
+    if (!receivedMutations.isEmpty()) {
+      applyMutations();
     }
 
     return msg;
@@ -657,6 +852,27 @@ public final class GraphJobRunner<V extends WritableComparable, E extends Writab
     return getAggregationRunner().getNumLastAggregatedVertices(index);
   }
 
+  /**
+   * @return the mirrors of the hubs on this peer.
+   */
+  final HubMirrors<V, E, M> getMirrors() {
+    return mirrors;
+  }
+
+  /**
+   * @return the messages of this superstep that were not read from the queue.
+   */
+  final DeliveredMessages<V, M> getDeliveredMessages() {
+    return deliveredMessages;
+  }
+
+  /**
+   * @return true if messages to all neighbors are sent once per peer.
+   */
+  final boolean isMulticast() {
+    return multicast;
+  }
+
   /**
    * @return the peer instance.
    */
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+/**
+ * The changes to the graph of a superstep for the vertices of one peer. The
+ * changes are collected per destination peer, sent as one message and applied
+ * at once by {@link VerticesInfo#applyMutations(GraphMutations)} at the
+ * beginning of the next superstep. Edges are removed first, then vertices are
+ * removed, added and at last edges are added. Removals of vertices and changes
+ * to the edges of vertices that don't exist are ignored.
+ * 
+ * @param <V> Vertex ID object type
+ * @param <E> Edge cost object type
+ * @param <M> Vertex value object type
+ */
+@SuppressWarnings("rawtypes")
+public final class GraphMutations<V extends WritableComparable, E extends Writable, M extends Writable>
+    implements Writable {
+
+  private final TreeMap<V, Vertex<V, E, M>> addedVertices = new TreeMap<V, Vertex<V, E, M>>();
+  private final TreeSet<V> removedVertices = new TreeSet<V>();
+  private final TreeMap<V, List<Edge<V, E>>> addedEdges = new TreeMap<V, List<Edge<V, E>>>();
+  private final TreeMap<V, Set<V>> removedEdges = new TreeMap<V, Set<V>>();
+
+  /**
+   * Adds the given vertex, fails on apply if it already exists.
+   */
+  @SuppressWarnings("unchecked")
+  public void addVertex(Vertex<V, E, M> vertex) {
+    if (addedVertices.put((V) vertex.getVertexID(), vertex) != null) {
+      throw new UnsupportedOperationException("Vertex with ID: "
+          + vertex.getVertexID() + " is added twice!");
+    }
+  }
+
+  public void removeVertex(V vertexID) {
+    removedVertices.add(vertexID);
+  }
+
+  public void addEdge(V sourceVertexID, Edge<V, E> edge) {
+    List<Edge<V, E>> edges = addedEdges.get(sourceVertexID);
+    if (edges == null) {
+      edges = new ArrayList<Edge<V, E>>(1);
+      addedEdges.put(sourceVertexID, edges);
+    }
+    edges.add(edge);
+  }
+
+  public void removeEdge(V sourceVertexID, V targetVertexID) {
+    Set<V> targets = removedEdges.get(sourceVertexID);
+    if (targets == null) {
+      targets = new TreeSet<V>();
+      removedEdges.put(sourceVertexID, targets);
+    }
+    targets.add(targetVertexID);
+  }
+
+  /**
+   * Adds the changes of the given mutations to these.
+   */
+  public void addAll(GraphMutations<V, E, M> other) {
+    for (Vertex<V, E, M> vertex : other.addedVertices.values()) {
+      addVertex(vertex);
+    }
+    removedVertices.addAll(other.removedVertices);
+    for (Entry<V, List<Edge<V, E>>> e : other.addedEdges.entrySet()) {
+      for (Edge<V, E> edge : e.getValue()) {
+        addEdge(e.getKey(), edge);
+      }
+    }
+    for (Entry<V, Set<V>> e : other.removedEdges.entrySet()) {
+      for (V target : e.getValue()) {
+        removeEdge(e.getKey(), target);
+      }
+    }
+  }
+
+  /**
+   * @return the added vertices sorted by their id.
+   */
+  public TreeMap<V, Vertex<V, E, M>> getAddedVertices() {
+    return addedVertices;
+  }
+
+  public TreeSet<V> getRemovedVertices() {
+    return removedVertices;
+  }
+
+  public Map<V, List<Edge<V, E>>> getAddedEdges() {
+    return addedEdges;
+  }
+
+  public Map<V, Set<V>> getRemovedEdges() {
+    return removedEdges;
+  }
+
+  /**
+   * @return the ids of the vertices whose edges change, sorted.
+   */
+  public TreeSet<V> getVerticesWithEdgeChanges() {
+    TreeSet<V> vertexIDs = new TreeSet<V>(addedEdges.keySet());
+    vertexIDs.addAll(removedEdges.keySet());
+    return vertexIDs;
+  }
+
+  /**
+   * @return true if the edges of the given vertex change.
+   */
+  public boolean changesEdges(V vertexID) {
+    return addedEdges.containsKey(vertexID)
+        || removedEdges.containsKey(vertexID);
+  }
+
+  /**
+   * Applies the edge changes to the given vertex.
+   */
+  @SuppressWarnings("unchecked")
+  public void applyEdgeChanges(Vertex<V, E, M> vertex) {
+    Set<V> removed = removedEdges.get(vertex.getVertexID());
+    List<Edge<V, E>> added = addedEdges.get(vertex.getVertexID());
+    List<Edge<V, E>> edges = new ArrayList<Edge<V, E>>(vertex.getEdges()
+        .size() + (added == null ? 0 : added.size()));
+    for (Edge<V, E> edge : vertex.getEdges()) {
+      if (removed == null || !removed.contains(edge.getDestinationVertexID())) {
+        edges.add(edge);
+      }
+    }
+    if (added != null) {
+      edges.addAll(added);
+    }
+    vertex.setEdges(edges);
+  }
+
+  public boolean isEmpty() {
+    return addedVertices.isEmpty() && removedVertices.isEmpty()
+        && addedEdges.isEmpty() && removedEdges.isEmpty();
+  }
+
+  public void clear() {
+    addedVertices.clear();
+    removedVertices.clear();
+    addedEdges.clear();
+    removedEdges.clear();
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(addedVertices.size());
+    for (Vertex<V, E, M> vertex : addedVertices.values()) {
+      vertex.write(out);
+    }
+    out.writeInt(removedVertices.size());
+    for (V vertexID : removedVertices) {
+      vertexID.write(out);
+    }
+    out.writeInt(addedEdges.size());
+    for (Entry<V, List<Edge<V, E>>> e : addedEdges.entrySet()) {
+      e.getKey().write(out);
+      out.writeInt(e.getValue().size());
+      for (Edge<V, E> edge : e.getValue()) {
+        edge.getDestinationVertexID().write(out);
+        if (edge.getValue() == null) {
+          out.writeBoolean(false);
+        } else {
+          out.writeBoolean(true);
+          edge.getValue().write(out);
+        }
+      }
+    }
+    out.writeInt(removedEdges.size());
+    for (Entry<V, Set<V>> e : removedEdges.entrySet()) {
+      e.getKey().write(out);
+      out.writeInt(e.getValue().size());
+      for (V target : e.getValue()) {
+        target.write(out);
+      }
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    clear();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      Vertex<V, E, M> vertex = GraphJobRunner
+          .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
+      vertex.readFields(in);
+      addVertex(vertex);
+    }
+    size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      removeVertex(readVertexID(in));
+    }
+    size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      V source = readVertexID(in);
+      int numEdges = in.readInt();
+      for (int j = 0; j < numEdges; j++) {
+        V target = readVertexID(in);
+        E value = null;
+        if (in.readBoolean()) {
+          value = GraphJobRunner.<E> createEdgeCostObject();
+          value.readFields(in);
+        }
+        addEdge(source, new Edge<V, E>(target, value));
+      }
+    }
+    size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      V source = readVertexID(in);
+      int numTargets = in.readInt();
+      for (int j = 0; j < numTargets; j++) {
+        removeEdge(source, readVertexID(in));
+      }
+    }
+  }
+
+  private V readVertexID(DataInput in) throws IOException {
+    V vertexID = GraphJobRunner.<V> createVertexIDObject();
+    vertexID.readFields(in);
+    return vertexID;
+  }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.message.MessageManager;
+import org.apache.hama.bsp.message.queue.MemoryQueue;
+import org.apache.hama.bsp.message.queue.SortedMemoryQueue;
+
+/**
+ * Mirrors the vertices with many edges (hubs) on the peers that host their
+ * neighbors. The hubs gather their messages and apply them in compute as
+ * usual, the combiner already reduces the messages to a hub to one per
+ * sending peer. Messages a hub scatters to all of its neighbors are sent once
+ * to each mirror, which delivers them to the neighbors on its peer.
+ *
+ * The mirrors are built from the edges of the hubs when the vertices are
+ * loaded, later changes to the edges of a hub are not mirrored.
+ *
+ * A mirror delivers its messages before the vertex messages of the superstep
+ * are read, so the receive queue must return the mirror messages first. The
+ * queues {@link GraphJob#submit()} sets, {@link SortedMemoryQueue},
+ * {@link GatheringQueue} and {@link PrimitiveGatheringQueue}, all do.
+ *
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+final class HubMirrors<V extends WritableComparable, E extends Writable, M extends Writable> {
+
+  private final GraphJobRunner<V, E, M> runner;
+  private final int threshold;
+
+  // peers that mirror the hubs of this peer
+  private final Map<V, List<String>> mirrorPeers = new HashMap<V, List<String>>();
+  // neighbors on this peer of the mirrored hubs
+  private final Map<V, List<V>> neighbors = new HashMap<V, List<V>>();
+
+  HubMirrors(GraphJobRunner<V, E, M> runner, HamaConfiguration conf) {
+    this.runner = runner;
+    this.threshold = conf.getInt(GraphJob.MIRROR_THRESHOLD_ATTR, 0);
+    if (isEnabled()) {
+      Class<?> queue = conf.getClass(MessageManager.RECEIVE_QUEUE_TYPE_CLASS,
+          MemoryQueue.class);
+      if (!SortedMemoryQueue.class.equals(queue)
+          && !GatheringQueue.class.equals(queue)
+          && !PrimitiveGatheringQueue.class.equals(queue)) {
+        throw new IllegalArgumentException(
+            "Mirrors of hubs need a receive queue that returns the mirror messages first, "
+                + queue.getName() + " does not!");
+      }
+    }
+  }
+
+  /**
+   * @return true if hubs are mirrored.
+   */
+  boolean isEnabled() {
+    return threshold > 0;
+  }
+
+  /**
+   * Mirrors the given vertex if it is a hub, by sending the edges to the
+   * neighbors on each peer to that peer. Must be followed by a sync that is
+   * read by {@link #register(Vertex)}.
+   */
+  @SuppressWarnings("unchecked")
+  void addVertex(Vertex<V, E, M> vertex) throws IOException {
+    if (!isEnabled() || vertex.getEdges().size() < threshold) {
+      return;
+    }
+
+    BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer = runner
+        .getPeer();
+    Map<String, List<Edge<V, E>>> edgesByPeer = new LinkedHashMap<String, List<Edge<V, E>>>();
+    for (Edge<V, E> edge : vertex.getEdges()) {
+      String peerName = peer.getPeerName(runner.getPartitioner().getPartition(
+          edge.getDestinationVertexID(), null, peer.getNumPeers()));
+      List<Edge<V, E>> edges = edgesByPeer.get(peerName);
+      if (edges == null) {
+        edges = new ArrayList<Edge<V, E>>();
+        edgesByPeer.put(peerName, edges);
+      }
+      edges.add(new Edge<V, E>(edge.getDestinationVertexID(), null));
+    }
+
+    for (Entry<String, List<Edge<V, E>>> e : edgesByPeer.entrySet()) {
+      Vertex<V, E, M> mirror = GraphJobRunner
+          .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
+      mirror.setVertexID(vertex.getVertexID());
+      mirror.setEdges(e.getValue());
+      if (e.getKey().equals(peer.getPeerName())) {
+        register(mirror);
+      } else {
+        MapWritable msg = new MapWritable();
+        msg.put(GraphJobRunner.FLAG_MIRROR_EDGES, mirror);
+        peer.send(e.getKey(), new GraphJobMessage(msg));
+      }
+    }
+    mirrorPeers.put(vertex.getVertexID(),
+        new ArrayList<String>(edgesByPeer.keySet()));
+  }
+
+  /**
+   * Registers the mirror of a hub, whose edges point to vertices of this peer.
+   */
+  void register(Vertex<V, E, M> mirror) {
+    List<V> targets = new ArrayList<V>(mirror.getEdges().size());
+    for (Edge<V, E> edge : mirror.getEdges()) {
+      targets.add(edge.getDestinationVertexID());
+    }
+    neighbors.put(mirror.getVertexID(), targets);
+  }
+
+  /**
+   * @return true if the vertex with the given id is a hub of this peer.
+   */
+  boolean isHub(V vertexId) {
+    return isEnabled() && mirrorPeers.containsKey(vertexId);
+  }
+
+  /**
+   * Sends the message of a hub of this peer to all its mirrors.
+   */
+  void sendToNeighbors(V hubId, M msg) throws IOException {
+    for (String peerName : mirrorPeers.get(hubId)) {
+      runner.getPeer().send(peerName,
+          GraphJobMessage.createMirrorMessage(hubId, msg));
+    }
+  }
+
+  /**
+   * Delivers a received message of a hub to its neighbors on this peer, see
+   * {@link DeliveredMessages}.
+   */
+  @SuppressWarnings("unchecked")
+  void deliver(GraphJobMessage msg) {
+    List<V> targets = neighbors.get(msg.getVertexId());
+    if (targets == null) {
+      throw new IllegalStateException("Received a message of hub "
+          + msg.getVertexId() + " that is not mirrored on "
+          + runner.getPeer().getPeerName());
+    }
+
+    M value = (M) msg.getVertexValue();
+    for (V target : targets) {
+      runner.getDeliveredMessages().deliver(target, value);
+    }
+  }
+
+}
@@ -28,6 +28,11 @@ import org.apache.hadoop.io.WritableComparable;
 @SuppressWarnings("rawtypes")
 public abstract class IDSkippingIterator<V extends WritableComparable, E extends Writable, M extends Writable> {
 
+  /**
+   * ACTIVE_AND_MESSAGES accepts the active vertices and the first vertex whose
+   * id is not smaller than the id of the next message, so a message to a
+   * vertex that doesn't exist stops the iteration at the vertex after it.
+   */
   enum Strategy {
     ALL, ACTIVE, ACTIVE_AND_MESSAGES, INACTIVE;
 
@@ -37,7 +42,7 @@ public abstract class IDSkippingIterator<V extends WritableComparable, E extends
       switch (this) {
         case ACTIVE_AND_MESSAGES:
           if (msgId != null) {
-            return !v.isHalted() || v.getVertexID().compareTo(msgId) == 0;
+            return !v.isHalted() || v.getVertexID().compareTo(msgId) >= 0;
           }
           // fallthrough to activeness if we don't have a message anymore
         case ACTIVE:
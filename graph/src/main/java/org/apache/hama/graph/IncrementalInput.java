@@ -0,0 +1,427 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.Partitioner;
+import org.apache.hama.util.ReflectionUtils;
+
+/**
+ * The input of an incremental computation: the vertex values of a prior run
+ * and the changes to the graph since then. Each peer keeps the prior values
+ * and the changes of its own vertices.
+ * 
+ * The prior values are read from the output of the prior run, either sequence
+ * files or text files with one "id TAB value" line per vertex. If the prior run
+ * wrote the part files of as many peers as there are now, each peer reads only
+ * the part files of its own index, which hold its vertices as long as the
+ * partitioner is the same. Otherwise each peer reads all part files. The
+ * changes are read from text files with one change per line:
+ * 
+ * <pre>
+ * +v id [neighbor[:value] ...]
+ * -v id
+ * +e source destination [value]
+ * -e source destination
+ * </pre>
+ * 
+ * The value of an edge may only be left out if the edges have no value, i.e.
+ * the edge value class is {@link NullWritable}.
+ * 
+ * The vertices that are added or whose edges change are the changed vertices,
+ * as are the neighbors of the removed vertices. The vertices with a prior value
+ * that aren't changed start halted.
+ * 
+ * Each peer reads a share of the files of the changes and keeps the changes of
+ * the other peers' vertices, which the {@link GraphJobRunner} sends to them.
+ * Only the computation is incremental: the graph is loaded from the input of
+ * the job as in a full run, so the load time of a run stays in O(graph), only
+ * the supersteps are in O(changes).
+ * 
+ * @param <V> Vertex ID object type
+ * @param <E> Edge cost object type
+ * @param <M> Vertex value object type
+ */
+@SuppressWarnings("rawtypes")
+final class IncrementalInput<V extends WritableComparable, E extends Writable, M extends Writable> {
+
+  // the output file of a peer, with the index of the output thread if any
+  private static final Pattern PART_FILE = Pattern
+      .compile("part-(\\d+)(_\\d+)?");
+
+  private final Map<V, M> priorValues = new HashMap<V, M>();
+  private final GraphMutations<V, E, M> mutations = new GraphMutations<V, E, M>();
+  private final Set<V> changedVertices = new HashSet<V>();
+  // the lines of the changes and the neighbors of removed vertices that other
+  // peers own, by their partition
+  private final Map<Integer, StringBuilder> remoteChanges = new HashMap<Integer, StringBuilder>();
+  private final Map<Integer, StringBuilder> remoteNeighbors = new HashMap<Integer, StringBuilder>();
+
+  private final Configuration conf;
+  private final Partitioner<V, M> partitioner;
+  private final int partition;
+  private final int numPartitions;
+
+  IncrementalInput(Configuration conf, Partitioner<V, M> partitioner,
+      int partition, int numPartitions) {
+    this.conf = conf;
+    this.partitioner = partitioner;
+    this.partition = partition;
+    this.numPartitions = numPartitions;
+  }
+
+  /**
+   * @return true if the job continues from a prior result.
+   */
+  static boolean isIncremental(Configuration conf) {
+    return conf.get(GraphJob.INCREMENTAL_PRIOR_DIR_ATTR) != null;
+  }
+
+  /**
+   * Reads the prior values of the vertices of this peer and the share of the
+   * files of the changes of this peer.
+   */
+  void read() throws IOException {
+    FileSystem fs = FileSystem.get(conf);
+    for (Path file : partitionFiles(listFiles(fs,
+        conf.get(GraphJob.INCREMENTAL_PRIOR_DIR_ATTR)))) {
+      readPriorValues(fs, file);
+    }
+    Path[] files = listFiles(fs, conf.get(GraphJob.INCREMENTAL_DELTA_DIR_ATTR));
+    // the same order on every peer
+    Arrays.sort(files);
+    for (int i = partition; i < files.length; i += numPartitions) {
+      FSDataInputStream in = fs.open(files[i]);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+          "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          parseChange(line);
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Adds the prior value to the given loaded vertex and halts it, unless it
+   * is changed. The neighbors of a removed vertex are marked as changed, the
+   * vertices of them that are loaded already are activated by the runner.
+   */
+  @SuppressWarnings("unchecked")
+  void restore(Vertex<V, E, M> vertex) {
+    M value = priorValues.remove(vertex.getVertexID());
+    if (value != null) {
+      vertex.setValue(value);
+    }
+    if (value != null && !isChanged((V) vertex.getVertexID())) {
+      vertex.voteToHalt();
+    }
+    if (mutations.getRemovedVertices().contains(vertex.getVertexID())) {
+      for (Edge<V, E> edge : vertex.getEdges()) {
+        V neighbor = edge.getDestinationVertexID();
+        int owner = partitioner.getPartition(neighbor, null, numPartitions);
+        if (owner == partition) {
+          changedVertices.add(neighbor);
+        } else {
+          append(remoteNeighbors, owner, neighbor.toString());
+        }
+      }
+    }
+  }
+
+  boolean isChanged(V vertexID) {
+    return changedVertices.contains(vertexID);
+  }
+
+  /**
+   * @return the lines of the changes that the peers of the other partitions
+   *         own, by their partition.
+   */
+  Map<Integer, StringBuilder> getRemoteChanges() {
+    return remoteChanges;
+  }
+
+  /**
+   * @return the neighbors of the removed vertices that the peers of the other
+   *         partitions own, one id per line, by their partition.
+   */
+  Map<Integer, StringBuilder> getRemoteNeighbors() {
+    return remoteNeighbors;
+  }
+
+  /**
+   * Adds the changes that another peer read for this peer.
+   */
+  void parseChanges(String lines) {
+    for (String line : lines.split("\n")) {
+      parseChange(line);
+    }
+  }
+
+  /**
+   * Marks the neighbors of removed vertices of another peer as changed.
+   */
+  @SuppressWarnings("unchecked")
+  void markChanged(String vertexIDs) {
+    for (String id : vertexIDs.split("\n")) {
+      changedVertices.add((V) parse(id, GraphJobRunner.VERTEX_ID_CLASS));
+    }
+  }
+
+  private static void append(Map<Integer, StringBuilder> lines,
+      int partition, String line) {
+    StringBuilder sb = lines.get(partition);
+    if (sb == null) {
+      sb = new StringBuilder();
+      lines.put(partition, sb);
+    } else {
+      sb.append('\n');
+    }
+    sb.append(line);
+  }
+
+  /**
+   * @return the changes to the graph of the vertices of this peer.
+   */
+  GraphMutations<V, E, M> getMutations() {
+    return mutations;
+  }
+
+  /**
+   * Parses a line of the changes to the graph and adds it, if it changes a
+   * vertex of this peer, otherwise keeps it for the peer that owns the vertex.
+   */
+  @SuppressWarnings("unchecked")
+  void parseChange(String line) {
+    String[] tokens = line.trim().split("\\s+");
+    if (tokens.length < 2 || tokens[0].isEmpty()) {
+      return;
+    }
+    V vertexID = (V) parse(tokens[1], GraphJobRunner.VERTEX_ID_CLASS);
+    int owner = partitioner.getPartition(vertexID, null, numPartitions);
+    if (owner != partition) {
+      append(remoteChanges, owner, line);
+      return;
+    }
+
+    String op = tokens[0];
+    if (op.equals("+v")) {
+      Vertex<V, E, M> vertex = GraphJobRunner
+          .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
+      vertex.setVertexID(vertexID);
+      boolean hasValue = !NullWritable.class
+          .equals(GraphJobRunner.EDGE_VALUE_CLASS);
+      for (int i = 2; i < tokens.length; i++) {
+        // ids may contain colons if the edges have no value
+        int index = hasValue ? tokens[i].lastIndexOf(':') : -1;
+        vertex.addEdge(index < 0 ? newEdge(tokens[i], null, line) : newEdge(
+            tokens[i].substring(0, index), tokens[i].substring(index + 1),
+            line));
+      }
+      mutations.addVertex(vertex);
+      changedVertices.add(vertexID);
+    } else if (op.equals("-v")) {
+      mutations.removeVertex(vertexID);
+    } else if (op.equals("+e") && tokens.length >= 3) {
+      mutations.addEdge(vertexID,
+          newEdge(tokens[2], tokens.length > 3 ? tokens[3] : null, line));
+      changedVertices.add(vertexID);
+    } else if (op.equals("-e") && tokens.length >= 3) {
+      mutations.removeEdge(vertexID,
+          (V) parse(tokens[2], GraphJobRunner.VERTEX_ID_CLASS));
+      changedVertices.add(vertexID);
+    } else {
+      throw new IllegalArgumentException("Invalid change to the graph: "
+          + line);
+    }
+  }
+
+  /**
+   * @return a new edge to the given destination with the given value, which
+   *         may only be null if the edges have no value.
+   */
+  @SuppressWarnings("unchecked")
+  private Edge<V, E> newEdge(String destination, String value, String line) {
+    E edgeValue = null;
+    if (value != null) {
+      edgeValue = (E) parse(value, GraphJobRunner.EDGE_VALUE_CLASS);
+    } else if (!NullWritable.class.equals(GraphJobRunner.EDGE_VALUE_CLASS)) {
+      throw new IllegalArgumentException("The edge to " + destination
+          + " needs a value of " + GraphJobRunner.EDGE_VALUE_CLASS.getName()
+          + ": " + line);
+    }
+    return new Edge<V, E>((V) parse(destination,
+        GraphJobRunner.VERTEX_ID_CLASS), edgeValue);
+  }
+
+  /**
+   * @return the part files that the peer with the index of this partition
+   *         wrote in the prior run, if the given files are the part files of
+   *         as many peers as there are partitions, otherwise all given files.
+   */
+  private Path[] partitionFiles(Path[] files) {
+    Set<Integer> indexes = new HashSet<Integer>();
+    List<Path> own = new ArrayList<Path>();
+    for (Path file : files) {
+      Matcher matcher = PART_FILE.matcher(file.getName());
+      if (!matcher.matches()) {
+        return files;
+      }
+      int index = Integer.parseInt(matcher.group(1));
+      indexes.add(index);
+      if (index == partition) {
+        own.add(file);
+      }
+    }
+    if (indexes.size() != numPartitions
+        || !indexes.contains(numPartitions - 1)) {
+      return files;
+    }
+    return own.toArray(new Path[own.size()]);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readPriorValues(FileSystem fs, Path file) throws IOException {
+    FSDataInputStream in = fs.open(file);
+    byte[] magic = new byte[3];
+    boolean sequenceFile = in.read(magic) == 3 && magic[0] == 'S'
+        && magic[1] == 'E' && magic[2] == 'Q';
+    in.close();
+
+    if (sequenceFile) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, conf);
+      try {
+        Writable key = ReflectionUtils.newInstance(reader.getKeyClass());
+        Writable value = ReflectionUtils.newInstance(reader.getValueClass());
+        while (reader.next(key, value)) {
+          addPriorValue(key.toString(), value.toString());
+        }
+      } finally {
+        reader.close();
+      }
+      return;
+    }
+
+    String separator = conf.get("bsp.textoutputformat.separator", "\t");
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        fs.open(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int index = line.indexOf(separator);
+        if (index > 0) {
+          addPriorValue(line.substring(0, index),
+              line.substring(index + separator.length()));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addPriorValue(String id, String value) {
+    V vertexID = (V) parse(id, GraphJobRunner.VERTEX_ID_CLASS);
+    if (partitioner.getPartition(vertexID, null, numPartitions) == partition) {
+      priorValues.put(vertexID,
+          (M) parse(value, GraphJobRunner.VERTEX_VALUE_CLASS));
+    }
+  }
+
+  /**
+   * Lists the data files of the given directory or the given file, leaving
+   * out hidden files like "_SUCCESS" and the metrics.
+   */
+  private static Path[] listFiles(FileSystem fs, String dir)
+      throws IOException {
+    if (dir == null) {
+      return new Path[0];
+    }
+    FileStatus[] status = fs.globStatus(new Path(dir));
+    if (status == null) {
+      throw new IOException("Input of the incremental computation " + dir
+          + " doesn't exist.");
+    }
+    Set<Path> files = new HashSet<Path>();
+    for (FileStatus s : status) {
+      for (FileStatus child : s.isDir() ? fs.listStatus(s.getPath())
+          : new FileStatus[] { s }) {
+        String name = child.getPath().getName();
+        if (!child.isDir() && !name.startsWith("_") && !name.startsWith(".")
+            && !name.startsWith("metrics-")) {
+          files.add(child.getPath());
+        }
+      }
+    }
+    return files.toArray(new Path[files.size()]);
+  }
+
+  /**
+   * Parses the text form of a writable with a single value.
+   */
+  static Writable parse(String s, Class<? extends Writable> cls) {
+    if (cls.equals(Text.class)) {
+      return new Text(s);
+    } else if (cls.equals(LongWritable.class)) {
+      return new LongWritable(Long.parseLong(s));
+    } else if (cls.equals(IntWritable.class)) {
+      return new IntWritable(Integer.parseInt(s));
+    } else if (cls.equals(DoubleWritable.class)) {
+      return new DoubleWritable(Double.parseDouble(s));
+    } else if (cls.equals(FloatWritable.class)) {
+      return new FloatWritable(Float.parseFloat(s));
+    } else if (cls.equals(BooleanWritable.class)) {
+      return new BooleanWritable(Boolean.parseBoolean(s));
+    } else if (cls.equals(NullWritable.class)) {
+      return NullWritable.get();
+    }
+    throw new IllegalArgumentException("Can't parse " + cls.getName()
+        + " from text.");
+  }
+
+}
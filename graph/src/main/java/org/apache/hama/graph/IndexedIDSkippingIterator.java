@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+/**
+ * Iterates over vertices that are stored sorted by their id at consecutive
+ * indices. The halted vertices are kept in a bitmap and the vertex with a
+ * message is found by a binary search over the ids, so the vertices that are
+ * skipped are never read.
+ * 
+ * @param <V> Vertex ID object type
+ * @param <E> Edge cost object type
+ * @param <M> Vertex value object type
+ */
+@SuppressWarnings("rawtypes")
+abstract class IndexedIDSkippingIterator<V extends WritableComparable, E extends Writable, M extends Writable>
+    extends IDSkippingIterator<V, E, M> {
+
+  private final BitSet halted;
+  private final int size;
+  // the index to continue from and the index of the current vertex
+  private int nextIndex = 0;
+  private int index = -1;
+
+  /**
+   * @param halted the indices of the halted vertices.
+   * @param size the number of vertices.
+   */
+  IndexedIDSkippingIterator(BitSet halted, int size) {
+    this.halted = halted;
+    this.size = size;
+  }
+
+  /**
+   * @return the id of the vertex at the given index, without reading the rest
+   *         of the vertex.
+   */
+  protected abstract V getVertexID(int index) throws IOException;
+
+  /**
+   * Reads the vertex at the given index, so it is returned by {@link #next()}.
+   */
+  protected abstract void read(int index) throws IOException;
+
+  @Override
+  public boolean hasNext(V msgId, Strategy strat) throws IOException {
+    int found;
+    switch (strat) {
+      case ALL:
+        found = nextIndex;
+        break;
+      case INACTIVE:
+        found = halted.nextSetBit(nextIndex);
+        if (found < 0) {
+          found = size;
+        }
+        break;
+      case ACTIVE_AND_MESSAGES:
+        found = Math.min(halted.nextClearBit(nextIndex), size);
+        if (msgId != null) {
+          found = ceiling(msgId, nextIndex, found);
+        }
+        break;
+      case ACTIVE:
+      default:
+        found = Math.min(halted.nextClearBit(nextIndex), size);
+        break;
+    }
+
+    if (found >= size) {
+      nextIndex = size;
+      index = -1;
+      return false;
+    }
+    index = found;
+    nextIndex = found + 1;
+    read(found);
+    return true;
+  }
+
+  /**
+   * @return the index of the vertex found by the last call of hasNext, -1 if
+   *         there was none.
+   */
+  int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the smallest index between from (inclusive) and to (exclusive)
+   *         whose id is not smaller than the given id, to if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  private int ceiling(V id, int from, int to) throws IOException {
+    int low = from;
+    int high = to;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getVertexID(mid).compareTo(id) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+}
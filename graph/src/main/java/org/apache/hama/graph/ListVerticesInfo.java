@@ -25,8 +25,10 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -34,8 +36,11 @@ import org.apache.hama.HamaConfiguration;
 import org.apache.hama.bsp.TaskAttemptID;
 
 /**
- * Stores the serialized vertices into a memory-based list. It doesn't allow
- * modification and random access by vertexID.
+ * Stores the serialized vertices into a memory-based list. The graph can only
+ * be changed by {@link #applyMutations(GraphMutations)}, which merges the
+ * changes into the sorted list at once. Vertices are accessed by their index
+ * in the list and found by a binary search over their ids. Halted vertices
+ * without messages are skipped without being deserialized.
  * 
  * @param <V> Vertex ID object type
  * @param <E> Edge cost object type
@@ -46,9 +51,10 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
   private GraphJobRunner<V, E, M> runner;
   Vertex<V, E, M> v;
 
-  private final List<byte[]> verticesList = new ArrayList<byte[]>();
+  private List<byte[]> verticesList = new ArrayList<byte[]>();
+  private BitSet halted = new BitSet();
   private boolean lockedAdditions = false;
-  private int index = 0;
+  private IndexedIDSkippingIterator<V, E, M> iterator;
 
   private ByteArrayOutputStream bos = null;
   private DataOutputStream dos = null;
@@ -67,6 +73,7 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
     checkArgument(!lockedAdditions,
         "Additions are locked now, nobody is allowed to change the structure anymore.");
 
+    halted.set(verticesList.size(), vertex.isHalted());
     verticesList.add(serialize(vertex));
   }
 
@@ -78,6 +85,7 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
 
   public void clear() {
     verticesList.clear();
+    halted.clear();
   }
 
   @Override
@@ -87,32 +95,17 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
 
   @Override
   public IDSkippingIterator<V, E, M> skippingIterator() {
-    return new IDSkippingIterator<V, E, M>() {
-      Iterator<byte[]> it = verticesList.iterator();
+    iterator = new IndexedIDSkippingIterator<V, E, M>(halted,
+        verticesList.size()) {
 
       @Override
-      public boolean hasNext(V msgId,
-          org.apache.hama.graph.IDSkippingIterator.Strategy strat)
-          throws IOException {
-
-        if (it.hasNext()) {
-          byte[] serialized = it.next();
-          v = deserialize(serialized);
-
-          while (!strat.accept(v, msgId)) {
-            if (it.hasNext()) {
-              serialized = it.next();
-              v = deserialize(serialized);
-            } else {
-              return false;
-            }
-          }
-
-          return true;
-        } else {
-          v = null;
-          return false;
-        }
+      protected V getVertexID(int index) throws IOException {
+        return readVertexID(verticesList.get(index));
+      }
+
+      @Override
+      protected void read(int index) throws IOException {
+        v = deserialize(verticesList.get(index));
       }
 
       @Override
@@ -128,6 +121,70 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
       }
 
     };
+    return iterator;
+  }
+
+  /**
+   * @return the id of the serialized vertex, without reading the rest of it.
+   */
+  private V readVertexID(byte[] serialized) throws IOException {
+    dis = new DataInputStream(new ByteArrayInputStream(serialized));
+    V vertexID = GraphJobRunner.<V> createVertexIDObject();
+    // the id follows the flag that it is not null
+    dis.readBoolean();
+    vertexID.readFields(dis);
+    return vertexID;
+  }
+
+  @Override
+  public void applyMutations(GraphMutations<V, E, M> mutations)
+      throws IOException {
+    Set<V> removed = mutations.getRemovedVertices();
+    List<byte[]> merged = new ArrayList<byte[]>(verticesList.size()
+        + mutations.getAddedVertices().size());
+    BitSet mergedHalted = new BitSet();
+
+    Iterator<Vertex<V, E, M>> added = mutations.getAddedVertices().values()
+        .iterator();
+    Vertex<V, E, M> next = added.hasNext() ? added.next() : null;
+    for (int i = 0; i < verticesList.size(); i++) {
+      byte[] serialized = verticesList.get(i);
+      V vertexID = readVertexID(serialized);
+      while (next != null && next.getVertexID().compareTo(vertexID) < 0) {
+        add(next, mutations, merged, mergedHalted);
+        next = added.hasNext() ? added.next() : null;
+      }
+      if (removed.contains(vertexID)) {
+        continue;
+      }
+      if (next != null && next.getVertexID().equals(vertexID)) {
+        throw new UnsupportedOperationException("Vertex with ID: " + vertexID
+            + " already exists!");
+      }
+      if (mutations.changesEdges(vertexID)) {
+        Vertex<V, E, M> vertex = deserialize(serialized);
+        mutations.applyEdgeChanges(vertex);
+        serialized = serialize(vertex);
+      }
+      mergedHalted.set(merged.size(), halted.get(i));
+      merged.add(serialized);
+    }
+    while (next != null) {
+      add(next, mutations, merged, mergedHalted);
+      next = added.hasNext() ? added.next() : null;
+    }
+
+    verticesList = merged;
+    halted = mergedHalted;
+  }
+
+  private void add(Vertex<V, E, M> vertex, GraphMutations<V, E, M> mutations,
+      List<byte[]> merged, BitSet mergedHalted) throws IOException {
+    if (mutations.changesEdges(vertex.getVertexID())) {
+      mutations.applyEdgeChanges(vertex);
+    }
+    mergedHalted.set(merged.size(), vertex.isHalted());
+    merged.add(serialize(vertex));
   }
 
   public byte[] serialize(Vertex<V, E, M> vertex) throws IOException {
@@ -150,8 +207,9 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
   @Override
   public void finishVertexComputation(Vertex<V, E, M> vertex)
       throws IOException {
+    int index = iterator.getIndex();
+    halted.set(index, vertex.isHalted());
     verticesList.set(index, serialize(vertex));
-    index++;
   }
 
   @Override
@@ -178,6 +236,6 @@ public final class ListVerticesInfo<V extends WritableComparable<V>, E extends W
 
   @Override
   public void startSuperstep() throws IOException {
-    index = 0;
+
   }
 }
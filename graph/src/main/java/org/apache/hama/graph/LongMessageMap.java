@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map of vertex ids to combined message values, both
+ * held as primitive longs in arrays. It replaces a map of writables when the
+ * vertex ids are integral and the values are combined by a
+ * {@link PrimitiveCombiner}, so combining a message allocates nothing. It
+ * combines the outgoing messages per peer and the received messages in the
+ * {@link PrimitiveGatheringQueue}.
+ */
+final class LongMessageMap {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  private long[] values;
+  private boolean[] used;
+  private int size;
+
+  LongMessageMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    used = new boolean[capacity];
+    size = 0;
+  }
+
+  /**
+   * Puts the given value for the given key, combined with the value that is
+   * already there.
+   */
+  void combine(long key, long value, PrimitiveCombiner<?> combiner) {
+    int index = indexOf(key);
+    if (used[index]) {
+      values[index] = combiner.combineBits(values[index], value);
+      return;
+    }
+    used[index] = true;
+    keys[index] = key;
+    values[index] = value;
+    if (++size > keys.length * 3 / 4) {
+      rehash();
+    }
+  }
+
+  /**
+   * @return the slot of the given key, or the free slot it goes into.
+   */
+  private int indexOf(long key) {
+    int mask = keys.length - 1;
+    int index = hash(key) & mask;
+    while (used[index] && keys[index] != key) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private static int hash(long key) {
+    int h = (int) (key ^ (key >>> 32));
+    // spread sequential ids over the table
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int index = indexOf(oldKeys[i]);
+        used[index] = true;
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+        size++;
+      }
+    }
+  }
+
+  /**
+   * @return true if the given key is in the map.
+   */
+  boolean contains(long key) {
+    return used[indexOf(key)];
+  }
+
+  /**
+   * @return the value of the given key, which must be in the map.
+   */
+  long get(long key) {
+    return values[indexOf(key)];
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of slots, iterate them with {@link #isUsed(int)}.
+   */
+  int capacity() {
+    return keys.length;
+  }
+
+  boolean isUsed(int index) {
+    return used[index];
+  }
+
+  long keyAt(int index) {
+    return keys[index];
+  }
+
+  long valueAt(int index) {
+    return values[index];
+  }
+
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(used, false);
+      size = 0;
+    }
+  }
+
+}
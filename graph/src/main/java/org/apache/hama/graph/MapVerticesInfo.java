@@ -22,9 +22,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.SortedMap;
+import java.util.NavigableSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -35,6 +35,9 @@ import org.apache.hama.bsp.TaskAttemptID;
  * Stores the vertices into a memory-based tree map. This implementation allows
  * the runtime graph modification and random access by vertex ID.
  * 
+ * The ids of the active vertices are kept apart, so halted vertices without
+ * messages are skipped without being deserialized.
+ * 
  * But it might be inefficient in memory usage.
  * 
  * @param <V> Vertex ID object type
@@ -46,7 +49,8 @@ public final class MapVerticesInfo<V extends WritableComparable<V>, E extends Wr
   private GraphJobRunner<V, E, M> runner;
   Vertex<V, E, M> v;
 
-  private final SortedMap<V, byte[]> verticesMap = new TreeMap<V, byte[]>();
+  private final TreeMap<V, byte[]> verticesMap = new TreeMap<V, byte[]>();
+  private final TreeSet<V> activeVertices = new TreeSet<V>();
 
   private ByteArrayOutputStream bos = null;
   private DataOutputStream dos = null;
@@ -66,6 +70,7 @@ public final class MapVerticesInfo<V extends WritableComparable<V>, E extends Wr
           + vertex.getVertexID() + " already exists!");
     } else {
       verticesMap.put(vertex.getVertexID(), serialize(vertex));
+      setActive(vertex);
     }
   }
 
@@ -73,14 +78,44 @@ public final class MapVerticesInfo<V extends WritableComparable<V>, E extends Wr
   public void removeVertex(V vertexID) throws UnsupportedOperationException {
     if (verticesMap.containsKey(vertexID)) {
       verticesMap.remove(vertexID);
+      activeVertices.remove(vertexID);
     } else {
       throw new UnsupportedOperationException("Vertex with ID: " + vertexID
           + " not found on this peer.");
     }
   }
 
+  @Override
+  public void applyMutations(GraphMutations<V, E, M> mutations)
+      throws IOException {
+    for (V vertexID : mutations.getRemovedVertices()) {
+      verticesMap.remove(vertexID);
+      activeVertices.remove(vertexID);
+    }
+    for (Vertex<V, E, M> vertex : mutations.getAddedVertices().values()) {
+      addVertex(vertex);
+    }
+    for (V vertexID : mutations.getVerticesWithEdgeChanges()) {
+      byte[] serialized = verticesMap.get(vertexID);
+      if (serialized != null) {
+        Vertex<V, E, M> vertex = deserialize(vertexID, serialized);
+        mutations.applyEdgeChanges(vertex);
+        verticesMap.put(vertexID, serialize(vertex));
+      }
+    }
+  }
+
   public void clear() {
     verticesMap.clear();
+    activeVertices.clear();
+  }
+
+  private void setActive(Vertex<V, E, M> vertex) {
+    if (vertex.isHalted()) {
+      activeVertices.remove(vertex.getVertexID());
+    } else {
+      activeVertices.add(vertex.getVertexID());
+    }
   }
 
   @Override
@@ -91,31 +126,49 @@ public final class MapVerticesInfo<V extends WritableComparable<V>, E extends Wr
   @Override
   public IDSkippingIterator<V, E, M> skippingIterator() {
     return new IDSkippingIterator<V, E, M>() {
-      Iterator<V> it = verticesMap.keySet().iterator();
+      // the id of the last vertex found
+      V last = null;
 
       @Override
       public boolean hasNext(V msgId,
           org.apache.hama.graph.IDSkippingIterator.Strategy strat)
           throws IOException {
-
-        if (it.hasNext()) {
-          V vertexID = it.next();
-          v = deserialize(vertexID, verticesMap.get(vertexID));
-
-          while (!strat.accept(v, msgId)) {
-            if (it.hasNext()) {
-              vertexID = it.next();
+        V vertexID;
+        switch (strat) {
+          case ACTIVE:
+            vertexID = higher(activeVertices, last);
+            break;
+          case ACTIVE_AND_MESSAGES:
+            vertexID = higher(activeVertices, last);
+            if (msgId != null) {
+              V target = last != null && msgId.compareTo(last) <= 0 ? verticesMap
+                  .higherKey(last) : verticesMap.ceilingKey(msgId);
+              if (target != null
+                  && (vertexID == null || target.compareTo(vertexID) < 0)) {
+                vertexID = target;
+              }
+            }
+            break;
+          default:
+            vertexID = higher(verticesMap.navigableKeySet(), last);
+            while (vertexID != null) {
               v = deserialize(vertexID, verticesMap.get(vertexID));
-            } else {
-              return false;
+              if (strat.accept(v, msgId)) {
+                last = vertexID;
+                return true;
+              }
+              vertexID = verticesMap.higherKey(vertexID);
             }
-          }
+            break;
+        }
 
-          return true;
-        } else {
+        if (vertexID == null) {
           v = null;
           return false;
         }
+        last = vertexID;
+        v = deserialize(vertexID, verticesMap.get(vertexID));
+        return true;
       }
 
       @Override
@@ -156,6 +209,14 @@ public final class MapVerticesInfo<V extends WritableComparable<V>, E extends Wr
   public void finishVertexComputation(Vertex<V, E, M> vertex)
       throws IOException {
     verticesMap.put(vertex.getVertexID(), serialize(vertex));
+    setActive(vertex);
+  }
+
+  private static <V> V higher(NavigableSet<V> set, V after) {
+    if (after == null) {
+      return set.isEmpty() ? null : set.first();
+    }
+    return set.higher(after);
   }
 
   @Override
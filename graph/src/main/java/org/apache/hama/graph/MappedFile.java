@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A local file that is mapped into memory in regions of a fixed size, so it
+ * may be larger than the 2GB a single mapping can hold. Writes to a writable
+ * file go to the mapped pages, the operating system writes only the dirty
+ * pages back to the disk. Writing beyond the end grows the file.
+ */
+final class MappedFile implements Closeable {
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final boolean writable;
+  private final int regionSize;
+  private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+
+  /**
+   * @param path the local file to map.
+   * @param writable true to map the file for reading and writing.
+   * @param regionSize the size of a single mapping.
+   */
+  MappedFile(File path, boolean writable, int regionSize) throws IOException {
+    this.file = new RandomAccessFile(path, writable ? "rw" : "r");
+    this.channel = file.getChannel();
+    this.writable = writable;
+    this.regionSize = regionSize;
+  }
+
+  /**
+   * @return the region that contains the given position, mapped on first use.
+   */
+  private ByteBuffer region(long pos) throws IOException {
+    int index = (int) (pos / regionSize);
+    while (regions.size() <= index) {
+      regions.add(null);
+    }
+    MappedByteBuffer region = regions.get(index);
+    if (region == null) {
+      long start = (long) index * regionSize;
+      if (writable) {
+        region = channel.map(MapMode.READ_WRITE, start, regionSize);
+      } else {
+        long length = Math.min(regionSize, channel.size() - start);
+        if (length <= 0) {
+          throw new EOFException("Position " + pos + " is beyond the end.");
+        }
+        region = channel.map(MapMode.READ_ONLY, start, length);
+      }
+      regions.set(index, region);
+    }
+    return region;
+  }
+
+  /**
+   * Reads the given number of bytes starting at the given position.
+   */
+  void read(long pos, byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      ByteBuffer region = region(pos).duplicate();
+      int regionPos = (int) (pos % regionSize);
+      if (regionPos >= region.limit()) {
+        throw new EOFException("Position " + pos + " is beyond the end.");
+      }
+      int n = Math.min(len, region.limit() - regionPos);
+      region.position(regionPos);
+      region.get(b, off, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Writes the given bytes starting at the given position.
+   */
+  void write(long pos, byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      ByteBuffer region = region(pos).duplicate();
+      int regionPos = (int) (pos % regionSize);
+      int n = Math.min(len, regionSize - regionPos);
+      region.position(regionPos);
+      region.put(b, off, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * @return a stream over the file that can be positioned by
+   *         {@link MappedInputStream#seek(long)}.
+   */
+  MappedInputStream newInputStream() {
+    return new MappedInputStream();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // mappings are released once they are garbage collected
+    regions.clear();
+    file.close();
+  }
+
+  /**
+   * Reads the file from a position. Not buffered, so it can be moved freely.
+   */
+  final class MappedInputStream extends InputStream {
+
+    private final byte[] single = new byte[1];
+    private long pos = 0L;
+
+    void seek(long pos) {
+      this.pos = pos;
+    }
+
+    long getPos() {
+      return pos;
+    }
+
+    @Override
+    public int read() throws IOException {
+      read(single, 0, 1);
+      return single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      MappedFile.this.read(pos, b, off, len);
+      pos += len;
+      return len;
+    }
+  }
+
+}
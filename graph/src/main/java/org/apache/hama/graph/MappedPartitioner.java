@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.Map;
+
+import org.apache.hama.bsp.Partitioner;
+
+/**
+ * Partitions the vertices a {@link PartitionPlanner} assigned by their
+ * assignment and all other vertices by the given partitioner.
+ */
+public final class MappedPartitioner<K, V> implements Partitioner<K, V> {
+
+  private final Map<K, Integer> assignments;
+  private final Partitioner<K, V> partitioner;
+
+  public MappedPartitioner(Map<K, Integer> assignments,
+      Partitioner<K, V> partitioner) {
+    this.assignments = assignments;
+    this.partitioner = partitioner;
+  }
+
+  @Override
+  public int getPartition(K key, V value, int numTasks) {
+    Integer partition = assignments.get(key);
+    if (partition != null) {
+      return partition;
+    }
+    return Math.abs(partitioner.getPartition(key, value, numTasks));
+  }
+
+}
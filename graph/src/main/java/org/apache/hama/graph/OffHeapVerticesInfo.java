@@ -91,6 +91,23 @@ public class OffHeapVerticesInfo<V extends WritableComparable<?>, E extends Writ
   public void finishAdditions() {
   }
 
+  @Override
+  public void applyMutations(GraphMutations<V, E, M> mutations) {
+    if (!mutations.getRemovedVertices().isEmpty()) {
+      throw new UnsupportedOperationException("Not yet implemented");
+    }
+    for (Vertex<V, E, M> vertex : mutations.getAddedVertices().values()) {
+      vertices.put(vertex.getVertexID(), vertex);
+    }
+    for (V vertexID : mutations.getVerticesWithEdgeChanges()) {
+      Vertex<V, E, M> vertex = vertices.retrieve(vertexID);
+      if (vertex != null) {
+        mutations.applyEdgeChanges(vertex);
+        vertices.put(vertexID, vertex);
+      }
+    }
+  }
+
   @Override
   public void startSuperstep() throws IOException {
   }
@@ -127,22 +144,21 @@ public class OffHeapVerticesInfo<V extends WritableComparable<?>, E extends Writ
       @Override
       public boolean hasNext(V e,
           org.apache.hama.graph.IDSkippingIterator.Strategy strat) {
-        if (currentIndex < vertices.entries()) {
-
+        // halted vertices without messages are read but not written back
+        while (currentIndex < vertices.entries()) {
           Vertex<V, E, M> next = vertexIterator.next();
-          while (!strat.accept(next, e)) {
-            currentIndex++;
+          currentIndex++;
+          if (strat.accept(next, e)) {
+            currentVertex = next;
+            return true;
           }
-          currentVertex = next;
-          return true;
-        } else {
-          return false;
         }
+        currentVertex = null;
+        return false;
       }
 
       @Override
       public Vertex<V, E, M> next() {
-        currentIndex++;
         if (currentVertex != null && currentVertex.getRunner() == null) {
           currentVertex.setRunner(runner);
         }
@@ -27,6 +27,8 @@ import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hama.Constants;
@@ -52,6 +54,12 @@ public class OutgoingVertexMessagesManager<M extends Writable> implements
   private HashMap<InetSocketAddress, Map<WritableComparable, Writable>> vertexMessageMap = new HashMap<InetSocketAddress, Map<WritableComparable, Writable>>();
   private List<Writable> tmp;
 
+  // combines the messages in primitive arrays if the ids are integral
+  @SuppressWarnings("rawtypes")
+  private PrimitiveCombiner primitiveCombiner;
+  private boolean intVertexIds;
+  private final HashMap<InetSocketAddress, LongMessageMap> primitiveMessageMap = new HashMap<InetSocketAddress, LongMessageMap>();
+
   @SuppressWarnings("unchecked")
   @Override
   public void init(HamaConfiguration conf,
@@ -65,15 +73,36 @@ public class OutgoingVertexMessagesManager<M extends Writable> implements
       combiner = (Combiner<Writable>) org.apache.hadoop.util.ReflectionUtils
           .newInstance(conf.getClass(Constants.COMBINER_CLASS, Combiner.class),
               conf);
+
+      Class<?> vertexIdClass = conf.getClass(GraphJob.VERTEX_ID_CLASS_ATTR,
+          null);
+      if (combiner instanceof PrimitiveCombiner
+          && (LongWritable.class.equals(vertexIdClass) || IntWritable.class
+              .equals(vertexIdClass))) {
+        primitiveCombiner = (PrimitiveCombiner<?>) combiner;
+        intVertexIds = IntWritable.class.equals(vertexIdClass);
+      }
     }
   }
 
-  @SuppressWarnings("rawtypes")
+  @SuppressWarnings({ "rawtypes", "unchecked" })
   @Override
   public void addMessage(String peerName, GraphJobMessage msg) {
     InetSocketAddress targetPeerAddress = getSocketAddress(peerName);
 
-    if (msg.isVertexMessage() && combiner != null) {
+    if (msg.isVertexMessage() && primitiveCombiner != null) {
+      LongMessageMap combinedMessage = primitiveMessageMap
+          .get(targetPeerAddress);
+      if (combinedMessage == null) {
+        combinedMessage = new LongMessageMap();
+        primitiveMessageMap.put(targetPeerAddress, combinedMessage);
+      }
+      long vertexID = intVertexIds ? ((IntWritable) msg.getVertexId()).get()
+          : ((LongWritable) msg.getVertexId()).get();
+      combinedMessage.combine(vertexID,
+          primitiveCombiner.toBits(msg.getVertexValue()), primitiveCombiner);
+
+    } else if (msg.isVertexMessage() && combiner != null) {
       WritableComparable vertexID = msg.getVertexId();
       Writable vertexValue = msg.getVertexValue();
 
@@ -129,9 +158,13 @@ public class OutgoingVertexMessagesManager<M extends Writable> implements
   public void clear() {
     outgoingBundles.clear();
     vertexMessageMap.clear();
+    // keep the maps to reuse their arrays in the next superstep
+    for (LongMessageMap combinedMessage : primitiveMessageMap.values()) {
+      combinedMessage.clear();
+    }
   }
 
-  @SuppressWarnings("rawtypes")
+  @SuppressWarnings({ "rawtypes", "unchecked" })
   @Override
   public Iterator<Entry<InetSocketAddress, BSPMessageBundle<GraphJobMessage>>> getBundleIterator() {
     if (combiner != null) {
@@ -145,6 +178,31 @@ public class OutgoingVertexMessagesManager<M extends Writable> implements
       }
     }
 
+    if (!primitiveMessageMap.isEmpty()) {
+      // the bundles serialize a message when it is added, so one message is
+      // reused for all the combined values
+      IntWritable intID = new IntWritable();
+      LongWritable longID = new LongWritable();
+      Writable value = primitiveCombiner.newValue();
+      GraphJobMessage message = new GraphJobMessage(intVertexIds ? intID
+          : longID, value);
+      for (Map.Entry<InetSocketAddress, LongMessageMap> e : primitiveMessageMap
+          .entrySet()) {
+        BSPMessageBundle<GraphJobMessage> bundle = outgoingBundles.get(e
+            .getKey());
+        LongMessageMap combinedMessage = e.getValue();
+        for (int i = 0; i < combinedMessage.capacity(); i++) {
+          if (combinedMessage.isUsed(i)) {
+            intID.set((int) combinedMessage.keyAt(i));
+            longID.set(combinedMessage.keyAt(i));
+            primitiveCombiner.setBits(value, combinedMessage.valueAt(i));
+            bundle.addMessage(message);
+          }
+        }
+        combinedMessage.clear();
+      }
+    }
+
     vertexMessageMap.clear();
     return outgoingBundles.entrySet().iterator();
   }
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.RecordWriter;
+import org.apache.hama.util.ReflectionUtils;
+
+/**
+ * Writes the vertices of a peer with several threads. The vertices are read in
+ * order by the calling thread and handed in batches to the output threads,
+ * which pass them to their own {@link RecordVertexOutputWriter}. The first
+ * thread writes to the output of the peer, the others write to additional part
+ * files next to it, named like "part-00000_1". Only the first thread uses the
+ * peer.
+ * 
+ * The vertices are handed over as they are, so the iterator must return a new
+ * instance for every vertex.
+ * 
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+final class ParallelVertexOutput<V extends WritableComparable, E extends Writable, M extends Writable> {
+
+  private static final Log LOG = LogFactory.getLog(ParallelVertexOutput.class);
+
+  private static final int BATCH_SIZE = 1024;
+
+  private final HamaConfiguration conf;
+  private final BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer;
+  private final int numThreads;
+  private final VertexIdDictionary dictionary;
+  private final boolean decodeEdges;
+  // marks the end of the vertices for an output thread
+  private final List<Vertex<V, E, M>> end = new ArrayList<Vertex<V, E, M>>(0);
+
+  ParallelVertexOutput(HamaConfiguration conf,
+      BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer,
+      int numThreads, VertexIdDictionary dictionary, boolean decodeEdges) {
+    this.conf = conf;
+    this.peer = peer;
+    this.numThreads = numThreads;
+    this.dictionary = dictionary;
+    this.decodeEdges = decodeEdges;
+  }
+
+  /**
+   * Writes the vertices of the given iterator.
+   * 
+   * @param skipHalted true if the vertices that voted to halt are not written.
+   * @return the number of written vertices.
+   */
+  @SuppressWarnings("unchecked")
+  long write(IDSkippingIterator<V, E, M> iterator, boolean skipHalted)
+      throws IOException {
+    final BlockingQueue<List<Vertex<V, E, M>>> queue = new ArrayBlockingQueue<List<Vertex<V, E, M>>>(
+        2 * numThreads);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      futures.add(executor.submit(new OutputThread(i, queue)));
+    }
+
+    long written = 0L;
+    try {
+      List<Vertex<V, E, M>> batch = new ArrayList<Vertex<V, E, M>>(BATCH_SIZE);
+      while (iterator.hasNext()) {
+        Vertex<V, E, M> vertex = iterator.next();
+        if (skipHalted && vertex.isHalted()) {
+          continue;
+        }
+        batch.add(dictionary == null ? vertex : dictionary.decode(vertex,
+            decodeEdges));
+        written++;
+        if (batch.size() == BATCH_SIZE) {
+          queue.put(batch);
+          batch = new ArrayList<Vertex<V, E, M>>(BATCH_SIZE);
+        }
+      }
+      if (!batch.isEmpty()) {
+        queue.put(batch);
+      }
+      for (int i = 0; i < numThreads; i++) {
+        queue.put(end);
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return written;
+  }
+
+  private final class OutputThread implements Callable<Void> {
+
+    private final int index;
+    private final BlockingQueue<List<Vertex<V, E, M>>> queue;
+
+    OutputThread(int index, BlockingQueue<List<Vertex<V, E, M>>> queue) {
+      this.index = index;
+      this.queue = queue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Void call() throws Exception {
+      RecordWriter<Writable, Writable> out = null;
+      RecordVertexOutputWriter<Writable, Writable, V, E, M> writer = null;
+      Exception error = null;
+      try {
+        out = index == 0 ? new PeerRecordWriter() : createRecordWriter(index);
+        writer = (RecordVertexOutputWriter<Writable, Writable, V, E, M>) ReflectionUtils
+            .newInstance(conf.getClass(
+                GraphJob.VERTEX_OUTPUT_WRITER_CLASS_ATTR,
+                VertexOutputWriter.class));
+        writer.setup(conf);
+      } catch (Exception e) {
+        error = e;
+      }
+
+      try {
+        List<Vertex<V, E, M>> batch;
+        while ((batch = queue.take()) != end) {
+          // after a failure the batches are still taken, so the reading
+          // thread doesn't block
+          if (error != null) {
+            continue;
+          }
+          try {
+            for (Vertex<V, E, M> vertex : batch) {
+              writer.write(vertex, out);
+            }
+          } catch (Exception e) {
+            error = e;
+          }
+        }
+      } finally {
+        if (out != null) {
+          out.close();
+        }
+      }
+      if (error != null) {
+        throw error;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Writes to the output of the peer, used by the first output thread only.
+   */
+  private final class PeerRecordWriter implements
+      RecordWriter<Writable, Writable> {
+
+    @Override
+    public void write(Writable key, Writable value) throws IOException {
+      peer.write(key, value);
+    }
+
+    @Override
+    public void close() {
+      // the peer closes its own output
+    }
+  }
+
+  /**
+   * @return a writer of the given additional part file of this peer.
+   */
+  @SuppressWarnings("unchecked")
+  private RecordWriter<Writable, Writable> createRecordWriter(int index)
+      throws IOException {
+    Path file = new Path(conf.get("bsp.output.dir"), String.format(
+        "part-%05d_%d", peer.getPeerIndex(), index));
+    String name = file.makeQualified(file.getFileSystem(conf)).toString();
+    LOG.debug("Writing vertices to " + name);
+    BSPJob job = new BSPJob(conf, peer.getTaskId().getJobID());
+    return job.getOutputFormat().getRecordWriter(FileSystem.get(conf), job,
+        name);
+  }
+
+}
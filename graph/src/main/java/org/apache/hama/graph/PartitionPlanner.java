@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.Partitioner;
+import org.apache.hama.bsp.sync.SyncException;
+
+/**
+ * Plans the partitions of the vertices during the runtime partitioning with a
+ * view of the whole input instead of a single vertex. The planner sees every
+ * vertex of a split once, exchanges its plan with the other peers and then
+ * decides the partition of every vertex.
+ *
+ * Only the vertices that are placed on another partition than the configured
+ * {@link Partitioner} would choose are stored as assignments. The
+ * {@link GraphJobRunner} loads them into a {@link MappedPartitioner}, so
+ * messages are routed to the planned partitions.
+ *
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class PartitionPlanner<V extends WritableComparable, E extends Writable, M extends Writable> {
+
+  /** The directory in the partition directory the assignments are stored. */
+  public static final String ASSIGNMENT_DIR = "_assignment";
+
+  protected Configuration conf;
+  protected int numPartitions;
+
+  private Map<V, Integer> assignments = new HashMap<V, Integer>();
+
+  /**
+   * Called once before the first vertex is added.
+   */
+  public void setup(Configuration conf, int numPartitions) {
+    this.conf = conf;
+    this.numPartitions = numPartitions;
+  }
+
+  /**
+   * Adds a vertex of the split to the plan.
+   *
+   * @param vertex the vertex read from the split.
+   * @param partition the partition the configured partitioner chose.
+   */
+  public abstract void addVertex(Vertex<V, E, M> vertex, int partition)
+      throws IOException;
+
+  /**
+   * Finishes the plan after all vertices of the split were added. Must be
+   * called on all peers, as planners may synchronize to exchange their plans.
+   *
+   * @param planDir a scratch directory shared by all peers.
+   * @return the partitions of the vertices of this split that differ from the
+   *         partition the configured partitioner chose.
+   */
+  protected abstract Map<V, Integer> plan(BSPPeer peer, Path planDir)
+      throws IOException, SyncException, InterruptedException;
+
+  /**
+   * Finishes the plan and stores the assignments of this split.
+   *
+   * @param partitionDir the directory the partitions are written to.
+   * @param planDir a scratch directory shared by all peers.
+   */
+  @SuppressWarnings("unchecked")
+  public final void finish(BSPPeer peer, Path partitionDir, Path planDir)
+      throws IOException, SyncException, InterruptedException {
+    assignments = plan(peer, planDir);
+    if (assignments.isEmpty()) {
+      return;
+    }
+
+    FileSystem fs = FileSystem.get(conf);
+    Path file = new Path(new Path(partitionDir, ASSIGNMENT_DIR), "file-"
+        + peer.getPeerIndex());
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, file,
+        GraphJobRunner.VERTEX_ID_CLASS, IntWritable.class,
+        CompressionType.NONE);
+    IntWritable partition = new IntWritable();
+    for (Entry<V, Integer> e : assignments.entrySet()) {
+      partition.set(e.getValue());
+      writer.append(e.getKey(), partition);
+    }
+    writer.close();
+  }
+
+  /**
+   * @param vertex a vertex of the split.
+   * @param partition the partition the configured partitioner chose.
+   * @return the planned partition of the given vertex.
+   */
+  public int getPartition(Vertex<V, E, M> vertex, int partition) {
+    Integer assigned = assignments.get(vertex.getVertexID());
+    return assigned == null ? partition : assigned;
+  }
+
+  /**
+   * Reads the assignments all peers stored in the given partition directory.
+   *
+   * @return the partitions by vertex id, empty if nothing was planned.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V extends WritableComparable> Map<V, Integer> readAssignments(
+      Configuration conf, Path partitionDir) throws IOException {
+    Map<V, Integer> assignments = new HashMap<V, Integer>();
+    FileSystem fs = FileSystem.get(conf);
+    Path dir = new Path(partitionDir, ASSIGNMENT_DIR);
+    if (!fs.exists(dir)) {
+      return assignments;
+    }
+
+    for (FileStatus status : fs.listStatus(dir)) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          status.getPath(), conf);
+      V vertexId = (V) GraphJobRunner.createVertexIDObject();
+      IntWritable partition = new IntWritable();
+      while (reader.next(vertexId, partition)) {
+        assignments.put(vertexId, partition.get());
+        vertexId = (V) GraphJobRunner.createVertexIDObject();
+      }
+      reader.close();
+    }
+    return assignments;
+  }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.Iterator;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.bsp.Combiner;
+
+/**
+ * A combiner of messages whose values are primitives, that combines two values
+ * at a time. If the vertex ids are {@link LongWritable} or {@link IntWritable}
+ * the outgoing messages are combined in primitive arrays, without creating an
+ * object per message, and so are the received ones in the
+ * {@link PrimitiveGatheringQueue}, which keeps no object per message. Otherwise
+ * it works like any other {@link Combiner}.
+ * Extend one of the nested classes, for example:
+ * 
+ * <pre>
+ * public static class SumCombiner extends PrimitiveCombiner.OfDouble {
+ *   protected double combine(double a, double b) {
+ *     return a + b;
+ *   }
+ * }
+ * </pre>
+ * 
+ * @param <M> the value type of a vertex.
+ */
+public abstract class PrimitiveCombiner<M extends Writable> extends
+    Combiner<M> {
+
+  /**
+   * @return the bits of the given value.
+   */
+  abstract long toBits(M value);
+
+  /**
+   * @return a new value, see {@link #setBits(Writable, long)}.
+   */
+  abstract M newValue();
+
+  /**
+   * Sets the given value to the given bits.
+   */
+  abstract void setBits(M value, long bits);
+
+  /**
+   * @return a new value of the given bits.
+   */
+  final M fromBits(long bits) {
+    M value = newValue();
+    setBits(value, bits);
+    return value;
+  }
+
+  /**
+   * @return the bits of the value that combines the values of the given bits.
+   */
+  abstract long combineBits(long a, long b);
+
+  @Override
+  public final M combine(Iterable<M> messages) {
+    Iterator<M> iterator = messages.iterator();
+    long bits = toBits(iterator.next());
+    while (iterator.hasNext()) {
+      bits = combineBits(bits, toBits(iterator.next()));
+    }
+    return fromBits(bits);
+  }
+
+  /**
+   * Combines {@link DoubleWritable} messages.
+   */
+  public static abstract class OfDouble extends
+      PrimitiveCombiner<DoubleWritable> {
+
+    protected abstract double combine(double a, double b);
+
+    @Override
+    final long toBits(DoubleWritable value) {
+      return Double.doubleToRawLongBits(value.get());
+    }
+
+    @Override
+    final DoubleWritable newValue() {
+      return new DoubleWritable();
+    }
+
+    @Override
+    final void setBits(DoubleWritable value, long bits) {
+      value.set(Double.longBitsToDouble(bits));
+    }
+
+    @Override
+    final long combineBits(long a, long b) {
+      return Double.doubleToRawLongBits(combine(Double.longBitsToDouble(a),
+          Double.longBitsToDouble(b)));
+    }
+  }
+
+  /**
+   * Combines {@link FloatWritable} messages.
+   */
+  public static abstract class OfFloat extends
+      PrimitiveCombiner<FloatWritable> {
+
+    protected abstract float combine(float a, float b);
+
+    @Override
+    final long toBits(FloatWritable value) {
+      return Float.floatToRawIntBits(value.get());
+    }
+
+    @Override
+    final FloatWritable newValue() {
+      return new FloatWritable();
+    }
+
+    @Override
+    final void setBits(FloatWritable value, long bits) {
+      value.set(Float.intBitsToFloat((int) bits));
+    }
+
+    @Override
+    final long combineBits(long a, long b) {
+      return Float.floatToRawIntBits(combine(Float.intBitsToFloat((int) a),
+          Float.intBitsToFloat((int) b)));
+    }
+  }
+
+  /**
+   * Combines {@link LongWritable} messages.
+   */
+  public static abstract class OfLong extends PrimitiveCombiner<LongWritable> {
+
+    protected abstract long combine(long a, long b);
+
+    @Override
+    final long toBits(LongWritable value) {
+      return value.get();
+    }
+
+    @Override
+    final LongWritable newValue() {
+      return new LongWritable();
+    }
+
+    @Override
+    final void setBits(LongWritable value, long bits) {
+      value.set(bits);
+    }
+
+    @Override
+    final long combineBits(long a, long b) {
+      return combine(a, b);
+    }
+  }
+
+  /**
+   * Combines {@link IntWritable} messages.
+   */
+  public static abstract class OfInt extends PrimitiveCombiner<IntWritable> {
+
+    protected abstract int combine(int a, int b);
+
+    @Override
+    final long toBits(IntWritable value) {
+      return value.get();
+    }
+
+    @Override
+    final IntWritable newValue() {
+      return new IntWritable();
+    }
+
+    @Override
+    final void setBits(IntWritable value, long bits) {
+      value.set((int) bits);
+    }
+
+    @Override
+    final long combineBits(long a, long b) {
+      return combine((int) a, (int) b);
+    }
+  }
+
+}
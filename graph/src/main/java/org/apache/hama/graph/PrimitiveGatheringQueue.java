@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.Constants;
+import org.apache.hama.bsp.Combiner;
+import org.apache.hama.bsp.TaskAttemptID;
+import org.apache.hama.bsp.message.queue.MessageQueue;
+import org.apache.hama.bsp.message.queue.SynchronizedQueue;
+
+/**
+ * The receive queue of a graph job with {@link LongWritable} or
+ * {@link IntWritable} vertex ids and a {@link PrimitiveCombiner}. Vertex
+ * messages are combined per destination into a {@link LongMessageMap} as they
+ * arrive, so the queue holds two longs per vertex instead of a message, an id
+ * and a value per message, and sorts the destinations as a long array once
+ * they are read. A vertex gets one message with the combined value of all its
+ * messages. The other messages are queued and read first in their usual
+ * order.
+ * 
+ * A message to a vertex whose message has already been read is rejected.
+ */
+public final class PrimitiveGatheringQueue implements
+    SynchronizedQueue<GraphJobMessage> {
+
+  private Configuration conf;
+  private PrimitiveCombiner<Writable> combiner;
+  private boolean intVertexIds;
+
+  private final PriorityQueue<GraphJobMessage> otherMessages = new PriorityQueue<GraphJobMessage>();
+  private final LongMessageMap sums = new LongMessageMap();
+  // the destinations in read order, null until the sums are read
+  private long[] destinations;
+  private int index;
+  // the destinations up to the last read one are read
+  private boolean reading;
+  private long lastRead;
+  private int size;
+
+  /**
+   * @return true if the messages of a job with the given configuration can be
+   *         combined by this queue.
+   */
+  static boolean isApplicable(Configuration conf) {
+    Class<?> idClass = conf.getClass(GraphJob.VERTEX_ID_CLASS_ATTR, null);
+    return PrimitiveCombiner.class.isAssignableFrom(conf.getClass(
+        Constants.COMBINER_CLASS, Combiner.class))
+        && (LongWritable.class.equals(idClass) || IntWritable.class
+            .equals(idClass));
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized void init(Configuration conf, TaskAttemptID id) {
+    this.conf = conf;
+    combiner = (PrimitiveCombiner<Writable>) org.apache.hadoop.util.ReflectionUtils
+        .newInstance(conf.getClass(Constants.COMBINER_CLASS, Combiner.class),
+            conf);
+    intVertexIds = IntWritable.class.equals(conf.getClass(
+        GraphJob.VERTEX_ID_CLASS_ATTR, null));
+  }
+
+  @Override
+  public synchronized void add(GraphJobMessage item) {
+    if (!item.isVertexMessage()) {
+      size++;
+      otherMessages.add(item);
+      return;
+    }
+    long vertexId = intVertexIds ? ((IntWritable) item.getVertexId()).get()
+        : ((LongWritable) item.getVertexId()).get();
+    if (reading && vertexId <= lastRead) {
+      throw new IllegalStateException("A message to vertex "
+          + item.getVertexId() + " was added after its messages were read.");
+    }
+    if (!sums.contains(vertexId)) {
+      size++;
+      // a destination added while reading is sorted in again
+      destinations = null;
+    }
+    sums.combine(vertexId, combiner.toBits(item.getVertexValue()), combiner);
+  }
+
+  @Override
+  public void addAll(Iterable<GraphJobMessage> col) {
+    for (GraphJobMessage item : col) {
+      add(item);
+    }
+  }
+
+  @Override
+  public synchronized void addAll(MessageQueue<GraphJobMessage> otherqueue) {
+    // the messages of the next superstep, with persistent queues the unread
+    // messages of this one are read again with them
+    reading = false;
+    destinations = null;
+    GraphJobMessage item;
+    while ((item = otherqueue.poll()) != null) {
+      add(item);
+    }
+  }
+
+  @Override
+  public synchronized GraphJobMessage poll() {
+    if (!otherMessages.isEmpty()) {
+      size--;
+      return otherMessages.poll();
+    }
+    if (destinations == null) {
+      destinations = unreadDestinations();
+      index = 0;
+    }
+    if (index == destinations.length) {
+      return null;
+    }
+    long vertexId = destinations[index++];
+    reading = true;
+    lastRead = vertexId;
+    size--;
+    return newMessage(vertexId);
+  }
+
+  /**
+   * @return the destinations that aren't read yet in order.
+   */
+  private long[] unreadDestinations() {
+    long[] ids = new long[sums.size()];
+    int length = 0;
+    for (int i = 0; i < sums.capacity(); i++) {
+      if (sums.isUsed(i) && (!reading || sums.keyAt(i) > lastRead)) {
+        ids[length++] = sums.keyAt(i);
+      }
+    }
+    ids = Arrays.copyOf(ids, length);
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  private GraphJobMessage newMessage(long vertexId) {
+    return new GraphJobMessage(intVertexIds ? new IntWritable((int) vertexId)
+        : new LongWritable(vertexId), combiner.fromBits(sums.get(vertexId)));
+  }
+
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void clear() {
+    otherMessages.clear();
+    sums.clear();
+    destinations = null;
+    reading = false;
+    size = 0;
+  }
+
+  @Override
+  public synchronized Iterator<GraphJobMessage> iterator() {
+    List<GraphJobMessage> messages = new ArrayList<GraphJobMessage>(
+        otherMessages);
+    for (long vertexId : unreadDestinations()) {
+      messages.add(newMessage(vertexId));
+    }
+    return messages.iterator();
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+
+  @Override
+  public void prepareRead() {
+  }
+
+  @Override
+  public void prepareWrite() {
+  }
+
+  @Override
+  public boolean isMessageSerialized() {
+    return false;
+  }
+
+  @Override
+  public boolean isMemoryBasedQueue() {
+    return true;
+  }
+
+  @Override
+  public MessageQueue<GraphJobMessage> getMessageQueue() {
+    return this;
+  }
+
+}
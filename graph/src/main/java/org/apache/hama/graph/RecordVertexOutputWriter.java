@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.RecordWriter;
+
+/**
+ * A VertexOutputWriter that can also write to a plain record writer instead of
+ * the peer. Only such writers let several threads write the vertices of a
+ * task, see {@link GraphJob#setOutputThreads(int)}.
+ * 
+ * @param <KEYOUT> the key output type.
+ * @param <VALUEOUT> the value output type.
+ * @param <V> the vertexID type.
+ * @param <E> the edge value type.
+ * @param <M> the vertex value type.
+ */
+@SuppressWarnings("rawtypes")
+public interface RecordVertexOutputWriter<KEYOUT extends Writable, VALUEOUT extends Writable, V extends WritableComparable, E extends Writable, M extends Writable>
+    extends VertexOutputWriter<KEYOUT, VALUEOUT, V, E, M> {
+
+  /**
+   * Write is called for every vertex in the list.
+   * 
+   * @param vertex the user defined vertex.
+   * @param out the writer of the output records.
+   */
+  public void write(Vertex<V, E, M> vertex, RecordWriter<KEYOUT, VALUEOUT> out)
+      throws IOException;
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.BSPPeer;
+
+/**
+ * Places the vertices in the order they are read, each onto the partition
+ * that already holds most of its neighbors, to keep the number of edges
+ * between partitions low. Every peer streams its own split and only knows the
+ * placement of the vertices it has read so far.
+ *
+ * Two heuristics are available, both penalize full partitions:
+ * <ul>
+ * <li>"ldg" (linear deterministic greedy) scales the number of neighbors by
+ * the remaining capacity of a partition.</li>
+ * <li>"fennel" subtracts the marginal cost of growing a partition,
+ * alpha * gamma * size^(gamma - 1) with gamma = 1.5, from the number of
+ * neighbors.</li>
+ * </ul>
+ * The capacity of a partition is the average size so far plus the slack, ties
+ * are broken in favor of the partition the partitioner chose and then the
+ * smallest one. As most vertices move away from the partitioner's choice,
+ * every task of the graph job holds the placement of nearly all vertices.
+ *
+ * @param <V> the id type of a vertex.
+ * @param <E> the value type of an edge.
+ * @param <M> the value type of a vertex.
+ */
+@SuppressWarnings("rawtypes")
+public class StreamingPartitionPlanner<V extends WritableComparable, E extends Writable, M extends Writable>
+    extends PartitionPlanner<V, E, M> {
+
+  private static final Log LOG = LogFactory
+      .getLog(StreamingPartitionPlanner.class);
+
+  /** The heuristic to place the vertices by, "ldg" or "fennel". */
+  public static final String HEURISTIC_KEY = "hama.graph.partition.streaming.heuristic";
+  /** Share a partition may grow larger than the average. */
+  public static final String SLACK_KEY = "hama.graph.partition.streaming.slack";
+
+  private static final double GAMMA = 1.5d;
+
+  private boolean fennel;
+  private float slack;
+
+  private final Map<V, Integer> placed = new HashMap<V, Integer>();
+  private final Map<V, Integer> assignments = new HashMap<V, Integer>();
+  private long[] sizes;
+  private int[] neighbors;
+  private long numVertices;
+  private long numEdges;
+  private long numLocalEdges;
+
+  @Override
+  public void setup(Configuration conf, int numPartitions) {
+    super.setup(conf, numPartitions);
+    String heuristic = conf.get(HEURISTIC_KEY, "ldg");
+    if (!heuristic.equals("ldg") && !heuristic.equals("fennel")) {
+      throw new IllegalArgumentException("Unknown streaming heuristic: "
+          + heuristic);
+    }
+    this.fennel = heuristic.equals("fennel");
+    this.slack = conf.getFloat(SLACK_KEY, 0.1f);
+    this.sizes = new long[numPartitions];
+    this.neighbors = new int[numPartitions];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void addVertex(Vertex<V, E, M> vertex, int partition) {
+    for (Edge<V, E> edge : vertex.getEdges()) {
+      Integer neighbor = placed.get(edge.getDestinationVertexID());
+      if (neighbor != null) {
+        neighbors[neighbor]++;
+      }
+    }
+    numVertices++;
+    numEdges += vertex.getEdges().size();
+
+    int best = choose(neighbors, sizes, partition, numVertices, numEdges);
+    numLocalEdges += neighbors[best];
+    for (int i = 0; i < numPartitions; i++) {
+      neighbors[i] = 0;
+    }
+
+    sizes[best]++;
+    placed.put((V) vertex.getVertexID(), best);
+    if (best != partition) {
+      assignments.put((V) vertex.getVertexID(), best);
+    }
+  }
+
+  /**
+   * @param neighbors the number of placed neighbors by partition.
+   * @param sizes the number of placed vertices by partition.
+   * @param partition the partition the partitioner chose.
+   * @param numVertices the number of vertices read, including this one.
+   * @param numEdges the number of edges read, including this vertex' edges.
+   * @return the partition to place the vertex on.
+   */
+  int choose(int[] neighbors, long[] sizes, int partition, long numVertices,
+      long numEdges) {
+    int k = sizes.length;
+    double capacity = (1.0d + slack) * numVertices / k + 1.0d;
+    double alpha = Math.sqrt(k) * numEdges / Math.pow(numVertices, GAMMA);
+
+    int best = -1;
+    double bestScore = 0.0d;
+    for (int i = 0; i < k; i++) {
+      if (sizes[i] >= capacity) {
+        continue;
+      }
+      double score;
+      if (fennel) {
+        score = neighbors[i] - alpha * GAMMA
+            * Math.pow(sizes[i], GAMMA - 1.0d);
+      } else {
+        score = neighbors[i] * (1.0d - sizes[i] / capacity);
+      }
+      if (best < 0 || score > bestScore
+          || (score == bestScore && isPreferred(i, best, partition, sizes))) {
+        best = i;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  private static boolean isPreferred(int candidate, int best, int partition,
+      long[] sizes) {
+    if (best == partition) {
+      return false;
+    }
+    return candidate == partition || sizes[candidate] < sizes[best];
+  }
+
+  @Override
+  protected Map<V, Integer> plan(BSPPeer peer, Path planDir) {
+    LOG.info(numLocalEdges + " of " + numEdges + " edges of "
+        + peer.getPeerName() + " point to a known neighbor on the same "
+        + "partition, " + assignments.size() + " of " + numVertices
+        + " vertices are moved.");
+    placed.clear();
+    return assignments;
+  }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.BSPPeerImpl.PeerCounter;
+import org.apache.hama.bsp.Counters.Counter;
+
+/**
+ * Records the time, the messages, the heap and the garbage collection of each
+ * superstep of a peer as tab separated lines with a header, in the file
+ * "metrics-" and the peer index in the directory "hama.graph.metrics.dir".
+ * The heap and the garbage collection are those of the JVM, which all peers
+ * share when run by the local runner.
+ */
+final class SuperstepMetrics {
+
+  private static final Log LOG = LogFactory.getLog(SuperstepMetrics.class);
+
+  static final String HEADER = "peer\tsuperstep\ttime_ms\tsync_ms\tactive_vertices\t"
+      + "messages_sent\tmessages_received\tbytes_sent\tmessages_per_sec\t"
+      + "bytes_per_sec\theap_used\theap_peak\tgc_count\tgc_ms";
+
+  private final BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer;
+  private final PrintWriter out;
+
+  private long lastSuperstep = -1L;
+  private long time;
+  private long syncTime;
+  private long messagesSent;
+  private long messagesReceived;
+  private long bytesSent;
+  private long gcCount;
+  private long gcTime;
+
+  private SuperstepMetrics(
+      BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer,
+      PrintWriter out) {
+    this.peer = peer;
+    this.out = out;
+  }
+
+  /**
+   * @return the metrics of the given peer, null if no directory is set.
+   */
+  static SuperstepMetrics create(HamaConfiguration conf,
+      BSPPeer<Writable, Writable, Writable, Writable, GraphJobMessage> peer)
+      throws IOException {
+    String dir = conf.get(GraphJob.METRICS_DIR_ATTR);
+    if (dir == null) {
+      return null;
+    }
+    Path file = new Path(dir, String.format("metrics-%05d",
+        peer.getPeerIndex()));
+    FileSystem fs = file.getFileSystem(conf);
+    PrintWriter out = new PrintWriter(fs.create(file, true));
+    out.println(HEADER);
+    SuperstepMetrics metrics = new SuperstepMetrics(peer, out);
+    metrics.mark();
+    return metrics;
+  }
+
+  /**
+   * Starts the measurement of the next superstep.
+   */
+  private void mark() {
+    time = System.currentTimeMillis();
+    syncTime = counter(PeerCounter.TIME_IN_SYNC_MS);
+    messagesSent = counter(PeerCounter.TOTAL_MESSAGES_SENT);
+    messagesReceived = counter(PeerCounter.TOTAL_MESSAGES_RECEIVED);
+    bytesSent = counter(PeerCounter.MESSAGE_BYTES_TRANSFERED);
+    gcCount = 0L;
+    gcTime = 0L;
+    for (GarbageCollectorMXBean gc : ManagementFactory
+        .getGarbageCollectorMXBeans()) {
+      gcCount += Math.max(0L, gc.getCollectionCount());
+      gcTime += Math.max(0L, gc.getCollectionTime());
+    }
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private long counter(PeerCounter name) {
+    Counter counter = peer.getCounter(name);
+    return counter == null ? 0L : counter.getCounter();
+  }
+
+  /**
+   * Records the superstep since the last one and starts the next, unless the
+   * given superstep is recorded already.
+   */
+  void superstep(long superstep, int activeVertices) {
+    if (superstep <= lastSuperstep) {
+      return;
+    }
+    lastSuperstep = superstep;
+    long millis = System.currentTimeMillis() - time;
+    long sent = counter(PeerCounter.TOTAL_MESSAGES_SENT) - messagesSent;
+    long bytes = counter(PeerCounter.MESSAGE_BYTES_TRANSFERED) - bytesSent;
+    long heapPeak = 0L;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPeak += pool.getPeakUsage().getUsed();
+      }
+    }
+    long count = 0L;
+    long gc = 0L;
+    for (GarbageCollectorMXBean bean : ManagementFactory
+        .getGarbageCollectorMXBeans()) {
+      count += Math.max(0L, bean.getCollectionCount());
+      gc += Math.max(0L, bean.getCollectionTime());
+    }
+    long elapsed = Math.max(1L, millis);
+
+    String line = peer.getPeerIndex() + "\t" + superstep + "\t" + millis + "\t"
+        + (counter(PeerCounter.TIME_IN_SYNC_MS) - syncTime) + "\t"
+        + activeVertices + "\t" + sent + "\t"
+        + (counter(PeerCounter.TOTAL_MESSAGES_RECEIVED) - messagesReceived)
+        + "\t" + bytes + "\t" + (sent * 1000L / elapsed) + "\t"
+        + (bytes * 1000L / elapsed) + "\t"
+        + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()
+        + "\t" + heapPeak + "\t" + (count - gcCount) + "\t" + (gc - gcTime);
+    out.println(line);
+    out.flush();
+    LOG.debug(line);
+    mark();
+  }
+
+  void close() {
+    out.close();
+  }
+
+}
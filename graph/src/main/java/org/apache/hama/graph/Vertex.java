@@ -21,10 +21,13 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hama.HamaConfiguration;
@@ -74,6 +77,20 @@ public abstract class Vertex<V extends WritableComparable, E extends Writable, M
   public void setup(HamaConfiguration conf) {
   }
 
+  /**
+   * Called instead of {@link #compute(Iterable)} in the first superstep of an
+   * incremental job for the vertices that were added or whose edges changed
+   * since the prior run and for the neighbors of removed vertices, see
+   * {@link GraphJob#setIncremental}. The value is the prior value, if there is
+   * one, also if it depends on a removed vertex. The other vertices keep their
+   * prior value and start halted. By default this computes with the own value
+   * like the first superstep of a job does, vertices that don't compute
+   * anything with a value should send it to their neighbors.
+   */
+  public void computeChanged() throws IOException {
+    compute(Collections.singleton(getValue()));
+  }
+
   @Override
   public void sendMessage(Edge<V, E> e, M msg) throws IOException {
     runner.getPeer().send(getDestinationPeerName(e),
@@ -98,11 +115,40 @@ public abstract class Vertex<V extends WritableComparable, E extends Writable, M
             runner.getPeer().getNumPeers()));
   }
 
+  @SuppressWarnings("rawtypes")
   @Override
   public void sendMessageToNeighbors(M msg) throws IOException {
+    if (runner.getMirrors().isHub(vertexID)) {
+      runner.getMirrors().sendToNeighbors(vertexID, msg);
+      return;
+    }
     final List<Edge<V, E>> outEdges = this.getEdges();
+    if (!runner.isMulticast() || outEdges.size() < 2) {
+      for (Edge<V, E> e : outEdges) {
+        sendMessage(e, msg);
+      }
+      return;
+    }
+
+    // send the message once per peer with the neighbors on that peer
+    Map<String, List<WritableComparable>> targetsByPeer = new HashMap<String, List<WritableComparable>>();
     for (Edge<V, E> e : outEdges) {
-      sendMessage(e, msg);
+      String peerName = getDestinationPeerName(e);
+      List<WritableComparable> targets = targetsByPeer.get(peerName);
+      if (targets == null) {
+        targets = new ArrayList<WritableComparable>();
+        targetsByPeer.put(peerName, targets);
+      }
+      targets.add(e.getDestinationVertexID());
+    }
+    for (Entry<String, List<WritableComparable>> e : targetsByPeer.entrySet()) {
+      if (e.getValue().size() == 1) {
+        runner.getPeer().send(e.getKey(),
+            new GraphJobMessage(e.getValue().get(0), msg));
+      } else {
+        runner.getPeer().send(e.getKey(),
+            GraphJobMessage.createMulticastMessage(e.getValue(), msg));
+      }
     }
   }
 
@@ -122,7 +168,6 @@ public abstract class Vertex<V extends WritableComparable, E extends Writable, M
   @Override
   public void addVertex(V vertexID, List<Edge<V, E>> edges, M value)
       throws IOException {
-    MapWritable msg = new MapWritable();
     // Create the new vertex.
     Vertex<V, E, M> vertex = GraphJobRunner
         .<V, E, M> newVertexInstance(GraphJobRunner.VERTEX_CLASS);
@@ -130,29 +175,30 @@ public abstract class Vertex<V extends WritableComparable, E extends Writable, M
     vertex.setValue(value);
     vertex.setVertexID(vertexID);
 
-    msg.put(GraphJobRunner.FLAG_VERTEX_INCREASE, vertex);
-    // Find the proper partition to host the new vertex.
-    int partition = getPartitioner().getPartition(vertexID, value,
-        runner.getPeer().getNumPeers());
-    String destPeer = runner.getPeer().getAllPeerNames()[partition];
-
-    runner.getPeer().send(destPeer, new GraphJobMessage(msg));
+    runner.getMutations(vertexID).addVertex(vertex);
 
     alterVertexCounter(1);
   }
 
   @Override
   public void remove() throws IOException {
-    MapWritable msg = new MapWritable();
-    msg.put(GraphJobRunner.FLAG_VERTEX_DECREASE, this.vertexID);
-
-    // Get master task peer.
-    String destPeer = GraphJobRunner.getMasterTask(this.getPeer());
-    runner.getPeer().send(destPeer, new GraphJobMessage(msg));
+    runner.getMutations(vertexID).removeVertex(vertexID);
 
     alterVertexCounter(-1);
   }
 
+  @Override
+  public void addEdge(V sourceVertexID, Edge<V, E> edge) throws IOException {
+    runner.getMutations(sourceVertexID).addEdge(sourceVertexID, edge);
+  }
+
+  @Override
+  public void removeEdge(V sourceVertexID, V destinationVertexID)
+      throws IOException {
+    runner.getMutations(sourceVertexID).removeEdge(sourceVertexID,
+        destinationVertexID);
+  }
+
   @Override
   public long getSuperstepCount() {
     return runner.getNumberIterations();
@@ -0,0 +1,377 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.Partitioner;
+import org.apache.hama.bsp.PartitioningRunner;
+import org.apache.hama.bsp.sync.SyncException;
+
+/**
+ * Maps the {@link Text} vertex ids of the input to dense {@link LongWritable}
+ * ids, so edges, messages and their sorting work on fixed width ids. The
+ * partition that owns a vertex is kept in the high bits of its id and its
+ * index in the partition in the low {@link #INDEX_BITS} bits. The indices
+ * follow the order of the text ids, so the vertices of a partition keep their
+ * order.
+ * 
+ * The dictionary is built by the runtime partitioning with a {@link Builder}.
+ * Each partition gets the ids of its own vertices and of the vertices its
+ * edges point to. The {@link GraphJobRunner} encodes the vertices as they are
+ * loaded, partitions the vertices by the high bits with an
+ * {@link IdPartitioner} and decodes the vertices only to pass them to the
+ * {@link VertexOutputWriter}.
+ */
+public final class VertexIdDictionary {
+
+  /** The number of low bits of an id that hold the index in the partition. */
+  public static final int INDEX_BITS = 40;
+  /** The directory in the partition directory the dictionaries are stored. */
+  public static final String DICTIONARY_DIR = "_dictionary";
+
+  private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+  private final int partition;
+  // the ids of the own vertices in the order of their index
+  private final Text[] ids;
+  private final Map<Text, Long> remoteIds;
+  // the text ids of the remote ids, built for an output of the edges
+  private Map<Long, Text> decodedRemoteIds;
+
+  VertexIdDictionary(int partition, Text[] ids, Map<Text, Long> remoteIds) {
+    this.partition = partition;
+    this.ids = ids;
+    this.remoteIds = remoteIds;
+  }
+
+  /**
+   * @return the id of the vertex at the given index of the given partition.
+   */
+  public static long encode(int partition, long index) {
+    return ((long) partition << INDEX_BITS) | index;
+  }
+
+  /**
+   * @return the partition that owns the vertex of the given id.
+   */
+  public static int getPartition(long id) {
+    return (int) (id >>> INDEX_BITS);
+  }
+
+  /**
+   * @return the index of the vertex of the given id in its partition.
+   */
+  public static long getIndex(long id) {
+    return id & INDEX_MASK;
+  }
+
+  /**
+   * @return the id of the given text id.
+   * @throws IllegalArgumentException if the text id isn't in the dictionary.
+   */
+  LongWritable encode(Writable id) {
+    int index = Arrays.binarySearch(ids, id);
+    if (index >= 0) {
+      return new LongWritable(encode(partition, index));
+    }
+    Long remote = remoteIds.get(id);
+    if (remote == null) {
+      throw new IllegalArgumentException("Vertex ID " + id
+          + " isn't in the dictionary of partition " + partition + ".");
+    }
+    return new LongWritable(remote);
+  }
+
+  /**
+   * @return the text id of the given id, the id itself if it isn't in the
+   *         dictionary, like the id of a vertex added during the computation.
+   */
+  @SuppressWarnings("rawtypes")
+  WritableComparable decode(LongWritable id) {
+    long value = id.get();
+    if (getPartition(value) == partition) {
+      long index = getIndex(value);
+      return index < ids.length ? ids[(int) index] : id;
+    }
+    Text text = getDecodedRemoteIds().get(value);
+    return text != null ? text : id;
+  }
+
+  private Map<Long, Text> getDecodedRemoteIds() {
+    if (decodedRemoteIds == null) {
+      decodedRemoteIds = new HashMap<Long, Text>(remoteIds.size() * 2);
+      for (Entry<Text, Long> e : remoteIds.entrySet()) {
+        decodedRemoteIds.put(e.getValue(), e.getKey());
+      }
+    }
+    return decodedRemoteIds;
+  }
+
+  /**
+   * Replaces the text ids of the given vertex and its edges by their ids.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  void encode(Vertex vertex) {
+    vertex.setVertexID(encode(vertex.getVertexID()));
+    List<Edge> edges = vertex.getEdges();
+    for (int i = 0; i < edges.size(); i++) {
+      Edge edge = edges.get(i);
+      edges.set(i, new Edge(encode(edge.getDestinationVertexID()),
+          edge.getValue()));
+    }
+  }
+
+  /**
+   * @param withEdges true if the output needs the edges, otherwise the copy
+   *          has none and the remote ids are never decoded.
+   * @return a copy of the given vertex with its text id and the text ids of
+   *         its edges. The given vertex is left as it is, so it can be read
+   *         into again.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  Vertex decode(Vertex vertex, boolean withEdges) {
+    Vertex decoded = GraphJobRunner.newVertexInstance(GraphJobRunner.VERTEX_CLASS);
+    decoded.setRunner(vertex.getRunner());
+    decoded.setVertexID(decode((LongWritable) vertex.getVertexID()));
+    decoded.setValue(vertex.getValue());
+    if (withEdges) {
+      for (Object o : vertex.getEdges()) {
+        Edge edge = (Edge) o;
+        decoded.addEdge(new Edge(decode((LongWritable) edge
+            .getDestinationVertexID()), edge.getValue()));
+      }
+    }
+    decoded.setVotedToHalt(vertex.isHalted());
+    return decoded;
+  }
+
+  /**
+   * Reads the dictionary of the given partition.
+   * 
+   * @param partitionDir the directory the input was partitioned to.
+   */
+  static VertexIdDictionary read(Configuration conf, Path partitionDir,
+      int partition) throws IOException {
+    FileSystem fs = FileSystem.get(conf);
+    Path dir = new Path(partitionDir, DICTIONARY_DIR);
+    if (!fs.exists(dir)) {
+      throw new IOException("The vertex ID dictionary " + dir
+          + " doesn't exist, it is built by the runtime partitioning.");
+    }
+
+    List<Text> ids = new ArrayList<Text>();
+    Map<Text, Long> remoteIds = new HashMap<Text, Long>();
+    dir = new Path(dir, String.valueOf(partition));
+    // a partition without vertices has no dictionary
+    if (fs.exists(dir)) {
+      for (FileStatus status : fs.listStatus(dir)) {
+        boolean own = Integer.parseInt(status.getPath().getName()) == partition;
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+            status.getPath(), conf);
+        Text id = new Text();
+        LongWritable encoded = new LongWritable();
+        while (reader.next(id, encoded)) {
+          if (own) {
+            ids.add(id);
+          } else {
+            remoteIds.put(id, encoded.get());
+          }
+          id = new Text();
+        }
+        reader.close();
+      }
+    }
+    return new VertexIdDictionary(partition, ids.toArray(new Text[ids
+        .size()]), remoteIds);
+  }
+
+  /**
+   * Partitions the vertices by the partition in the high bits of their id.
+   */
+  static final class IdPartitioner<M> implements Partitioner<LongWritable, M> {
+
+    @Override
+    public int getPartition(LongWritable key, M value, int numTasks) {
+      return VertexIdDictionary.getPartition(key.get()) % numTasks;
+    }
+
+  }
+
+  /**
+   * Builds the dictionaries of all partitions during the runtime partitioning.
+   * Each peer collects the text ids of its split per partition that owns them
+   * and per partition that needs them. The peer that merges a partition then
+   * numbers its ids and writes the part of the dictionary each partition
+   * needs.
+   */
+  static final class Builder {
+
+    private final int numPartitions;
+    // the ids per partition that owns them and per partition that needs them
+    private final Map<Integer, Map<Integer, Set<Text>>> ids = new HashMap<Integer, Map<Integer, Set<Text>>>();
+
+    Builder(int numPartitions) {
+      this.numPartitions = numPartitions;
+    }
+
+    /**
+     * Adds the ids of a vertex of the split and its edges.
+     * 
+     * @param partition the partition of the vertex.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    void addVertex(Vertex vertex, int partition, Partitioner partitioner) {
+      add(partition, partition, vertex.getVertexID());
+      for (Object o : vertex.getEdges()) {
+        Writable destination = ((Edge) o).getDestinationVertexID();
+        add(Math.abs(partitioner.getPartition(destination, null,
+            numPartitions)), partition, destination);
+      }
+    }
+
+    private void add(int owner, int partition, Writable id) {
+      if (!(id instanceof Text)) {
+        throw new IllegalArgumentException(
+            "The vertex ID dictionary maps Text IDs, not "
+                + id.getClass().getName() + ".");
+      }
+      Map<Integer, Set<Text>> byPartition = ids.get(owner);
+      if (byPartition == null) {
+        byPartition = new HashMap<Integer, Set<Text>>();
+        ids.put(owner, byPartition);
+      }
+      Set<Text> set = byPartition.get(partition);
+      if (set == null) {
+        set = new TreeSet<Text>();
+        byPartition.put(partition, set);
+      }
+      if (!set.contains(id)) {
+        set.add(new Text((Text) id));
+      }
+    }
+
+    /**
+     * Exchanges the collected ids with the other peers and writes the
+     * dictionaries of the partitions this peer merges.
+     * 
+     * @param partitionDir the directory the partitions are written to.
+     * @param planDir the scratch directory shared by all peers.
+     */
+    void finish(BSPPeer<?, ?, ?, ?, ?> peer, Configuration conf,
+        Path partitionDir, Path planDir) throws IOException, SyncException,
+        InterruptedException {
+      FileSystem fs = FileSystem.get(conf);
+      Path idsDir = new Path(planDir, "ids");
+      for (Entry<Integer, Map<Integer, Set<Text>>> owner : ids.entrySet()) {
+        for (Entry<Integer, Set<Text>> e : owner.getValue().entrySet()) {
+          Path file = new Path(idsDir, owner.getKey() + "/" + e.getKey() + "-"
+              + peer.getPeerIndex());
+          SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+              file, Text.class, NullWritable.class, CompressionType.NONE);
+          for (Text id : e.getValue()) {
+            writer.append(id, NullWritable.get());
+          }
+          writer.close();
+        }
+      }
+      ids.clear();
+      peer.sync();
+
+      Path dictionaryDir = new Path(partitionDir, DICTIONARY_DIR);
+      for (int owner = 0; owner < numPartitions; owner++) {
+        Path ownerDir = new Path(idsDir, String.valueOf(owner));
+        if (PartitioningRunner.getMergeProcessorID(owner, peer.getNumPeers()) != peer
+            .getPeerIndex() || !fs.exists(ownerDir)) {
+          continue;
+        }
+
+        TreeSet<Text> all = new TreeSet<Text>();
+        Map<Integer, TreeSet<Text>> needed = new TreeMap<Integer, TreeSet<Text>>();
+        for (FileStatus status : fs.listStatus(ownerDir)) {
+          String name = status.getPath().getName();
+          int partition = Integer.parseInt(name.substring(0, name.indexOf('-')));
+          TreeSet<Text> set = needed.get(partition);
+          if (set == null) {
+            set = new TreeSet<Text>();
+            needed.put(partition, set);
+          }
+          SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+              status.getPath(), conf);
+          Text id = new Text();
+          while (reader.next(id)) {
+            all.add(id);
+            set.add(id);
+            id = new Text();
+          }
+          reader.close();
+        }
+
+        // the indices follow the order of the ids
+        Map<Text, Long> encoded = new HashMap<Text, Long>(all.size() * 2);
+        long index = 0;
+        for (Text id : all) {
+          encoded.put(id, encode(owner, index++));
+        }
+        write(fs, conf, new Path(dictionaryDir, owner + "/" + owner), all,
+            encoded);
+        for (Entry<Integer, TreeSet<Text>> e : needed.entrySet()) {
+          if (e.getKey() != owner) {
+            write(fs, conf, new Path(dictionaryDir, e.getKey() + "/" + owner),
+                e.getValue(), encoded);
+          }
+        }
+      }
+    }
+
+    private static void write(FileSystem fs, Configuration conf, Path file,
+        Set<Text> ids, Map<Text, Long> encoded) throws IOException {
+      SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, file,
+          Text.class, LongWritable.class, CompressionType.NONE);
+      LongWritable value = new LongWritable();
+      for (Text id : ids) {
+        value.set(encoded.get(id));
+        writer.append(id, value);
+      }
+      writer.close();
+    }
+
+  }
+
+}
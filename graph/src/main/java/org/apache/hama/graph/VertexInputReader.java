@@ -20,12 +20,16 @@ package org.apache.hama.graph;
 import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.Constants;
 import org.apache.hama.bsp.BSPPeer;
 import org.apache.hama.bsp.Partitioner;
-import org.apache.hama.bsp.PartitioningRunner.RecordConverter;
+import org.apache.hama.bsp.PartitioningRunner.PlanningRecordConverter;
+import org.apache.hama.bsp.sync.SyncException;
 import org.apache.hama.commons.util.KeyValuePair;
+import org.apache.hama.util.ReflectionUtils;
 
 /**
  * A reader to read Hama's input files and parses a vertex out of it.
@@ -39,13 +43,28 @@ import org.apache.hama.commons.util.KeyValuePair;
  */
 @SuppressWarnings("rawtypes")
 public abstract class VertexInputReader<KEYIN extends Writable, VALUEIN extends Writable, V extends WritableComparable, E extends Writable, M extends Writable>
-    implements RecordConverter {
+    implements PlanningRecordConverter {
+
+  private PartitionPlanner<V, E, M> planner;
+  private VertexIdDictionary.Builder dictionary;
 
   @SuppressWarnings("unchecked")
   @Override
   public void setup(Configuration conf) {
     // initialize the usual vertex structures for read/write methods
     GraphJobRunner.<V, E, M> initClasses(conf);
+
+    Class<? extends PartitionPlanner> plannerClass = conf.getClass(
+        GraphJob.PARTITION_PLANNER_CLASS_ATTR, null, PartitionPlanner.class);
+    if (plannerClass != null) {
+      planner = ReflectionUtils.newInstance(plannerClass);
+      planner.setup(conf,
+          conf.getInt(Constants.RUNTIME_DESIRED_PEERS_COUNT, 1));
+    }
+    if (conf.getBoolean(GraphJob.VERTEX_ID_DICTIONARY_ATTR, false)) {
+      dictionary = new VertexIdDictionary.Builder(conf.getInt(
+          Constants.RUNTIME_DESIRED_PEERS_COUNT, 1));
+    }
   }
 
   private final KeyValuePair<Writable, Writable> outputRecord = new KeyValuePair<Writable, Writable>();
@@ -90,8 +109,46 @@ public abstract class VertexInputReader<KEYIN extends Writable, VALUEIN extends
       Partitioner partitioner, Configuration conf, BSPPeer peer, int numTasks) {
     Vertex<V, E, M> vertex = (Vertex<V, E, M>) outputRecord.getValue();
 
-    return Math.abs(partitioner.getPartition(vertex.getVertexID(),
+    int partition = Math.abs(partitioner.getPartition(vertex.getVertexID(),
+        vertex.getValue(), numTasks));
+    if (planner != null) {
+      partition = planner.getPartition(vertex, partition);
+    }
+    return partition;
+  }
+
+  @Override
+  public boolean isPlanning(Configuration conf) {
+    return planner != null || dictionary != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void addToPlan(KeyValuePair<Writable, Writable> convertedRecord,
+      Partitioner partitioner, Configuration conf, BSPPeer peer, int numTasks)
+      throws IOException {
+    Vertex<V, E, M> vertex = (Vertex<V, E, M>) convertedRecord.getValue();
+
+    int partition = Math.abs(partitioner.getPartition(vertex.getVertexID(),
         vertex.getValue(), numTasks));
+    if (planner != null) {
+      planner.addVertex(vertex, partition);
+    }
+    if (dictionary != null) {
+      dictionary.addVertex(vertex, partition, partitioner);
+    }
+  }
+
+  @Override
+  public void finishPlan(Path partitionDir, Path planDir, Configuration conf,
+      BSPPeer peer, int numTasks) throws IOException, SyncException,
+      InterruptedException {
+    if (planner != null) {
+      planner.finish(peer, partitionDir, planDir);
+    }
+    if (dictionary != null) {
+      dictionary.finish(peer, conf, partitionDir, planDir);
+    }
   }
 
 }
@@ -83,16 +83,31 @@ public interface VertexInterface<V extends WritableComparable, E extends Writabl
 
   /**
    * Sends a message to add a new vertex through the partitioner to the
-   * appropriate BSP peer
+   * appropriate BSP peer. The changes to the graph of a superstep are sent as
+   * one message per peer and applied at the beginning of the next superstep.
    */
   public void addVertex(V vertexID, List<Edge<V, E>> edges, M value)
       throws IOException;
 
   /**
-   * Removes current Vertex from local peer.
+   * Removes current Vertex from local peer at the beginning of the next
+   * superstep.
    */
   public void remove() throws IOException;
 
+  /**
+   * Sends a message to add the given edge to the vertex with the given id,
+   * applied at the beginning of the next superstep.
+   */
+  public void addEdge(V sourceVertexID, Edge<V, E> edge) throws IOException;
+
+  /**
+   * Sends a message to remove the edges to the given destination from the
+   * vertex with the given id, applied at the beginning of the next superstep.
+   */
+  public void removeEdge(V sourceVertexID, V destinationVertexID)
+      throws IOException;
+
   /**
    * @return the superstep number of the current superstep (starting from 0).
    */
@@ -68,6 +68,13 @@ public interface VerticesInfo<V extends WritableComparable, E extends Writable,
    */
   public void finishRemovals();
 
+  /**
+   * Applies the changes to the graph that were sent to this peer in the last
+   * superstep at once.
+   */
+  public void applyMutations(GraphMutations<V, E, M> mutations)
+      throws IOException;
+
   /**
    * Called once a superstep starts.
    */
@@ -80,7 +87,8 @@ public interface VerticesInfo<V extends WritableComparable, E extends Writable,
 
   /**
    * Must be called once a vertex is guaranteed not to change any more and can
-   * safely be persisted to a secondary storage.
+   * safely be persisted to a secondary storage. It is only called for the
+   * vertices the iterator returned, the vertices it skipped keep their state.
    */
   public void finishVertexComputation(Vertex<V, E, M> vertex)
       throws IOException;
@@ -91,5 +99,10 @@ public interface VerticesInfo<V extends WritableComparable, E extends Writable,
    */
   public int size();
 
+  /**
+   * @return an iterator over the vertices in the order of their ids.
+   *         Implementations should skip the vertices a strategy doesn't accept
+   *         without reading them where possible.
+   */
   public IDSkippingIterator<V, E, M> skippingIterator();
 }
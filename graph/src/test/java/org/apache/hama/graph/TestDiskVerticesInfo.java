@@ -141,4 +141,79 @@ public class TestDiskVerticesInfo extends TestCase {
     }
 
   }
+
+  @Test
+  public void testSkipHaltedVertices() throws Exception {
+    DiskVerticesInfo<Text, NullWritable, DoubleWritable> info = new DiskVerticesInfo<Text, NullWritable, DoubleWritable>();
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, PageRankVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    // vertices span the mapped regions
+    conf.setInt(DiskVerticesInfo.DISK_VERTICES_REGION_SIZE_KEY, 16);
+    GraphJobRunner.<Text, NullWritable, DoubleWritable> initClasses(conf);
+    TaskAttemptID attempt = new TaskAttemptID("omg", 1, 1, 0);
+    try {
+      info.init(null, conf, attempt);
+      for (int i = 0; i < 10; i++) {
+        PageRankVertex v = new PageRank.PageRankVertex();
+        v.setVertexID(new Text(i + ""));
+        v.setValue(new DoubleWritable(i));
+        v.addEdge(new Edge<Text, NullWritable>(new Text((9 - i) + ""), null));
+        info.addVertex(v);
+      }
+      info.finishAdditions();
+      info.finishSuperstep();
+
+      // halt the even vertices
+      info.startSuperstep();
+      IDSkippingIterator<Text, NullWritable, DoubleWritable> iterator = info
+          .skippingIterator();
+      while (iterator.hasNext()) {
+        Vertex<Text, NullWritable, DoubleWritable> next = iterator.next();
+        if (Integer.parseInt(next.getVertexID().toString()) % 2 == 0) {
+          next.voteToHalt();
+        }
+        info.finishVertexComputation(next);
+      }
+      info.finishSuperstep();
+
+      // only the odd vertices and the halted vertex 4 with a message are read
+      info.startSuperstep();
+      iterator = info.skippingIterator();
+      List<String> visited = new ArrayList<String>();
+      Text msgId = new Text("4");
+      while (iterator.hasNext(msgId,
+          IDSkippingIterator.Strategy.ACTIVE_AND_MESSAGES)) {
+        Vertex<Text, NullWritable, DoubleWritable> next = iterator.next();
+        visited.add(next.getVertexID().toString());
+        if (next.getVertexID().equals(msgId)) {
+          next.setActive();
+          next.setValue(new DoubleWritable(42));
+          msgId = null;
+        }
+        info.finishVertexComputation(next);
+      }
+      info.finishSuperstep();
+      assertEquals("[1, 3, 4, 5, 7, 9]", visited.toString());
+
+      // skipped vertices kept their values
+      info.startSuperstep();
+      iterator = info.skippingIterator();
+      int index = 0;
+      while (iterator.hasNext()) {
+        Vertex<Text, NullWritable, DoubleWritable> next = iterator.next();
+        assertEquals(index == 4 ? 42 : index, (int) next.getValue().get());
+        assertEquals(index % 2 == 0 && index != 4, next.isHalted());
+        assertEquals((9 - index) + "", next.getEdges().get(0)
+            .getDestinationVertexID().toString());
+        index++;
+      }
+      assertEquals(10, index);
+    } finally {
+      info.cleanup(conf, attempt);
+    }
+  }
 }
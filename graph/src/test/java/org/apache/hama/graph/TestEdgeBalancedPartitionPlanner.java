@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hama.graph.EdgeBalancedPartitionPlanner.Hub;
+
+public class TestEdgeBalancedPartitionPlanner extends TestCase {
+
+  private static final int BUCKETS = EdgeBalancedPartitionPlanner.BUCKETS;
+
+  public void testBucket() {
+    assertEquals(0, EdgeBalancedPartitionPlanner.bucket(1L));
+    assertEquals(1, EdgeBalancedPartitionPlanner.bucket(2L));
+    assertEquals(1, EdgeBalancedPartitionPlanner.bucket(3L));
+    assertEquals(10, EdgeBalancedPartitionPlanner.bucket(1024L));
+  }
+
+  public void testBalancedNeedsNoHubs() {
+    long[][] loads = new long[2][BUCKETS];
+    loads[0][1] = 100L;
+    loads[1][1] = 105L;
+    long[][] counts = new long[1][BUCKETS];
+    counts[0][1] = 60L;
+
+    assertEquals(BUCKETS,
+        EdgeBalancedPartitionPlanner.getThreshold(loads, counts, 10, 0.1f));
+  }
+
+  public void testSkewedPlacesHubs() {
+    // a hub of 1000 edges is hashed onto partition 0 with its small vertices
+    long[][] loads = new long[2][BUCKETS];
+    loads[0][1] = 100L;
+    loads[0][9] = 1000L;
+    loads[1][1] = 100L;
+    long[][] counts = new long[1][BUCKETS];
+    counts[0][1] = 70L;
+    counts[0][9] = 1L;
+
+    int threshold = EdgeBalancedPartitionPlanner.getThreshold(loads, counts,
+        10, 0.1f);
+    assertEquals(9, threshold);
+
+    // the hub can't be balanced by placement, but goes where the least is
+    List<Hub> hubs = new ArrayList<Hub>();
+    hubs.add(new Hub(new Text("hub"), 1000L, 0));
+    int[] placement = EdgeBalancedPartitionPlanner.place(hubs, loads,
+        threshold);
+    assertEquals(0, placement[0]);
+
+    // limited by the number of hubs a peer may contribute
+    counts[0][1] = 70L;
+    assertEquals(BUCKETS,
+        EdgeBalancedPartitionPlanner.getThreshold(loads, counts, 0, 0.1f));
+  }
+
+  public void testPlaceHeaviestFirst() {
+    long[][] loads = new long[2][BUCKETS];
+    loads[0][0] = 10L;
+    List<Hub> hubs = new ArrayList<Hub>();
+    hubs.add(new Hub(new Text("a"), 30L, 0));
+    hubs.add(new Hub(new Text("b"), 50L, 0));
+    hubs.add(new Hub(new Text("c"), 20L, 1));
+
+    int[] placement = EdgeBalancedPartitionPlanner.place(hubs, loads, 1);
+    // b goes to the empty partition, a to the other one, c to the lighter
+    assertEquals(1, placement[1]);
+    assertEquals(0, placement[0]);
+    assertEquals(0, placement[2]);
+  }
+
+}
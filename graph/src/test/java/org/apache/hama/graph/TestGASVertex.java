@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.HashPartitioner;
+import org.apache.hama.bsp.SequenceFileInputFormat;
+import org.apache.hama.bsp.SequenceFileOutputFormat;
+import org.apache.hama.commons.io.TextArrayWritable;
+import org.apache.hama.graph.example.PageRank;
+
+/**
+ * Runs pagerank as a {@link GASVertex} and as a vertex that sends messages,
+ * both must rank the vertices alike.
+ */
+public class TestGASVertex extends TestCase {
+
+  private static final Path INPUT = new Path("/tmp/gas-pagerank/in.seq");
+  private static final Path OUTPUT = new Path("/tmp/gas-pagerank/out");
+  private static final int VERTICES = 20;
+
+  private HamaConfiguration conf;
+  private FileSystem fs;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    fs = FileSystem.get(conf);
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, INPUT,
+        Text.class, TextArrayWritable.class);
+    for (int i = 0; i < VERTICES; i++) {
+      // a ring with chords, so no vertex is dangling
+      TextArrayWritable edges = new TextArrayWritable();
+      edges.set(new Writable[] { new Text(Integer.toString((i + 1) % VERTICES)),
+          new Text(Integer.toString((3 * i + 2) % VERTICES)) });
+      writer.append(new Text(Integer.toString(i)), edges);
+    }
+    writer.close();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fs.delete(INPUT.getParent(), true);
+  }
+
+  public void testGASPageRankMatchesPageRank() throws Exception {
+    Map<String, Double> push = run(PageRank.PageRankVertex.class);
+    Map<String, Double> gas = run(PageRank.GASPageRankVertex.class);
+
+    assertEquals(VERTICES, push.size());
+    assertEquals(push.keySet(), gas.keySet());
+    double sum = 0;
+    for (Map.Entry<String, Double> e : push.entrySet()) {
+      assertEquals(e.getKey(), e.getValue(), gas.get(e.getKey()), 1e-10);
+      sum += e.getValue();
+    }
+    assertEquals(1.0, sum, 1e-6);
+  }
+
+  private Map<String, Double> run(
+      Class<? extends Vertex<Text, NullWritable, DoubleWritable>> vertexClass)
+      throws Exception {
+    GraphJob job = new GraphJob(conf, TestGASVertex.class);
+    job.setJobName("Pagerank " + vertexClass.getSimpleName());
+    job.setVertexClass(vertexClass);
+    job.setInputPath(INPUT);
+    job.setOutputPath(OUTPUT);
+    // both rank for the same number of supersteps, the error never converges
+    job.setMaxIteration(15);
+    job.set("hama.pagerank.alpha", "0.85");
+    job.set("hama.graph.max.convergence.error", "0");
+    job.setAggregatorClass(AverageAggregator.class);
+    job.setNumBspTask(2);
+    job.setVertexInputReaderClass(PageRank.PagerankSeqReader.class);
+    job.setVertexIDClass(Text.class);
+    job.setVertexValueClass(DoubleWritable.class);
+    job.setEdgeValueClass(NullWritable.class);
+    job.setInputFormat(SequenceFileInputFormat.class);
+    job.setPartitioner(HashPartitioner.class);
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(DoubleWritable.class);
+    assertTrue(job.waitForCompletion(true));
+
+    Map<String, Double> ranks = new HashMap<String, Double>();
+    for (FileStatus status : fs.globStatus(new Path(OUTPUT, "part-*"))) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          status.getPath(), conf);
+      Text key = new Text();
+      DoubleWritable value = new DoubleWritable();
+      while (reader.next(key, value)) {
+        ranks.put(key.toString(), value.get());
+      }
+      reader.close();
+    }
+    fs.delete(OUTPUT, true);
+    return ranks;
+  }
+
+}
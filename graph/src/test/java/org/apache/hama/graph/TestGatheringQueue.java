@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.graph.example.PageRank.GASPageRankVertex;
+
+public class TestGatheringQueue extends TestCase {
+
+  private static HamaConfiguration newConf() {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, GASPageRankVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    return conf;
+  }
+
+  public void testSumAsAdded() {
+    GatheringQueue queue = new GatheringQueue();
+    queue.init(newConf(), null);
+    queue.add(new GraphJobMessage(new Text("b"), new DoubleWritable(1.0d)));
+    queue.add(new GraphJobMessage(new Text("a"), new DoubleWritable(0.5d)));
+    queue.add(new GraphJobMessage(new Text("b"), new DoubleWritable(2.0d)));
+    queue.add(new GraphJobMessage(new MapWritable()));
+    queue.add(new GraphJobMessage(new Text("b"), new DoubleWritable(0.25d)));
+    assertEquals(3, queue.size());
+
+    // the other messages come first, then one sum per vertex in order
+    assertTrue(queue.poll().isMapMessage());
+    GraphJobMessage msg = queue.poll();
+    assertEquals(new Text("a"), msg.getVertexId());
+    assertEquals(0.5d, ((DoubleWritable) msg.getVertexValue()).get());
+
+    // a vertex added while reading is read in order
+    queue.add(new GraphJobMessage(new Text("c"), new DoubleWritable(4.0d)));
+    msg = queue.poll();
+    assertEquals(new Text("b"), msg.getVertexId());
+    assertEquals(3.25d, ((DoubleWritable) msg.getVertexValue()).get());
+    msg = queue.poll();
+    assertEquals(new Text("c"), msg.getVertexId());
+    assertNull(queue.poll());
+    assertEquals(0, queue.size());
+  }
+
+  public void testLateMessageIsRejected() {
+    GatheringQueue queue = new GatheringQueue();
+    queue.init(newConf(), null);
+    queue.add(new GraphJobMessage(new Text("a"), new DoubleWritable(1.0d)));
+    queue.add(new GraphJobMessage(new Text("b"), new DoubleWritable(1.0d)));
+    assertEquals(new Text("a"), queue.poll().getVertexId());
+
+    // the vertex that was read and those before it would get a second message
+    for (String id : new String[] { "a", "0" }) {
+      try {
+        queue.add(new GraphJobMessage(new Text(id), new DoubleWritable(2.0d)));
+        fail("A message to a read vertex was added.");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+    }
+    // messages to the vertices not read yet are still summed up
+    queue.add(new GraphJobMessage(new Text("b"), new DoubleWritable(2.0d)));
+    GraphJobMessage msg = queue.poll();
+    assertEquals(new Text("b"), msg.getVertexId());
+    assertEquals(3.0d, ((DoubleWritable) msg.getVertexValue()).get());
+    assertNull(queue.poll());
+    assertEquals(0, queue.size());
+
+    // a cleared queue is read from the start
+    queue.clear();
+    queue.add(new GraphJobMessage(new Text("a"), new DoubleWritable(2.0d)));
+    assertEquals(new Text("a"), queue.poll().getVertexId());
+  }
+
+}
@@ -22,9 +22,16 @@ import java.util.PriorityQueue;
 
 import junit.framework.TestCase;
 
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.graph.example.PageRank.PageRankVertex;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
@@ -53,6 +60,55 @@ public class TestGraphJobMessage extends TestCase {
     assertTrue(prio.isEmpty());
   }
 
+  @Test
+  public void testMirrorMessageOrder() {
+    PriorityQueue<GraphJobMessage> prio = new PriorityQueue<GraphJobMessage>();
+    prio.addAll(getMessages());
+    prio.add(GraphJobMessage.createMirrorMessage(new Text("4"),
+        new IntWritable()));
+
+    assertEquals(true, prio.poll().isMapMessage());
+    GraphJobMessage poll = prio.poll();
+    assertEquals(true, poll.isMirrorMessage());
+    assertEquals("4", poll.getVertexId().toString());
+    assertEquals(true, prio.poll().isVertexMessage());
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Test
+  public void testMulticastMessage() throws Exception {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, PageRankVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    GraphJobRunner.<Text, NullWritable, DoubleWritable> initClasses(conf);
+
+    List<WritableComparable> targets = Lists.<WritableComparable> newArrayList(
+        new Text("5"), new Text("7"));
+    GraphJobMessage msg = GraphJobMessage.createMulticastMessage(targets,
+        new DoubleWritable(0.5d));
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    msg.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    GraphJobMessage read = new GraphJobMessage();
+    read.readFields(in);
+    assertEquals(true, read.isMulticastMessage());
+    assertEquals(targets, read.getTargetVertexIds());
+    assertEquals(0.5d, ((DoubleWritable) read.getVertexValue()).get());
+
+    // expanded before the vertex messages are read
+    PriorityQueue<GraphJobMessage> prio = new PriorityQueue<GraphJobMessage>();
+    prio.addAll(getMessages());
+    prio.add(msg);
+    assertEquals(true, prio.poll().isMapMessage());
+    assertEquals(true, prio.poll().isMulticastMessage());
+    assertEquals(true, prio.poll().isVertexMessage());
+  }
+
   public List<GraphJobMessage> getMessages() {
     GraphJobMessage mapMsg = new GraphJobMessage(new MapWritable());
     GraphJobMessage vertexMsg1 = new GraphJobMessage(new Text("1"),
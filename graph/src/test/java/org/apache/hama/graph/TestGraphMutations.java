@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.graph.example.PageRank.PageRankVertex;
+
+public class TestGraphMutations extends TestCase {
+
+  private HamaConfiguration conf;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, PageRankVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    GraphJobRunner.<Text, NullWritable, DoubleWritable> initClasses(conf);
+  }
+
+  private static PageRankVertex vertex(String id, String... edges) {
+    PageRankVertex v = new PageRankVertex();
+    v.setVertexID(new Text(id));
+    v.setValue(new DoubleWritable(1.0d));
+    for (String edge : edges) {
+      v.addEdge(new Edge<Text, NullWritable>(new Text(edge), null));
+    }
+    return v;
+  }
+
+  private static String toString(
+      VerticesInfo<Text, NullWritable, DoubleWritable> info) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    IDSkippingIterator<Text, NullWritable, DoubleWritable> iterator = info
+        .skippingIterator();
+    while (iterator.hasNext()) {
+      Vertex<Text, NullWritable, DoubleWritable> next = iterator.next();
+      sb.append(next.getVertexID()).append(':');
+      for (Edge<Text, NullWritable> edge : next.getEdges()) {
+        sb.append(edge.getDestinationVertexID());
+      }
+      sb.append(' ');
+    }
+    return sb.toString().trim();
+  }
+
+  private GraphMutations<Text, NullWritable, DoubleWritable> mutations()
+      throws Exception {
+    GraphMutations<Text, NullWritable, DoubleWritable> mutations = new GraphMutations<Text, NullWritable, DoubleWritable>();
+    mutations.removeVertex(new Text("b"));
+    mutations.addVertex(vertex("c", "a"));
+    mutations.addVertex(vertex("e"));
+    mutations.addEdge(new Text("a"), new Edge<Text, NullWritable>(
+        new Text("e"), null));
+    mutations.removeEdge(new Text("d"), new Text("a"));
+    mutations.removeEdge(new Text("x"), new Text("a"));
+
+    // mutations are sent as one writable
+    DataOutputBuffer out = new DataOutputBuffer();
+    mutations.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    GraphMutations<Text, NullWritable, DoubleWritable> read = new GraphMutations<Text, NullWritable, DoubleWritable>();
+    read.readFields(in);
+    return read;
+  }
+
+  public void testListMerge() throws Exception {
+    ListVerticesInfo<Text, NullWritable, DoubleWritable> info = new ListVerticesInfo<Text, NullWritable, DoubleWritable>();
+    info.init(null, conf, null);
+    List<PageRankVertex> list = new ArrayList<PageRankVertex>();
+    list.add(vertex("a", "b"));
+    list.add(vertex("b", "a"));
+    list.add(vertex("d", "a", "b"));
+    for (PageRankVertex v : list) {
+      info.addVertex(v);
+    }
+    info.finishAdditions();
+
+    info.applyMutations(mutations());
+    assertEquals("a:be c:a d:b e:", toString(info));
+    assertEquals(4, info.size());
+  }
+
+  public void testMapMerge() throws Exception {
+    MapVerticesInfo<Text, NullWritable, DoubleWritable> info = new MapVerticesInfo<Text, NullWritable, DoubleWritable>();
+    info.init(null, conf, null);
+    info.addVertex(vertex("a", "b"));
+    info.addVertex(vertex("b", "a"));
+    info.addVertex(vertex("d", "a", "b"));
+
+    info.applyMutations(mutations());
+    assertEquals("a:be c:a d:b e:", toString(info));
+  }
+
+  public void testAddExistingVertex() throws Exception {
+    ListVerticesInfo<Text, NullWritable, DoubleWritable> info = new ListVerticesInfo<Text, NullWritable, DoubleWritable>();
+    info.init(null, conf, null);
+    info.addVertex(vertex("a"));
+    GraphMutations<Text, NullWritable, DoubleWritable> mutations = new GraphMutations<Text, NullWritable, DoubleWritable>();
+    mutations.addVertex(vertex("a"));
+    try {
+      info.applyMutations(mutations);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.HashPartitioner;
+import org.apache.hama.bsp.SequenceFileInputFormat;
+import org.apache.hama.bsp.SequenceFileOutputFormat;
+import org.apache.hama.bsp.message.MessageManager;
+import org.apache.hama.bsp.message.queue.MemoryQueue;
+import org.apache.hama.commons.io.TextArrayWritable;
+
+/**
+ * Runs a graph job with a hub that is mirrored on all peers.
+ */
+public class TestHubMirrors extends TestCase {
+
+  private static final Path INPUT = new Path("/tmp/hub-mirrors/in.seq");
+  private static final Path OUTPUT = new Path("/tmp/hub-mirrors/out");
+  private static final int VERTICES = 40;
+  private static final Text HUB = new Text("0");
+  private static final int HUB_VALUE = 7;
+
+  private HamaConfiguration conf;
+  private FileSystem fs;
+
+  /**
+   * The hub sends its value to all its neighbors, which keep the sum of what
+   * they receive and answer the hub with 1. The hub then counts the answers.
+   */
+  public static class HubVertex extends Vertex<Text, NullWritable, IntWritable> {
+
+    @Override
+    public void compute(Iterable<IntWritable> messages) throws IOException {
+      boolean hub = getVertexID().equals(HUB);
+      if (getSuperstepCount() == 0) {
+        setValue(new IntWritable(0));
+        if (hub) {
+          sendMessageToNeighbors(new IntWritable(HUB_VALUE));
+        }
+        return;
+      }
+
+      int sum = 0;
+      for (IntWritable msg : messages) {
+        sum += msg.get();
+      }
+      if (!hub && getSuperstepCount() == 1) {
+        setValue(new IntWritable(sum));
+        sendMessageToNeighbors(new IntWritable(1));
+      } else if (hub && getSuperstepCount() == 2) {
+        setValue(new IntWritable(sum));
+      }
+      voteToHalt();
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    fs = FileSystem.get(conf);
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, INPUT,
+        Text.class, TextArrayWritable.class);
+    Writable[] spokes = new Writable[VERTICES - 1];
+    for (int i = 1; i < VERTICES; i++) {
+      spokes[i - 1] = new Text(Integer.toString(i));
+      TextArrayWritable edges = new TextArrayWritable();
+      edges.set(new Writable[] { HUB });
+      writer.append(new Text(Integer.toString(i)), edges);
+    }
+    TextArrayWritable edges = new TextArrayWritable();
+    edges.set(spokes);
+    writer.append(HUB, edges);
+    writer.close();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fs.delete(INPUT.getParent(), true);
+  }
+
+  public void testMirroredHub() throws Exception {
+    GraphJob job = new GraphJob(conf, TestHubMirrors.class);
+    job.setJobName("Hub mirrors");
+    job.setVertexClass(HubVertex.class);
+    job.setInputPath(INPUT);
+    job.setOutputPath(OUTPUT);
+    job.setMaxIteration(10);
+    job.setNumBspTask(3);
+    job.setMirrorThreshold(10);
+    job.setVertexInputReaderClass(TestParallelVertexOutput.AdjacencyReader.class);
+    job.setVertexIDClass(Text.class);
+    job.setVertexValueClass(IntWritable.class);
+    job.setEdgeValueClass(NullWritable.class);
+    job.setInputFormat(SequenceFileInputFormat.class);
+    job.setPartitioner(HashPartitioner.class);
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    assertTrue(job.waitForCompletion(true));
+
+    Map<String, Integer> output = new HashMap<String, Integer>();
+    for (FileStatus status : fs.globStatus(new Path(OUTPUT, "part-*"))) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          status.getPath(), conf);
+      Text key = new Text();
+      IntWritable value = new IntWritable();
+      while (reader.next(key, value)) {
+        output.put(key.toString(), value.get());
+      }
+      reader.close();
+    }
+
+    assertEquals(VERTICES, output.size());
+    // every spoke got the message of the hub exactly once
+    for (int i = 1; i < VERTICES; i++) {
+      assertEquals(Integer.valueOf(HUB_VALUE),
+          output.get(Integer.toString(i)));
+    }
+    assertEquals(Integer.valueOf(VERTICES - 1), output.get(HUB.toString()));
+  }
+
+  public void testUnorderedQueueIsRejected() throws Exception {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.setInt(GraphJob.MIRROR_THRESHOLD_ATTR, 10);
+    conf.setClass(MessageManager.RECEIVE_QUEUE_TYPE_CLASS, MemoryQueue.class,
+        Object.class);
+    try {
+      new HubMirrors<Text, NullWritable, IntWritable>(null, conf);
+      fail("A queue that doesn't sort the mirror messages first is rejected.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.HashPartitioner;
+import org.apache.hama.graph.example.PageRank.PageRankVertex;
+
+public class TestIncrementalInput extends TestCase {
+
+  private HamaConfiguration conf;
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, PageRankVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    GraphJobRunner.<Text, NullWritable, DoubleWritable> initClasses(conf);
+
+    dir = new File(System.getProperty("java.io.tmpdir"),
+        "hama-incremental-test");
+    new File(dir, "prior").mkdirs();
+    new File(dir, "delta").mkdirs();
+    write(new File(dir, "prior/part-00000"), "a\t1.0\nb\t2.0\nc\t3.0\n");
+    write(new File(dir, "prior/_SUCCESS"), "");
+    write(new File(dir, "delta/changes"), "+v d a\n+e a d\n-e b a\n-v c\n\n");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (String name : new String[] { "prior/part-00000", "prior/part-00001",
+        "prior/_SUCCESS",
+        "delta/changes", "prior", "delta", "" }) {
+      new File(dir, name).delete();
+    }
+  }
+
+  private static void write(File file, String text) throws Exception {
+    FileWriter writer = new FileWriter(file);
+    writer.write(text);
+    writer.close();
+  }
+
+  private IncrementalInput<Text, NullWritable, DoubleWritable> read()
+      throws Exception {
+    return read(0, 1);
+  }
+
+  private IncrementalInput<Text, NullWritable, DoubleWritable> read(
+      int partition, int numPartitions) throws Exception {
+    GraphJob job = new GraphJob(conf, TestIncrementalInput.class);
+    job.setIncremental(new Path(dir.getAbsolutePath(), "prior"), new Path(
+        dir.getAbsolutePath(), "delta"));
+    assertTrue(IncrementalInput.isIncremental(job.getConfiguration()));
+    IncrementalInput<Text, NullWritable, DoubleWritable> input = new IncrementalInput<Text, NullWritable, DoubleWritable>(
+        job.getConfiguration(), new HashPartitioner<Text, DoubleWritable>(),
+        partition, numPartitions);
+    input.read();
+    return input;
+  }
+
+  private static PageRankVertex vertex(String id) {
+    PageRankVertex v = new PageRankVertex();
+    v.setVertexID(new Text(id));
+    return v;
+  }
+
+  public void testChanges() throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable> input = read();
+    GraphMutations<Text, NullWritable, DoubleWritable> mutations = input
+        .getMutations();
+
+    assertEquals(1, mutations.getAddedVertices().size());
+    assertEquals(1, mutations.getAddedVertices().get(new Text("d"))
+        .getEdges().size());
+    assertTrue(mutations.getRemovedVertices().contains(new Text("c")));
+    assertTrue(mutations.changesEdges(new Text("a")));
+    assertTrue(mutations.changesEdges(new Text("b")));
+
+    assertTrue(input.isChanged(new Text("a")));
+    assertTrue(input.isChanged(new Text("d")));
+    assertFalse(input.isChanged(new Text("c")));
+  }
+
+  public void testPriorValues() throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable> input = read();
+
+    PageRankVertex a = vertex("a");
+    input.restore(a);
+    assertEquals(1.0d, a.getValue().get());
+    assertFalse(a.isHalted());
+
+    PageRankVertex c = vertex("c");
+    input.restore(c);
+    assertEquals(3.0d, c.getValue().get());
+    assertTrue(c.isHalted());
+
+    // a vertex without a prior value computes from the start
+    PageRankVertex e = vertex("e");
+    input.restore(e);
+    assertNull(e.getValue());
+    assertFalse(e.isHalted());
+  }
+
+  /**
+   * Reads the changes with two peers and hands each the changes that the
+   * other read for it.
+   */
+  @SuppressWarnings("unchecked")
+  private IncrementalInput<Text, NullWritable, DoubleWritable>[] readTwo()
+      throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable>[] inputs = new IncrementalInput[] {
+        read(0, 2), read(1, 2) };
+    for (int i = 0; i < 2; i++) {
+      StringBuilder changes = inputs[1 - i].getRemoteChanges().get(i);
+      if (changes != null) {
+        inputs[i].parseChanges(changes.toString());
+      }
+      assertNull(inputs[i].getRemoteChanges().get(i));
+    }
+    return inputs;
+  }
+
+  private static int partition(String id) {
+    return new HashPartitioner<Text, DoubleWritable>().getPartition(new Text(
+        id), null, 2);
+  }
+
+  public void testRemoteChanges() throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable>[] inputs = readTwo();
+    // only the first peer read the single file of the changes
+    assertTrue(inputs[1].getRemoteChanges().isEmpty());
+
+    // every change ends up at the owner of its vertex only
+    assertTrue(inputs[partition("a")].isChanged(new Text("a")));
+    assertFalse(inputs[1 - partition("a")].isChanged(new Text("a")));
+    assertTrue(inputs[partition("d")].getMutations().getAddedVertices()
+        .containsKey(new Text("d")));
+    assertTrue(inputs[partition("c")].getMutations().getRemovedVertices()
+        .contains(new Text("c")));
+    assertTrue(inputs[1 - partition("c")].getMutations().getRemovedVertices()
+        .isEmpty());
+  }
+
+  public void testNeighborsOfRemovedVertex() throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable>[] inputs = readTwo();
+    int owner = partition("c");
+    String local = null;
+    String remote = null;
+    for (int i = 0; local == null || remote == null; i++) {
+      if (partition("n" + i) == owner) {
+        local = "n" + i;
+      } else {
+        remote = "n" + i;
+      }
+    }
+
+    PageRankVertex c = vertex("c");
+    c.addEdge(new Edge<Text, NullWritable>(new Text(local), null));
+    c.addEdge(new Edge<Text, NullWritable>(new Text(remote), null));
+    inputs[owner].restore(c);
+    assertTrue(inputs[owner].isChanged(new Text(local)));
+    assertFalse(inputs[owner].isChanged(new Text(remote)));
+
+    // the remote neighbor is marked by its owner
+    inputs[1 - owner].markChanged(inputs[owner].getRemoteNeighbors()
+        .get(1 - owner).toString());
+    assertTrue(inputs[1 - owner].isChanged(new Text(remote)));
+  }
+
+  public void testPartitionFiles() throws Exception {
+    HashPartitioner<Text, DoubleWritable> partitioner = new HashPartitioner<Text, DoubleWritable>();
+    List<String> own = new ArrayList<String>();
+    for (int i = 0; own.size() < 2; i++) {
+      if (partitioner.getPartition(new Text("v" + i), null, 2) == 0) {
+        own.add("v" + i);
+      }
+    }
+    write(new File(dir, "prior/part-00000"), own.get(0) + "\t1.0\n");
+    // a vertex of partition 0 in the file of peer 1 isn't read by peer 0
+    write(new File(dir, "prior/part-00001"), own.get(1) + "\t2.0\n");
+
+    IncrementalInput<Text, NullWritable, DoubleWritable> input = read(0, 2);
+    PageRankVertex v = vertex(own.get(0));
+    input.restore(v);
+    assertEquals(1.0d, v.getValue().get());
+    v = vertex(own.get(1));
+    input.restore(v);
+    assertNull(v.getValue());
+  }
+
+  public void testEdgeValues() throws Exception {
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        IntWritable.class.getName());
+    GraphJobRunner.<Text, IntWritable, DoubleWritable> initClasses(conf);
+    IncrementalInput<Text, IntWritable, DoubleWritable> input = new IncrementalInput<Text, IntWritable, DoubleWritable>(
+        conf, new HashPartitioner<Text, DoubleWritable>(), 0, 1);
+
+    input.parseChange("+v d a:3 b:4");
+    input.parseChange("+e a d 5");
+    Vertex<Text, IntWritable, DoubleWritable> d = input.getMutations()
+        .getAddedVertices().get(new Text("d"));
+    assertEquals(2, d.getEdges().size());
+    assertEquals(new Text("a"), d.getEdges().get(0).getDestinationVertexID());
+    assertEquals(3, d.getEdges().get(0).getValue().get());
+    assertEquals(4, d.getEdges().get(1).getValue().get());
+
+    for (String change : new String[] { "+v e a", "+e a e" }) {
+      try {
+        input.parseChange(change);
+        fail("An edge without a value was parsed: " + change);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  public void testInvalidChange() throws Exception {
+    IncrementalInput<Text, NullWritable, DoubleWritable> input = read();
+    try {
+      input.parseChange("*v a");
+      fail("Invalid change was parsed.");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+}
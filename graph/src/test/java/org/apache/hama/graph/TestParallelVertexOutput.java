@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.HashPartitioner;
+import org.apache.hama.bsp.SequenceFileInputFormat;
+import org.apache.hama.bsp.SequenceFileOutputFormat;
+import org.apache.hama.commons.io.TextArrayWritable;
+
+/**
+ * Runs a graph job that writes its vertices with several threads per task.
+ */
+public class TestParallelVertexOutput extends TestCase {
+
+  private static final Path INPUT = new Path("/tmp/parallel-output/in.seq");
+  private static final Path OUTPUT = new Path("/tmp/parallel-output/out");
+  private static final int VERTICES = 50;
+
+  private HamaConfiguration conf;
+  private FileSystem fs;
+
+  /**
+   * Takes its id as value and votes to halt if the id is even.
+   */
+  public static class HaltEvenVertex extends
+      Vertex<Text, NullWritable, IntWritable> {
+
+    @Override
+    public void compute(Iterable<IntWritable> messages) throws IOException {
+      int id = Integer.parseInt(getVertexID().toString());
+      setValue(new IntWritable(id));
+      if (id % 2 == 0) {
+        voteToHalt();
+      }
+    }
+  }
+
+  public static class AdjacencyReader
+      extends
+      VertexInputReader<Text, TextArrayWritable, Text, NullWritable, IntWritable> {
+
+    @Override
+    public boolean parseVertex(Text key, TextArrayWritable value,
+        Vertex<Text, NullWritable, IntWritable> vertex) throws Exception {
+      vertex.setVertexID(key);
+      for (Writable v : value.get()) {
+        vertex.addEdge(new Edge<Text, NullWritable>((Text) v, null));
+      }
+      return true;
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    fs = FileSystem.get(conf);
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, INPUT,
+        Text.class, TextArrayWritable.class);
+    for (int i = 0; i < VERTICES; i++) {
+      TextArrayWritable edges = new TextArrayWritable();
+      edges.set(new Writable[] { new Text(Integer.toString((i + 1)
+          % VERTICES)) });
+      writer.append(new Text(Integer.toString(i)), edges);
+    }
+    writer.close();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fs.delete(INPUT.getParent(), true);
+  }
+
+  public void testParallelOutput() throws Exception {
+    Map<String, Integer> output = run(false);
+    assertEquals(VERTICES, output.size());
+    for (int i = 0; i < VERTICES; i++) {
+      assertEquals(Integer.valueOf(i), output.get(Integer.toString(i)));
+    }
+    // the extra output threads wrote to their own part files
+    assertTrue(fs.globStatus(new Path(OUTPUT, "part-*_*")).length > 0);
+  }
+
+  public void testSkipHalted() throws Exception {
+    Map<String, Integer> output = run(true);
+    assertEquals(VERTICES / 2, output.size());
+    for (String id : output.keySet()) {
+      assertEquals(1, Integer.parseInt(id) % 2);
+    }
+  }
+
+  private Map<String, Integer> run(boolean skipHalted) throws Exception {
+    GraphJob job = new GraphJob(conf, TestParallelVertexOutput.class);
+    job.setJobName("Parallel vertex output");
+    job.setVertexClass(HaltEvenVertex.class);
+    job.setInputPath(INPUT);
+    job.setOutputPath(OUTPUT);
+    job.setMaxIteration(3);
+    job.setNumBspTask(2);
+    job.setVertexInputReaderClass(AdjacencyReader.class);
+    job.setVertexIDClass(Text.class);
+    job.setVertexValueClass(IntWritable.class);
+    job.setEdgeValueClass(NullWritable.class);
+    job.setInputFormat(SequenceFileInputFormat.class);
+    job.setPartitioner(HashPartitioner.class);
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    job.setOutputThreads(3);
+    job.setSkipHaltedVerticesOutput(skipHalted);
+    assertTrue(job.waitForCompletion(true));
+
+    Map<String, Integer> output = new HashMap<String, Integer>();
+    for (FileStatus status : fs.globStatus(new Path(OUTPUT, "part-*"))) {
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          status.getPath(), conf);
+      Text key = new Text();
+      IntWritable value = new IntWritable();
+      while (reader.next(key, value)) {
+        // every vertex is written once
+        assertNull(output.put(key.toString(), value.get()));
+      }
+      reader.close();
+    }
+    return output;
+  }
+
+}
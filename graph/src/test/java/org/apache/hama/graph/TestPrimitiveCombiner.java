@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DoubleWritable;
+
+import com.google.common.collect.Lists;
+
+public class TestPrimitiveCombiner extends TestCase {
+
+  public static class SumCombiner extends PrimitiveCombiner.OfDouble {
+    @Override
+    protected double combine(double a, double b) {
+      return a + b;
+    }
+  }
+
+  public void testCombine() {
+    SumCombiner combiner = new SumCombiner();
+    DoubleWritable sum = combiner.combine(Lists.newArrayList(
+        new DoubleWritable(1.5d), new DoubleWritable(2.0d),
+        new DoubleWritable(-0.5d)));
+    assertEquals(3.0d, sum.get());
+  }
+
+  public void testLongMessageMap() {
+    SumCombiner combiner = new SumCombiner();
+    LongMessageMap map = new LongMessageMap();
+    Map<Long, Double> expected = new HashMap<Long, Double>();
+    for (int i = 0; i < 1000; i++) {
+      long key = (i % 300) * 7919L - 100;
+      double value = i / 4.0d;
+      map.combine(key, combiner.toBits(new DoubleWritable(value)), combiner);
+      Double old = expected.get(key);
+      expected.put(key, old == null ? value : old + value);
+    }
+    assertEquals(expected.size(), map.size());
+
+    int found = 0;
+    for (int i = 0; i < map.capacity(); i++) {
+      if (map.isUsed(i)) {
+        assertEquals(expected.get(map.keyAt(i)),
+            combiner.fromBits(map.valueAt(i)).get());
+        found++;
+      }
+    }
+    assertEquals(expected.size(), found);
+
+    map.clear();
+    assertEquals(0, map.size());
+  }
+
+}
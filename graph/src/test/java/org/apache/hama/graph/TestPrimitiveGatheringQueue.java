@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.Constants;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.Combiner;
+
+public class TestPrimitiveGatheringQueue extends TestCase {
+
+  public static class SumCombiner extends PrimitiveCombiner.OfDouble {
+    @Override
+    protected double combine(double a, double b) {
+      return a + b;
+    }
+  }
+
+  private static PrimitiveGatheringQueue newQueue(Class<?> idClass) {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, idClass.getName());
+    conf.setClass(Constants.COMBINER_CLASS, SumCombiner.class, Combiner.class);
+    assertTrue(PrimitiveGatheringQueue.isApplicable(conf));
+    PrimitiveGatheringQueue queue = new PrimitiveGatheringQueue();
+    queue.init(conf, null);
+    return queue;
+  }
+
+  private static GraphJobMessage message(long id, double value) {
+    return new GraphJobMessage(new LongWritable(id), new DoubleWritable(value));
+  }
+
+  public void testCombineAsAdded() {
+    PrimitiveGatheringQueue queue = newQueue(LongWritable.class);
+    queue.add(message(7, 1.0d));
+    queue.add(message(-3, 0.5d));
+    queue.add(message(7, 2.0d));
+    queue.add(new GraphJobMessage(new MapWritable()));
+    queue.add(message(7, 0.25d));
+    assertEquals(3, queue.size());
+
+    // the other messages come first, then one sum per vertex in order
+    assertTrue(queue.poll().isMapMessage());
+    GraphJobMessage msg = queue.poll();
+    assertEquals(new LongWritable(-3), msg.getVertexId());
+    assertEquals(0.5d, ((DoubleWritable) msg.getVertexValue()).get());
+
+    // a vertex after the read ones is sorted in
+    queue.add(message(9, 4.0d));
+    queue.add(message(1, 1.0d));
+    assertEquals(new LongWritable(1), queue.poll().getVertexId());
+    msg = queue.poll();
+    assertEquals(new LongWritable(7), msg.getVertexId());
+    assertEquals(3.25d, ((DoubleWritable) msg.getVertexValue()).get());
+    assertEquals(new LongWritable(9), queue.poll().getVertexId());
+    assertNull(queue.poll());
+    assertEquals(0, queue.size());
+  }
+
+  public void testLateMessageIsRejected() {
+    PrimitiveGatheringQueue queue = newQueue(LongWritable.class);
+    queue.add(message(1, 1.0d));
+    queue.add(message(2, 1.0d));
+    assertEquals(new LongWritable(1), queue.poll().getVertexId());
+    try {
+      queue.add(message(1, 1.0d));
+      fail("A message to a read vertex was added.");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // a cleared queue is read from the start
+    queue.clear();
+    queue.add(message(1, 2.0d));
+    assertEquals(2.0d,
+        ((DoubleWritable) queue.poll().getVertexValue()).get());
+  }
+
+  public void testIntIds() {
+    PrimitiveGatheringQueue queue = newQueue(IntWritable.class);
+    queue.add(new GraphJobMessage(new IntWritable(5), new DoubleWritable(1.0d)));
+    queue.add(new GraphJobMessage(new IntWritable(-5), new DoubleWritable(2.0d)));
+    queue.add(new GraphJobMessage(new IntWritable(5), new DoubleWritable(3.0d)));
+    assertEquals(new IntWritable(-5), queue.poll().getVertexId());
+    GraphJobMessage msg = queue.poll();
+    assertEquals(new IntWritable(5), msg.getVertexId());
+    assertEquals(4.0d, ((DoubleWritable) msg.getVertexValue()).get());
+  }
+
+  public void testNotApplicable() {
+    HamaConfiguration conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, Text.class.getName());
+    conf.setClass(Constants.COMBINER_CLASS, SumCombiner.class, Combiner.class);
+    assertFalse(PrimitiveGatheringQueue.isApplicable(conf));
+    // a generic combiner
+    conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, LongWritable.class.getName());
+    conf.setClass(Constants.COMBINER_CLASS,
+        GASVertex.SumCombiner.class, Combiner.class);
+    assertFalse(PrimitiveGatheringQueue.isApplicable(conf));
+  }
+
+}
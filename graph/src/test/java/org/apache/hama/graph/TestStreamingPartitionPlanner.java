@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+
+public class TestStreamingPartitionPlanner extends TestCase {
+
+  private StreamingPartitionPlanner<Text, NullWritable, DoubleWritable> planner(
+      String heuristic) {
+    Configuration conf = new Configuration();
+    conf.set(StreamingPartitionPlanner.HEURISTIC_KEY, heuristic);
+    StreamingPartitionPlanner<Text, NullWritable, DoubleWritable> planner = new StreamingPartitionPlanner<Text, NullWritable, DoubleWritable>();
+    planner.setup(conf, 2);
+    return planner;
+  }
+
+  public void testLinearDeterministicGreedy() {
+    StreamingPartitionPlanner<Text, NullWritable, DoubleWritable> planner = planner("ldg");
+
+    // no known neighbors, keep the partitioner's choice
+    assertEquals(1, planner.choose(new int[] { 0, 0 }, new long[] { 0, 0 }, 1,
+        1, 0));
+    // follow the neighbors
+    assertEquals(0, planner.choose(new int[] { 1, 0 }, new long[] { 1, 0 }, 1,
+        2, 1));
+    // unless the partition is full
+    assertEquals(1, planner.choose(new int[] { 1, 0 }, new long[] { 4, 0 }, 1,
+        5, 4));
+  }
+
+  public void testFennel() {
+    StreamingPartitionPlanner<Text, NullWritable, DoubleWritable> planner = planner("fennel");
+
+    // follow the majority of the neighbors
+    assertEquals(1, planner.choose(new int[] { 1, 3 }, new long[] { 5, 5 }, 0,
+        11, 20));
+    // the partitioner's choice on equal scores
+    assertEquals(0, planner.choose(new int[] { 0, 0 }, new long[] { 5, 5 }, 0,
+        11, 20));
+    // the smaller partition if the neighbors are split evenly
+    assertEquals(1, planner.choose(new int[] { 2, 2 }, new long[] { 6, 4 }, 0,
+        11, 20));
+  }
+
+  public void testUnknownHeuristic() {
+    try {
+      planner("metis");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPPeer;
+import org.apache.hama.bsp.HashPartitioner;
+import org.apache.hama.bsp.Partitioner;
+
+public class TestVertexIdDictionary extends TestCase {
+
+  public static class IDVertex extends
+      Vertex<LongWritable, NullWritable, DoubleWritable> {
+
+    @Override
+    public void compute(Iterable<DoubleWritable> messages) throws IOException {
+    }
+  }
+
+  private HamaConfiguration conf;
+  private Path dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    conf.set(GraphJob.VERTEX_CLASS_ATTR, IDVertex.class.getName());
+    conf.set(GraphJob.VERTEX_EDGE_VALUE_CLASS_ATTR,
+        NullWritable.class.getName());
+    conf.set(GraphJob.VERTEX_ID_CLASS_ATTR, LongWritable.class.getName());
+    conf.set(GraphJob.VERTEX_VALUE_CLASS_ATTR, DoubleWritable.class.getName());
+    GraphJobRunner.<LongWritable, NullWritable, DoubleWritable> initClasses(conf);
+    dir = new Path(new File(System.getProperty("java.io.tmpdir"),
+        "hama-dictionary-test").getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileSystem.get(conf).delete(dir, true);
+  }
+
+  /**
+   * @return a vertex with text ids, like an input reader parses it.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Vertex textVertex(String id, String... edges) {
+    Vertex vertex = new IDVertex();
+    vertex.setVertexID(new Text(id));
+    for (String edge : edges) {
+      vertex.addEdge(new Edge(new Text(edge), null));
+    }
+    return vertex;
+  }
+
+  /**
+   * @return a peer that is the only one of the partitioning.
+   */
+  private static BSPPeer<?, ?, ?, ?, ?> singlePeer() {
+    return (BSPPeer<?, ?, ?, ?, ?>) Proxy.newProxyInstance(
+        BSPPeer.class.getClassLoader(), new Class<?>[] { BSPPeer.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("getPeerIndex")) {
+              return 0;
+            } else if (method.getName().equals("getNumPeers")) {
+              return 1;
+            }
+            return null;
+          }
+        });
+  }
+
+  public void testEncoding() {
+    long id = VertexIdDictionary.encode(3, 42L);
+    assertEquals(3, VertexIdDictionary.getPartition(id));
+    assertEquals(42L, VertexIdDictionary.getIndex(id));
+    assertTrue(VertexIdDictionary.encode(0, 1L) < VertexIdDictionary.encode(
+        0, 2L));
+
+    Partitioner<LongWritable, DoubleWritable> partitioner = new VertexIdDictionary.IdPartitioner<DoubleWritable>();
+    assertEquals(3, partitioner.getPartition(new LongWritable(id), null, 4));
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void testBuildAndRead() throws Exception {
+    int numPartitions = 2;
+    Partitioner partitioner = new HashPartitioner();
+    VertexIdDictionary.Builder builder = new VertexIdDictionary.Builder(
+        numPartitions);
+    String[][] graph = { { "a", "b", "c" }, { "b", "a" }, { "c", "d" },
+        { "d", "a", "b" } };
+    for (String[] v : graph) {
+      Vertex vertex = textVertex(v[0], v[1], v.length > 2 ? v[2] : v[1]);
+      builder.addVertex(vertex, Math.abs(partitioner.getPartition(
+          vertex.getVertexID(), null, numPartitions)), partitioner);
+    }
+    builder.finish(singlePeer(), conf, dir, new Path(dir, "_plan"));
+
+    for (int partition = 0; partition < numPartitions; partition++) {
+      VertexIdDictionary dictionary = VertexIdDictionary.read(conf, dir,
+          partition);
+      for (String[] v : graph) {
+        Text text = new Text(v[0]);
+        if (Math.abs(partitioner.getPartition(text, null, numPartitions)) != partition) {
+          continue;
+        }
+        Vertex vertex = textVertex(v[0], v[1]);
+        dictionary.encode(vertex);
+        LongWritable id = (LongWritable) vertex.getVertexID();
+        assertEquals(partition, VertexIdDictionary.getPartition(id.get()));
+        LongWritable destination = (LongWritable) ((Edge) vertex.getEdges()
+            .get(0)).getDestinationVertexID();
+        assertEquals(Math.abs(partitioner.getPartition(new Text(v[1]), null,
+            numPartitions)), VertexIdDictionary.getPartition(destination.get()));
+
+        Vertex decoded = dictionary.decode(vertex, true);
+        assertEquals(text, decoded.getVertexID());
+        assertEquals(new Text(v[1]), ((Edge) decoded.getEdges().get(0))
+            .getDestinationVertexID());
+        // without the edges only the id is decoded
+        decoded = dictionary.decode(vertex, false);
+        assertEquals(text, decoded.getVertexID());
+        assertTrue(decoded.getEdges().isEmpty());
+        // the encoded vertex is left as it is
+        assertEquals(id, vertex.getVertexID());
+      }
+    }
+  }
+
+  public void testOrderAndUnknownID() {
+    VertexIdDictionary dictionary = new VertexIdDictionary(1, new Text[] {
+        new Text("a"), new Text("b") }, new HashMap<Text, Long>());
+    assertTrue(dictionary.encode(new Text("a")).get() < dictionary.encode(
+        new Text("b")).get());
+    // ids that aren't in the dictionary are written as they are
+    LongWritable added = new LongWritable(VertexIdDictionary.encode(1, 5L));
+    assertEquals(added, dictionary.decode(added));
+    try {
+      dictionary.encode(new Text("c"));
+      fail("An unknown vertex ID was encoded.");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  public void testIncrementalIsRejected() throws Exception {
+    GraphJob job = new GraphJob(conf, TestVertexIdDictionary.class);
+    job.setVertexClass(IDVertex.class);
+    job.setVertexIDClass(LongWritable.class);
+    job.setVertexValueClass(DoubleWritable.class);
+    job.setEdgeValueClass(NullWritable.class);
+    job.setVertexInputReaderClass(TestParallelVertexOutput.AdjacencyReader.class);
+    job.setVertexIDDictionary(true);
+    job.setIncremental(new Path(dir, "prior"), null);
+    try {
+      job.submit();
+      fail("The prior ids of an incremental run aren't in the dictionary.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -32,6 +32,7 @@ import org.apache.hama.bsp.TextOutputFormat;
 import org.apache.hama.commons.io.TextArrayWritable;
 import org.apache.hama.graph.AverageAggregator;
 import org.apache.hama.graph.Edge;
+import org.apache.hama.graph.GASVertex;
 import org.apache.hama.graph.GraphJob;
 import org.apache.hama.graph.Vertex;
 import org.apache.hama.graph.VertexInputReader;
@@ -87,6 +88,38 @@ public class PageRank {
     }
   }
 
+  /**
+   * Pagerank in the gather-apply-scatter model, which ranks until the maximum
+   * iteration.
+   */
+  public static class GASPageRankVertex extends
+      GASVertex<Text, NullWritable, DoubleWritable> {
+
+    @Override
+    public void setup(HamaConfiguration conf) {
+      this.setValue(new DoubleWritable(1.0 / this.getNumVertices()));
+    }
+
+    @Override
+    public DoubleWritable gather(Edge<Text, NullWritable> edge) {
+      return new DoubleWritable(this.getValue().get() / this.getEdges().size());
+    }
+
+    @Override
+    public DoubleWritable sum(DoubleWritable a, DoubleWritable b) {
+      a.set(a.get() + b.get());
+      return a;
+    }
+
+    @Override
+    public void apply(DoubleWritable sum) {
+      double alpha = (1.0d - PageRankVertex.DAMPING_FACTOR)
+          / this.getNumVertices();
+      this.setValue(new DoubleWritable(alpha + (sum == null ? 0.0d : sum.get())
+          * PageRankVertex.DAMPING_FACTOR));
+    }
+  }
+
   public static class PagerankSeqReader
       extends
       VertexInputReader<Text, TextArrayWritable, Text, NullWritable, DoubleWritable> {
@@ -0,0 +1,365 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.kmeans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.commons.math.NamedDoubleVector;
+
+/**
+ * Euclidean assignment step of {@link KMeansBSP} over blocks of primitive
+ * arrays.
+ *
+ * Distances are computed as ||x||^2 + ||c||^2 - 2 x.c with precomputed
+ * norms, and Hamerly's bounds skip most distance computations once the
+ * centers start to settle: every point keeps an upper bound to its own
+ * center and a lower bound to all other centers. Blocks are processed by a
+ * pool of workers, each with its own partial sums, which are merged into the
+ * task local sums of all points per center. Sums are maintained
+ * incrementally, only points that change their center are added and
+ * subtracted.
+ */
+final class BlockedAssigner {
+
+  static final int BLOCK_SIZE = 1024;
+
+  private final int k;
+  private final int dim;
+  private final int threads;
+  private final ExecutorService workers;
+
+  // centers in row major order and their squared norms
+  private final double[] centers;
+  private final double[] centerNorms;
+  // half the distance of each center to its nearest other center
+  private final double[] halfMinDistance;
+  // distance each center moved in the last update
+  private final double[] shift;
+  private double maxShift = 0.0;
+  private boolean hasCenters = false;
+
+  // task local sums of all assigned points per center
+  private final double[] sums;
+  private final long[] counts;
+
+  BlockedAssigner(int k, int dim, int threads) {
+    this.k = k;
+    this.dim = dim;
+    this.threads = Math.max(1, threads);
+    this.workers = (this.threads > 1) ? Executors
+        .newFixedThreadPool(this.threads) : null;
+    this.centers = new double[k * dim];
+    this.centerNorms = new double[k];
+    this.halfMinDistance = new double[k];
+    this.shift = new double[k];
+    this.sums = new double[k * dim];
+    this.counts = new long[k];
+  }
+
+  /**
+   * A block of input vectors.
+   */
+  static final class Block {
+    final double[] data;
+    final double[] norms;
+    // names of named vectors, null if none of the vectors is named
+    String[] names;
+    int size = 0;
+
+    Block(int dim) {
+      this.data = new double[BLOCK_SIZE * dim];
+      this.norms = new double[BLOCK_SIZE];
+    }
+
+    boolean isFull() {
+      return size == norms.length;
+    }
+
+    void add(DoubleVector vector) {
+      int dim = data.length / norms.length;
+      int offset = size * dim;
+      double norm = 0.0;
+      for (int i = 0; i < dim; i++) {
+        double value = vector.get(i);
+        data[offset + i] = value;
+        norm += value * value;
+      }
+      norms[size] = norm;
+      if (vector.isNamed() && vector.getName() != null) {
+        if (names == null) {
+          names = new String[norms.length];
+        }
+        names[size] = vector.getName();
+      } else if (names != null) {
+        names[size] = null;
+      }
+      size++;
+    }
+
+    void clear() {
+      size = 0;
+      names = null;
+    }
+
+    DoubleVector get(int row) {
+      int dim = data.length / norms.length;
+      DoubleVector vector = new DenseDoubleVector(Arrays.copyOfRange(data, row
+          * dim, (row + 1) * dim));
+      if (names != null && names[row] != null) {
+        vector = new NamedDoubleVector(names[row], vector);
+      }
+      return vector;
+    }
+  }
+
+  /**
+   * Assignments and Hamerly bounds of the points of one block, kept between
+   * iterations.
+   */
+  static final class Bounds {
+    final int[] assignment = new int[BLOCK_SIZE];
+    final double[] upper = new double[BLOCK_SIZE];
+    final double[] lower = new double[BLOCK_SIZE];
+    boolean initialized = false;
+  }
+
+  /**
+   * Set the centers of the next assignment step.
+   */
+  void setCenters(DoubleVector[] newCenters) {
+    maxShift = 0.0;
+    for (int c = 0; c < k; c++) {
+      int offset = c * dim;
+      double moved = 0.0;
+      double norm = 0.0;
+      for (int i = 0; i < dim; i++) {
+        double value = newCenters[c].get(i);
+        double diff = value - centers[offset + i];
+        moved += diff * diff;
+        norm += value * value;
+        centers[offset + i] = value;
+      }
+      shift[c] = hasCenters ? Math.sqrt(moved) : 0.0;
+      maxShift = Math.max(maxShift, shift[c]);
+      centerNorms[c] = norm;
+    }
+    hasCenters = true;
+
+    Arrays.fill(halfMinDistance, Double.MAX_VALUE);
+    for (int c = 0; c < k; c++) {
+      for (int o = c + 1; o < k; o++) {
+        double distance = 0.5 * Math.sqrt(distanceSquared(centers, o * dim,
+            centerNorms[o], c));
+        halfMinDistance[c] = Math.min(halfMinDistance[c], distance);
+        halfMinDistance[o] = Math.min(halfMinDistance[o], distance);
+      }
+    }
+  }
+
+  /**
+   * Assign the points of the given blocks, blocks.get(i) belongs to
+   * bounds.get(i).
+   */
+  void assign(final List<Block> blocks, final List<Bounds> bounds)
+      throws IOException, InterruptedException {
+    if (workers == null || blocks.size() == 1) {
+      Partial partial = new Partial();
+      for (int b = 0; b < blocks.size(); b++) {
+        assign(blocks.get(b), bounds.get(b), partial);
+      }
+      merge(partial);
+      return;
+    }
+
+    List<Future<Partial>> results = new ArrayList<Future<Partial>>(threads);
+    for (int t = 0; t < threads; t++) {
+      final int first = t;
+      results.add(workers.submit(new Callable<Partial>() {
+        @Override
+        public Partial call() throws Exception {
+          Partial partial = new Partial();
+          for (int b = first; b < blocks.size(); b += threads) {
+            assign(blocks.get(b), bounds.get(b), partial);
+          }
+          return partial;
+        }
+      }));
+    }
+    for (Future<Partial> result : results) {
+      try {
+        merge(result.get());
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  private void assign(Block block, Bounds bounds, Partial partial) {
+    double[] data = block.data;
+    int[] assignment = bounds.assignment;
+    double[] upper = bounds.upper;
+    double[] lower = bounds.lower;
+
+    for (int i = 0; i < block.size; i++) {
+      int offset = i * dim;
+      if (!bounds.initialized) {
+        int nearest = scan(data, offset, block.norms[i], upper, lower, i);
+        assignment[i] = nearest;
+        partial.add(data, offset, nearest);
+        continue;
+      }
+
+      int current = assignment[i];
+      upper[i] += shift[current];
+      lower[i] -= maxShift;
+      double bound = Math.max(halfMinDistance[current], lower[i]);
+      if (upper[i] <= bound) {
+        continue;
+      }
+      // tighten the upper bound before scanning all centers
+      upper[i] = Math.sqrt(distanceSquared(data, offset, block.norms[i],
+          current));
+      if (upper[i] <= bound) {
+        continue;
+      }
+      int nearest = scan(data, offset, block.norms[i], upper, lower, i);
+      if (nearest != current) {
+        assignment[i] = nearest;
+        partial.remove(data, offset, current);
+        partial.add(data, offset, nearest);
+      }
+    }
+    bounds.initialized = true;
+  }
+
+  /**
+   * Distances to all centers, sets the upper bound to the nearest and the
+   * lower bound to the second nearest center.
+   */
+  private int scan(double[] data, int offset, double norm, double[] upper,
+      double[] lower, int row) {
+    int nearest = 0;
+    double best = Double.MAX_VALUE;
+    double second = Double.MAX_VALUE;
+    for (int c = 0; c < k; c++) {
+      double distance = distanceSquared(data, offset, norm, c);
+      if (distance < best) {
+        second = best;
+        best = distance;
+        nearest = c;
+      } else if (distance < second) {
+        second = distance;
+      }
+    }
+    upper[row] = Math.sqrt(best);
+    lower[row] = (second == Double.MAX_VALUE) ? second : Math.sqrt(second);
+    return nearest;
+  }
+
+  /**
+   * @return index of the nearest center of the given row
+   */
+  int nearest(Block block, int row) {
+    int nearest = 0;
+    double best = Double.MAX_VALUE;
+    for (int c = 0; c < k; c++) {
+      double distance = distanceSquared(block.data, row * dim,
+          block.norms[row], c);
+      if (distance < best) {
+        best = distance;
+        nearest = c;
+      }
+    }
+    return nearest;
+  }
+
+  private double distanceSquared(double[] data, int offset, double norm,
+      int center) {
+    int centerOffset = center * dim;
+    double dot = 0.0;
+    for (int i = 0; i < dim; i++) {
+      dot += data[offset + i] * centers[centerOffset + i];
+    }
+    // rounding may yield slightly negative values for identical vectors
+    return Math.max(0.0, norm + centerNorms[center] - 2.0 * dot);
+  }
+
+  private void merge(Partial partial) {
+    for (int i = 0; i < sums.length; i++) {
+      sums[i] += partial.sums[i];
+    }
+    for (int c = 0; c < k; c++) {
+      counts[c] += partial.counts[c];
+    }
+  }
+
+  /**
+   * @return number of points assigned to center
+   */
+  long getCount(int center) {
+    return counts[center];
+  }
+
+  /**
+   * @return sum of all points assigned to center
+   */
+  DoubleVector getSum(int center) {
+    return new DenseDoubleVector(Arrays.copyOfRange(sums, center * dim,
+        (center + 1) * dim));
+  }
+
+  void close() {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Changes of the sums by one worker.
+   */
+  private final class Partial {
+    final double[] sums = new double[k * dim];
+    final long[] counts = new long[k];
+
+    void add(double[] data, int offset, int center) {
+      int centerOffset = center * dim;
+      for (int i = 0; i < dim; i++) {
+        sums[centerOffset + i] += data[offset + i];
+      }
+      counts[center]++;
+    }
+
+    void remove(double[] data, int offset, int center) {
+      int centerOffset = center * dim;
+      for (int i = 0; i < dim; i++) {
+        sums[centerOffset + i] -= data[offset + i];
+      }
+      counts[center]--;
+    }
+  }
+}
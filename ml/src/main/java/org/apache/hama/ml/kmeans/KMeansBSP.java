@@ -65,6 +65,10 @@ public final class KMeansBSP
   public static final String CACHING_ENABLED_KEY = "k.means.caching.enabled";
   public static final String DISTANCE_MEASURE_CLASS = "distance.measure.class";
   public static final String CENTER_IN_PATH = "center.in.path";
+  public static final String THREAD_COUNT_KEY = "k.means.threads";
+
+  // number of blocks that are read at once when iterating over the disk
+  private static final int BATCH_BLOCKS = 64;
 
   private static final Log LOG = LogFactory.getLog(KMeansBSP.class);
   // a task local copy of our cluster centers
@@ -76,6 +80,13 @@ public final class KMeansBSP
   // our distance measurement
   private DistanceMeasurer distanceMeasurer;
   private Configuration conf;
+  // blocked assignment step, only used for euclidean distances
+  private BlockedAssigner assigner;
+  // the cached input, or the reused read buffers if caching is disabled
+  private List<BlockedAssigner.Block> blocks;
+  private List<BlockedAssigner.Bounds> bounds;
+  private boolean cacheBlocks;
+  private boolean blocksCached = false;
 
   @Override
   public final void setup(
@@ -121,7 +132,17 @@ public final class KMeansBSP
 
     maxIterations = peer.getConfiguration().getInt(MAX_ITERATIONS_KEY, -1);
     // normally we want to rely on OS caching, but if not, we can cache in heap
-    if (peer.getConfiguration().getBoolean(CACHING_ENABLED_KEY, false)) {
+    boolean caching = peer.getConfiguration().getBoolean(CACHING_ENABLED_KEY,
+        false);
+    if (distanceMeasurer.getClass() == EuclidianDistance.class) {
+      int threads = peer.getConfiguration().getInt(THREAD_COUNT_KEY,
+          Runtime.getRuntime().availableProcessors());
+      assigner = new BlockedAssigner(this.centers.length,
+          this.centers[0].getDimension(), threads);
+      blocks = new ArrayList<BlockedAssigner.Block>();
+      bounds = new ArrayList<BlockedAssigner.Bounds>();
+      cacheBlocks = caching;
+    } else if (caching) {
       cache = new ArrayList<DoubleVector>();
     }
   }
@@ -131,14 +152,22 @@ public final class KMeansBSP
       BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer)
       throws IOException, InterruptedException, SyncException {
     long converged;
+    int iteration = 0;
     while (true) {
-      assignCenters(peer);
+      iteration++;
+      if (assigner == null) {
+        assignCenters(peer);
+      } else {
+        assignBlocks(peer);
+      }
+      peer.sync();
+      reduceCenters(peer);
       peer.sync();
       converged = updateCenters(peer);
       peer.reopenInput();
       if (converged == 0)
         break;
-      if (maxIterations > 0 && maxIterations < peer.getSuperstepCount())
+      if (maxIterations > 0 && maxIterations < iteration)
         break;
     }
     LOG.info("Finished! Writing the assignments...");
@@ -146,10 +175,14 @@ public final class KMeansBSP
     LOG.info("Done.");
   }
 
-  private long updateCenters(
+  /**
+   * Sums the partial sums of the centers this task owns and broadcasts the new
+   * centers, so every task receives a single message per center instead of
+   * the partial sums of all tasks.
+   */
+  private void reduceCenters(
       BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer)
       throws IOException {
-    // this is the update step
     DoubleVector[] msgCenters = new DoubleVector[centers.length];
     int[] incrementSum = new int[centers.length];
     CenterMessage msg;
@@ -168,9 +201,23 @@ public final class KMeansBSP
     for (int i = 0; i < msgCenters.length; i++) {
       // and only if we really have an update for c
       if (msgCenters[i] != null) {
-        msgCenters[i] = msgCenters[i].divide(incrementSum[i]);
+        DoubleVector center = msgCenters[i].divide(incrementSum[i]);
+        for (String peerName : peer.getAllPeerNames()) {
+          peer.send(peerName, new CenterMessage(i, incrementSum[i], center));
+        }
       }
     }
+  }
+
+  private long updateCenters(
+      BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer)
+      throws IOException {
+    // this is the update step, the owners already averaged the centers
+    DoubleVector[] msgCenters = new DoubleVector[centers.length];
+    CenterMessage msg;
+    while ((msg = peer.getCurrentMessage()) != null) {
+      msgCenters[msg.getCenterIndex()] = msg.getData();
+    }
     // finally check for convergence by the absolute difference
     long convergedCounter = 0L;
     for (int i = 0; i < msgCenters.length; i++) {
@@ -223,17 +270,83 @@ public final class KMeansBSP
       }
     }
 
-    // now send messages about the local updates to each other peer
+    // now send messages about the local updates to the owners of the centers
     for (int i = 0; i < newCenterArray.length; i++) {
       if (newCenterArray[i] != null) {
-        for (String peerName : peer.getAllPeerNames()) {
-          peer.send(peerName, new CenterMessage(i, summationCount[i],
-              newCenterArray[i]));
+        peer.send(getOwner(peer, i), new CenterMessage(i, summationCount[i],
+            newCenterArray[i]));
+      }
+    }
+  }
+
+  /**
+   * Assignment step for euclidean distances, the task local sums are kept by
+   * the assigner and only updated for vectors that change their center.
+   */
+  private void assignBlocks(
+      BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer)
+      throws IOException, InterruptedException {
+    assigner.setCenters(centers);
+    if (blocksCached) {
+      assigner.assign(blocks, bounds);
+    } else {
+      final NullWritable value = NullWritable.get();
+      final VectorWritable key = new VectorWritable();
+      List<BlockedAssigner.Block> batch = new ArrayList<BlockedAssigner.Block>();
+      BlockedAssigner.Block block = null;
+      int blockIndex = 0;
+      while (peer.readNext(key, value)) {
+        if (block == null || block.isFull()) {
+          if (!cacheBlocks && batch.size() == BATCH_BLOCKS) {
+            assigner.assign(batch,
+                bounds.subList(blockIndex - batch.size(), blockIndex));
+            batch.clear();
+          }
+          block = nextBlock(blockIndex++);
+          batch.add(block);
         }
+        block.add(key.getVector());
+      }
+      if (!batch.isEmpty()) {
+        assigner.assign(batch,
+            bounds.subList(blockIndex - batch.size(), blockIndex));
+      }
+      blocksCached = cacheBlocks;
+    }
+
+    for (int i = 0; i < centers.length; i++) {
+      if (assigner.getCount(i) > 0) {
+        peer.send(getOwner(peer, i), new CenterMessage(i,
+            (int) assigner.getCount(i), assigner.getSum(i)));
       }
     }
   }
 
+  private BlockedAssigner.Block nextBlock(int blockIndex) {
+    if (bounds.size() == blockIndex) {
+      bounds.add(new BlockedAssigner.Bounds());
+    }
+    if (!cacheBlocks && blockIndex % BATCH_BLOCKS < blocks.size()) {
+      // reuse the buffers of the previous batch
+      BlockedAssigner.Block block = blocks.get(blockIndex % BATCH_BLOCKS);
+      block.clear();
+      return block;
+    }
+    BlockedAssigner.Block block = new BlockedAssigner.Block(
+        centers[0].getDimension());
+    blocks.add(block);
+    return block;
+  }
+
+  /**
+   * @return the name of the peer that sums up the given center.
+   */
+  private static String getOwner(
+      BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer,
+      int centerIndex) {
+    return peer.getPeerName(centerIndex % peer.getNumPeers());
+  }
+
   private void assignCentersInternal(final DoubleVector[] newCenterArray,
       final int[] summationCount, final DoubleVector key) {
     final int lowestDistantCenter = getNearestCenter(key);
@@ -271,7 +384,16 @@ public final class KMeansBSP
       throws IOException {
     final NullWritable value = NullWritable.get();
     // also use our cache to speed up the final writes if exists
-    if (cache == null) {
+    if (blocksCached) {
+      assigner.setCenters(centers);
+      IntWritable keyWrite = new IntWritable();
+      for (BlockedAssigner.Block block : blocks) {
+        for (int i = 0; i < block.size; i++) {
+          keyWrite.set(assigner.nearest(block, i));
+          peer.write(keyWrite, new VectorWritable(block.get(i)));
+        }
+      }
+    } else if (cache == null) {
       final VectorWritable key = new VectorWritable();
       IntWritable keyWrite = new IntWritable();
       while (peer.readNext(key, value)) {
@@ -303,6 +425,15 @@ public final class KMeansBSP
     }
   }
 
+  @Override
+  public void cleanup(
+      BSPPeer<VectorWritable, NullWritable, IntWritable, VectorWritable, CenterMessage> peer)
+      throws IOException {
+    if (assigner != null) {
+      assigner.close();
+    }
+  }
+
   /**
    * Creates a basic job with sequencefiles as in and output.
    */
@@ -0,0 +1,528 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.recommendation.cf;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hama.commons.math.DoubleVector;
+
+/**
+ * Approximate nearest neighbour index over factorized user or item values.
+ *
+ * All factors are kept in one primitive array (one row of length rank per
+ * id, rows ordered by id) and bucketed with random projection (sign) LSH in
+ * several independent hash tables. A query probes its own bucket and every
+ * bucket at hamming distance one in each table, the candidates are then
+ * re-ranked with the exact metric. If probing yields less candidates than
+ * requested the index falls back to an exact scan, so a query always returns
+ * min(count, size) results.
+ *
+ * Two metrics are supported:
+ * <ul>
+ * <li>{@link Metric#EUCLIDEAN} - similarity queries, hyperplanes are applied
+ * to mean centered factors.</li>
+ * <li>{@link Metric#INNER_PRODUCT} - top-N preference queries, hyperplanes
+ * are applied to the raw factors, so buckets group by angle and candidates
+ * are re-ranked by the inner product which also accounts for the norm.</li>
+ * </ul>
+ *
+ * Indexes are immutable after build and safe to query from several threads.
+ */
+public final class FactorIndex {
+
+  public static enum Metric {
+    EUCLIDEAN, INNER_PRODUCT
+  }
+
+  // below this size an exact scan is cheaper than probing
+  private static final int EXACT_SCAN_THRESHOLD = 1024;
+  private static final int MAX_BITS = 24;
+
+  private final Metric metric;
+  private final int rank;
+  private final int size;
+  private final long[] ids;
+  private final double[] factors;
+
+  private final int numTables;
+  private final int numBits;
+  private final double[] planes;
+  // subtracted before hashing, zero for INNER_PRODUCT
+  private final double[] center;
+  // per table: rows ordered by signature and their sorted signatures
+  private final int[][] order;
+  private final int[][] signatures;
+
+  private FactorIndex(Metric metric, int rank, long[] ids, double[] factors,
+      int numTables, int numBits, long seed) {
+    this.metric = metric;
+    this.rank = rank;
+    this.ids = ids;
+    this.factors = factors;
+    this.size = ids.length;
+    this.numTables = numTables;
+    this.numBits = (numBits > 0) ? Math.min(numBits, MAX_BITS)
+        : defaultBits(size);
+
+    this.center = new double[rank];
+    if (metric == Metric.EUCLIDEAN && size > 0) {
+      for (int row = 0; row < size; row++) {
+        int offset = row * rank;
+        for (int i = 0; i < rank; i++) {
+          center[i] += factors[offset + i];
+        }
+      }
+      for (int i = 0; i < rank; i++) {
+        center[i] /= size;
+      }
+    }
+
+    Random rnd = new Random(seed);
+    this.planes = new double[numTables * this.numBits * rank];
+    for (int i = 0; i < planes.length; i++) {
+      planes[i] = rnd.nextGaussian();
+    }
+
+    this.order = new int[numTables][];
+    this.signatures = new int[numTables][];
+    double[] hashed = new double[rank];
+    long[] packed = new long[size];
+    for (int t = 0; t < numTables; t++) {
+      for (int row = 0; row < size; row++) {
+        toHashed(factors, row * rank, hashed);
+        // signature in the upper half, row in the lower half for sorting
+        packed[row] = ((long) signature(t, hashed) << 32) | row;
+      }
+      Arrays.sort(packed);
+      order[t] = new int[size];
+      signatures[t] = new int[size];
+      for (int i = 0; i < size; i++) {
+        order[t][i] = (int) (packed[i] & 0xFFFFFFFFL);
+        signatures[t][i] = (int) (packed[i] >>> 32);
+      }
+    }
+  }
+
+  private static int defaultBits(int size) {
+    // aim for roughly eight rows per bucket
+    int bits = 1;
+    while (bits < MAX_BITS && (size >>> (bits + 3)) > 0) {
+      bits++;
+    }
+    return bits;
+  }
+
+  public Metric getMetric() {
+    return metric;
+  }
+
+  public int getRank() {
+    return rank;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return row of the given id, negative if the id is not indexed
+   */
+  public int indexOf(long id) {
+    return Arrays.binarySearch(ids, id);
+  }
+
+  /**
+   * Copy the factors of the given row into target.
+   */
+  public void getFactors(int row, double[] target) {
+    System.arraycopy(factors, row * rank, target, 0, rank);
+  }
+
+  /**
+   * Nearest neighbours of an indexed id, the id itself is excluded.
+   * @param id - indexed id
+   * @param count - number of neighbours
+   * @return neighbours, or null if id is not indexed
+   */
+  public Result search(long id, int count) {
+    int row = indexOf(id);
+    if (row < 0) {
+      return null;
+    }
+    double[] query = new double[rank];
+    getFactors(row, query);
+    return search(query, count, row, new Scratch());
+  }
+
+  /**
+   * Nearest neighbours (EUCLIDEAN) or highest inner products (INNER_PRODUCT)
+   * of an arbitrary query vector.
+   */
+  public Result search(double[] query, int count) {
+    return search(query, count, -1, new Scratch());
+  }
+
+  /**
+   * Batch version of {@link #search(long, int)}, scratch buffers are shared
+   * between the queries.
+   */
+  public Result[] search(long[] queryIds, int count) {
+    Result[] results = new Result[queryIds.length];
+    Scratch scratch = new Scratch();
+    double[] query = new double[rank];
+    for (int i = 0; i < queryIds.length; i++) {
+      int row = indexOf(queryIds[i]);
+      if (row < 0) {
+        continue;
+      }
+      getFactors(row, query);
+      results[i] = search(query, count, row, scratch);
+    }
+    return results;
+  }
+
+  /**
+   * Batch version of {@link #search(double[], int)}, scratch buffers are
+   * shared between the queries.
+   */
+  public Result[] search(double[][] queries, int count) {
+    Result[] results = new Result[queries.length];
+    Scratch scratch = new Scratch();
+    for (int i = 0; i < queries.length; i++) {
+      results[i] = search(queries[i], count, -1, scratch);
+    }
+    return results;
+  }
+
+  /**
+   * Exact scan over all rows, used as fallback and as ground truth.
+   */
+  public Result searchExact(double[] query, int count) {
+    return searchExact(query, count, -1);
+  }
+
+  private Result searchExact(double[] query, int count, int exclude) {
+    TopK top = new TopK(Math.min(count, size));
+    for (int row = 0; row < size; row++) {
+      if (row != exclude) {
+        top.offer(row, key(query, row));
+      }
+    }
+    return top.toResult();
+  }
+
+  private Result search(double[] query, int count, int exclude,
+      Scratch scratch) {
+    if (count <= 0 || size == 0) {
+      return new Result(new long[0], new double[0]);
+    }
+    int available = (exclude < 0) ? size : size - 1;
+    if (size <= EXACT_SCAN_THRESHOLD || count >= available) {
+      return searchExact(query, count, exclude);
+    }
+
+    double[] hashed = scratch.hashed(rank);
+    toHashed(query, 0, hashed);
+    int candidates = 0;
+    for (int t = 0; t < numTables; t++) {
+      int sig = signature(t, hashed);
+      candidates = collect(t, sig, scratch, candidates);
+      for (int b = 0; b < numBits; b++) {
+        candidates = collect(t, sig ^ (1 << b), scratch, candidates);
+      }
+    }
+
+    int[] rows = scratch.candidates;
+    Arrays.sort(rows, 0, candidates);
+    int unique = 0;
+    for (int i = 0; i < candidates; i++) {
+      if ((i == 0 || rows[i] != rows[i - 1]) && rows[i] != exclude) {
+        rows[unique++] = rows[i];
+      }
+    }
+    if (unique < count) {
+      return searchExact(query, count, exclude);
+    }
+
+    TopK top = new TopK(count);
+    for (int i = 0; i < unique; i++) {
+      top.offer(rows[i], key(query, rows[i]));
+    }
+    return top.toResult();
+  }
+
+  private int collect(int table, int sig, Scratch scratch, int candidates) {
+    int[] sigs = signatures[table];
+    int from = lowerBound(sigs, sig);
+    int to = from;
+    while (to < size && sigs[to] == sig) {
+      to++;
+    }
+    int length = to - from;
+    if (length > 0) {
+      scratch.ensure(candidates + length);
+      System.arraycopy(order[table], from, scratch.candidates, candidates,
+          length);
+    }
+    return candidates + length;
+  }
+
+  private static int lowerBound(int[] sorted, int key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int signature(int table, double[] hashed) {
+    int sig = 0;
+    int offset = table * numBits * rank;
+    for (int b = 0; b < numBits; b++) {
+      double dot = 0.0;
+      for (int i = 0; i < rank; i++) {
+        dot += planes[offset + i] * hashed[i];
+      }
+      if (dot >= 0.0) {
+        sig |= (1 << b);
+      }
+      offset += rank;
+    }
+    return sig;
+  }
+
+  private void toHashed(double[] source, int offset, double[] hashed) {
+    for (int i = 0; i < rank; i++) {
+      hashed[i] = source[offset + i] - center[i];
+    }
+  }
+
+  /**
+   * Ranking key, higher is better: negative squared distance for EUCLIDEAN,
+   * the inner product for INNER_PRODUCT.
+   */
+  private double key(double[] query, int row) {
+    int offset = row * rank;
+    double sum = 0.0;
+    if (metric == Metric.EUCLIDEAN) {
+      for (int i = 0; i < rank; i++) {
+        double diff = query[i] - factors[offset + i];
+        sum += diff * diff;
+      }
+      return -sum;
+    }
+    for (int i = 0; i < rank; i++) {
+      sum += query[i] * factors[offset + i];
+    }
+    return sum;
+  }
+
+  private double score(double key) {
+    return (metric == Metric.EUCLIDEAN) ? Math.sqrt(-key) : key;
+  }
+
+  /**
+   * Query results, best first. Scores are euclidean distances for EUCLIDEAN
+   * and inner products for INNER_PRODUCT indexes.
+   */
+  public static final class Result {
+    private final long[] resultIds;
+    private final double[] scores;
+
+    Result(long[] ids, double[] scores) {
+      this.resultIds = ids;
+      this.scores = scores;
+    }
+
+    public int size() {
+      return resultIds.length;
+    }
+
+    public long getId(int i) {
+      return resultIds[i];
+    }
+
+    public double getScore(int i) {
+      return scores[i];
+    }
+  }
+
+  /**
+   * Per query working memory, reused between queries of a batch.
+   */
+  private static final class Scratch {
+    int[] candidates = new int[256];
+    double[] hashed = null;
+
+    double[] hashed(int dim) {
+      if (hashed == null) {
+        hashed = new double[dim];
+      }
+      return hashed;
+    }
+
+    void ensure(int capacity) {
+      if (candidates.length < capacity) {
+        candidates = Arrays.copyOf(candidates,
+            Math.max(capacity, candidates.length * 2));
+      }
+    }
+  }
+
+  /**
+   * Bounded min-heap on the ranking key over primitive arrays.
+   */
+  private final class TopK {
+    private final int[] rows;
+    private final double[] keys;
+    private int count = 0;
+
+    TopK(int capacity) {
+      this.rows = new int[Math.max(capacity, 0)];
+      this.keys = new double[rows.length];
+    }
+
+    void offer(int row, double key) {
+      if (count < rows.length) {
+        int i = count++;
+        while (i > 0) {
+          int parent = (i - 1) >>> 1;
+          if (keys[parent] <= key) {
+            break;
+          }
+          rows[i] = rows[parent];
+          keys[i] = keys[parent];
+          i = parent;
+        }
+        rows[i] = row;
+        keys[i] = key;
+      } else if (count > 0 && key > keys[0]) {
+        siftDown(row, key, count);
+      }
+    }
+
+    private void siftDown(int row, double key, int length) {
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= length) {
+          break;
+        }
+        if (child + 1 < length && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (key <= keys[child]) {
+          break;
+        }
+        rows[i] = rows[child];
+        keys[i] = keys[child];
+        i = child;
+      }
+      rows[i] = row;
+      keys[i] = key;
+    }
+
+    Result toResult() {
+      long[] resultIds = new long[count];
+      double[] scores = new double[count];
+      // pop the worst element to the back until the heap is empty
+      for (int length = count; length > 0; length--) {
+        int row = rows[0];
+        double key = keys[0];
+        resultIds[length - 1] = ids[row];
+        scores[length - 1] = score(key);
+        if (length > 1) {
+          siftDown(rows[length - 1], keys[length - 1], length - 1);
+        }
+      }
+      return new Result(resultIds, scores);
+    }
+  }
+
+  /**
+   * Collects factors before building one or more indexes that share the
+   * same primitive storage.
+   */
+  public static final class Builder {
+    private final int rank;
+    private long[] ids = new long[1024];
+    private double[] factors;
+    private int count = 0;
+    private long[] sortedIds = null;
+    private double[] sortedFactors = null;
+
+    public Builder(int rank) {
+      this.rank = rank;
+      this.factors = new double[ids.length * rank];
+    }
+
+    public int getRank() {
+      return rank;
+    }
+
+    public Builder add(long id, DoubleVector vector) {
+      if (vector.getLength() != rank) {
+        throw new IllegalArgumentException("expected rank " + rank
+            + " but vector of id " + id + " has length " + vector.getLength());
+      }
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+        factors = Arrays.copyOf(factors, count * 2 * rank);
+      }
+      ids[count] = id;
+      int offset = count * rank;
+      for (int i = 0; i < rank; i++) {
+        factors[offset + i] = vector.get(i);
+      }
+      count++;
+      sortedIds = null;
+      return this;
+    }
+
+    public FactorIndex build(Metric metric, int numTables, int numBits,
+        long seed) {
+      if (sortedIds == null) {
+        sort();
+      }
+      return new FactorIndex(metric, rank, sortedIds, sortedFactors,
+          Math.max(1, numTables), numBits, seed);
+    }
+
+    private void sort() {
+      sortedIds = Arrays.copyOf(ids, count);
+      Arrays.sort(sortedIds);
+      for (int i = 1; i < count; i++) {
+        if (sortedIds[i] == sortedIds[i - 1]) {
+          throw new IllegalArgumentException("duplicate id " + sortedIds[i]);
+        }
+      }
+      sortedFactors = new double[count * rank];
+      for (int i = 0; i < count; i++) {
+        int row = Arrays.binarySearch(sortedIds, ids[i]);
+        System.arraycopy(factors, i * rank, sortedFactors, row * rank, rank);
+      }
+    }
+  }
+}
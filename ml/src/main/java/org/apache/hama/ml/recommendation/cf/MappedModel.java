@@ -0,0 +1,560 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.recommendation.cf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.commons.io.VectorWritable;
+import org.apache.hama.commons.math.DoubleVector;
+
+/**
+ * Memory-mapped OnlineCF model, used by {@link OnlineCF#load(String, boolean)}
+ * in lazy mode.
+ *
+ * Every model section (users, items, user features, item features and the
+ * two feature factorization matrices) is stored in its own local file with a
+ * fixed-width, id-indexed layout:
+ *
+ * <pre>
+ * int    magic
+ * int    version
+ * long   modification time of the source model
+ * long   count
+ * int    width
+ * long[] ids, sorted ascending         (count)
+ * double values, row i belongs to ids[i] (count * width)
+ * </pre>
+ *
+ * Rows are located with a binary search over the mapped id table and read
+ * straight from the mapped values, so only the touched pages are resident.
+ */
+public final class MappedModel {
+
+  protected static final Log LOG = LogFactory.getLog(MappedModel.class);
+
+  private static final int MAGIC = 0x484d4346; // HMCF
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+  // section files, ordered like the model delimiters
+  static final String USERS = "users";
+  static final String ITEMS = "items";
+  static final String USER_FEATURES = "userfeatures";
+  static final String ITEM_FEATURES = "itemfeatures";
+  static final String USER_FEATURE_MATRIX = "usermatrix";
+  static final String ITEM_FEATURE_MATRIX = "itemmatrix";
+  private static final String[] SECTIONS = { USERS, ITEMS, USER_FEATURES,
+      ITEM_FEATURES, USER_FEATURE_MATRIX, ITEM_FEATURE_MATRIX };
+  private static final String[] DELIMS = {
+      OnlineCF.Settings.DFLT_MODEL_USER_DELIM,
+      OnlineCF.Settings.DFLT_MODEL_ITEM_DELIM,
+      OnlineCF.Settings.DFLT_MODEL_USER_FEATURES_DELIM,
+      OnlineCF.Settings.DFLT_MODEL_ITEM_FEATURES_DELIM,
+      OnlineCF.Settings.DFLT_MODEL_USER_MTX_FEATURES_DELIM,
+      OnlineCF.Settings.DFLT_MODEL_ITEM_MTX_FEATURES_DELIM };
+  private static final String SUFFIX = ".bin";
+
+  private final Section[] sections = new Section[SECTIONS.length];
+
+  private MappedModel(File dir) throws IOException {
+    for (int i = 0; i < SECTIONS.length; i++) {
+      sections[i] = new Section(new File(dir, SECTIONS[i] + SUFFIX));
+    }
+  }
+
+  /**
+   * Open the mapped model in localDir, converting the trained model at
+   * modelPath first if localDir does not hold an up to date copy.
+   * @param conf - configuration of the model file system
+   * @param files - SequenceFile parts of the trained model
+   * @param stamp - modification time of the trained model
+   * @param localDir - local directory of the mapped model
+   */
+  public static MappedModel open(Configuration conf, List<Path> files,
+      long stamp, File localDir) throws IOException {
+    return open(conf, files, stamp, localDir,
+        OnlineCF.Settings.DFLT_LAZY_SORT_RECORDS);
+  }
+
+  /**
+   * Open the mapped model in localDir, converting the trained model at
+   * modelPath first if localDir does not hold an up to date copy.
+   * @param conf - configuration of the model file system
+   * @param files - SequenceFile parts of the trained model
+   * @param stamp - modification time of the trained model
+   * @param localDir - local directory of the mapped model
+   * @param runRecords - records sorted in memory at once during conversion
+   */
+  public static MappedModel open(Configuration conf, List<Path> files,
+      long stamp, File localDir, int runRecords) throws IOException {
+    if (!isCurrent(localDir, stamp)) {
+      convert(conf, files, stamp, localDir, runRecords);
+    }
+    return new MappedModel(localDir);
+  }
+
+  public Section getSection(String name) {
+    for (int i = 0; i < SECTIONS.length; i++) {
+      if (SECTIONS[i].equals(name)) {
+        return sections[i];
+      }
+    }
+    throw new IllegalArgumentException("unknown section " + name);
+  }
+
+  private static boolean isCurrent(File dir, long stamp) {
+    for (String name : SECTIONS) {
+      File file = new File(dir, name + SUFFIX);
+      if (!file.isFile()) {
+        return false;
+      }
+      try {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+          if (in.readInt() != MAGIC || in.readInt() != VERSION
+              || in.readLong() != stamp) {
+            return false;
+          }
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the fixed-width layout of a trained model with an external sort.
+   * Records are collected per section in runs of at most runRecords, every
+   * full run is sorted by id and spooled to a temporary file, and the runs
+   * are merged straight into the mapped section. Memory is bounded by one
+   * run per section, independent of the model size.
+   */
+  static void convert(Configuration conf, List<Path> files, long stamp,
+      File dir, int runRecords) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("can not create " + dir);
+    }
+    LOG.info("converting model to mapped layout in " + dir);
+
+    Runs[] runs = new Runs[SECTIONS.length];
+    try {
+      for (int i = 0; i < SECTIONS.length; i++) {
+        runs[i] = new Runs(dir, SECTIONS[i], runRecords);
+      }
+
+      for (Path file : files) {
+        FileSystem fs = file.getFileSystem(conf);
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, conf);
+        Text key = new Text();
+        VectorWritable value = new VectorWritable();
+        try {
+          while (reader.next(key, value)) {
+            String strKey = key.toString();
+            int section = sectionOf(strKey.substring(0, 1));
+            if (section < 0) {
+              continue;
+            }
+            long id;
+            try {
+              id = Long.parseLong(strKey.substring(1));
+            } catch (NumberFormatException e) {
+              id = 0;
+            }
+            runs[section].add(id, value.getVector());
+          }
+        } finally {
+          reader.close();
+        }
+      }
+
+      for (int i = 0; i < SECTIONS.length; i++) {
+        runs[i].merge(new File(dir, SECTIONS[i] + SUFFIX), stamp);
+      }
+    } finally {
+      for (Runs r : runs) {
+        if (r != null) {
+          r.delete();
+        }
+      }
+    }
+  }
+
+  private static int sectionOf(String delim) {
+    for (int i = 0; i < DELIMS.length; i++) {
+      if (DELIMS[i].equals(delim)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Sorted runs of the records of one section, spooled to local files.
+   */
+  private static final class Runs {
+    private final File dir;
+    private final String name;
+    private final int capacity;
+    private final List<File> files = new ArrayList<File>();
+
+    private int width = -1;
+    private long count;
+    private long[] ids;
+    private double[] values;
+    private int size;
+
+    Runs(File dir, String name, int capacity) {
+      this.dir = dir;
+      this.name = name;
+      this.capacity = Math.max(capacity, 1);
+    }
+
+    void add(long id, DoubleVector vector) throws IOException {
+      if (width < 0) {
+        width = vector.getLength();
+        ids = new long[capacity];
+        values = new double[capacity * width];
+      } else if (width != vector.getLength()) {
+        throw new IOException("section " + name + " expects width " + width
+            + " but id " + id + " has " + vector.getLength());
+      }
+      if (size == capacity) {
+        spill();
+      }
+      ids[size] = id;
+      for (int j = 0; j < width; j++) {
+        values[size * width + j] = vector.get(j);
+      }
+      size++;
+      count++;
+    }
+
+    private void spill() throws IOException {
+      sort();
+      File file = new File(dir, name + ".run" + files.size());
+      files.add(file);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(file)));
+      try {
+        for (int i = 0; i < size; i++) {
+          out.writeLong(ids[i]);
+          for (int j = 0; j < width; j++) {
+            out.writeDouble(values[i * width + j]);
+          }
+        }
+      } finally {
+        out.close();
+      }
+      size = 0;
+    }
+
+    /**
+     * Heapsort of the buffered rows by id, in place.
+     */
+    private void sort() {
+      for (int i = size / 2 - 1; i >= 0; i--) {
+        siftDown(i, size);
+      }
+      for (int end = size - 1; end > 0; end--) {
+        swap(0, end);
+        siftDown(0, end);
+      }
+    }
+
+    private void siftDown(int root, int end) {
+      while (2 * root + 1 < end) {
+        int child = 2 * root + 1;
+        if (child + 1 < end && ids[child + 1] > ids[child]) {
+          child++;
+        }
+        if (ids[root] >= ids[child]) {
+          return;
+        }
+        swap(root, child);
+        root = child;
+      }
+    }
+
+    private void swap(int a, int b) {
+      long id = ids[a];
+      ids[a] = ids[b];
+      ids[b] = id;
+      for (int j = 0; j < width; j++) {
+        double value = values[a * width + j];
+        values[a * width + j] = values[b * width + j];
+        values[b * width + j] = value;
+      }
+    }
+
+    /**
+     * Merge all runs in id order into the section file.
+     */
+    void merge(File file, long stamp) throws IOException {
+      if (size > 0) {
+        spill();
+      }
+      int rowWidth = Math.max(width, 0);
+      // the rows of the runs are no longer needed in memory
+      ids = null;
+      values = null;
+
+      long valuesOffset = HEADER_SIZE + 8L * count;
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      List<RunReader> readers = new ArrayList<RunReader>(files.size());
+      try {
+        raf.setLength(valuesOffset + 8L * rowWidth * count);
+        // magic is written last, so that an interrupted conversion is redone
+        raf.writeInt(0);
+        raf.writeInt(VERSION);
+        raf.writeLong(stamp);
+        raf.writeLong(count);
+        raf.writeInt(rowWidth);
+
+        Chunks idTable = new Chunks(raf.getChannel(), HEADER_SIZE, count,
+            FileChannel.MapMode.READ_WRITE);
+        Chunks rows = new Chunks(raf.getChannel(), valuesOffset, rowWidth
+            * count, FileChannel.MapMode.READ_WRITE);
+
+        PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>();
+        for (File run : files) {
+          RunReader reader = new RunReader(run, rowWidth);
+          readers.add(reader);
+          if (reader.next()) {
+            heads.add(reader);
+          }
+        }
+        long row = 0;
+        while (!heads.isEmpty()) {
+          RunReader head = heads.poll();
+          if (row > 0 && idTable.getLong(row - 1) == head.id) {
+            throw new IOException("duplicate id " + head.id + " in " + file);
+          }
+          idTable.putLong(row, head.id);
+          for (int j = 0; j < rowWidth; j++) {
+            rows.putDouble(row * rowWidth + j, head.row[j]);
+          }
+          row++;
+          if (head.next()) {
+            heads.add(head);
+          }
+        }
+        idTable.force();
+        rows.force();
+
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+      } finally {
+        for (RunReader reader : readers) {
+          reader.close();
+        }
+        raf.close();
+      }
+    }
+
+    void delete() {
+      for (File run : files) {
+        run.delete();
+      }
+    }
+  }
+
+  /**
+   * Reads the rows of a sorted run one after another.
+   */
+  private static final class RunReader implements Comparable<RunReader> {
+    private final DataInputStream in;
+    private final double[] row;
+    private long id;
+
+    RunReader(File file, int width) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file)));
+      this.row = new double[width];
+    }
+
+    boolean next() throws IOException {
+      try {
+        id = in.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+      try {
+        for (int j = 0; j < row.length; j++) {
+          row[j] = in.readDouble();
+        }
+      } catch (EOFException e) {
+        throw new IOException("truncated run file");
+      }
+      return true;
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public int compareTo(RunReader other) {
+      return id < other.id ? -1 : (id == other.id ? 0 : 1);
+    }
+  }
+
+  /**
+   * One mapped model section.
+   */
+  public static final class Section {
+    private final long count;
+    private final int width;
+    private final Chunks ids;
+    private final Chunks values;
+
+    Section(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+          throw new IOException(file + " is not a mapped model section");
+        }
+        raf.readLong();
+        this.count = raf.readLong();
+        this.width = raf.readInt();
+        FileChannel channel = raf.getChannel();
+        this.ids = new Chunks(channel, HEADER_SIZE, count,
+            FileChannel.MapMode.READ_ONLY);
+        this.values = new Chunks(channel, HEADER_SIZE + 8L * count, count
+            * width, FileChannel.MapMode.READ_ONLY);
+      } finally {
+        // mappings stay valid after the channel is closed
+        raf.close();
+      }
+    }
+
+    public long size() {
+      return count;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public long getId(long row) {
+      return ids.getLong(row);
+    }
+
+    /**
+     * @return row of id, negative if id is not present
+     */
+    public long indexOf(long id) {
+      long low = 0;
+      long high = count - 1;
+      while (low <= high) {
+        long mid = (low + high) >>> 1;
+        long midId = ids.getLong(mid);
+        if (midId < id) {
+          low = mid + 1;
+        } else if (midId > id) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    /**
+     * Copy the values of row into target.
+     */
+    public void get(long row, double[] target) {
+      long offset = row * width;
+      for (int i = 0; i < width; i++) {
+        target[i] = values.getDouble(offset + i);
+      }
+    }
+  }
+
+  // elements per mapped chunk, keeps every chunk below 2GB
+  private static final int CHUNK_SHIFT = 27;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  /**
+   * File region of 8 byte elements mapped in chunks, since a single
+   * MappedByteBuffer is limited to 2GB.
+   */
+  private static final class Chunks {
+    private final MappedByteBuffer[] buffers;
+
+    Chunks(FileChannel channel, long offset, long length,
+        FileChannel.MapMode mode) throws IOException {
+      int chunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+      this.buffers = new MappedByteBuffer[chunks];
+      for (int i = 0; i < chunks; i++) {
+        long start = (long) i << CHUNK_SHIFT;
+        long size = Math.min(length - start, 1L << CHUNK_SHIFT);
+        buffers[i] = channel.map(mode, offset + 8L * start, 8L * size);
+      }
+    }
+
+    long getLong(long index) {
+      return buffers[(int) (index >>> CHUNK_SHIFT)]
+          .getLong((int) (index & CHUNK_MASK) << 3);
+    }
+
+    void putLong(long index, long value) {
+      buffers[(int) (index >>> CHUNK_SHIFT)].putLong(
+          (int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    double getDouble(long index) {
+      return buffers[(int) (index >>> CHUNK_SHIFT)]
+          .getDouble((int) (index & CHUNK_MASK) << 3);
+    }
+
+    void putDouble(long index, double value) {
+      buffers[(int) (index >>> CHUNK_SHIFT)].putDouble(
+          (int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    void force() {
+      for (MappedByteBuffer buffer : buffers) {
+        buffer.force();
+      }
+    }
+  }
+}
@@ -17,12 +17,16 @@
  */
 package org.apache.hama.ml.recommendation.cf;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.InputMismatchException;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
 
@@ -43,6 +47,7 @@ import org.apache.hama.bsp.SequenceFileInputFormat;
 import org.apache.hama.bsp.SequenceFileOutputFormat;
 import org.apache.hama.commons.io.VectorWritable;
 import org.apache.hama.commons.math.DenseDoubleMatrix;
+import org.apache.hama.commons.math.DenseDoubleVector;
 import org.apache.hama.commons.math.DoubleMatrix;
 import org.apache.hama.commons.math.DoubleVector;
 import org.apache.hama.commons.math.SquareVectorFunction;
@@ -77,6 +82,19 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
     public static final String CONF_SKIP_COUNT = "ml.recommender.cf.skip.count";
 
     public static final String CONF_ONLINE_UPDATE_FUNCTION = "ml.recommender.cf.func.ou";
+    // threads per task for the parallel update, 0 - available processors
+    public static final String CONF_THREAD_COUNT = "ml.recommender.cf.threads";
+
+    // similarity / top-N index built at model load
+    public static final String CONF_INDEX_ENABLED = "ml.recommender.cf.index.enabled";
+    public static final String CONF_INDEX_TABLES = "ml.recommender.cf.index.tables";
+    public static final String CONF_INDEX_BITS = "ml.recommender.cf.index.bits";
+    public static final String CONF_INDEX_SEED = "ml.recommender.cf.index.seed";
+
+    // lazy (memory-mapped) model loading
+    public static final String CONF_LAZY_MODEL_DIR = "ml.recommender.cf.lazy.model.dir";
+    public static final String CONF_LAZY_CACHE_SIZE = "ml.recommender.cf.lazy.cache.size";
+    public static final String CONF_LAZY_SORT_RECORDS = "ml.recommender.cf.lazy.sort.records";
   
     // Message types
     public static final IntWritable MSG_INP_USER_FEATURES = new IntWritable(0);
@@ -97,6 +115,16 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
     public static final int DFLT_ITERATION_COUNT = 100;
     public static final int DFLT_MATRIX_RANK = 10;
     public static final int DFLT_SKIP_COUNT = 5;
+    public static final int DFLT_INDEX_TABLES = 8;
+    // 0 - choose number of hash bits from model size
+    public static final int DFLT_INDEX_BITS = 0;
+    public static final long DFLT_INDEX_SEED = 42L;
+    // candidates re-ranked with update function per requested item
+    public static final int DFLT_INDEX_OVERSAMPLING = 4;
+    // hot vectors kept per model section in lazy mode
+    public static final int DFLT_LAZY_CACHE_SIZE = 100000;
+    // records per model section sorted in memory while converting
+    public static final int DFLT_LAZY_SORT_RECORDS = 1 << 16;
     
     // used for delimiting input data and we assume they will be length of one
     public static final String DFLT_PREFERENCE_DELIM = "p";
@@ -129,6 +157,15 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
   private HashMap<Long, VectorWritable> modelItemFeatures = new HashMap<Long, VectorWritable>();
   private DoubleMatrix modelUserFeatureFactorizedValues = null;
   private DoubleMatrix modelItemFeatureFactorizedValues = null;
+  // approximate nearest neighbour indexes over factorized values
+  private FactorIndex userIndex = null;
+  private FactorIndex itemIndex = null;
+  private FactorIndex itemPreferenceIndex = null;
+  // used only if model is loaded lazily
+  private LazyValues lazyUserFactorizedValues = null;
+  private LazyValues lazyItemFactorizedValues = null;
+  private LazyValues lazyUserFeatures = null;
+  private LazyValues lazyItemFeatures = null;
   private String modelPath = null;
   private boolean isLazyLoadModel = false;
   private Function function = null;
@@ -209,6 +246,70 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
     conf.set(OnlineCF.Settings.CONF_OUTPUT_PATH, path);
   }
 
+  /**
+   * Enable or disable the similarity and top-N index
+   * which is built while loading the model
+   * @param enabled - if false, queries scan all users/items
+   */
+  public void setIndexEnabled(boolean enabled) {
+    conf.setBoolean(OnlineCF.Settings.CONF_INDEX_ENABLED, enabled);
+  }
+
+  /**
+   * Setting hash table count of the similarity index,
+   * more tables increase recall and memory usage
+   * @param count - number of hash tables
+   */
+  public void setIndexTables(int count) {
+    conf.setInt(OnlineCF.Settings.CONF_INDEX_TABLES, count);
+  }
+
+  /**
+   * Setting hash bits per table of the similarity index,
+   * more bits give smaller buckets and faster but less accurate queries
+   * @param bits - hash bits per table, 0 to derive from model size
+   */
+  public void setIndexBits(int bits) {
+    conf.setInt(OnlineCF.Settings.CONF_INDEX_BITS, bits);
+  }
+
+  /**
+   * Local directory of the memory-mapped model used in lazy mode,
+   * trained model is converted to this directory on first lazy load
+   * @param dir - local directory
+   */
+  public void setLazyModelDir(String dir) {
+    conf.set(OnlineCF.Settings.CONF_LAZY_MODEL_DIR, dir);
+  }
+
+  /**
+   * Setting number of hot vectors cached per model section in lazy mode
+   * @param count - cached vectors
+   */
+  public void setLazyCacheSize(int count) {
+    conf.setInt(OnlineCF.Settings.CONF_LAZY_CACHE_SIZE, count);
+  }
+
+  /**
+   * Setting number of records per model section sorted in memory
+   * when the trained model is converted for lazy mode
+   * @param count - records per sorted run
+   */
+  public void setLazySortRecords(int count) {
+    conf.setInt(OnlineCF.Settings.CONF_LAZY_SORT_RECORDS, count);
+  }
+
+  /**
+   * Setting thread count per task used to compute
+   * factorized values in parallel, only update functions
+   * implementing {@link OnlineUpdate.PrimitiveFunction}
+   * are run in parallel
+   * @param count - threads per task, 0 for available processors
+   */
+  public void setThreadCount(int count) {
+    conf.setInt(OnlineCF.Settings.CONF_THREAD_COUNT, count);
+  }
+
   /**
    * Set update function to be used in compute phase
    * of online cf train bsp
@@ -292,83 +393,93 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
     return true;
   }
 
+  /**
+   * {@inheritDoc}
+   * In lazy mode the trained model is converted once into a fixed-width,
+   * memory-mapped layout (see {@link MappedModel}) in a local directory
+   * and factors are read from the mapped files on demand.
+   */
   @Override
   public boolean load(String path, boolean lazy) {
     this.isLazyLoadModel = lazy;
     this.modelPath = path;
-    if (lazy == false) {
-      Configuration conf = new Configuration();
-      Path dataPath = new Path(modelPath);
+    Configuration fsConf = new Configuration();
+    Path dataPath = new Path(modelPath);
 
-      try {
-        FileSystem fs = dataPath.getFileSystem(conf);
-        LinkedList<Path> files = new LinkedList<Path>();
+    try {
+      FileSystem fs = dataPath.getFileSystem(fsConf);
+      LinkedList<Path> files = new LinkedList<Path>();
 
-        if (!fs.exists(dataPath)) {
-          this.isLazyLoadModel = false;
-          this.modelPath = null;
-          return false;
-        }
-        
-        if(!fs.isFile(dataPath)) {
-          for (int i=0; i<100000; i++) {
-            Path partFile = new Path(modelPath + "/part-" + String.valueOf(100000 + i).substring(1, 6));
-            if(fs.exists(partFile)) {
-              files.add(partFile);
-            } else {
-              break;
-            }
+      if (!fs.exists(dataPath)) {
+        this.isLazyLoadModel = false;
+        this.modelPath = null;
+        return false;
+      }
+      
+      if(!fs.isFile(dataPath)) {
+        for (int i=0; i<100000; i++) {
+          Path partFile = new Path(modelPath + "/part-" + String.valueOf(100000 + i).substring(1, 6));
+          if(fs.exists(partFile)) {
+            files.add(partFile);
+          } else {
+            break;
           }
-        } else {
-          files.add(dataPath);
         }
+      } else {
+        files.add(dataPath);
+      }
+
+      if (lazy) {
+        loadMapped(fsConf, files, fs.getFileStatus(dataPath).getModificationTime());
+        return true;
+      }
 
-        LOG.info("loading model from " + path);
-        for (Path file : files){
-          SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, conf);
-          Text key = new Text();
-          VectorWritable value = new VectorWritable();
-          String strKey = null;
-          Long actualKey = null;
-          String firstSymbol = null;
-          while (reader.next(key, value) != false) {
-            strKey = key.toString();
-            firstSymbol = strKey.substring(0, 1);
-            try {
-              actualKey = Long.valueOf(strKey.substring(1));
-            } catch (Exception e) {
-              actualKey = new Long(0);
-            }
-
-            if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_DELIM)) {
-              modelItemFactorizedValues.put(actualKey, new VectorWritable(value));
-            } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_DELIM)) {
-              modelUserFactorizedValues.put(actualKey, new VectorWritable(value));
-            } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_FEATURES_DELIM)) {
-              modelUserFeatures.put(actualKey, new VectorWritable(value));
-            } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_FEATURES_DELIM)) {
-              modelItemFeatures.put(actualKey, new VectorWritable(value));
-            } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_MTX_FEATURES_DELIM)) {
-              modelUserFeatureFactorizedValues = convertVectorWritable(value);
-            } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_MTX_FEATURES_DELIM)) {
-              modelItemFeatureFactorizedValues = convertVectorWritable(value);
-            } else {
-              // unknown
-              continue;
-            }
+      LOG.info("loading model from " + path);
+      for (Path file : files){
+        SequenceFile.Reader reader = new SequenceFile.Reader(fs, file, fsConf);
+        Text key = new Text();
+        VectorWritable value = new VectorWritable();
+        String strKey = null;
+        Long actualKey = null;
+        String firstSymbol = null;
+        while (reader.next(key, value) != false) {
+          strKey = key.toString();
+          firstSymbol = strKey.substring(0, 1);
+          try {
+            actualKey = Long.valueOf(strKey.substring(1));
+          } catch (Exception e) {
+            actualKey = new Long(0);
+          }
+
+          if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_DELIM)) {
+            modelItemFactorizedValues.put(actualKey, new VectorWritable(value));
+          } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_DELIM)) {
+            modelUserFactorizedValues.put(actualKey, new VectorWritable(value));
+          } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_FEATURES_DELIM)) {
+            modelUserFeatures.put(actualKey, new VectorWritable(value));
+          } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_FEATURES_DELIM)) {
+            modelItemFeatures.put(actualKey, new VectorWritable(value));
+          } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_USER_MTX_FEATURES_DELIM)) {
+            modelUserFeatureFactorizedValues = convertVectorWritable(value);
+          } else if (firstSymbol.equals(OnlineCF.Settings.DFLT_MODEL_ITEM_MTX_FEATURES_DELIM)) {
+            modelItemFeatureFactorizedValues = convertVectorWritable(value);
+          } else {
+            // unknown
+            continue;
           }
-          reader.close();
         }
-        LOG.info("loaded: " + modelUserFactorizedValues.size() + " users, "
-                        + modelUserFeatures.size() + " user features, "
-                        + modelItemFactorizedValues.size() + " items, "
-                        + modelItemFeatures.size() + " item feature values");
-      } catch (Exception e) {
-        e.printStackTrace();
-        this.isLazyLoadModel = false;
-        this.modelPath = null;
-        return false;
+        reader.close();
       }
+      LOG.info("loaded: " + modelUserFactorizedValues.size() + " users, "
+                      + modelUserFeatures.size() + " user features, "
+                      + modelItemFactorizedValues.size() + " items, "
+                      + modelItemFeatures.size() + " item feature values");
+      buildIndexes();
+    } catch (Exception e) {
+      e.printStackTrace();
+      this.isLazyLoadModel = false;
+      this.modelPath = null;
+      return false;
     }
     return true;
   }
@@ -388,81 +499,349 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
     return res;
   }
 
-  @Override
-  public double estimatePreference(long userId, long itemId) {
-    if (isLazyLoadModel == false) {
-      if (function == null) {
-        Class<?> cls = conf.getClass(OnlineCF.Settings.CONF_ONLINE_UPDATE_FUNCTION, null);
-        try {
-          function = (OnlineUpdate.Function)(cls.newInstance());
-        } catch (Exception e) {
-          // set default function
+  private void loadMapped(Configuration fsConf, List<Path> files, long stamp) 
+      throws IOException {
+    String dir = conf.get(OnlineCF.Settings.CONF_LAZY_MODEL_DIR, null);
+    File localDir = (dir != null) ? new File(dir) : 
+        new File(System.getProperty("java.io.tmpdir"), "onlinecf-" 
+            + Integer.toHexString(new Path(modelPath).makeQualified(
+                new Path(modelPath).getFileSystem(fsConf)).toString().hashCode()));
+    userIndex = null;
+    itemIndex = null;
+    itemPreferenceIndex = null;
+    MappedModel model = MappedModel.open(fsConf, files, stamp, localDir,
+        conf.getInt(OnlineCF.Settings.CONF_LAZY_SORT_RECORDS,
+            OnlineCF.Settings.DFLT_LAZY_SORT_RECORDS));
+    int cacheSize = conf.getInt(OnlineCF.Settings.CONF_LAZY_CACHE_SIZE, 
+        OnlineCF.Settings.DFLT_LAZY_CACHE_SIZE);
+
+    lazyUserFactorizedValues = new LazyValues(model.getSection(MappedModel.USERS), cacheSize);
+    lazyItemFactorizedValues = new LazyValues(model.getSection(MappedModel.ITEMS), cacheSize);
+    lazyUserFeatures = new LazyValues(model.getSection(MappedModel.USER_FEATURES), cacheSize);
+    lazyItemFeatures = new LazyValues(model.getSection(MappedModel.ITEM_FEATURES), cacheSize);
+    // feature factorization matrices are small, keep them in memory
+    LazyValues matrix = new LazyValues(model.getSection(MappedModel.USER_FEATURE_MATRIX), 0);
+    if (matrix.section.size() > 0) {
+      modelUserFeatureFactorizedValues = convertVectorWritable(matrix.read(0));
+    }
+    matrix = new LazyValues(model.getSection(MappedModel.ITEM_FEATURE_MATRIX), 0);
+    if (matrix.section.size() > 0) {
+      modelItemFeatureFactorizedValues = convertVectorWritable(matrix.read(0));
+    }
+    LOG.info("mapped: " + lazyUserFactorizedValues.section.size() + " users, "
+                    + lazyUserFeatures.section.size() + " user features, "
+                    + lazyItemFactorizedValues.section.size() + " items, "
+                    + lazyItemFeatures.section.size() + " item feature values"
+                    + " from " + localDir);
+  }
+
+  /**
+   * Mapped model section with an LRU cache of hot vectors.
+   */
+  private static class LazyValues {
+    private final MappedModel.Section section;
+    private final LinkedHashMap<Long, VectorWritable> cache;
+
+    LazyValues(MappedModel.Section section, final int cacheSize) {
+      this.section = section;
+      this.cache = new LinkedHashMap<Long, VectorWritable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, VectorWritable> eldest) {
+          return size() > cacheSize;
         }
-      }
+      };
+    }
 
-      InputStructure e = new InputStructure();
-      e.item = this.modelItemFactorizedValues.get(Long.valueOf(itemId));
-      e.user = this.modelUserFactorizedValues.get(Long.valueOf(userId));
-      e.itemFeatureFactorized = this.modelItemFeatureFactorizedValues;
-      e.userFeatureFactorized = this.modelUserFeatureFactorizedValues;
-      e.itemFeatures = this.modelItemFeatures.get(Long.valueOf(itemId));
-      e.userFeatures = this.modelUserFeatures.get(Long.valueOf(userId));
-      if (e.item == null || e.user == null) {
-        return 0;
+    VectorWritable get(long id) {
+      Long key = Long.valueOf(id);
+      VectorWritable value = cache.get(key);
+      if (value == null) {
+        long row = section.indexOf(id);
+        if (row < 0) {
+          return null;
+        }
+        value = read(row);
+        cache.put(key, value);
       }
+      return value;
+    }
 
-      return function.predict(e);
+    VectorWritable read(long row) {
+      double[] values = new double[section.getWidth()];
+      section.get(row, values);
+      return new VectorWritable(new DenseDoubleVector(values));
     }
-    return 0;
-    
   }
 
-  @Override
-  public List<Preference<Long, Long>> getMostPreferredItems(long userId, int count) {
-    Comparator<Preference<Long, Long>> scoreComparator = new Comparator<Preference<Long, Long>>() {
-      
-      @Override
-      public int compare(Preference<Long, Long> arg0, Preference<Long, Long> arg1) {
-        double difference = arg0.getValue().get() - arg1.getValue().get(); 
-        return (int)(100000*difference);
+  private VectorWritable getUserFactorizedValues(long userId) {
+    if (isLazyLoadModel) {
+      return (lazyUserFactorizedValues != null) ? lazyUserFactorizedValues.get(userId) : null;
+    }
+    return modelUserFactorizedValues.get(Long.valueOf(userId));
+  }
+
+  private VectorWritable getItemFactorizedValues(long itemId) {
+    if (isLazyLoadModel) {
+      return (lazyItemFactorizedValues != null) ? lazyItemFactorizedValues.get(itemId) : null;
+    }
+    return modelItemFactorizedValues.get(Long.valueOf(itemId));
+  }
+
+  private VectorWritable getUserFeatures(long userId) {
+    if (isLazyLoadModel) {
+      return (lazyUserFeatures != null) ? lazyUserFeatures.get(userId) : null;
+    }
+    return modelUserFeatures.get(Long.valueOf(userId));
+  }
+
+  private VectorWritable getItemFeatures(long itemId) {
+    if (isLazyLoadModel) {
+      return (lazyItemFeatures != null) ? lazyItemFeatures.get(itemId) : null;
+    }
+    return modelItemFeatures.get(Long.valueOf(itemId));
+  }
+
+  private void buildIndexes() {
+    userIndex = null;
+    itemIndex = null;
+    itemPreferenceIndex = null;
+    if (!conf.getBoolean(OnlineCF.Settings.CONF_INDEX_ENABLED, true)) {
+      return;
+    }
+
+    int tables = conf.getInt(OnlineCF.Settings.CONF_INDEX_TABLES,
+        OnlineCF.Settings.DFLT_INDEX_TABLES);
+    int bits = conf.getInt(OnlineCF.Settings.CONF_INDEX_BITS,
+        OnlineCF.Settings.DFLT_INDEX_BITS);
+    long seed = conf.getLong(OnlineCF.Settings.CONF_INDEX_SEED,
+        OnlineCF.Settings.DFLT_INDEX_SEED);
+
+    FactorIndex.Builder users = toIndexBuilder(modelUserFactorizedValues);
+    if (users != null) {
+      userIndex = users.build(FactorIndex.Metric.EUCLIDEAN, tables, bits, seed);
+    }
+    FactorIndex.Builder items = toIndexBuilder(modelItemFactorizedValues);
+    if (items != null) {
+      // both item indexes share the same factor storage
+      itemIndex = items.build(FactorIndex.Metric.EUCLIDEAN, tables, bits, seed);
+      itemPreferenceIndex = items.build(FactorIndex.Metric.INNER_PRODUCT,
+          tables, bits, seed);
+    }
+    LOG.info("built similarity indexes with " + tables + " hash tables");
+  }
+
+  private FactorIndex.Builder toIndexBuilder(HashMap<Long, VectorWritable> values) {
+    FactorIndex.Builder builder = null;
+    for (Entry<Long, VectorWritable> entry : values.entrySet()) {
+      DoubleVector vector = entry.getValue().getVector();
+      if (builder == null) {
+        builder = new FactorIndex.Builder(vector.getLength());
       }
-    };
-    PriorityQueue<Preference<Long, Long>> queue = new PriorityQueue<Preference<Long, Long>>(count, scoreComparator);
-    LinkedList<Preference<Long, Long>> results = new LinkedList<Preference<Long, Long>>();
-    
+      builder.add(entry.getKey().longValue(), vector);
+    }
+    return builder;
+  }
+
+  private void initFunction() {
     if (function == null) {
       Class<?> cls = conf.getClass(OnlineCF.Settings.CONF_ONLINE_UPDATE_FUNCTION, null);
       try {
         function = (OnlineUpdate.Function)(cls.newInstance());
       } catch (Exception e) {
         // set default function
+        function = new MeanAbsError();
       }
     }
-    
+  }
+
+  private static List<Pair<Long, Double>> toPairs(FactorIndex.Result result) {
+    List<Pair<Long, Double>> results = new ArrayList<Pair<Long, Double>>();
+    if (result == null) {
+      return results;
+    }
+    for (int i = 0; i < result.size(); i++) {
+      results.add(new Pair<Long, Double>(result.getId(i), result.getScore(i)));
+    }
+    return results;
+  }
+
+  @Override
+  public double estimatePreference(long userId, long itemId) {
+    initFunction();
+
     InputStructure e = new InputStructure();
-    e.user = this.modelUserFactorizedValues.get(Long.valueOf(userId));
-    e.userFeatureFactorized = this.modelUserFeatureFactorizedValues;
-    e.userFeatures = this.modelUserFeatures.get(Long.valueOf(userId));
+    e.item = getItemFactorizedValues(itemId);
+    e.user = getUserFactorizedValues(userId);
     e.itemFeatureFactorized = this.modelItemFeatureFactorizedValues;
-    if (e.user == null) {
-      return null;
+    e.userFeatureFactorized = this.modelUserFeatureFactorizedValues;
+    e.itemFeatures = getItemFeatures(itemId);
+    e.userFeatures = getUserFeatures(userId);
+    if (e.item == null || e.user == null) {
+      return 0;
+    }
+
+    return function.predict(e);
+  }
+
+  @Override
+  public List<Preference<Long, Long>> getMostPreferredItems(long userId, int count) {
+    List<List<Preference<Long, Long>>> results = 
+        getMostPreferredItems(new long[] { userId }, count);
+    return results.get(0);
+  }
+
+  /**
+   * get most preferred items for several users at once,
+   * candidates are taken from the item index and re-ranked
+   * with the update function
+   * @param userIds
+   * @param count
+   * @return most preferred items per user, ordered by value (descending),
+   *         null for unknown users
+   */
+  public List<List<Preference<Long, Long>>> getMostPreferredItems(long[] userIds, int count) {
+    initFunction();
+    List<List<Preference<Long, Long>>> results = new ArrayList<List<Preference<Long, Long>>>(userIds.length);
+
+    InputStructure[] inputs = new InputStructure[userIds.length];
+    double[][] queries = new double[userIds.length][];
+    for (int i = 0; i < userIds.length; i++) {
+      InputStructure e = new InputStructure();
+      e.user = getUserFactorizedValues(userIds[i]);
+      e.userFeatureFactorized = this.modelUserFeatureFactorizedValues;
+      e.userFeatures = getUserFeatures(userIds[i]);
+      e.itemFeatureFactorized = this.modelItemFeatureFactorizedValues;
+      if (e.user == null) {
+        continue;
+      }
+      inputs[i] = e;
+      // user side of the prediction: alpha_a + mu * x_a
+      DoubleVector query = e.user.getVector();
+      if (e.userFeatures != null && e.userFeatureFactorized != null) {
+        query = query.add(e.userFeatureFactorized.multiplyVector(e.userFeatures.getVector()));
+      }
+      queries[i] = query.toArray();
+    }
+
+    FactorIndex.Result[] candidates = null;
+    if (itemPreferenceIndex != null) {
+      int candidateCount = count * OnlineCF.Settings.DFLT_INDEX_OVERSAMPLING;
+      candidates = new FactorIndex.Result[userIds.length];
+      for (int i = 0; i < userIds.length; i++) {
+        if (queries[i] != null) {
+          candidates[i] = itemPreferenceIndex.search(queries[i], candidateCount);
+        }
+      }
+    }
+
+    for (int i = 0; i < userIds.length; i++) {
+      InputStructure e = inputs[i];
+      if (e == null) {
+        results.add(null);
+        continue;
+      }
+      PriorityQueue<Preference<Long, Long>> queue = 
+          new PriorityQueue<Preference<Long, Long>>(count + 1, PREFERENCE_COMPARATOR);
+      if (candidates != null) {
+        FactorIndex.Result result = candidates[i];
+        for (int j = 0; j < result.size(); j++) {
+          Long itemId = Long.valueOf(result.getId(j));
+          e.item = modelItemFactorizedValues.get(itemId);
+          e.itemFeatures = this.modelItemFeatures.get(itemId);
+          offer(queue, new Preference<Long, Long>(userIds[i], itemId, function.predict(e)), count);
+        }
+      } else if (isLazyLoadModel) {
+        // sequential scan over the mapped items, bypassing the cache
+        MappedModel.Section items = lazyItemFactorizedValues.section;
+        double[] values = new double[items.getWidth()];
+        e.item = new VectorWritable(new DenseDoubleVector(values));
+        for (long row = 0; row < items.size(); row++) {
+          long itemId = items.getId(row);
+          items.get(row, values);
+          e.itemFeatures = getItemFeatures(itemId);
+          offer(queue, new Preference<Long, Long>(userIds[i], itemId, function.predict(e)), count);
+        }
+      } else {
+        for (Entry<Long, VectorWritable> item : modelItemFactorizedValues.entrySet()) {
+          e.item = item.getValue();
+          e.itemFeatures = this.modelItemFeatures.get(item.getKey());
+          offer(queue, new Preference<Long, Long>(userIds[i], item.getKey(), function.predict(e)), count);
+        }
+      }
+      results.add(drainDescending(queue));
+    }
+    return results;
+  }
+
+  // lowest preference first, so that the head of a bounded queue is evicted
+  private static final Comparator<Preference<Long, Long>> PREFERENCE_COMPARATOR = 
+      new Comparator<Preference<Long, Long>>() {
+    @Override
+    public int compare(Preference<Long, Long> arg0, Preference<Long, Long> arg1) {
+      return Double.compare(arg0.getValue().get(), arg1.getValue().get());
+    }
+  };
+
+  // highest distance first, so that the head of a bounded queue is evicted
+  private static final Comparator<Pair<Long, Double>> DISTANCE_COMPARATOR = 
+      new Comparator<Pair<Long, Double>>() {
+    @Override
+    public int compare(Pair<Long, Double> arg0, Pair<Long, Double> arg1) {
+      return Double.compare(arg1.getValue().doubleValue(), arg0.getValue().doubleValue());
+    }
+  };
+
+  private static <T> void offer(PriorityQueue<T> queue, T element, int count) {
+    queue.add(element);
+    if (queue.size() > count) {
+      queue.poll();
+    }
+  }
+
+  private static <T> List<T> drainDescending(PriorityQueue<T> queue) {
+    LinkedList<T> results = new LinkedList<T>();
+    while (!queue.isEmpty()) {
+      results.addFirst(queue.poll());
     }
-    
-    double score = 0.0;
-    for (Entry<Long, VectorWritable> item : modelItemFactorizedValues.entrySet()) {
-      e.item = item.getValue();
-      e.itemFeatures = this.modelItemFeatures.get(item.getKey());
-      score = function.predict(e);
-      queue.add(new Preference<Long, Long>(userId, item.getKey(), score));
-    }
-    results.addAll(queue);
     return results;
   }
 
+  /**
+   * Euclidean nearest neighbours by a sequential scan over a mapped section,
+   * scanned rows do not pass through the cache.
+   */
+  private static List<Pair<Long, Double>> scanMostSimilar(LazyValues values, long id, int count) {
+    PriorityQueue<Pair<Long, Double>> queue = 
+        new PriorityQueue<Pair<Long, Double>>(count + 1, DISTANCE_COMPARATOR);
+    VectorWritable query = (values != null) ? values.get(id) : null;
+    if (query == null) {
+      return drainDescending(queue);
+    }
+    MappedModel.Section section = values.section;
+    double[] target = query.getVector().toArray();
+    double[] candidate = new double[section.getWidth()];
+    for (long row = 0; row < section.size(); row++) {
+      long candidateId = section.getId(row);
+      if (candidateId == id) {
+        continue;
+      }
+      section.get(row, candidate);
+      double sum = 0.0;
+      for (int i = 0; i < candidate.length; i++) {
+        double diff = target[i] - candidate[i];
+        sum += diff * diff;
+      }
+      offer(queue, new Pair<Long, Double>(candidateId, Math.sqrt(sum)), count);
+    }
+    return drainDescending(queue);
+  }
+
   @Override
   public double calculateUserSimilarity(long user1, long user2) {
-    VectorWritable usr1 = this.modelUserFactorizedValues.get(Long.valueOf(user1));
-    VectorWritable usr2 = this.modelUserFactorizedValues.get(Long.valueOf(user2));
+    VectorWritable usr1 = getUserFactorizedValues(user1);
+    VectorWritable usr2 = getUserFactorizedValues(user2);
     if (usr1 == null || usr2 == null) {
       return Double.MAX_VALUE;
     }
@@ -477,32 +856,60 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
                     .sum() , 0.5);
   }
 
+  /**
+   * {@inheritDoc}
+   * Results are ordered by distance (ascending) and do not contain
+   * the given user itself.
+   */
   @Override
   public List<Pair<Long, Double>> getMostSimilarUsers(long user, int count) {
-    
-    Comparator<Pair<Long, Double>> similarityComparator = new Comparator<Pair<Long, Double>>() {
-      
-      @Override
-      public int compare(Pair<Long, Double> arg0, Pair<Long, Double> arg1) {
-        double difference = arg0.getValue().doubleValue() - arg1.getValue().doubleValue(); 
-        return (int)(100000*difference);
-      }
-    };
-    PriorityQueue<Pair<Long, Double>> queue = new PriorityQueue<Pair<Long, Double>>(count, similarityComparator);
-    LinkedList<Pair<Long, Double>> results = new LinkedList<Pair<Long, Double>>();
+    if (userIndex != null) {
+      return toPairs(userIndex.search(user, count));
+    }
+
+    if (isLazyLoadModel) {
+      return scanMostSimilar(lazyUserFactorizedValues, user, count);
+    }
+
+    PriorityQueue<Pair<Long, Double>> queue = 
+        new PriorityQueue<Pair<Long, Double>>(count + 1, DISTANCE_COMPARATOR);
+    if (!modelUserFactorizedValues.containsKey(Long.valueOf(user))) {
+      return drainDescending(queue);
+    }
     for ( Long candidateUser : modelUserFactorizedValues.keySet() ) {
+      if (candidateUser.longValue() == user) {
+        continue;
+      }
       double similarity = calculateUserSimilarity(user, candidateUser);
-      Pair<Long, Double> targetUser = new Pair<Long, Double>(candidateUser, similarity);
-      queue.add(targetUser);
+      offer(queue, new Pair<Long, Double>(candidateUser, similarity), count);
+    }
+    return drainDescending(queue);
+  }
+
+  /**
+   * get most similar users for several users at once
+   * @param users - user ids
+   * @param count - number of similar users per user
+   * @return similar users per given user, see {@link #getMostSimilarUsers(long, int)}
+   */
+  public List<List<Pair<Long, Double>>> getMostSimilarUsers(long[] users, int count) {
+    List<List<Pair<Long, Double>>> results = new ArrayList<List<Pair<Long, Double>>>(users.length);
+    if (userIndex != null) {
+      for (FactorIndex.Result result : userIndex.search(users, count)) {
+        results.add(toPairs(result));
+      }
+      return results;
+    }
+    for (long user : users) {
+      results.add(getMostSimilarUsers(user, count));
     }
-    results.addAll(queue);
     return results;
   }
 
   @Override
   public double calculateItemSimilarity(long item1, long item2) {
-    VectorWritable itm1 = this.modelUserFactorizedValues.get(Long.valueOf(item1));
-    VectorWritable itm2 = this.modelUserFactorizedValues.get(Long.valueOf(item2));
+    VectorWritable itm1 = getItemFactorizedValues(item1);
+    VectorWritable itm2 = getItemFactorizedValues(item2);
     if (itm1 == null || itm2 == null) {
       return Double.MAX_VALUE;
     }
@@ -517,25 +924,53 @@ public class OnlineCF implements Recommender, RecommenderIO, UserSimilarity, Ite
                       .sum() , 0.5);
   }
 
+  /**
+   * {@inheritDoc}
+   * Results are ordered by distance (ascending) and do not contain
+   * the given item itself.
+   */
   @Override
   public List<Pair<Long, Double>> getMostSimilarItems(long item, int count) {
-    
-    Comparator<Pair<Long, Double>> similarityComparator = new Comparator<Pair<Long, Double>>() {
-      
-      @Override
-      public int compare(Pair<Long, Double> arg0, Pair<Long, Double> arg1) {
-        double difference = arg0.getValue().doubleValue() - arg1.getValue().doubleValue(); 
-        return (int)(100000*difference);
-      }
-    };
-    PriorityQueue<Pair<Long, Double>> queue = new PriorityQueue<Pair<Long, Double>>(count, similarityComparator);
-    LinkedList<Pair<Long, Double>> results = new LinkedList<Pair<Long, Double>>();
+    if (itemIndex != null) {
+      return toPairs(itemIndex.search(item, count));
+    }
+
+    if (isLazyLoadModel) {
+      return scanMostSimilar(lazyItemFactorizedValues, item, count);
+    }
+
+    PriorityQueue<Pair<Long, Double>> queue = 
+        new PriorityQueue<Pair<Long, Double>>(count + 1, DISTANCE_COMPARATOR);
+    if (!modelItemFactorizedValues.containsKey(Long.valueOf(item))) {
+      return drainDescending(queue);
+    }
     for ( Long candidateItem : modelItemFactorizedValues.keySet() ) {
+      if (candidateItem.longValue() == item) {
+        continue;
+      }
       double similarity = calculateItemSimilarity(item, candidateItem);
-      Pair<Long, Double> targetItem = new Pair<Long, Double>(candidateItem, similarity);
-      queue.add(targetItem);
+      offer(queue, new Pair<Long, Double>(candidateItem, similarity), count);
+    }
+    return drainDescending(queue);
+  }
+
+  /**
+   * get most similar items for several items at once
+   * @param items - item ids
+   * @param count - number of similar items per item
+   * @return similar items per given item, see {@link #getMostSimilarItems(long, int)}
+   */
+  public List<List<Pair<Long, Double>>> getMostSimilarItems(long[] items, int count) {
+    List<List<Pair<Long, Double>>> results = new ArrayList<List<Pair<Long, Double>>>(items.length);
+    if (itemIndex != null) {
+      for (FactorIndex.Result result : itemIndex.search(items, count)) {
+        results.add(toPairs(result));
+      }
+      return results;
+    }
+    for (long item : items) {
+      results.add(getMostSimilarItems(item, count));
     }
-    results.addAll(queue);
     return results;
   }
 
@@ -25,6 +25,12 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -76,6 +82,19 @@ public class OnlineTrainBSP extends
   // Input Preferences
   private ArrayList<Preference<String, String>> preferences = new ArrayList<Preference<String, String>>();
   private ArrayList<Integer> indexes = new ArrayList<Integer>();
+
+  // interned ids and primitive factors, used if the update function
+  // can run in parallel on primitive arrays
+  private int threadCount = 1;
+  private ExecutorService workers = null;
+  private String[] userIds = null;
+  private String[] itemIds = null;
+  private double[] userFactors = null;
+  private double[] itemFactors = null;
+  private int[] prefUsers = null;
+  private int[] prefItems = null;
+  private double[] prefScores = null;
+  private int[] order = null;
   
   Random rnd = new Random();
 
@@ -100,6 +119,11 @@ public class OnlineTrainBSP extends
     } catch (Exception e) {
       // set default function
     }
+
+    threadCount = conf.getInt(OnlineCF.Settings.CONF_THREAD_COUNT, 0);
+    if (threadCount <= 0) {
+      threadCount = Runtime.getRuntime().availableProcessors();
+    }
   }
 
   @Override
@@ -132,16 +156,177 @@ public class OnlineTrainBSP extends
     // input partitioning end
     
     // calculation steps
-    for (int i=0; i<ITERATION; i++) {
-      computeValues();
-      if ((i+1)%SKIP_COUNT == 0) {
-        normalizeWithBroadcastingValues(peer);
+    boolean parallel = internValues();
+    try {
+      for (int i=0; i<ITERATION; i++) {
+        if (parallel) {
+          computeValuesInParallel();
+        } else {
+          computeValues();
+        }
+        if ((i+1)%SKIP_COUNT == 0) {
+          if (parallel) {
+            storeInternedValues();
+            normalizeWithBroadcastingValues(peer);
+            loadInternedItemValues();
+          } else {
+            normalizeWithBroadcastingValues(peer);
+          }
+        }
+      }
+      if (parallel) {
+        storeInternedValues();
+      }
+    } finally {
+      if (workers != null) {
+        workers.shutdownNow();
+        workers = null;
       }
     }
 
     saveModel(peer);
   }
 
+  /**
+   * Map user and item ids to dense integers and copy factorized values
+   * and preferences into primitive arrays.
+   * @return false if the update function or the model (user/item features)
+   *         does not allow the parallel update
+   */
+  private boolean internValues() {
+    if (!(function instanceof OnlineUpdate.PrimitiveFunction)
+        || userFeatureMatrix != null || itemFeatureMatrix != null) {
+      return false;
+    }
+
+    HashMap<String, Integer> userIndex = new HashMap<String, Integer>();
+    userIds = new String[usersMatrix.size()];
+    userFactors = new double[userIds.length * MATRIX_RANK];
+    for (Map.Entry<String, VectorWritable> user : usersMatrix.entrySet()) {
+      int idx = userIndex.size();
+      userIndex.put(user.getKey(), idx);
+      userIds[idx] = user.getKey();
+      copy(user.getValue().getVector(), userFactors, idx * MATRIX_RANK);
+    }
+
+    HashMap<String, Integer> itemIndex = new HashMap<String, Integer>();
+    itemIds = new String[itemsMatrix.size()];
+    itemFactors = new double[itemIds.length * MATRIX_RANK];
+    for (Map.Entry<String, VectorWritable> item : itemsMatrix.entrySet()) {
+      int idx = itemIndex.size();
+      itemIndex.put(item.getKey(), idx);
+      itemIds[idx] = item.getKey();
+      copy(item.getValue().getVector(), itemFactors, idx * MATRIX_RANK);
+    }
+
+    int count = preferences.size();
+    prefUsers = new int[count];
+    prefItems = new int[count];
+    prefScores = new double[count];
+    order = new int[count];
+    for (int i = 0; i < count; i++) {
+      Preference<String, String> pref = preferences.get(i);
+      prefUsers[i] = userIndex.get(pref.getUserId()).intValue();
+      prefItems[i] = itemIndex.get(pref.getItemId()).intValue();
+      prefScores[i] = pref.getValue().get();
+      order[i] = i;
+    }
+    // boxed preferences are not used by the parallel update
+    preferences.clear();
+    indexes.clear();
+
+    if (threadCount > 1) {
+      workers = Executors.newFixedThreadPool(threadCount);
+    }
+    LOG.info("computing values with " + threadCount + " threads");
+    return true;
+  }
+
+  private static void copy(DoubleVector vector, double[] target, int offset) {
+    for (int i = 0; i < vector.getLength(); i++) {
+      target[offset + i] = vector.get(i);
+    }
+  }
+
+  private static VectorWritable copy(double[] source, int offset, int length) {
+    double[] values = new double[length];
+    System.arraycopy(source, offset, values, 0, length);
+    return new VectorWritable(new DenseDoubleVector(values));
+  }
+
+  /**
+   * Write interned factorized values back to usersMatrix and itemsMatrix,
+   * before they are normalized between peers or saved.
+   */
+  private void storeInternedValues() {
+    for (int i = 0; i < userIds.length; i++) {
+      usersMatrix.put(userIds[i], copy(userFactors, i * MATRIX_RANK, MATRIX_RANK));
+    }
+    for (int i = 0; i < itemIds.length; i++) {
+      itemsMatrix.put(itemIds[i], copy(itemFactors, i * MATRIX_RANK, MATRIX_RANK));
+    }
+  }
+
+  /**
+   * Read normalized item values back into the interned factors.
+   */
+  private void loadInternedItemValues() {
+    for (int i = 0; i < itemIds.length; i++) {
+      copy(itemsMatrix.get(itemIds[i]).getVector(), itemFactors, i * MATRIX_RANK);
+    }
+  }
+
+  /**
+   * One pass over the shuffled local preferences, split into contiguous
+   * ranges, one per thread. Threads update the shared factors without
+   * locking (Hogwild), collisions are rare since every preference touches
+   * only one user and one item row.
+   */
+  private void computeValuesInParallel() throws IOException,
+      InterruptedException {
+    for (int i = order.length; i > 1; i--) {
+      int idx = rnd.nextInt(i);
+      int tmp = order[i - 1];
+      order[i - 1] = order[idx];
+      order[idx] = tmp;
+    }
+
+    final OnlineUpdate.PrimitiveFunction update = (OnlineUpdate.PrimitiveFunction) function;
+    if (workers == null) {
+      computeRange(update, 0, order.length);
+      return;
+    }
+
+    ArrayList<Future<Object>> results = new ArrayList<Future<Object>>(threadCount);
+    int chunk = (order.length + threadCount - 1) / threadCount;
+    for (int t = 0; t < threadCount; t++) {
+      final int from = Math.min(order.length, t * chunk);
+      final int to = Math.min(order.length, from + chunk);
+      results.add(workers.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          computeRange(update, from, to);
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> result : results) {
+      try {
+        result.get();
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  private void computeRange(OnlineUpdate.PrimitiveFunction update, int from, int to) {
+    for (int i = from; i < to; i++) {
+      int pref = order[i];
+      update.update(userFactors, prefUsers[pref] * MATRIX_RANK,
+          itemFactors, prefItems[pref] * MATRIX_RANK, MATRIX_RANK, prefScores[pref]);
+    }
+  }
+
   private void normalizeWithBroadcastingValues(
       BSPPeer<Text, VectorWritable, Text, VectorWritable, MapWritable> peer) 
           throws IOException, SyncException, InterruptedException {
@@ -58,7 +58,7 @@ import org.apache.hama.ml.recommendation.cf.function.OnlineUpdate.OutputStructur
  * 
  * Below class implements computation phase under <b>for each (a,b,r) do</b> block 
  */
-public class MeanAbsError implements OnlineUpdate.Function{
+public class MeanAbsError implements OnlineUpdate.Function, OnlineUpdate.PrimitiveFunction{
   private static final double TETTA = 0.01; 
   private DoubleVector zeroVector = null;
   @Override
@@ -140,6 +140,25 @@ public class MeanAbsError implements OnlineUpdate.Function{
     }
     return res;
   }
+  @Override
+  public void update(double[] users, int userOffset, double[] items,
+      int itemOffset, int rank, double expectedScore) {
+    // R = α_a * β_b
+    double calculatedScore = 0.0;
+    for (int l = 0; l < rank; l++) {
+      calculatedScore += users[userOffset + l] * items[itemOffset + l];
+    }
+    double step = 2*TETTA*(expectedScore - calculatedScore);
+    // α_al ← α_al + 2τ * β_bl(r − R)
+    // β_bl ← β_bl + 2τ * α_al(r − R), both from old values
+    for (int l = 0; l < rank; l++) {
+      double user = users[userOffset + l];
+      double item = items[itemOffset + l];
+      users[userOffset + l] = user + step * item;
+      items[itemOffset + l] = item + step * user;
+    }
+  }
+
   @Override
   public double predict(InputStructure e) {
     int rank = e.user.getVector().getLength();
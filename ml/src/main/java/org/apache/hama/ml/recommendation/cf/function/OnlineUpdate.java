@@ -43,4 +43,15 @@ public class OnlineUpdate {
     OnlineUpdate.OutputStructure compute(OnlineUpdate.InputStructure e);
     double predict(OnlineUpdate.InputStructure e);
   }
+
+  /**
+   * Optional in-place variant of {@link Function} for models without
+   * user and item features. Factors are rows of shared primitive arrays,
+   * implementations must not keep state between calls, since training
+   * invokes them from several threads without locking (Hogwild).
+   */
+  public static interface PrimitiveFunction {
+    void update(double[] users, int userOffset, double[] items,
+        int itemOffset, int rank, double expectedScore);
+  }
 }
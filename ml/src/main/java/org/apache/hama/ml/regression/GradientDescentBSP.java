@@ -24,18 +24,26 @@ import org.apache.hama.bsp.sync.SyncException;
 import org.apache.hama.commons.io.VectorWritable;
 import org.apache.hama.commons.math.DenseDoubleVector;
 import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.commons.math.DoubleVector.DoubleVectorElement;
+import org.apache.hama.commons.math.SparseDoubleVector;
 import org.apache.hama.commons.util.KeyValuePair;
+import org.apache.hama.ml.util.HashingFeatureTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * A gradient descent (see
  * <code>http://en.wikipedia.org/wiki/Gradient_descent</code>) BSP based
  * implementation.
+ * <p>
+ * Cost and partial derivatives are computed in the same pass over the input
+ * and exchanged in a single message per peer and iteration. Input vectors may
+ * be sparse, only their non-zero elements are visited, and the deltas are sent
+ * as sparse vectors if that is smaller. With {@link #HASHED_FEATURES} set, the
+ * input features are hashed into a fixed number of buckets.
  */
 public class GradientDescentBSP
     extends
@@ -48,6 +56,7 @@ public class GradientDescentBSP
   public static final String COST_THRESHOLD = "gd.cost.threshold";
   public static final String ITERATIONS_THRESHOLD = "gd.iterations.threshold";
   public static final String REGRESSION_MODEL_CLASS = "gd.regression.model";
+  public static final String HASHED_FEATURES = "gd.hashed.features";
 
   private boolean master;
   private DoubleVector theta;
@@ -57,6 +66,8 @@ public class GradientDescentBSP
   private RegressionModel regressionModel;
   private int iterationsThreshold;
   private int m;
+  // hashes the input features, null if the input is used as is
+  private HashingFeatureTransformer featureTransformer;
 
   @SuppressWarnings("unchecked")
   @Override
@@ -76,6 +87,10 @@ public class GradientDescentBSP
     } catch (Exception e) {
       throw new IOException(e);
     }
+    int hashedFeatures = peer.getConfiguration().getInt(HASHED_FEATURES, 0);
+    if (hashedFeatures > 0) {
+      featureTransformer = new HashingFeatureTransformer(hashedFeatures);
+    }
   }
 
   @Override
@@ -102,36 +117,24 @@ public class GradientDescentBSP
     int iterations = 0;
     while (true) {
 
-      // first superstep : calculate cost function in parallel
-      double localCost = calculateLocalCost(peer);
+      // first superstep : calculate cost function and partial derivatives'
+      // deltas in parallel
+      double[] thetaDelta = new double[theta.getLength()];
+      double localCost = calculateLocalCostAndDeltas(peer, thetaDelta);
 
-      // cost is sent and aggregated by each
-      broadcastVector(peer, new double[] { localCost });
+      // cost and deltas are sent to each peer in a single message
+      broadcastCostAndDeltas(peer, localCost, thetaDelta);
       peer.sync();
 
-      // second superstep : aggregate cost calculation
-      double totalCost = aggregateTotalCost(peer, localCost);
+      // second superstep : aggregate cost and partial derivatives
+      double totalCost = aggregateCostAndDeltas(peer, localCost, thetaDelta);
 
       // cost check
       if (checkCost(peer, iterations, totalCost))
         break;
 
-      peer.sync();
-      peer.reopenInput();
-
-      // third superstep : calculate partial derivatives' deltas in parallel
-      double[] thetaDelta = calculatePartialDerivatives(peer);
-
-      // send thetaDelta to the each peer
-      broadcastVector(peer, thetaDelta);
-
-      peer.sync();
-
-      // fourth superstep : aggregate partial derivatives
-      double[] newTheta = aggregatePartialDerivatives(peer, thetaDelta);
-
       // update theta
-      updateTheta(newTheta);
+      updateTheta(thetaDelta);
 
       if (log.isDebugEnabled()) {
         log.debug("{}: new theta for cost {} is {}", new Object[]{peer.getPeerName(), cost, theta});
@@ -142,34 +145,36 @@ public class GradientDescentBSP
       }
 
       peer.reopenInput();
-      peer.sync();
 
       iterations++;
     }
   }
 
-  private double aggregateTotalCost(
+  private double aggregateCostAndDeltas(
       BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
-      double localCost) throws IOException {
+      double localCost, double[] thetaDelta) throws IOException {
     double totalCost = localCost;
-    VectorWritable costResult;
-    while ((costResult = peer.getCurrentMessage()) != null) {
-      totalCost += costResult.getVector().get(0);
-    }
-    return totalCost;
-  }
-
-  private double[] aggregatePartialDerivatives(
-      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
-      double[] thetaDelta) throws IOException {
-    VectorWritable thetaDeltaSlice;
-    double[] newTheta = Arrays.copyOf(thetaDelta, thetaDelta.length);
-    while ((thetaDeltaSlice = peer.getCurrentMessage()) != null) {
-      for (int j = 0; j < theta.getLength(); j++) {
-        newTheta[j] += thetaDeltaSlice.getVector().get(j);
+    int costIndex = thetaDelta.length;
+    VectorWritable result;
+    while ((result = peer.getCurrentMessage()) != null) {
+      DoubleVector vector = result.getVector();
+      if (vector instanceof SparseDoubleVector) {
+        SparseDoubleVector sparse = (SparseDoubleVector) vector;
+        for (int i = 0; i < sparse.getNonZeroCount(); i++) {
+          if (sparse.getIndexAt(i) == costIndex) {
+            totalCost += sparse.getValueAt(i);
+          } else {
+            thetaDelta[sparse.getIndexAt(i)] += sparse.getValueAt(i);
+          }
+        }
+      } else {
+        for (int j = 0; j < costIndex; j++) {
+          thetaDelta[j] += vector.get(j);
+        }
+        totalCost += vector.get(costIndex);
       }
     }
-    return newTheta;
+    return totalCost;
   }
 
   private void updateTheta(double[] thetaDiff) {
@@ -209,49 +214,107 @@ public class GradientDescentBSP
     }
   }
 
-  private double calculateLocalCost(
-      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer)
-      throws IOException {
+  private double calculateLocalCostAndDeltas(
+      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
+      double[] thetaDelta) throws IOException {
     double localCost = 0d;
 
     // read an item
     KeyValuePair<VectorWritable, DoubleWritable> kvp;
     while ((kvp = peer.readNext()) != null) {
-      // calculate cost for given input
       double y = kvp.getValue().get();
       DoubleVector x = kvp.getKey().getVector();
-      double costForX = regressionModel.calculateCostForItem(x, y, m, theta).doubleValue();
+      if (featureTransformer != null) {
+        x = featureTransformer.transform(x);
+      }
 
-      // adds to local cost
-      localCost += costForX;
+      // calculate cost for given input and add it to the local cost
+      localCost += regressionModel.calculateCostForItem(x, y, m, theta)
+          .doubleValue();
+
+      // the deltas only change for the non-zero features of x
+      double difference = regressionModel.applyHypothesis(theta, x)
+          .doubleValue() - y;
+      if (x instanceof SparseDoubleVector) {
+        SparseDoubleVector sparse = (SparseDoubleVector) x;
+        for (int i = 0; i < sparse.getNonZeroCount(); i++) {
+          addDelta(thetaDelta, sparse.getIndexAt(i), difference
+              * sparse.getValueAt(i));
+        }
+      } else {
+        Iterator<DoubleVectorElement> iterator = x.iterateNonDefault();
+        while (iterator.hasNext()) {
+          DoubleVectorElement element = iterator.next();
+          addDelta(thetaDelta, element.getIndex(),
+              difference * element.getValue());
+        }
+      }
     }
     return localCost;
   }
 
+  private static void addDelta(double[] thetaDelta, int index, double delta)
+      throws IOException {
+    if (index >= thetaDelta.length) {
+      throw new IOException("feature " + index + " exceeds the "
+          + thetaDelta.length + " parameters, consider setting "
+          + HASHED_FEATURES);
+    }
+    thetaDelta[index] += delta;
+  }
+
   private void broadcastVector(
       BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
       double[] vector) throws IOException {
+    broadcastVector(peer, new DenseDoubleVector(vector));
+  }
+
+  private void broadcastVector(
+      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
+      DoubleVector vector) throws IOException {
     for (String peerName : peer.getAllPeerNames()) {
       if (!peerName.equals(peer.getPeerName())) { // avoid sending to oneself
-        peer.send(peerName, new VectorWritable(new DenseDoubleVector(vector)));
+        peer.send(peerName, new VectorWritable(vector));
       }
     }
   }
 
-  private double[] calculatePartialDerivatives(
-      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer)
-      throws IOException {
-    KeyValuePair<VectorWritable, DoubleWritable> kvp;
-    double[] thetaDelta = new double[theta.getLength()];
-    while ((kvp = peer.readNext()) != null) {
-      DoubleVector x = kvp.getKey().getVector();
-      double y = kvp.getValue().get();
-      BigDecimal difference = regressionModel.applyHypothesis(theta, x).subtract(BigDecimal.valueOf(y));
-      for (int j = 0; j < theta.getLength(); j++) {
-        thetaDelta[j] += difference.multiply(BigDecimal.valueOf(x.get(j))).doubleValue();
+  /**
+   * Sends the deltas with the local cost appended as last element, as sparse
+   * vector if that is smaller than the dense one.
+   */
+  private void broadcastCostAndDeltas(
+      BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer,
+      double localCost, double[] thetaDelta) throws IOException {
+    if (peer.getNumPeers() == 1) {
+      return;
+    }
+    int nonZero = (localCost != 0d) ? 1 : 0;
+    for (double delta : thetaDelta) {
+      if (delta != 0d) {
+        nonZero++;
       }
     }
-    return thetaDelta;
+    // a sparse element takes 12 bytes, a dense one 8 bytes
+    if (nonZero * 12L < (thetaDelta.length + 1) * 8L) {
+      int[] indices = new int[nonZero];
+      double[] values = new double[nonZero];
+      int size = 0;
+      for (int j = 0; j < thetaDelta.length; j++) {
+        if (thetaDelta[j] != 0d) {
+          indices[size] = j;
+          values[size++] = thetaDelta[j];
+        }
+      }
+      if (localCost != 0d) {
+        indices[size] = thetaDelta.length;
+        values[size++] = localCost;
+      }
+      broadcastVector(peer, new SparseDoubleVector(thetaDelta.length + 1,
+          indices, values, size));
+    } else {
+      broadcastVector(peer, new DenseDoubleVector(thetaDelta, localCost));
+    }
   }
 
   @Override
@@ -271,7 +334,11 @@ public class GradientDescentBSP
           BSPPeer<VectorWritable, DoubleWritable, VectorWritable, DoubleWritable, VectorWritable> peer)
       throws IOException, SyncException, InterruptedException {
     if (theta == null) {
-      if (master) {
+      if (featureTransformer != null) {
+        // the number of parameters is known up front, no need to exchange it
+        theta = new DenseDoubleVector(featureTransformer.getBuckets(), peer
+            .getConfiguration().getInt(INITIAL_THETA_VALUES, 1));
+      } else if (master) {
         int size = getXSize(peer);
         theta = new DenseDoubleVector(size, peer.getConfiguration().getInt(
             INITIAL_THETA_VALUES, 1));
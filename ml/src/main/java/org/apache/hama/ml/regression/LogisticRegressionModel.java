@@ -54,7 +54,7 @@ public class LogisticRegressionModel implements RegressionModel {
 
   private BigDecimal applyHypothesisWithPrecision(DoubleVector theta, DoubleVector x) {
     // 1 / (1 + (e^(-theta'x)))
-    double dotUnsafe = theta.multiply(-1d).dotUnsafe(x);
+    double dotUnsafe = -theta.dotUnsafe(x);
     BigDecimal den = BigDecimal.valueOf(1d).add(BigDecimal.valueOf(Math.exp(dotUnsafe)));
     BigDecimal res = BigDecimal.valueOf(1).divide(den, DEFAULT_PRECISION);
     BigDecimal remainder = BigDecimal.valueOf(1).subtract(den, DEFAULT_PRECISION);
@@ -38,6 +38,7 @@ import org.apache.hama.bsp.RecordReader;
 import org.apache.hama.commons.io.VectorWritable;
 import org.apache.hama.commons.math.DenseDoubleVector;
 import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.commons.math.SparseDoubleVector;
 
 /**
  * A {@link FileInputFormat} for files containing one vector and one double per
@@ -185,6 +186,9 @@ public class VectorDoubleFileInputFormat extends
 
     private DoubleVector toDoubleVector(String s) {
       String[] split = s.split(" ");
+      if (split[0].indexOf(':') >= 0) {
+        return toSparseDoubleVector(split);
+      }
       double[] dar = new double[split.length];
       for (int i = 0; i < split.length; i++) {
         dar[i] = Double.valueOf(split[i]);
@@ -192,6 +196,22 @@ public class VectorDoubleFileInputFormat extends
       return new DenseDoubleVector(dar);
     }
 
+    /**
+     * Parses "index:value" pairs in ascending index order, the dimension is the
+     * largest index plus one.
+     */
+    private DoubleVector toSparseDoubleVector(String[] split) {
+      int[] indices = new int[split.length];
+      double[] values = new double[split.length];
+      for (int i = 0; i < split.length; i++) {
+        int separator = split[i].indexOf(':');
+        indices[i] = Integer.parseInt(split[i].substring(0, separator));
+        values[i] = Double.valueOf(split[i].substring(separator + 1));
+      }
+      int dimension = (split.length == 0) ? 0 : indices[split.length - 1] + 1;
+      return new SparseDoubleVector(dimension, indices, values, split.length);
+    }
+
     /**
      * Get the progress within the split
      */
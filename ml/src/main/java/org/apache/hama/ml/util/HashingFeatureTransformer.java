@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.commons.math.DoubleVector.DoubleVectorElement;
+import org.apache.hama.commons.math.SparseDoubleVector;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Maps the non-zero features of arbitrary dimension to a sparse vector with a
+ * fixed number of buckets (the hashing trick). Each feature index is hashed to
+ * a bucket and a sign, colliding features are summed up.
+ */
+public class HashingFeatureTransformer extends FeatureTransformer {
+
+  public static final int DEFAULT_BUCKETS = 1 << 20;
+
+  private final int buckets;
+
+  public HashingFeatureTransformer() {
+    this(DEFAULT_BUCKETS);
+  }
+
+  public HashingFeatureTransformer(int buckets) {
+    Preconditions.checkArgument(buckets > 0,
+        "Number of buckets must be positive.");
+    this.buckets = buckets;
+  }
+
+  public int getBuckets() {
+    return buckets;
+  }
+
+  @Override
+  public DoubleVector transform(DoubleVector originalFeatures) {
+    int size = 0;
+    int[] indices = new int[8];
+    double[] values = new double[8];
+    Iterator<DoubleVectorElement> iterator = originalFeatures
+        .iterateNonDefault();
+    while (iterator.hasNext()) {
+      DoubleVectorElement element = iterator.next();
+      int hash = mix(element.getIndex());
+      if (size == indices.length) {
+        indices = Arrays.copyOf(indices, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      indices[size] = (hash >>> 1) % buckets;
+      values[size++] = ((hash & 1) == 0) ? element.getValue() : -element
+          .getValue();
+    }
+    return collect(indices, values, size);
+  }
+
+  /**
+   * Sorts the given elements by index and sums up colliding ones.
+   */
+  private SparseDoubleVector collect(int[] indices, double[] values, int size) {
+    long[] order = new long[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = ((long) indices[i] << 32) | i;
+    }
+    Arrays.sort(order);
+    int[] newIndices = new int[size];
+    double[] newValues = new double[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      int index = (int) (order[i] >>> 32);
+      double value = values[(int) order[i]];
+      if (count > 0 && newIndices[count - 1] == index) {
+        newValues[count - 1] += value;
+      } else {
+        newIndices[count] = index;
+        newValues[count++] = value;
+      }
+    }
+    return new SparseDoubleVector(buckets, newIndices, newValues, count);
+  }
+
+  /**
+   * Finalization step of the 32 bit murmur3 hash.
+   */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+}
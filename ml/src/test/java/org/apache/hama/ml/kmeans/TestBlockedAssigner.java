@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.ml.distance.EuclidianDistance;
+import org.junit.Test;
+
+public class TestBlockedAssigner extends TestCase {
+
+  @Test
+  public void testMatchesNaiveAssignment() throws Exception {
+    int k = 6;
+    int dim = 4;
+    Random r = new Random(13L);
+    List<DoubleVector> points = new ArrayList<DoubleVector>();
+    List<BlockedAssigner.Block> blocks = new ArrayList<BlockedAssigner.Block>();
+    List<BlockedAssigner.Bounds> bounds = new ArrayList<BlockedAssigner.Bounds>();
+    BlockedAssigner.Block block = null;
+    for (int i = 0; i < 5000; i++) {
+      double[] arr = new double[dim];
+      for (int d = 0; d < dim; d++) {
+        arr[d] = r.nextInt(100) + r.nextGaussian();
+      }
+      DoubleVector point = new DenseDoubleVector(arr);
+      points.add(point);
+      if (block == null || block.isFull()) {
+        block = new BlockedAssigner.Block(dim);
+        blocks.add(block);
+        bounds.add(new BlockedAssigner.Bounds());
+      }
+      block.add(point);
+    }
+
+    DoubleVector[] centers = new DoubleVector[k];
+    for (int i = 0; i < k; i++) {
+      centers[i] = points.get(i).deepCopy();
+    }
+
+    EuclidianDistance distance = new EuclidianDistance();
+    BlockedAssigner assigner = new BlockedAssigner(k, dim, 3);
+    try {
+      for (int iteration = 0; iteration < 10; iteration++) {
+        assigner.setCenters(centers);
+        assigner.assign(blocks, bounds);
+
+        DoubleVector[] sums = new DoubleVector[k];
+        long[] counts = new long[k];
+        for (DoubleVector point : points) {
+          int nearest = 0;
+          double lowest = Double.MAX_VALUE;
+          for (int c = 0; c < k; c++) {
+            double d = distance.measureDistance(centers[c], point);
+            if (d < lowest) {
+              lowest = d;
+              nearest = c;
+            }
+          }
+          sums[nearest] = (sums[nearest] == null) ? point : sums[nearest]
+              .add(point);
+          counts[nearest]++;
+        }
+
+        for (int c = 0; c < k; c++) {
+          assertEquals(counts[c], assigner.getCount(c));
+          if (counts[c] > 0) {
+            DoubleVector sum = assigner.getSum(c);
+            for (int d = 0; d < dim; d++) {
+              assertEquals(sums[c].get(d), sum.get(d), 0.0001);
+            }
+            centers[c] = sums[c].divide(counts[c]);
+          }
+        }
+      }
+    } finally {
+      assigner.close();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.recommendation;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.ml.recommendation.cf.FactorIndex;
+import org.junit.Test;
+
+public class TestFactorIndex extends TestCase {
+
+  @Test
+  public void testSmallIndexIsExact() {
+    FactorIndex.Builder builder = new FactorIndex.Builder(2);
+    builder.add(10L, new DenseDoubleVector(new double[] { 0, 0 }));
+    builder.add(3L, new DenseDoubleVector(new double[] { 1, 0 }));
+    builder.add(7L, new DenseDoubleVector(new double[] { 3, 0 }));
+    builder.add(5L, new DenseDoubleVector(new double[] { 0, 2 }));
+
+    FactorIndex index = builder.build(FactorIndex.Metric.EUCLIDEAN, 4, 0, 1L);
+    FactorIndex.Result result = index.search(10L, 2);
+    assertEquals(2, result.size());
+    assertEquals(3L, result.getId(0));
+    assertEquals(1.0, result.getScore(0), 0.000001);
+    assertEquals(5L, result.getId(1));
+    assertEquals(2.0, result.getScore(1), 0.000001);
+    assertNull(index.search(11L, 2));
+
+    index = builder.build(FactorIndex.Metric.INNER_PRODUCT, 4, 0, 1L);
+    result = index.search(new double[] { 1, 1 }, 3);
+    assertEquals(3, result.size());
+    assertEquals(7L, result.getId(0));
+    assertEquals(3.0, result.getScore(0), 0.000001);
+    assertEquals(5L, result.getId(1));
+    assertEquals(3L, result.getId(2));
+  }
+
+  @Test
+  public void testRecall() {
+    int rank = 8;
+    int count = 10;
+    Random r = new Random(7L);
+    FactorIndex.Builder builder = new FactorIndex.Builder(rank);
+    for (int i = 0; i < 20000; i++) {
+      double[] vector = new double[rank];
+      // a few clusters, as in trained factors
+      int cluster = r.nextInt(16);
+      for (int j = 0; j < rank; j++) {
+        vector[j] = ((cluster >> (j % 4)) & 1) * 2 + r.nextGaussian() * 0.3;
+      }
+      builder.add(i, new DenseDoubleVector(vector));
+    }
+    FactorIndex index = builder.build(FactorIndex.Metric.EUCLIDEAN, 8, 0, 1L);
+
+    long[] queries = new long[100];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = r.nextInt(20000);
+    }
+    FactorIndex.Result[] results = index.search(queries, count);
+    double[] query = new double[rank];
+    int hits = 0;
+    for (int i = 0; i < queries.length; i++) {
+      assertEquals(count, results[i].size());
+      for (int j = 1; j < count; j++) {
+        assertTrue(results[i].getScore(j - 1) <= results[i].getScore(j));
+      }
+      index.getFactors(index.indexOf(queries[i]), query);
+      // exact result contains the query itself with distance zero
+      FactorIndex.Result exact = index.searchExact(query, count + 1);
+      Set<Long> expected = new HashSet<Long>();
+      for (int j = 0; j < exact.size(); j++) {
+        expected.add(exact.getId(j));
+      }
+      for (int j = 0; j < count; j++) {
+        assertTrue(results[i].getId(j) != queries[i]);
+        if (expected.contains(results[i].getId(j))) {
+          hits++;
+        }
+      }
+    }
+    assertTrue(hits > 0.8 * queries.length * count);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.recommendation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hama.commons.io.VectorWritable;
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.ml.recommendation.cf.MappedModel;
+import org.junit.Test;
+
+public class TestMappedModel extends TestCase {
+
+  private Configuration conf = new Configuration();
+  private File dir = new File(System.getProperty("java.io.tmpdir"),
+      "hama-mapped-model-test");
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileSystem.getLocal(conf).delete(new Path(dir.getAbsolutePath()), true);
+  }
+
+  private List<Path> writeModel(List<Long> userIds) throws IOException {
+    Path file = new Path(dir.getAbsolutePath(), "model/part-00000");
+    FileSystem fs = FileSystem.getLocal(conf);
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, file,
+        Text.class, VectorWritable.class);
+    for (long id : userIds) {
+      writer.append(new Text("u" + id), new VectorWritable(
+          new DenseDoubleVector(new double[] { id, -id })));
+    }
+    writer.append(new Text("i1"), new VectorWritable(new DenseDoubleVector(
+        new double[] { 1 })));
+    writer.close();
+    List<Path> files = new ArrayList<Path>();
+    files.add(file);
+    return files;
+  }
+
+  @Test
+  public void testSortsInRuns() throws Exception {
+    List<Long> userIds = new ArrayList<Long>();
+    for (long id = 0; id < 50; id++) {
+      userIds.add(id * 7);
+    }
+    Collections.shuffle(userIds);
+
+    // many runs of three records each are merged
+    MappedModel model = MappedModel.open(conf, writeModel(userIds), 1L,
+        new File(dir, "mapped"), 3);
+    MappedModel.Section users = model.getSection("users");
+    assertEquals(50, users.size());
+    assertEquals(2, users.getWidth());
+    double[] row = new double[2];
+    for (long i = 0; i < users.size(); i++) {
+      assertEquals(i * 7, users.getId(i));
+      users.get(i, row);
+      assertEquals(i * 7.0, row[0], 0.0);
+      assertEquals(-i * 7.0, row[1], 0.0);
+    }
+    assertTrue(users.indexOf(8) < 0);
+    assertEquals(3, users.indexOf(21));
+    assertEquals(1, model.getSection("items").size());
+    assertEquals(0, model.getSection("userfeatures").size());
+  }
+
+  @Test
+  public void testDuplicateIds() throws Exception {
+    List<Long> userIds = new ArrayList<Long>();
+    userIds.add(5L);
+    userIds.add(1L);
+    userIds.add(5L);
+    try {
+      MappedModel.open(conf, writeModel(userIds), 1L, new File(dir, "mapped"),
+          2);
+      fail("duplicate ids were converted");
+    } catch (IOException e) {
+    }
+  }
+
+}
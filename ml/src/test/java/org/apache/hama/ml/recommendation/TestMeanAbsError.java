@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.recommendation;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hama.commons.io.VectorWritable;
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.ml.recommendation.cf.function.MeanAbsError;
+import org.apache.hama.ml.recommendation.cf.function.OnlineUpdate;
+import org.junit.Test;
+
+public class TestMeanAbsError extends TestCase {
+
+  @Test
+  public void testPrimitiveUpdateMatchesVectorUpdate() {
+    double[] user = { 0.5, -0.2, 1.0 };
+    double[] item = { 0.3, 0.7, -0.4 };
+    double expected = 3.5;
+
+    OnlineUpdate.InputStructure in = new OnlineUpdate.InputStructure();
+    in.user = new VectorWritable(new DenseDoubleVector(user.clone()));
+    in.item = new VectorWritable(new DenseDoubleVector(item.clone()));
+    in.expectedScore = new DoubleWritable(expected);
+    MeanAbsError function = new MeanAbsError();
+    OnlineUpdate.OutputStructure out = function.compute(in);
+
+    // rows at an offset in shared arrays, neighbors must stay untouched
+    double[] users = new double[9];
+    double[] items = new double[6];
+    System.arraycopy(user, 0, users, 3, 3);
+    System.arraycopy(item, 0, items, 3, 3);
+    function.update(users, 3, items, 3, 3, expected);
+
+    for (int l = 0; l < 3; l++) {
+      assertEquals(out.userFactorized.getVector().get(l), users[3 + l],
+          0.000001);
+      assertEquals(out.itemFactorized.getVector().get(l), items[3 + l],
+          0.000001);
+      assertEquals(0.0, users[l], 0.0);
+      assertEquals(0.0, users[6 + l], 0.0);
+      assertEquals(0.0, items[l], 0.0);
+    }
+  }
+
+  @Test
+  public void testPrimitiveUpdateConverges() {
+    double[] users = { 0.1, 0.1 };
+    double[] items = { 0.1, 0.1 };
+    MeanAbsError function = new MeanAbsError();
+    for (int i = 0; i < 2000; i++) {
+      function.update(users, 0, items, 0, 2, 2.0);
+    }
+    assertEquals(2.0, users[0] * items[0] + users[1] * items[1], 0.01);
+  }
+
+}
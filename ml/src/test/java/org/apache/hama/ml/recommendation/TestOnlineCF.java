@@ -107,12 +107,80 @@ public class TestOnlineCF extends TestCase{
 
       assertEquals(test_prefs.length*0.75, correct, 1);
 
+      // lazy model reads the same factors from the mapped layout
+      OnlineCF lazyRecommender = new OnlineCF();
+      lazyRecommender.setLazyModelDir("/tmp/mapped_" + outputFileName);
+      assertEquals(true, lazyRecommender.load(outputFileName, true));
+      for (Preference<Integer, Integer> test : test_prefs) {
+        assertEquals(recommender.estimatePreference(test.getUserId(), test.getItemId()),
+            lazyRecommender.estimatePreference(test.getUserId(), test.getItemId()), 0.000001);
+      }
+      assertEquals(recommender.getMostSimilarUsers(1, 2).size(),
+          lazyRecommender.getMostSimilarUsers(1, 2).size());
+
       fs.delete(new Path(outputFileName));
       fs.delete(new Path(strDataPath));
       fs.delete(new Path(convertedFileName));
+      fs.delete(new Path("/tmp/mapped_" + outputFileName), true);
 
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
+
+  /**
+   * Trains with several threads per task on the primitive factors, the
+   * estimates have to be as good as with the serial update.
+   */
+  @SuppressWarnings({ "deprecation" })
+  @Test
+  public void testParallelTraining() throws Exception {
+    String name = "onlinecf_parallel" + new Random().nextInt(100000);
+    String strDataPath = "/tmp/" + name;
+    String convertedFileName = "/tmp/converted_" + name;
+    String outputFileName = "onlinecf_parallel_model" + name;
+    Configuration fsConf = new Configuration();
+    FileSystem fs = FileSystem.get(new URI(strDataPath), fsConf);
+
+    StringBuilder str = new StringBuilder();
+    for (int user = 1; user <= 3; user++) {
+      for (int item = 1; item <= 5; item++) {
+        str.append(user).append("::").append(item).append("::")
+            .append(item % 2 == 0 ? 1.0 : 4.0).append("\n");
+      }
+    }
+    FSDataOutputStream fileOut = fs.create(new Path(strDataPath), true);
+    fileOut.writeBytes(str.toString());
+    fileOut.close();
+    assertTrue(new MovieLensConverter().convert(strDataPath, null,
+        convertedFileName));
+
+    try {
+      OnlineCF recommender = new OnlineCF();
+      recommender.setInputPreferences(convertedFileName);
+      recommender.setIteration(150);
+      recommender.setMatrixRank(3);
+      recommender.setSkipCount(1);
+      recommender.setTaskCount(2);
+      recommender.setThreadCount(4);
+      recommender.setUpdateFunction(MeanAbsError.class);
+      recommender.setOutputPath(outputFileName);
+      assertTrue(recommender.train());
+
+      recommender.load(outputFileName, false);
+      int correct = 0;
+      for (int user = 1; user <= 3; user++) {
+        for (int item = 1; item <= 5; item++) {
+          double actual = item % 2 == 0 ? 1.0 : 4.0;
+          double estimated = recommender.estimatePreference(user, item);
+          correct += (Math.abs(actual - estimated) < 0.5) ? 1 : 0;
+        }
+      }
+      assertTrue(correct >= 12);
+    } finally {
+      fs.delete(new Path(outputFileName));
+      fs.delete(new Path(strDataPath));
+      fs.delete(new Path(convertedFileName));
+    }
+  }
 }
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.regression;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hama.HamaConfiguration;
+import org.apache.hama.bsp.BSPJob;
+import org.apache.hama.bsp.FileOutputFormat;
+import org.apache.hama.bsp.SequenceFileOutputFormat;
+import org.apache.hama.commons.io.VectorWritable;
+import org.apache.hama.commons.math.DoubleVector;
+
+/**
+ * Runs {@link GradientDescentBSP} on dense, sparse and hashed input.
+ */
+public class TestGradientDescentBSP extends TestCase {
+
+  private static final Path TMP_DIR = new Path("/tmp/gd-test");
+
+  // y = 2 * x_0 + 1 * x_1 + 0.5 * x_2
+  private static final double[][] ROWS = { { 1, 1, 1 }, { 2, 0, 1 },
+      { 0, 3, 2 }, { 1, 0, 4 }, { 3, 1, 0 }, { 0, 2, 1 } };
+
+  private HamaConfiguration conf;
+  private FileSystem fs;
+
+  @Override
+  protected void setUp() throws Exception {
+    conf = new HamaConfiguration();
+    conf.setFloat(GradientDescentBSP.ALPHA, 0.01f);
+    conf.setFloat(GradientDescentBSP.COST_THRESHOLD, 0.0001f);
+    conf.setInt(GradientDescentBSP.ITERATIONS_THRESHOLD, 50);
+    conf.setInt(GradientDescentBSP.INITIAL_THETA_VALUES, 0);
+    fs = FileSystem.get(conf);
+    fs.delete(TMP_DIR, true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fs.delete(TMP_DIR, true);
+  }
+
+  public void testSparseInputMatchesDense() throws Exception {
+    DoubleVector dense = run("dense", write("dense", false, 1));
+    DoubleVector sparse = run("sparse", write("sparse", true, 1));
+
+    assertEquals(3, dense.getDimension());
+    assertEquals(3, sparse.getDimension());
+    for (int i = 0; i < dense.getDimension(); i++) {
+      assertEquals(dense.get(i), sparse.get(i), 1e-9);
+    }
+  }
+
+  public void testThetaSizedByFirstVector() throws Exception {
+    // without hashing theta gets the dimension of the first input vector
+    DoubleVector theta = run("sized", write("sized", true, 4));
+    assertEquals(9, theta.getDimension());
+    for (int i = 0; i < theta.getDimension(); i++) {
+      if (i % 4 != 0) {
+        assertEquals(0d, theta.get(i));
+      }
+    }
+  }
+
+  public void testHashedFeatures() throws Exception {
+    // the feature indices are far larger than the number of buckets
+    conf.setInt(GradientDescentBSP.HASHED_FEATURES, 16);
+    DoubleVector theta = run("hashed", write("hashed", true, 1000000));
+    assertEquals(16, theta.getDimension());
+
+    boolean updated = false;
+    for (int i = 0; i < theta.getDimension(); i++) {
+      updated |= theta.get(i) != 0d;
+    }
+    assertTrue(updated);
+  }
+
+  /**
+   * Writes the rows as "y>x" lines, sparse rows place feature i at index i *
+   * spread.
+   */
+  private Path write(String name, boolean sparse, int spread)
+      throws IOException {
+    Path file = new Path(TMP_DIR, name + "/input.txt");
+    Writer writer = new OutputStreamWriter(fs.create(file));
+    for (double[] row : ROWS) {
+      StringBuilder line = new StringBuilder();
+      line.append(2 * row[0] + row[1] + 0.5 * row[2]).append('>');
+      String separator = "";
+      for (int i = 0; i < row.length; i++) {
+        if (!sparse) {
+          line.append(separator).append(row[i]);
+          separator = " ";
+        } else if (row[i] != 0d) {
+          line.append(separator).append(i * spread).append(':').append(row[i]);
+          separator = " ";
+        }
+      }
+      writer.write(line.append('\n').toString());
+    }
+    writer.close();
+    return file;
+  }
+
+  private DoubleVector run(String name, Path input) throws Exception {
+    Path output = new Path(TMP_DIR, name + "/output");
+    BSPJob job = new BSPJob(conf, GradientDescentBSP.class);
+    job.setBspClass(GradientDescentBSP.class);
+    job.setInputFormat(VectorDoubleFileInputFormat.class);
+    job.setInputPath(input);
+    job.setInputKeyClass(VectorWritable.class);
+    job.setInputValueClass(DoubleWritable.class);
+    job.setOutputKeyClass(VectorWritable.class);
+    job.setOutputValueClass(DoubleWritable.class);
+    job.setOutputFormat(SequenceFileOutputFormat.class);
+    FileOutputFormat.setOutputPath(job, output);
+    job.setNumBspTask(1);
+    assertTrue(job.waitForCompletion(true));
+
+    // the master writes the final theta last
+    DoubleVector theta = null;
+    for (FileStatus status : fs.listStatus(output)) {
+      if (!status.getPath().getName().startsWith("part-")) {
+        continue;
+      }
+      SequenceFile.Reader reader = new SequenceFile.Reader(fs,
+          status.getPath(), conf);
+      VectorWritable key = new VectorWritable();
+      DoubleWritable value = new DoubleWritable();
+      while (reader.next(key, value)) {
+        theta = key.getVector();
+      }
+      reader.close();
+    }
+    assertNotNull(theta);
+    return theta;
+  }
+
+}
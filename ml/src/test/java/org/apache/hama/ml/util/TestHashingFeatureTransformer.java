@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hama.ml.util;
+
+import junit.framework.TestCase;
+
+import org.apache.hama.commons.math.DenseDoubleVector;
+import org.apache.hama.commons.math.DoubleVector;
+import org.apache.hama.commons.math.SparseDoubleVector;
+
+public class TestHashingFeatureTransformer extends TestCase {
+
+  public void testDimensionAndDeterminism() {
+    HashingFeatureTransformer transformer = new HashingFeatureTransformer(32);
+    DoubleVector features = new SparseDoubleVector(5000000, new int[] { 3,
+        70000, 4999999 }, new double[] { 1, 2, 3 }, 3);
+
+    DoubleVector hashed = transformer.transform(features);
+    assertTrue(hashed instanceof SparseDoubleVector);
+    assertEquals(32, hashed.getDimension());
+    assertEquals(hashed, transformer.transform(features));
+
+    // the magnitudes survive, only the signs may flip
+    double sum = 0;
+    for (int i = 0; i < hashed.getDimension(); i++) {
+      sum += Math.abs(hashed.get(i));
+    }
+    assertTrue(sum <= 6d);
+  }
+
+  public void testDenseInput() {
+    HashingFeatureTransformer transformer = new HashingFeatureTransformer(64);
+    DoubleVector dense = new DenseDoubleVector(new double[] { 0, 1.5, 0, -2 });
+    DoubleVector sparse = new SparseDoubleVector(4, new int[] { 1, 3 },
+        new double[] { 1.5, -2 }, 2);
+    assertEquals(transformer.transform(sparse), transformer.transform(dense));
+  }
+
+  public void testCollisionsAreSummed() {
+    // with a single bucket every feature collides
+    HashingFeatureTransformer transformer = new HashingFeatureTransformer(1);
+    DoubleVector features = new DenseDoubleVector(new double[] { 1, 2, 4 });
+    SparseDoubleVector hashed = (SparseDoubleVector) transformer
+        .transform(features);
+    assertEquals(1, hashed.getDimension());
+    assertEquals(1, hashed.getNonZeroCount());
+
+    double expected = 0;
+    for (int i = 0; i < features.getDimension(); i++) {
+      DoubleVector single = new SparseDoubleVector(3, new int[] { i },
+          new double[] { features.get(i) }, 1);
+      expected += transformer.transform(single).get(0);
+    }
+    assertEquals(expected, hashed.get(0), 1e-9);
+  }
+
+  public void testRejectsNonPositiveBuckets() {
+    try {
+      new HashingFeatureTransformer(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}